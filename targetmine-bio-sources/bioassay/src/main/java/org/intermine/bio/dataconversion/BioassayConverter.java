@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
@@ -210,9 +209,9 @@ public class BioassayConverter extends BioFileConverter {
 	private Map<String, String> inchikeyMap = new HashMap<String, String>();
 
 	private void readGiMapping() {
-		try {
+		try (Reader reader = InputFiles.openReader(giUniprotaccFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(giUniprotaccFile));
+					.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				if (!cols[1].startsWith("?")) {
@@ -229,9 +228,9 @@ public class BioassayConverter extends BioFileConverter {
 	}
 
 	private void readInchikeyMap() {
-		try {
+		try (Reader reader = InputFiles.openReader(inchikeyFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(inchikeyFile));
+					.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				inchikeyMap.put(cols[0], cols[1]);
@@ -246,9 +245,9 @@ public class BioassayConverter extends BioFileConverter {
 	}
 
 	private void readNameMap() {
-		try {
+		try (Reader reader = InputFiles.openReader(nameFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(nameFile));
+					.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				nameMap.put(cols[0], cols[1]);
@@ -263,9 +262,9 @@ public class BioassayConverter extends BioFileConverter {
 	}
 
 	private void readCidMapping() {
-		try {
+		try (Reader reader = InputFiles.openReader(aidActivecidFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(aidActivecidFile));
+					.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				cidMapping.put(cols[0], new HashSet<String>(Arrays.asList(cols[1].split(","))));
@@ -280,9 +279,9 @@ public class BioassayConverter extends BioFileConverter {
 	}
 
 	private void readPubmedMapping() {
-		try {
+		try (Reader reader = InputFiles.openReader(aidPubmedidFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(aidPubmedidFile));
+					.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				if (StringUtils.isNotEmpty(cols[1])) {
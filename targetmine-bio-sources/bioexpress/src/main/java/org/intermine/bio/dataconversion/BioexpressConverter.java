@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 
 /*
  * Copyright (C) 2002-2019 FlyMine
@@ -16,24 +15,12 @@ import java.io.FileReader;
 
 import java.io.Reader;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
-import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.Query;
-import org.intermine.objectstore.query.QueryClass;
-import org.intermine.objectstore.query.QueryExpression;
-import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryValue;
-import org.intermine.objectstore.query.Results;
-import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.xml.full.Item;
 
 
@@ -183,11 +170,14 @@ public class BioexpressConverter extends BioFileConverter
     public void process(Reader reader) throws Exception {
     	if(sampleRefByExperimantName == null) {
     		sampleRefByExperimantName = new HashMap<String, String>();
-    		try(CSVParser parser = new CSVParser(new FileReader(annotationCsvFile), false)){
+    		// all the tissues by one query, instead of one query per sample site
+    		getTissueResolver().preload();
+    		try(CSVParser parser = new CSVParser(InputFiles.openReader(annotationCsvFile), false)){
     			for (Map<String, String> entry : parser) {
     				createSampleRef(entry);
     			}
     		}
+    		getTissueResolver().logStatistics();
     	}
     	ItemCreator probeSetCreator = new ItemCreator(this,"ProbeSet","primaryIdentifier");
     	BufferedReader bufreader = new BufferedReader(reader);
@@ -255,27 +245,17 @@ public class BioexpressConverter extends BioFileConverter
 		tissueMap.put(name,item.getIdentifier());
 		return item.getIdentifier();
     }
-	@SuppressWarnings("unchecked")
-	public String queryIdByName(String name) throws Exception {
-		ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-		Query q = new Query();
-		QueryClass qcTissue = new QueryClass(os.getModel().getClassDescriptorByName("Tissue").getType());
-		QueryField qfIdenfifier = new QueryField(qcTissue, "identifier");
-		QueryField qName = new QueryField(qcTissue, "name");
-		q.addFrom(qcTissue);
-		q.addToSelect(qfIdenfifier);
-
-		q.setConstraint(new SimpleConstraint(new QueryExpression(QueryExpression.LOWER, qName), ConstraintOp.EQUALS, new QueryValue(name.toLowerCase())));
-		Results results = os.execute(q);
-		Iterator<Object> iterator = results.iterator();
-		while(iterator.hasNext()) {
-			ResultsRow<String> rr = (ResultsRow<String>) iterator.next();
-			String id = rr.get(0);
-			if(id!=null && id.length() > 0) {
-				return id;
-			}
+	// Tissue.name -> Tissue.identifier, in any case
+	private BulkIdResolver tissueResolver;
+	private BulkIdResolver getTissueResolver() {
+		if (tissueResolver == null) {
+			tissueResolver = new BulkIdResolver(osAlias, "Tissue", "name", "identifier");
+			tissueResolver.setIgnoreCase(true);
 		}
-		return null;
+		return tissueResolver;
+	}
+	public String queryIdByName(String name) throws Exception {
+		return getTissueResolver().resolve(name);
 	}
 	private String osAlias = null;
 	public void setOsAlias(String osAlias) {
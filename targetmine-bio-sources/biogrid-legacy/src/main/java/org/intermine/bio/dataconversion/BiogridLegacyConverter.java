@@ -13,15 +13,24 @@ package org.intermine.bio.dataconversion;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.StringUtils;
@@ -63,6 +72,10 @@ import org.xml.sax.helpers.DefaultHandler;
  *  - dmel gene doesn't resolve
  *  - if any of the participants are invalid, we throw away the interaction
  *
+ * With threads > 1, the organism files are parsed concurrently by BioGridFileParser into
+ * records holding identifiers instead of items; the records are merged in the order of the
+ * files by this thread, which creates and stores the items in batches.
+ *
  * @author Julie Sullivan
  */
 public class BiogridLegacyConverter extends BioFileConverter
@@ -82,6 +95,16 @@ public class BiogridLegacyConverter extends BioFileConverter
     private Map<MultiKey, Item> interactions = new HashMap<MultiKey, Item>();
     private static final String SPOKE_MODEL = "prey";
     private static final String BLANK_EXPERIMENT_NAME = "NAME NOT AVAILABLE";
+    private static final int STORE_BATCH_SIZE = 10000;
+
+    private int threads = 1;
+    private ExecutorService parsers = null;
+    // in the order of the files
+    private List<Future<BioGridFileParser>> parsedFiles
+        = new ArrayList<Future<BioGridFileParser>>();
+    private BioGridHandler merger = null;
+    // not null while merging the parsed files
+    private List<Item> storeBuffer = null;
 
     protected IdResolver rslv;
 
@@ -137,6 +160,31 @@ public class BiogridLegacyConverter extends BioFileConverter
             rslv = IdResolverService.getIdResolverByOrganism(taxonIds);
         }
 
+        if (threads > 1) {
+            if (parsers == null) {
+                parsers = Executors.newFixedThreadPool(threads);
+            }
+            // the reader is closed when this method returns, so the parser opens the file
+            final File parsedFile = file;
+            parsedFiles.add(parsers.submit(new Callable<BioGridFileParser>() {
+                @Override
+                public BioGridFileParser call() throws Exception {
+                    BioGridFileParser parser = new BioGridFileParser();
+                    InputStream in = InputFiles.openStream(parsedFile);
+                    try {
+                        SAXParser.parse(new InputSource(in), parser);
+                    } finally {
+                        in.close();
+                    }
+                    LOG.info("Parsed " + parsedFile.getName());
+                    return parser;
+                }
+            }));
+            // merge the files parsed so far while the others are being parsed
+            storeParsedFiles(false);
+            return;
+        }
+
         BioGridHandler handler = new BioGridHandler();
         try {
             SAXParser.parse(new InputSource(reader), handler);
@@ -231,11 +279,28 @@ public class BiogridLegacyConverter extends BioFileConverter
         this.taxonIds = new HashSet<String>(Arrays.asList(StringUtil.split(taxonIds, " ")));
     }
 
+    /**
+     * @param threads number of organism files parsed at the same time, 1 (default) for parsing
+     * the files one by one as they are read
+     */
+    public void setThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void close()  {
+        if (parsers != null) {
+            try {
+                storeParsedFiles(true);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                parsers.shutdownNow();
+            }
+        }
         if (idsToExperiments != null) {
             for (Item experiment : idsToExperiments.values()) {
                 try {
@@ -247,6 +312,54 @@ public class BiogridLegacyConverter extends BioFileConverter
         }
     }
 
+    /**
+     * Merge the parsed files in order, as long as they are parsed.
+     *
+     * @param wait if true, wait for all the files to be parsed
+     */
+    private void storeParsedFiles(boolean wait) throws Exception {
+        if (merger == null) {
+            merger = new BioGridHandler();
+        }
+        storeBuffer = new ArrayList<Item>();
+        try {
+            Iterator<Future<BioGridFileParser>> iterator = parsedFiles.iterator();
+            while (iterator.hasNext()) {
+                Future<BioGridFileParser> parsed = iterator.next();
+                if (!wait && !parsed.isDone()) {
+                    break;
+                }
+                try {
+                    merger.storeParsedFile(parsed.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to parse BioGRID file", e.getCause());
+                }
+                iterator.remove();
+            }
+            flushStoreBuffer();
+        } finally {
+            storeBuffer = null;
+        }
+    }
+
+    private void storeItem(Item item) throws ObjectStoreException {
+        if (storeBuffer == null) {
+            store(item);
+        } else {
+            storeBuffer.add(item);
+            if (storeBuffer.size() >= STORE_BATCH_SIZE) {
+                flushStoreBuffer();
+            }
+        }
+    }
+
+    private void flushStoreBuffer() throws ObjectStoreException {
+        if (!storeBuffer.isEmpty()) {
+            store(storeBuffer);
+            storeBuffer.clear();
+        }
+    }
+
     /**
      * Handles xml file
      */
@@ -513,35 +626,99 @@ public class BiogridLegacyConverter extends BioFileConverter
                 interaction.setReference("gene1", refId);
                 interaction.setReference("gene2", gene2RefId);
                 interactions.put(key, interaction);
-                store(interaction);
+                storeItem(interaction);
             }
             return interaction;
         }
 
 
-        // get all the gene ref IDs for an interaction
-        private ReferenceList getAllRefIds(Collection<InteractorHolder> allInteractors) {
-            ReferenceList allRefIds = new ReferenceList("allInteractors");
-            for (InteractorHolder ih : allInteractors) {
-                allRefIds.addRefId(ih.participant.refId);
+        /**
+         * Store the items of a file parsed by a BioGridFileParser, whose references are the
+         * identifiers of the terms, publications, organisms and genes.
+         * @param parsed the parsed file
+         * @throws ObjectStoreException if something goes wrong
+         * @throws SAXException if something goes wrong
+         */
+        protected void storeParsedFile(BioGridFileParser parsed)
+            throws ObjectStoreException, SAXException {
+            for (Object parsedRecord : parsed.records) {
+                if (parsedRecord instanceof ExperimentHolder) {
+                    ExperimentHolder eh = (ExperimentHolder) parsedRecord;
+                    if (eh.pubRefId != null) {
+                        eh.setPublication(getPub(eh.pubRefId));
+                    }
+                    if (eh.methodRefId != null) {
+                        eh.setMethod(getTerm(eh.methodRefId));
+                    }
+                    setExperiment(eh);
+                } else if (parsedRecord instanceof InteractionRecord) {
+                    InteractionRecord record = (InteractionRecord) parsedRecord;
+                    List<String[]> refIds = new ArrayList<String[]>();
+                    for (String[] participant : record.participants) {
+                        refIds.add(new String[] {genes.get(participant[0]), participant[1]});
+                    }
+                    storeInteraction(refIds, record.interactionType,
+                            getTerm(record.termIdentifier), record.eh.experimentRefId,
+                            record.name);
+                } else {
+                    String[] call = (String[]) parsedRecord;
+                    if ("Publication".equals(call[0])) {
+                        getPub(call[1]);
+                    } else if ("InteractionTerm".equals(call[0])) {
+                        getTerm(call[1]);
+                    } else if ("Organism".equals(call[0])) {
+                        getOrganism(call[1]);
+                    } else {
+                        getGene(call[2], call[1], call[3], call[4]);
+                    }
+                }
             }
-            return allRefIds;
         }
 
-        private void storeInteraction(InteractionHolder h) throws ObjectStoreException  {
-            ReferenceList allInteractors = getAllRefIds(h.ihs.values());
+        protected void storeInteraction(InteractionHolder h) throws ObjectStoreException  {
+            List<String[]> participants = new ArrayList<String[]>();
+            for (InteractorHolder ih : h.ihs.values()) {
+                participants.add(new String[] {ih.participant.refId, ih.role});
+            }
+            storeInteraction(participants, h.interactionType, h.methodRefId,
+                    h.eh.experimentRefId, getInteractionName(h));
+        }
+
+        protected String getInteractionName(InteractionHolder h) {
+            if (StringUtils.isEmpty(h.name)) {
+                String prettyName = StringUtils.join(h.identifiers, "_");
+                return "BioGRID:" + prettyName;
+            }
+            return h.name;
+        }
+
+        /**
+         * @param participants gene ref ID and role of the participants of the interaction
+         */
+        private void storeInteraction(List<String[]> participants, String interactionType,
+                String methodRefId, String experimentRefId, String name)
+            throws ObjectStoreException {
+            // get all the gene ref IDs for an interaction
+            ReferenceList allInteractors = new ReferenceList("allInteractors");
+            // a gene may be referred by several participants; within a file they share one
+            // InteractorHolder (see storeGene), so the genes are the holders of the interaction,
+            // in the order of the participants
+            Map<String, String> geneRoles = new LinkedHashMap<String, String>();
+            for (String[] participant : participants) {
+                allInteractors.addRefId(participant[0]);
+                geneRoles.put(participant[0], participant[1]);
+            }
 
             // for every gene in interaction store interaction pair
-            for (InteractorHolder gene1Interactor: h.ihs.values()) {
+            for (String[] gene1Interactor : participants) {
 
                 // gene1
-                String refId = gene1Interactor.participant.refId;
-                Set<InteractorHolder> ihs = new HashSet<InteractorHolder>(h.ihs.values());
+                String refId = gene1Interactor[0];
 
                 // loop through other genes in this interaction, set as gene2
-                for (InteractorHolder gene2Interactor : ihs) {
+                for (Map.Entry<String, String> gene2Interactor : geneRoles.entrySet()) {
 
-                    String gene2RefId = gene2Interactor.participant.refId;
+                    String gene2RefId = gene2Interactor.getKey();
                     if (gene2RefId.equals(refId)) {
                         continue;
                     }
@@ -549,37 +726,32 @@ public class BiogridLegacyConverter extends BioFileConverter
                     Item interaction = getInteraction(refId, gene2RefId);
                     Item detail = createItem("InteractionDetail");
 
-                    String role1 = gene1Interactor.role;
-                    String role2 = gene2Interactor.role;
+                    String role1 = gene1Interactor[1];
+                    String role2 = gene2Interactor.getValue();
                     if (SPOKE_MODEL.equalsIgnoreCase(role1)
                             && SPOKE_MODEL.equalsIgnoreCase(role2)) {
                         // spoke!  not storing bait - bait, only bait - prey
                         continue;
                     }
 
-                    if (gene1Interactor.role != null) {
+                    if (role1 != null) {
                         detail.setAttribute("role1", role1);
                     }
-                    if (gene2Interactor.role != null) {
+                    if (role2 != null) {
                         detail.setAttribute("role2", role2);
                     }
-                    detail.setAttribute("type", h.interactionType);
-                    detail.setReference("relationshipType", h.methodRefId);
-                    detail.setReference("experiment", h.eh.experimentRefId);
-                    if (StringUtils.isEmpty(h.name)) {
-                        String prettyName = StringUtils.join(h.identifiers, "_");
-                        detail.setAttribute("name", "BioGRID:" + prettyName);
-                    } else {
-                        detail.setAttribute("name", h.name);
-                    }
+                    detail.setAttribute("type", interactionType);
+                    detail.setReference("relationshipType", methodRefId);
+                    detail.setReference("experiment", experimentRefId);
+                    detail.setAttribute("name", name);
                     detail.setReference("interaction", interaction);
                     detail.addCollection(allInteractors);
-                    store(detail);
+                    storeItem(detail);
                 }
             }
         }
 
-        private String getPub(String pubMedId)
+        protected String getPub(String pubMedId)
             throws SAXException {
             String itemId = pubs.get(pubMedId);
             if (itemId == null) {
@@ -588,7 +760,7 @@ public class BiogridLegacyConverter extends BioFileConverter
                 itemId = pub.getIdentifier();
                 pubs.put(pubMedId, itemId);
                 try {
-                    store(pub);
+                    storeItem(pub);
                 } catch (ObjectStoreException e) {
                     throw new SAXException(e);
                 }
@@ -632,6 +804,24 @@ public class BiogridLegacyConverter extends BioFileConverter
         private Participant storeGene(String label, String identifier, InteractorHolder ih,
                 String taxonId)
             throws SAXException {
+            String refId = getGene(label, identifier, taxonId, ih.getBiogridId());
+            // participants are specific to an XML file, includes BioGRID id
+            Participant p = participants.get(identifier);
+            if (p == null) {
+                p = new Participant(identifier, ih, refId);
+                participants.put(identifier, p);
+            } else {
+                // we've seen this gene before, discard current holder object - replace with
+                // holder object already used
+                String interactorId = ih.biogridId;
+                interactors.put(interactorId, p.ih);
+            }
+            return p;
+        }
+
+        protected String getGene(String label, String identifier, String taxonId,
+                String biogridId)
+            throws SAXException {
             // genes can be in different XML files
             String refId = genes.get(identifier);
             if (refId == null) {
@@ -639,39 +829,27 @@ public class BiogridLegacyConverter extends BioFileConverter
                 item.setAttribute(label, identifier);
                 try {
                     item.setReference("organism", getOrganism(taxonId));
-                    Item xref = processBioGridId(ih, item);
+                    Item xref = processBioGridId(biogridId, item);
                     if (xref != null) {
                         item.addToCollection("crossReferences", xref);
                     }
-                    store(item);
+                    storeItem(item);
                 } catch (ObjectStoreException e) {
                     throw new SAXException(e);
                 }
                 refId = item.getIdentifier();
                 genes.put(identifier, refId);
             }
-            // participants are specific to an XML file, includes BioGRID id
-            Participant p = participants.get(identifier);
-            if (p == null) {
-                p = new Participant(identifier, ih, refId);
-                participants.put(identifier, p);
-            } else {
-                // we've seen this gene before, discard current holder object - replace with
-                // holder object already used
-                String interactorId = ih.biogridId;
-                interactors.put(interactorId, p.ih);
-            }
-            return p;
+            return refId;
         }
 
-        private Item processBioGridId(InteractorHolder ih, Item item)
+        private Item processBioGridId(String biogridID, Item item)
             throws ObjectStoreException {
-            String biogridID = ih.getBiogridId();
             if (StringUtils.isNotEmpty(biogridID)) {
                 Item xref = createItem("CrossReference");
                 xref.setAttribute("identifier", biogridID);
                 xref.setReference("subject", item);
-                store(xref);
+                storeItem(xref);
                 return xref;
             }
             return null;
@@ -698,7 +876,7 @@ public class BiogridLegacyConverter extends BioFileConverter
             return id;
         }
 
-        private String getOrganism(String taxonId)
+        protected String getOrganism(String taxonId)
             throws ObjectStoreException {
             String refId = organisms.get(taxonId);
             if (refId != null) {
@@ -708,7 +886,7 @@ public class BiogridLegacyConverter extends BioFileConverter
             item.setAttribute("taxonId", taxonId);
             organisms.put(taxonId, item.getIdentifier());
             try {
-                store(item);
+                storeItem(item);
             } catch (ObjectStoreException e) {
                 throw new ObjectStoreException(e);
             }
@@ -723,7 +901,7 @@ public class BiogridLegacyConverter extends BioFileConverter
             return id;
         }
 
-        private String getTerm(String identifier)
+        protected String getTerm(String identifier)
             throws SAXException {
             String refId = terms.get(identifier);
             if (refId != null) {
@@ -733,7 +911,7 @@ public class BiogridLegacyConverter extends BioFileConverter
             item.setAttribute("identifier", identifier);
             terms.put(identifier, item.getIdentifier());
             try {
-                store(item);
+                storeItem(item);
             } catch (ObjectStoreException e) {
                 throw new SAXException(e);
             }
@@ -754,7 +932,7 @@ public class BiogridLegacyConverter extends BioFileConverter
          * experiment name.  The only difference is the interactionDetectionMethod.
          * @param eh temporary holder for experiment
          */
-        private void setExperiment(ExperimentHolder eh) {
+        protected void setExperiment(ExperimentHolder eh) {
             String pubRefId = eh.pubRefId;
             String name = eh.shortName;
             MultiKey key = new MultiKey(pubRefId, name);
@@ -887,6 +1065,84 @@ public class BiogridLegacyConverter extends BioFileConverter
 
     }
 
+    /**
+     * Parses a file into records instead of items, so that several files can be parsed at the
+     * same time. The ref IDs of the terms, publications, organisms and genes are their
+     * identifiers, replaced by the ones of the items when the records are stored. The records
+     * are kept in the order of the file, so that the items are created in the same order as by
+     * a BioGridHandler.
+     */
+    class BioGridFileParser extends BioGridHandler
+    {
+        // class name and identifier of the terms, publications and organisms; class name,
+        // identifier, label, taxon ID and BioGRID ID of the genes; experiments and interactions
+        protected List<Object> records = new ArrayList<Object>();
+        private Set<String> recorded = new HashSet<String>();
+
+        private void record(String... call) {
+            if (recorded.add(call[0] + ":" + call[1])) {
+                records.add(call);
+            }
+        }
+
+        @Override
+        protected String getPub(String pubMedId) {
+            record("Publication", pubMedId);
+            return pubMedId;
+        }
+
+        @Override
+        protected String getTerm(String identifier) {
+            record("InteractionTerm", identifier);
+            return identifier;
+        }
+
+        @Override
+        protected String getOrganism(String taxonId) {
+            record("Organism", taxonId);
+            return taxonId;
+        }
+
+        @Override
+        protected String getGene(String label, String identifier, String taxonId,
+                String biogridId) {
+            record("Gene", identifier, label, taxonId, biogridId);
+            return identifier;
+        }
+
+        @Override
+        protected void setExperiment(ExperimentHolder eh) {
+            records.add(eh);
+        }
+
+        @Override
+        protected void storeInteraction(InteractionHolder h) {
+            InteractionRecord record = new InteractionRecord();
+            record.eh = h.eh;
+            record.termIdentifier = h.methodRefId;
+            record.interactionType = h.interactionType;
+            record.name = getInteractionName(h);
+            // the roles are set on the holders, which are reused by the next interactions
+            for (InteractorHolder ih : h.ihs.values()) {
+                record.participants.add(new String[] {ih.participant.refId, ih.role});
+            }
+            records.add(record);
+        }
+    }
+
+    /**
+     * An interaction parsed by BioGridFileParser.
+     */
+    protected class InteractionRecord
+    {
+        protected ExperimentHolder eh;
+        protected String termIdentifier;
+        protected String interactionType;
+        protected String name;
+        // gene identifier and role of the participants
+        protected List<String[]> participants = new ArrayList<String[]>();
+    }
+
     /**
      * Holder object for Experiment.  Holds all information about an experiment until
      * an interaction is verified to have only valid organisms
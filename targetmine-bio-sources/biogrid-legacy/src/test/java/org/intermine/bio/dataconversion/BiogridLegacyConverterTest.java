@@ -0,0 +1,116 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+/**
+ * Checks that the organism files parsed in parallel give the same items as parsed one by one.
+ *
+ * @author chenyian
+ */
+public class BiogridLegacyConverterTest extends ItemsTestCase
+{
+    // the yeast file is not of the organisms and is skipped
+    private static final List<String> FILES = Arrays.asList(
+            "BIOGRID-ORGANISM-Homo_sapiens-3.5.185.psi25.xml",
+            "BIOGRID-ORGANISM-Saccharomyces_cerevisiae_S288c-3.5.185.psi25.xml",
+            "BIOGRID-ORGANISM-Mus_musculus-3.5.185.psi25.xml");
+
+    Model model = Model.getInstanceByName("genomic");
+    private File dir;
+
+    public BiogridLegacyConverterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        // the parallel parsers read the files themselves
+        dir = File.createTempFile("biogrid", "");
+        dir.delete();
+        dir.mkdir();
+        for (String name : FILES) {
+            InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+            OutputStream out = new FileOutputStream(new File(dir, name));
+            try {
+                byte[] buffer = new byte[8192];
+                for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    public void tearDown() throws Exception {
+        for (String name : FILES) {
+            new File(dir, name).delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testThreads() throws Exception {
+        Set<Item> expected = process(1);
+        assertEquals(expected, process(4));
+        assertEquals(expected, process(2));
+
+        assertEquals(2, count(expected, "Organism"));
+        // interactor 5 has no gene, interactor 6 and the human TP53 of the mouse file are
+        // genes already stored
+        assertEquals(8, count(expected, "Gene"));
+        assertEquals(8, count(expected, "CrossReference"));
+        assertEquals(3, count(expected, "Publication"));
+        // the two methods of Smith J (2001) are one experiment
+        assertEquals(3, count(expected, "InteractionExperiment"));
+        // the interaction of interactor 5 is not stored, nor the bait - bait pairs
+        assertEquals(20, count(expected, "Interaction"));
+        assertEquals(20, count(expected, "InteractionDetail"));
+    }
+
+    private Set<Item> process(int threads) throws Exception {
+        MockItemWriter itemWriter = new MockItemWriter(new HashMap<String, Item>());
+        BiogridLegacyConverter converter = new BiogridLegacyConverter(itemWriter, model);
+        converter.setBiogridOrganisms("9606 10090 10116");
+        converter.setThreads(String.valueOf(threads));
+        // no identifier is resolved
+        converter.rslv = new IdResolver();
+        for (String name : FILES) {
+            File file = new File(dir, name);
+            converter.setCurrentFile(file);
+            Reader reader = new FileReader(file);
+            try {
+                converter.process(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        converter.close();
+        return itemWriter.getItems();
+    }
+
+    private static int count(Set<Item> items, String className) {
+        int ret = 0;
+        for (Item item : items) {
+            if (className.equals(item.getClassName())) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+}
@@ -1,6 +1,6 @@
 package org.intermine.bio.dataconversion;
 
-import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -85,8 +85,10 @@ public class Biopax3Converter extends BioFileConverter {
 
 		SimpleIOHandler handler = new SimpleIOHandler();
 		// JenaIOHandler handler = new JenaIOHandler(new Level3FactoryImpl(), BioPAXLevel.L3);
-		org.biopax.paxtools.model.Model owlModel = handler.convertFromOWL(new FileInputStream(
-				getCurrentFile()));
+		org.biopax.paxtools.model.Model owlModel;
+		try (InputStream in = InputFiles.openStream(getCurrentFile())) {
+			owlModel = handler.convertFromOWL(in);
+		}
 		Set<Pathway> pathways = owlModel.getObjects(Pathway.class);
 
 		traverser = new Traverser(SimpleEditorMap.L3, new Visitor() {
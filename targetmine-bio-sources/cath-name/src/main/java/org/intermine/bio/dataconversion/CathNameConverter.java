@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -122,7 +121,7 @@ public class CathNameConverter extends BioFileConverter {
 	}
 
 	private void parseCathDomainList() throws Exception {
-		BufferedReader reader = new BufferedReader(new FileReader(domainList));
+		BufferedReader reader = InputFiles.openReader(domainList);
 
 		String line;
 		while ((line = reader.readLine()) != null) {
@@ -181,7 +180,7 @@ public class CathNameConverter extends BioFileConverter {
 	}
 
 	private void parseDomainRegion() throws Exception {
-		BufferedReader reader = new BufferedReader(new FileReader(domall));
+		BufferedReader reader = InputFiles.openReader(domall);
 		// skip the header
 		reader.readLine();
 		String line;
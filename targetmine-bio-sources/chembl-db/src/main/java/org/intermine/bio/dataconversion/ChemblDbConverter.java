@@ -31,12 +31,13 @@ public class ChemblDbConverter extends BioDBConverter {
 	private Map<String, Set<String>> synonymMap = new HashMap<String, Set<String>>();
 	private Map<String, Set<String>> atcClassificationMap = new HashMap<String, Set<String>>();
 
-	private Map<String, String> proteinMap = new HashMap<String, String>();
-	private Map<String, String> compoundMap = new HashMap<String, String>();
-	private Map<String, String> publicationMap = new HashMap<String, String>();
-	private Map<String, String> compoundGroupMap = new HashMap<String, String>();
-	private Map<String, String> drugTypeMap = new HashMap<String, String>();
-	private Map<String, String> interactionMap = new HashMap<String, String>();
+	private IdentifierRegistries registries = new IdentifierRegistries();
+	private IdentifierRegistry proteinMap = registries.create("protein");
+	private IdentifierRegistry compoundMap = registries.create("compound");
+	private IdentifierRegistry publicationMap = registries.create("publication");
+	private IdentifierRegistry compoundGroupMap = registries.create("compoundGroup");
+	private IdentifierRegistry drugTypeMap = registries.create("drugType");
+	private IdentifierRegistry interactionMap = registries.create("interaction");
 
 	/**
 	 * Construct a new ChemblDbConverter.
@@ -297,9 +298,11 @@ public class ChemblDbConverter extends BioDBConverter {
 		
 		stmt.close();
 		connection.close();
+
+		registries.close();
 	}
 
-	Map<String, String> assayMap = new HashMap<String, String>();
+	IdentifierRegistry assayMap = registries.create("assay");
 
 	private String getCompoundProteinInteractionAssay(String identifier, String name,
 			String assayType, Integer confidenceScore, String pubmedId) throws ObjectStoreException {
@@ -387,7 +390,7 @@ public class ChemblDbConverter extends BioDBConverter {
 		store(syn);
 	}
 	
-	private Map<String, String> atcMap = new HashMap<String, String>();
+	private IdentifierRegistry atcMap = registries.create("atc");
 
 	private String getAtcClassification(String atcCode, String name) throws ObjectStoreException {
 		String ret = atcMap.get(atcCode);
@@ -424,6 +427,20 @@ public class ChemblDbConverter extends BioDBConverter {
 		return ret;
 	}
 
+	/**
+	 * @param registryStorage where the identifier maps are kept: heap (default), direct or mapped
+	 */
+	public void setRegistryStorage(String registryStorage) {
+		registries.setStorage(registryStorage);
+	}
+
+	/**
+	 * @param registryDirectory directory of the mapped registry files
+	 */
+	public void setRegistryDirectory(String registryDirectory) {
+		registries.setDirectory(registryDirectory);
+	}
+
 	@Override
 	public String getLicence() {
 		return "https://creativecommons.org/licenses/by-sa/3.0/";
@@ -17,31 +17,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
-import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.ConstraintSet;
-import org.intermine.objectstore.query.ContainsConstraint;
-import org.intermine.objectstore.query.Query;
-import org.intermine.objectstore.query.QueryClass;
-import org.intermine.objectstore.query.QueryCollectionReference;
-import org.intermine.objectstore.query.QueryExpression;
-import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryValue;
-import org.intermine.objectstore.query.Results;
-import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.xml.full.Item;
 
 
@@ -161,36 +148,34 @@ public class CtodConverter extends BioFileConverter
 	}
 	private static final String COMPOUND_SYNONYM = "CompoundSynonym";
 
-	@SuppressWarnings("unchecked")
+	// CompoundSynonym.value -> CompoundSynonym.subject.identifier, in any case
+	private BulkIdResolver compoundResolver;
+	private BulkIdResolver getCompoundResolver() {
+		if (compoundResolver == null) {
+			compoundResolver = new BulkIdResolver(osAlias, COMPOUND_SYNONYM, "value", "subject",
+					"Compound", "identifier");
+			compoundResolver.setIgnoreCase(true);
+		}
+		return compoundResolver;
+	}
 	public String queryIdByName(String name) throws Exception {
-		ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-		Query q = new Query();
-		QueryClass qcCompound = new QueryClass(os.getModel().getClassDescriptorByName("Compound").getType());
-		QueryClass qcSynonym = new QueryClass(os.getModel().getClassDescriptorByName(COMPOUND_SYNONYM).getType());
-		QueryField qfIdenfifier = new QueryField(qcCompound, "identifier");
-		QueryField qfValue = new QueryField(qcSynonym, "value");
-		q.addFrom(qcCompound);
-		q.addFrom(qcSynonym);
-		q.addToSelect(qfIdenfifier);
-
-		ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-
-		QueryCollectionReference synRef = new QueryCollectionReference(qcCompound, "synonyms");
-		cs.addConstraint(new ContainsConstraint(synRef, ConstraintOp.CONTAINS, qcSynonym));
-		cs.addConstraint(new SimpleConstraint(new QueryExpression(QueryExpression.LOWER, qfValue), ConstraintOp.EQUALS, new QueryValue(name.toLowerCase())));
-
-		cs.addConstraint(new SimpleConstraint(qfIdenfifier, ConstraintOp.IS_NOT_NULL));
-		q.setConstraint(cs);
-		Results results = os.execute(q);
-		Iterator<Object> iterator = results.iterator();
-		while(iterator.hasNext()) {
-			ResultsRow<String> rr = (ResultsRow<String>) iterator.next();
-			String id = rr.get(0);
-			if(id!=null && id.length() > 0) {
-				return id;
+		return getCompoundResolver().resolve(name);
+	}
+	/**
+	 * Load the compounds of all treatment names of the rows by batches of queries, instead of
+	 * one query per unknown name.
+	 */
+	private void preloadCompounds(List<Map<String, String>> rows) throws Exception {
+		Set<String> names = new HashSet<String>();
+		for (Map<String, String> row : rows) {
+			for (String treatmentKey : new String[] {"Treatment1 name","Treatment2 name","Treatment other name"}) {
+				String treatment = row.get(treatmentKey);
+				if(!"NA".equals(treatment)) {
+					names.add(treatment);
+				}
 			}
 		}
-		return null;
+		getCompoundResolver().preload(names);
 	}
 
 	/**
@@ -230,6 +215,7 @@ public class CtodConverter extends BioFileConverter
 				return 0;
 			}
 		});
+		preloadCompounds(list);
 		String prevId = null;
 		String prevArmId = null;
 		Item arm = null;
@@ -367,5 +353,6 @@ public class CtodConverter extends BioFileConverter
 			}
 			prevArmId = armId;
 		}
+		getCompoundResolver().logStatistics();
 	}
 }
@@ -2,11 +2,23 @@ package org.intermine.bio.dataconversion;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.Logger;
@@ -30,7 +42,12 @@ public class DbsnpConverter extends BioDBConverter
     private static final String DATA_SOURCE_NAME = "NCBI";
 
 	private static final String HUMAN_TAXON_ID = "9606";
-	private static final int BATCH_SIZE = 10000;
+	// rows fetched at a time by the cursors
+	private static final int FETCH_SIZE = 10000;
+	// rows handed over at a time by the reading threads, and chunks they can read ahead
+	private static final int CHUNK_SIZE = 1000;
+	private static final int QUEUE_CAPACITY = 16;
+	private static final int LOG_INTERVAL = 1000000;
 
 	private static final String PRIMARY_ASSEMBLY = "Primary_Assembly";
 	private static final int CDS_REFERENCE = 8;
@@ -53,7 +70,7 @@ public class DbsnpConverter extends BioDBConverter
     public void process() throws Exception {
 		// a database has been initialised from properties starting with db.dbsnp
 
-		Connection connection = getDatabase().getConnection();
+		Connection connection = getConnection();
 
 		// process data with direct SQL queries on the source database, for example:
 		Statement stmt = connection.createStatement();
@@ -68,279 +85,381 @@ public class DbsnpConverter extends BioDBConverter
 			store(item);
 			functionMap.put(Integer.valueOf(classId), item.getIdentifier());
 		}
-		
-		long maxSnpId = 0;
-		String queryMaxSnpId = "SELECT max(snp_id) FROM SNP;";
-		ResultSet maxSnpIdRes = stmt.executeQuery(queryMaxSnpId);
-		if (maxSnpIdRes.next()) {
-			maxSnpId = maxSnpIdRes.getLong(1);
-		} else {
-			throw new RuntimeException("CANNOT get the maximal snp id.");
-		}
-		
-		for (int i = 0; i < maxSnpId; i = i + BATCH_SIZE) {
-			
-			// get allele
-			String querySnpAllele = String.format(" SELECT snp_id, var_str " + 
-					" FROM SNP JOIN UniVariation ON SNP.univar_id = UniVariation.univar_id " + 
-					" WHERE SNP.snp_id > %d " + " AND SNP.snp_id <= %d ", i, i + BATCH_SIZE);
-			ResultSet snpAlleleRes = stmt.executeQuery(querySnpAllele);
-			Map<String, String> alleleMap = new HashMap<String, String>(); 
-			while (snpAlleleRes.next()) {
-				String snpId = snpAlleleRes.getString("snp_id");
-				String allele = snpAlleleRes.getString("var_str");
-				alleleMap.put(snpId, allele);
+		stmt.close();
+		connection.close();
+
+		// the four tables are read at the same time, each ordered by snp_id on its own
+		// connection, and merged by snp_id
+		SnpStream<String> alleles = new SnpStream<String>("alleles",
+				" SELECT snp_id, var_str "
+				+ " FROM SNP JOIN UniVariation ON SNP.univar_id = UniVariation.univar_id "
+				+ " ORDER BY snp_id ") {
+			@Override
+			String read(ResultSet res) throws SQLException {
+				return res.getString("var_str");
 			}
-			if (alleleMap.size() == 0) {
-				System.out.println(String.format("%d - %d skipped!", i, i + BATCH_SIZE));  // to be deleted
-				LOG.info(String.format("%d - %d skipped!", i, i + BATCH_SIZE));
-				continue;
+		};
+		SnpStream<String> pubmeds = new SnpStream<String>("publications",
+				" SELECT snp_id, pubmed_id FROM SNPPubmed ORDER BY snp_id ") {
+			@Override
+			String read(ResultSet res) throws SQLException {
+				return res.getString("pubmed_id");
 			}
-			System.out.println(String.format("do some process for %d - %d", i, i + BATCH_SIZE));  // to be deleted
-			LOG.info(String.format("do some process for %d - %d", i, i + BATCH_SIZE));
-
-			// get pubmed
-			String queryPubmed = String.format(" SELECT snp_id, pubmed_id " + 
-					" FROM SNPPubmed " + " WHERE snp_id > %d AND snp_id <= %d ", i, i + BATCH_SIZE);
-			ResultSet pubmedRes = stmt.executeQuery(queryPubmed);
-			Map<String, Set<String>> pubmedMap = new HashMap<String, Set<String>>(); 
-			while (pubmedRes.next()) {
-				String snpId = pubmedRes.getString("snp_id");
-				String pubmedId = pubmedRes.getString("pubmed_id");
-				if (pubmedMap.get(snpId) == null) {
-					pubmedMap.put(snpId, new HashSet<String>());
-				}
-				pubmedMap.get(snpId).add(pubmedId);
+		};
+		SnpStream<LocationHolder> positions = new SnpStream<LocationHolder>("positions",
+				" SELECT snp_id, contig_chr, orientation, phys_pos_from, asn_from, asn_to, group_term"
+				+ " FROM SNPContigLoc JOIN ContigInfo ON SNPContigLoc.ctg_id = ContigInfo.ctg_id "
+				+ " ORDER BY snp_id ") {
+			@Override
+			LocationHolder read(ResultSet res) throws SQLException {
+				return readLocation(res);
 			}
-
-			// get snp position
-			String queryPosition = String.format(" SELECT snp_id, contig_chr, orientation, phys_pos_from, asn_from, asn_to, group_term" + 
-					" FROM SNPContigLoc JOIN ContigInfo ON SNPContigLoc.ctg_id = ContigInfo.ctg_id " + 
-					" WHERE snp_id > %d AND snp_id <= %d ", i, i + BATCH_SIZE);
-			ResultSet positionRes = stmt.executeQuery(queryPosition);
-			Map<String, Map<String, Set<LocationHolder>>> snpInfoMap = new HashMap<String, Map<String, Set<LocationHolder>>>();
-			while (positionRes.next()) {
-				String snpId = positionRes.getString("snp_id");
-				if (snpInfoMap.get(snpId) == null) {
-					snpInfoMap.put(snpId, new HashMap<String, Set<LocationHolder>>());
-				}
-				String groupTerm = positionRes.getString("group_term");
-				if (snpInfoMap.get(snpId).get(groupTerm) == null) {
-					snpInfoMap.get(snpId).put(groupTerm, new HashSet<LocationHolder>());
-				}
-				
-				String chr = positionRes.getString("contig_chr");
-				String orient = positionRes.getInt("orientation") == 0? "Fwd": "Rev";
-				int pos = positionRes.getInt("phys_pos_from");
-				int asnFrom = positionRes.getInt("asn_from");
-				int asnTo = positionRes.getInt("asn_to");
-				
-				snpInfoMap.get(snpId).get(groupTerm).add(new LocationHolder(chr, orient, pos, asnFrom, asnTo));
+		};
+		SnpStream<TranscriptHolder> transcripts = new SnpStream<TranscriptHolder>("transcripts",
+				" SELECT DISTINCT SCLI.snp_id, gene_id, fxn_class, SCLI.mrna_acc, SCLI.mrna_ver, "
+				+ " SCLI.mrna_start, SCLI.mrna_stop, SCLI.mrna_orien, SCL.orientation, SCLI.allele, "
+				+ " SCLI.codon, SCLI.protein_acc, SCLI.protein_ver, SCLI.aa_position, SCLI.residue "
+				+ " FROM SNPContigLocusId AS SCLI JOIN SNPContigLoc AS SCL ON SCLI.snp_id = SCL.snp_id "
+				+ " AND SCLI.ctg_id = SCL.ctg_id AND SCLI.asn_from = SCL.asn_from "
+				+ " WHERE mrna_acc NOT LIKE 'X%' ORDER BY SCLI.snp_id ") {
+			@Override
+			TranscriptHolder read(ResultSet res) throws SQLException {
+				return readTranscript(res);
 			}
-			
-			Map<String, String> snpItemMap = new HashMap<String, String>();
-			for (String snpId: snpInfoMap.keySet()) {
-				Item item = createItem("SNP");
-				item.setAttribute("identifier", "rs" + snpId);
-				
-				Set<String> chrSet = new HashSet<String>();
-				if (snpInfoMap.get(snpId).get(PRIMARY_ASSEMBLY) != null) {
-					for (LocationHolder lh: snpInfoMap.get(snpId).get(PRIMARY_ASSEMBLY)) {
-						item.setAttribute("orientation", lh.orient);
-						if (!StringUtils.isEmpty(lh.chr)) {
-							String chromosome = getChromosome(lh.chr);
-							chrSet.add(lh.chr);
-							if (lh.pos > 0) {
-								Item location = createItem("Location");
-								
-								if (lh.asnTo - lh.asnFrom > 0) {
-									location.setAttribute("start", String.valueOf(lh.pos + 1));
-									location.setAttribute("end", String.valueOf(lh.pos + lh.asnTo - lh.asnFrom + 1));
-								} else {
-									String posString = String.valueOf(lh.pos + 1);
-									location.setAttribute("start", posString);
-									location.setAttribute("end", posString);
-								}
-								location.setReference("locatedOn", chromosome);
-								store(location);
-								item.addToCollection("locations", location);
-							}
-						}
-					}
-				} else {
-					LocationHolder lh = snpInfoMap.get(snpId).values().iterator().next().iterator().next();
-					item.setAttribute("orientation", lh.orient);
-					if (!StringUtils.isEmpty(lh.chr)) {
-						String chromosome = getChromosome(lh.chr);
-						chrSet.add(lh.chr);
-						if (lh.pos > 0) {
-							Item location = createItem("Location");
-							
-							if (lh.asnTo - lh.asnFrom > 0) {
-								location.setAttribute("start", String.valueOf(lh.pos + 1));
-								location.setAttribute("end", String.valueOf(lh.pos + lh.asnTo - lh.asnFrom + 1));
-							} else {
-								String posString = String.valueOf(lh.pos + 1);
-								location.setAttribute("start", posString);
-								location.setAttribute("end", posString);
-							}
-							location.setReference("locatedOn", chromosome);
-							store(location);
-							item.addToCollection("locations", location);
-						}
-					}
-				}
+		};
+		List<SnpStream<?>> streams = Arrays.<SnpStream<?>>asList(alleles, pubmeds, positions,
+				transcripts);
 
-				if (chrSet.size() > 0) {
-					String chrString = StringUtils.join(chrSet, "/");
-					item.setAttribute("chromosome", chrString);
-				}
-				
-				String allele = alleleMap.get(snpId);
-				if (allele != null) {
-					item.setAttribute("refseqAllele", allele);
-				}
-				// add publications
-				if (pubmedMap.get(snpId) != null) {
-					for (String pubmedId : pubmedMap.get(snpId)) {
-						item.addToCollection("publications", getPublication(pubmedId));
+		// daemon threads, so that a stream blocked in the driver does not keep the JVM alive
+		ExecutorService executor = Executors.newFixedThreadPool(streams.size(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "dbsnp-stream");
+						thread.setDaemon(true);
+						return thread;
 					}
-				}
-				
-				store(item);
-				snpItemMap.put(snpId, item.getIdentifier());
+				});
+		try {
+			for (SnpStream<?> stream : streams) {
+				executor.submit(stream);
 			}
-			
-			// get transcript
-			String queryTranscript = String
-					.format(" SELECT DISTINCT SCLI.snp_id, gene_id, fxn_class, SCLI.mrna_acc, SCLI.mrna_ver, "
-							+ " SCLI.mrna_start, SCLI.mrna_stop, SCLI.mrna_orien, SCL.orientation, SCLI.allele, "
-							+ " SCLI.codon, SCLI.protein_acc, SCLI.protein_ver, SCLI.aa_position, SCLI.residue "
-							+ " FROM SNPContigLocusId AS SCLI JOIN SNPContigLoc AS SCL ON SCLI.snp_id = SCL.snp_id "
-							+ " AND SCLI.ctg_id = SCL.ctg_id AND SCLI.asn_from = SCL.asn_from "
-							+ " WHERE mrna_acc NOT LIKE 'X%%' AND SCLI.snp_id > %d AND SCLI.snp_id <= %d ", i, i + BATCH_SIZE);
-			ResultSet transcriptRes = stmt.executeQuery(queryTranscript);
-			Map<String, Map<String, Map<String, ReferenceHolder>>> referenceDataMap = new HashMap<String, Map<String, Map<String, ReferenceHolder>>>();
-			Map<String, Integer> fxnMap = new HashMap<String, Integer>();
-			Set<String> missingSnps = new HashSet<String>();  // TODO to be remove
-			while (transcriptRes.next()) {
-				String snpId = transcriptRes.getString("snp_id");
-				String geneId = transcriptRes.getString("gene_id");
-				int fxn = transcriptRes.getInt("fxn_class");
-				String mrnaAcc = transcriptRes.getString("mrna_acc") + "." + transcriptRes.getString("mrna_ver");
-				
-				String refKey = snpId + "-" + geneId;
-				if (referenceDataMap.get(refKey) == null) {
-					referenceDataMap.put(refKey, new HashMap<String, Map<String, ReferenceHolder>>());
+			int count = 0;
+			int countSnp = 0;
+			while (true) {
+				long snpId = Long.MAX_VALUE;
+				for (SnpStream<?> stream : streams) {
+					snpId = Math.min(snpId, stream.peek());
 				}
-				if (referenceDataMap.get(refKey).get(mrnaAcc) == null) {
-					referenceDataMap.get(refKey).put(mrnaAcc, new HashMap<String, ReferenceHolder>());
+				if (snpId == Long.MAX_VALUE) {
+					break;
 				}
-				
-				int mrnaStart = transcriptRes.getInt("mrna_start");
-				int mrnaStop = transcriptRes.getInt("mrna_stop");
-				String mrnaPos = null;
-				if (mrnaStart > 0) {
-					if (mrnaStop > mrnaStart) {
-						mrnaPos = String.format("%d..%d", mrnaStart + 1, mrnaStop + 1);
-					}
-					mrnaPos = String.valueOf(mrnaStart + 1);
+				if (processSnp(String.valueOf(snpId), alleles.take(snpId), pubmeds.take(snpId),
+						positions.take(snpId), transcripts.take(snpId), functionMap)) {
+					countSnp++;
 				}
-				
-				String orientation = null;
-				if (transcriptRes.getString("mrna_orien") != null) {
-					orientation = transcriptRes.getInt("mrna_orien") == transcriptRes.getInt("orientation")? "Fwd": "Rev";
+				count++;
+				if (count % LOG_INTERVAL == 0) {
+					LOG.info(String.format("%d snp ids processed (rs%d), %d SNPs created.", count,
+							snpId, countSnp));
 				}
-				String allele = transcriptRes.getString("allele");
-				String codon = transcriptRes.getString("codon");
-				String proteinAcc = null;
-				if (!StringUtils.isEmpty(transcriptRes.getString("protein_acc"))) {
-					proteinAcc = transcriptRes.getString("protein_acc") + "."
-							+ transcriptRes.getString("protein_ver");
+			}
+			LOG.info(String.format("%d snp ids processed, %d SNPs created.", count, countSnp));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return a connection to the dbSNP database, each stream reads on a connection of its own
+	 */
+	Connection getConnection() throws SQLException {
+		return getDatabase().getConnection();
+	}
+
+	/**
+	 * Create the SNP and its annotations from its rows of the four tables.
+	 *
+	 * @return true if the SNP was created, i.e. it has a position
+	 */
+	boolean processSnp(String snpId, List<String> alleles, List<String> pubmedIds,
+			List<LocationHolder> positions, List<TranscriptHolder> transcripts,
+			Map<Integer, String> functionMap) throws ObjectStoreException {
+		if (positions.isEmpty()) {
+			if (!transcripts.isEmpty()) {
+				throw new RuntimeException("null SNP found. snpId: " + snpId); // TODO to be remove
+			}
+			return false;
+		}
+
+		Item item = createItem("SNP");
+		item.setAttribute("identifier", "rs" + snpId);
+
+		Set<String> chrSet = new HashSet<String>();
+		boolean primary = false;
+		for (LocationHolder lh : positions) {
+			if (PRIMARY_ASSEMBLY.equals(lh.groupTerm)) {
+				addLocation(item, lh, chrSet);
+				primary = true;
+			}
+		}
+		if (!primary) {
+			addLocation(item, positions.get(0), chrSet);
+		}
+
+		if (chrSet.size() > 0) {
+			String chrString = StringUtils.join(chrSet, "/");
+			item.setAttribute("chromosome", chrString);
+		}
+
+		if (!alleles.isEmpty()) {
+			String allele = alleles.get(alleles.size() - 1);
+			if (allele != null) {
+				item.setAttribute("refseqAllele", allele);
+			}
+		}
+		// add publications
+		for (String pubmedId : new HashSet<String>(pubmedIds)) {
+			item.addToCollection("publications", getPublication(pubmedId));
+		}
+
+		store(item);
+
+		if (transcripts.isEmpty()) {
+			return true;
+		}
+
+		// gene id -> mRNA accession -> key (REF or fxn_class + "_" + number) -> reference
+		Map<String, Map<String, Map<String, ReferenceHolder>>> referenceDataMap = new LinkedHashMap<String, Map<String, Map<String, ReferenceHolder>>>();
+		Map<String, Integer> fxnMap = new HashMap<String, Integer>();
+		for (TranscriptHolder th : transcripts) {
+			if (referenceDataMap.get(th.geneId) == null) {
+				referenceDataMap.put(th.geneId, new HashMap<String, Map<String, ReferenceHolder>>());
+			}
+			if (referenceDataMap.get(th.geneId).get(th.mrnaAcc) == null) {
+				referenceDataMap.get(th.geneId).put(th.mrnaAcc, new HashMap<String, ReferenceHolder>());
+			}
+			Map<String, ReferenceHolder> references = referenceDataMap.get(th.geneId).get(th.mrnaAcc);
+			if (th.fxn == CDS_REFERENCE) {
+				references.put(REF, th.reference);
+			} else {
+				references.put(String.format("%d_%d", th.fxn, references.size()), th.reference);
+				fxnMap.put(th.geneId, Integer.valueOf(th.fxn));
+			}
+		}
+
+		for (String geneId : referenceDataMap.keySet()) {
+			Item vaItem = createItem("VariationAnnotation");
+			vaItem.setReference("gene", getGene(geneId));
+			vaItem.setReference("snp", item);
+			String funcRef = functionMap.get(fxnMap.get(geneId));
+			if (funcRef != null) {
+				vaItem.setReference("function", funcRef);
+			}
+			store(vaItem);
+
+			for (String mrnaAcc: referenceDataMap.get(geneId).keySet()) {
+				Map<String, ReferenceHolder> snpRefMap = referenceDataMap.get(geneId).get(mrnaAcc);
+				Set<String> keys = snpRefMap.keySet();
+				for (String key : keys) {
+					if (key.equals(REF)) {
+						// some strange case, e.g. rs3800961
+						if (keys.size() == 1) {
+							ReferenceHolder rh = snpRefMap.get(key);
+							createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation, rh.allele,
+									rh.codon, rh.proteinAcc, rh.aaPos, rh.residue,
+									functionMap.get(Integer.valueOf(CDS_REFERENCE)),
+									vaItem.getIdentifier());
+						}
+					} else {
+						if (keys.contains(REF)) {
+							ReferenceHolder rh = snpRefMap.get(key);
+							ReferenceHolder rhRef = snpRefMap.get(REF);
+							createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation,
+									String.format("%s -> %s", rhRef.allele, rh.allele),
+									String.format("%s -> %s", rhRef.codon, rh.codon),
+									rh.proteinAcc, rh.aaPos,
+									String.format("%s -> %s", rhRef.residue, rh.residue),
+									functionMap.get(Integer.valueOf(key.split("_")[0])),
+									vaItem.getIdentifier());
+						} else {
+							ReferenceHolder rh = snpRefMap.get(key);
+							createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation, rh.allele,
+									rh.codon, rh.proteinAcc, rh.aaPos, rh.residue,
+									functionMap.get(Integer.valueOf(key.split("_")[0])),
+									vaItem.getIdentifier());
+						}
+					}
 				}
-				int aaPos = transcriptRes.getInt("aa_position");
-				String residue = transcriptRes.getString("residue");
-				
-				if (fxn == CDS_REFERENCE) {
-					referenceDataMap.get(refKey).get(mrnaAcc).put(REF, new ReferenceHolder(
-							mrnaPos, orientation, allele, codon, proteinAcc, aaPos, residue));
+			}
+		}
+		return true;
+	}
+
+	private void addLocation(Item item, LocationHolder lh, Set<String> chrSet)
+			throws ObjectStoreException {
+		item.setAttribute("orientation", lh.orient);
+		if (!StringUtils.isEmpty(lh.chr)) {
+			String chromosome = getChromosome(lh.chr);
+			chrSet.add(lh.chr);
+			if (lh.pos > 0) {
+				Item location = createItem("Location");
+
+				if (lh.asnTo - lh.asnFrom > 0) {
+					location.setAttribute("start", String.valueOf(lh.pos + 1));
+					location.setAttribute("end", String.valueOf(lh.pos + lh.asnTo - lh.asnFrom + 1));
 				} else {
-					int size = referenceDataMap.get(refKey).get(mrnaAcc).size();
-					referenceDataMap.get(refKey).get(mrnaAcc).put(String.format("%d_%d", fxn, size),
-							new ReferenceHolder(mrnaPos, orientation, allele, codon, proteinAcc,
-									aaPos, residue));
-					
-					fxnMap.put(refKey, Integer.valueOf(fxn));
-				}
-				 // TODO to be remove
-				// collect missing snps 
-				if (snpItemMap.get(snpId) == null) {
-					missingSnps.add(snpId);
+					String posString = String.valueOf(lh.pos + 1);
+					location.setAttribute("start", posString);
+					location.setAttribute("end", posString);
 				}
+				location.setReference("locatedOn", chromosome);
+				store(location);
+				item.addToCollection("locations", location);
 			}
-			
-			if (missingSnps.size() != 0) {
-				throw new RuntimeException("null SNP found. snpIds: " + StringUtils.join(missingSnps, ",")); // TODO to be remove
+		}
+	}
+
+	static LocationHolder readLocation(ResultSet res) throws SQLException {
+		String orient = res.getInt("orientation") == 0? "Fwd": "Rev";
+		return new LocationHolder(res.getString("group_term"), res.getString("contig_chr"),
+				orient, res.getInt("phys_pos_from"), res.getInt("asn_from"), res.getInt("asn_to"));
+	}
+
+	static TranscriptHolder readTranscript(ResultSet res) throws SQLException {
+		String geneId = res.getString("gene_id");
+		int fxn = res.getInt("fxn_class");
+		String mrnaAcc = res.getString("mrna_acc") + "." + res.getString("mrna_ver");
+
+		int mrnaStart = res.getInt("mrna_start");
+		int mrnaStop = res.getInt("mrna_stop");
+		String mrnaPos = null;
+		if (mrnaStart > 0) {
+			if (mrnaStop > mrnaStart) {
+				mrnaPos = String.format("%d..%d", mrnaStart + 1, mrnaStop + 1);
 			}
-			
-			for (String snpGeneId : referenceDataMap.keySet()) {
-				String[] split = snpGeneId.split("-");
-				String snpId = split[0];
-				String geneId = split[1];
-				Item vaItem = createItem("VariationAnnotation");
-				vaItem.setReference("gene", getGene(geneId));
-				String refId = snpItemMap.get(snpId);
-				if (refId == null) {
-					throw new RuntimeException("null SNP, snpId: " + snpId); // TODO to be remove
+			mrnaPos = String.valueOf(mrnaStart + 1);
+		}
+
+		String orientation = null;
+		if (res.getString("mrna_orien") != null) {
+			orientation = res.getInt("mrna_orien") == res.getInt("orientation")? "Fwd": "Rev";
+		}
+		String allele = res.getString("allele");
+		String codon = res.getString("codon");
+		String proteinAcc = null;
+		if (!StringUtils.isEmpty(res.getString("protein_acc"))) {
+			proteinAcc = res.getString("protein_acc") + "." + res.getString("protein_ver");
+		}
+		int aaPos = res.getInt("aa_position");
+		String residue = res.getString("residue");
+
+		return new TranscriptHolder(geneId, fxn, mrnaAcc, new ReferenceHolder(mrnaPos,
+				orientation, allele, codon, proteinAcc, aaPos, residue));
+	}
+
+	/**
+	 * The rows of a query ordered by snp_id, read in the background on a connection of its own
+	 * and taken SNP by SNP.
+	 */
+	abstract class SnpStream<T> implements Callable<Void> {
+		private String name;
+		private String query;
+		private BlockingQueue<List<SnpRow<T>>> queue = new ArrayBlockingQueue<List<SnpRow<T>>>(
+				QUEUE_CAPACITY);
+		private volatile Exception error = null;
+
+		private List<SnpRow<T>> chunk = Collections.emptyList();
+		private int index = 0;
+		private boolean finished = false;
+
+		SnpStream(String name, String query) {
+			this.name = name;
+			this.query = query;
+		}
+
+		abstract T read(ResultSet res) throws SQLException;
+
+		@Override
+		public Void call() throws Exception {
+			try {
+				Connection connection = getConnection();
+				try {
+					// the PostgreSQL driver only streams a result set within a transaction
+					connection.setAutoCommit(false);
+					Statement stmt = connection.createStatement();
+					stmt.setFetchSize(FETCH_SIZE);
+					ResultSet res = stmt.executeQuery(query);
+					List<SnpRow<T>> rows = new ArrayList<SnpRow<T>>(CHUNK_SIZE);
+					while (res.next()) {
+						rows.add(new SnpRow<T>(res.getLong("snp_id"), read(res)));
+						if (rows.size() == CHUNK_SIZE) {
+							queue.put(rows);
+							rows = new ArrayList<SnpRow<T>>(CHUNK_SIZE);
+						}
+					}
+					if (!rows.isEmpty()) {
+						queue.put(rows);
+					}
+					res.close();
+					stmt.close();
+					connection.commit();
+				} finally {
+					connection.close();
 				}
-				vaItem.setReference("snp", refId);
-				String funcRef = functionMap.get(fxnMap.get(snpGeneId));
-				if (funcRef != null) {
-					vaItem.setReference("function", funcRef);
+			} catch (InterruptedException e) {
+				// cancelled by shutdownNow(), the rows are not read any more
+				return null;
+			} catch (Exception e) {
+				error = e;
+			}
+			// an empty chunk marks the end; put() is interrupted if cancelled meanwhile
+			queue.put(new ArrayList<SnpRow<T>>());
+			return null;
+		}
+
+		/**
+		 * @return the snp_id of the next row, Long.MAX_VALUE if there is no more row
+		 */
+		long peek() throws InterruptedException {
+			if (index == chunk.size()) {
+				if (finished) {
+					return Long.MAX_VALUE;
 				}
-				store(vaItem);
-				
-				for (String mrnaAcc: referenceDataMap.get(snpGeneId).keySet()) {
-					Map<String, ReferenceHolder> snpRefMap = referenceDataMap.get(snpGeneId).get(mrnaAcc);
-					Set<String> keys = snpRefMap.keySet();
-					for (String key : keys) {
-						if (key.equals(REF)) {
-							// some strange case, e.g. rs3800961
-							if (keys.size() == 1) {
-								ReferenceHolder rh = snpRefMap.get(key);
-								createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation, rh.allele,
-										rh.codon, rh.proteinAcc, rh.aaPos, rh.residue,
-										functionMap.get(Integer.valueOf(CDS_REFERENCE)),
-										vaItem.getIdentifier());
-							}
-						} else {
-							if (keys.contains(REF)) {
-								ReferenceHolder rh = snpRefMap.get(key);
-								ReferenceHolder rhRef = snpRefMap.get(REF);
-								createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation,
-										String.format("%s -> %s", rhRef.allele, rh.allele),
-										String.format("%s -> %s", rhRef.codon, rh.codon),
-										rh.proteinAcc, rh.aaPos,
-										String.format("%s -> %s", rhRef.residue, rh.residue),
-										functionMap.get(Integer.valueOf(key.split("_")[0])),
-										vaItem.getIdentifier());
-							} else {
-								ReferenceHolder rh = snpRefMap.get(key);
-								createSNPReference(mrnaAcc, rh.mrnaPos, rh.orientation, rh.allele,
-										rh.codon, rh.proteinAcc, rh.aaPos, rh.residue,
-										functionMap.get(Integer.valueOf(key.split("_")[0])),
-										vaItem.getIdentifier());
-							}
-						}
+				chunk = queue.take();
+				index = 0;
+				if (chunk.isEmpty()) {
+					finished = true;
+					if (error != null) {
+						throw new RuntimeException("Failed to read the " + name + ".", error);
 					}
+					return Long.MAX_VALUE;
 				}
 			}
+			return chunk.get(index).snpId;
+		}
 
+		/**
+		 * @return the values of the next rows of the snp_id, empty if the next row is of a
+		 * greater snp_id
+		 */
+		List<T> take(long snpId) throws InterruptedException {
+			List<T> ret = new ArrayList<T>();
+			while (peek() == snpId) {
+				ret.add(chunk.get(index++).value);
+			}
+			return ret;
 		}
+	}
 
-		stmt.close();
-		connection.close();
-	   }
+	static class SnpRow<T> {
+		long snpId;
+		T value;
+		public SnpRow(long snpId, T value) {
+			this.snpId = snpId;
+			this.value = value;
+		}
+	}
 
 	/**
      * {@inheritDoc}
@@ -426,12 +545,15 @@ public class DbsnpConverter extends BioDBConverter
 	}	
 
 	static class LocationHolder {
+		String groupTerm;
 		String chr;
 		String orient;
 		int pos;
 		int asnFrom;
 		int asnTo;
-		public LocationHolder(String chr, String orient, int pos, int asnFrom, int asnTo) {
+		public LocationHolder(String groupTerm, String chr, String orient, int pos, int asnFrom,
+				int asnTo) {
+			this.groupTerm = groupTerm;
 			this.chr = chr;
 			this.orient = orient;
 			this.pos = pos;
@@ -440,6 +562,20 @@ public class DbsnpConverter extends BioDBConverter
 		}
 	}
 	
+	static class TranscriptHolder {
+		String geneId;
+		int fxn;
+		String mrnaAcc;
+		ReferenceHolder reference;
+		
+		public TranscriptHolder(String geneId, int fxn, String mrnaAcc, ReferenceHolder reference) {
+			this.geneId = geneId;
+			this.fxn = fxn;
+			this.mrnaAcc = mrnaAcc;
+			this.reference = reference;
+		}
+	}
+	
 	static class ReferenceHolder {
 		String mrnaPos;
 		String orientation;
@@ -0,0 +1,326 @@
+package org.intermine.bio.dataconversion;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+/**
+ * Tests of DbsnpConverter on fake JDBC tables: the SNPs merged from the streams of the four
+ * tables are compared with the SNPs of the rows grouped by snp_id, and a failed conversion must
+ * not leave the streams blocked.
+ *
+ * @author chenyian
+ */
+public class DbsnpConverterTest extends ItemsTestCase
+{
+	private static final int[] FUNCTIONS = {3, 5, 8, 9, 41, 42, 43, 44};
+	// the tables of the queries, a query of SNPContigLocusId is also one of SNPContigLoc
+	private static final List<String> TABLES = Arrays.asList("SnpFunctionCode", "UniVariation",
+			"SNPPubmed", "SNPContigLocusId", "SNPContigLoc");
+
+	Model model = Model.getInstanceByName("genomic");
+	// table to rows, ordered by snp_id
+	private Map<String, List<Map<String, Object>>> tables;
+	private AtomicInteger openConnections = new AtomicInteger();
+	private String failingTable = null;
+	private int failingRow = -1;
+
+	public DbsnpConverterTest(String arg) {
+		super(arg);
+	}
+
+	public void testProcess() throws Exception {
+		// more rows than the queues hold
+		createTables(new Random(42), 30000);
+		MockItemWriter itemWriter = createItemWriter();
+		createConverter(itemWriter).process();
+		assertStreamsFinished();
+
+		// the rows of each snp_id, processed in the order of the snp_ids
+		MockItemWriter expectedWriter = createItemWriter();
+		DbsnpConverter converter = createConverter(expectedWriter);
+		Map<Integer, String> functionMap = new HashMap<Integer, String>();
+		for (Map<String, Object> row : tables.get("SnpFunctionCode")) {
+			Item item = converter.createItem("SNPFunction");
+			item.setAttribute("name", (String) row.get("abbrev"));
+			item.setAttribute("description", (String) row.get("descrip"));
+			converter.store(item);
+			functionMap.put((Integer) row.get("fxn_class"), item.getIdentifier());
+		}
+		Map<Long, Map<String, List<Map<String, Object>>>> snps =
+				new TreeMap<Long, Map<String, List<Map<String, Object>>>>();
+		for (String table : TABLES.subList(1, TABLES.size())) {
+			for (Map<String, Object> row : tables.get(table)) {
+				Long snpId = (Long) row.get("snp_id");
+				if (!snps.containsKey(snpId)) {
+					Map<String, List<Map<String, Object>>> snpRows =
+							new HashMap<String, List<Map<String, Object>>>();
+					for (String name : TABLES) {
+						snpRows.put(name, new ArrayList<Map<String, Object>>());
+					}
+					snps.put(snpId, snpRows);
+				}
+				snps.get(snpId).get(table).add(row);
+			}
+		}
+		int countSnp = 0;
+		for (Map.Entry<Long, Map<String, List<Map<String, Object>>>> entry : snps.entrySet()) {
+			Map<String, List<Map<String, Object>>> snpRows = entry.getValue();
+			List<String> alleles = new ArrayList<String>();
+			for (Map<String, Object> row : snpRows.get("UniVariation")) {
+				alleles.add((String) row.get("var_str"));
+			}
+			List<String> pubmedIds = new ArrayList<String>();
+			for (Map<String, Object> row : snpRows.get("SNPPubmed")) {
+				pubmedIds.add((String) row.get("pubmed_id"));
+			}
+			List<DbsnpConverter.LocationHolder> positions =
+					new ArrayList<DbsnpConverter.LocationHolder>();
+			for (Map<String, Object> row : snpRows.get("SNPContigLoc")) {
+				positions.add(DbsnpConverter.readLocation(createResultSet(row)));
+			}
+			List<DbsnpConverter.TranscriptHolder> transcripts =
+					new ArrayList<DbsnpConverter.TranscriptHolder>();
+			for (Map<String, Object> row : snpRows.get("SNPContigLocusId")) {
+				transcripts.add(DbsnpConverter.readTranscript(createResultSet(row)));
+			}
+			if (converter.processSnp(String.valueOf(entry.getKey()), alleles, pubmedIds,
+					positions, transcripts, functionMap)) {
+				countSnp++;
+			}
+		}
+		assertTrue(countSnp > 20000);
+		assertEquals(expectedWriter.getItems(), itemWriter.getItems());
+		assertEquals(0, openConnections.get());
+	}
+
+	public void testFailedSnp() throws Exception {
+		createTables(new Random(7), 30000);
+		// a transcript of a SNP without position stops the conversion at the first SNP, while
+		// the streams are blocked on full queues
+		Map<String, Object> transcript = new LinkedHashMap<String, Object>(
+				tables.get("SNPContigLocusId").get(0));
+		transcript.put("snp_id", Long.valueOf(0L));
+		tables.get("SNPContigLocusId").add(0, transcript);
+		try {
+			createConverter(createItemWriter()).process();
+			fail("expected a RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("null SNP found. snpId: 0", e.getMessage());
+		}
+		assertStreamsFinished();
+		assertEquals(0, openConnections.get());
+	}
+
+	public void testFailedStream() throws Exception {
+		createTables(new Random(11), 30000);
+		failingTable = "SNPPubmed";
+		failingRow = 5000;
+		try {
+			createConverter(createItemWriter()).process();
+			fail("expected a RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("Failed to read the publications.", e.getMessage());
+			assertEquals("Connection reset", e.getCause().getMessage());
+		}
+		assertStreamsFinished();
+		assertEquals(0, openConnections.get());
+	}
+
+	private static MockItemWriter createItemWriter() {
+		return new MockItemWriter(new HashMap<String, org.intermine.model.fulldata.Item>());
+	}
+
+	private DbsnpConverter createConverter(MockItemWriter itemWriter) {
+		return new DbsnpConverter(null, model, itemWriter) {
+			@Override
+			Connection getConnection() {
+				return createConnection();
+			}
+		};
+	}
+
+	private static void assertStreamsFinished() throws InterruptedException {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("dbsnp-stream".equals(thread.getName())) {
+				thread.join(10000);
+				assertFalse(thread.isAlive());
+			}
+		}
+	}
+
+	/**
+	 * Random SNPs, with gaps of snp_ids, without allele or position, off the primary assembly
+	 * and with several transcripts of several genes.
+	 */
+	private void createTables(Random random, int numSnps) {
+		tables = new HashMap<String, List<Map<String, Object>>>();
+		for (String table : TABLES) {
+			tables.put(table, new ArrayList<Map<String, Object>>());
+		}
+		for (int fxn : FUNCTIONS) {
+			add("SnpFunctionCode", "fxn_class", fxn, "abbrev", "fxn" + fxn, "descrip",
+					"function " + fxn, "SO_id", "SO:" + fxn);
+		}
+		long snpId = 0;
+		for (int i = 0; i < numSnps; i++) {
+			snpId += 1 + (random.nextInt(1000) == 0 ? 20000 : random.nextInt(5));
+			if (random.nextInt(10) != 0) {
+				add("UniVariation", "snp_id", snpId, "var_str", "A/" + "CGT".charAt(
+						random.nextInt(3)));
+			}
+			for (int k = random.nextInt(3); k > 0; k--) {
+				add("SNPPubmed", "snp_id", snpId, "pubmed_id", String.valueOf(1000
+						+ random.nextInt(50)));
+			}
+			if (random.nextInt(8) == 0) {
+				continue;
+			}
+			int orientation = random.nextInt(2);
+			if (random.nextInt(4) == 0) {
+				add("SNPContigLoc", "snp_id", snpId, "contig_chr", random.nextInt(5) == 0 ? null
+						: "chr" + (1 + random.nextInt(3)), "orientation", orientation,
+						"phys_pos_from", random.nextInt(3) == 0 ? 0 : random.nextInt(100000),
+						"asn_from", 5, "asn_to", 5 + random.nextInt(2), "group_term", "Celera");
+			} else {
+				for (int k = 1 + random.nextInt(2); k > 0; k--) {
+					add("SNPContigLoc", "snp_id", snpId, "contig_chr", String.valueOf(1
+							+ random.nextInt(3)), "orientation", orientation, "phys_pos_from",
+							random.nextInt(100000), "asn_from", 5, "asn_to", 5
+							+ random.nextInt(2), "group_term", "Primary_Assembly");
+				}
+			}
+			for (int g = random.nextInt(3); g > 0; g--) {
+				String geneId = String.valueOf(100 + random.nextInt(20));
+				for (int m = 1 + random.nextInt(2); m > 0; m--) {
+					String mrnaAcc = "NM_" + random.nextInt(1000);
+					for (int k = 1 + random.nextInt(4); k > 0; k--) {
+						add("SNPContigLocusId", "snp_id", snpId, "gene_id", geneId, "fxn_class",
+								FUNCTIONS[random.nextInt(FUNCTIONS.length)], "mrna_acc", mrnaAcc,
+								"mrna_ver", 1, "mrna_start", random.nextInt(3) == 0 ? 0
+								: random.nextInt(999), "mrna_stop", random.nextInt(999),
+								"mrna_orien", random.nextInt(3) == 0 ? null : random.nextInt(2),
+								"orientation", orientation, "allele", String.valueOf("ACGT"
+								.charAt(random.nextInt(4))), "codon", "AAA", "protein_acc",
+								random.nextInt(2) == 0 ? null : "NP_" + random.nextInt(99),
+								"protein_ver", 2, "aa_position", random.nextInt(300), "residue",
+								"K");
+					}
+				}
+			}
+		}
+	}
+
+	private void add(String table, Object... namesValues) {
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < namesValues.length; i += 2) {
+			Object value = namesValues[i + 1];
+			row.put((String) namesValues[i], "snp_id".equals(namesValues[i])
+					? Long.valueOf(((Number) value).longValue()) : value);
+		}
+		tables.get(table).add(row);
+	}
+
+	private Connection createConnection() {
+		openConnections.incrementAndGet();
+		return (Connection) createProxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("createStatement".equals(method.getName())) {
+					return createStatement();
+				}
+				if ("close".equals(method.getName())) {
+					openConnections.decrementAndGet();
+				}
+				return null;
+			}
+		});
+	}
+
+	private Statement createStatement() {
+		return (Statement) createProxy(Statement.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("executeQuery".equals(method.getName())) {
+					for (String table : TABLES) {
+						if (((String) args[0]).contains(table)) {
+							return createResultSet(tables.get(table),
+									table.equals(failingTable) ? failingRow : -1);
+						}
+					}
+					throw new IllegalArgumentException("Unknown query: " + args[0]);
+				}
+				return null;
+			}
+		});
+	}
+
+	// a result set on the row
+	private static ResultSet createResultSet(Map<String, Object> row) throws SQLException {
+		ResultSet ret = createResultSet(Collections.singletonList(row), -1);
+		ret.next();
+		return ret;
+	}
+
+	/**
+	 * @param failingRow the row at which next() throws an SQLException, -1 if none
+	 */
+	private static ResultSet createResultSet(final List<Map<String, Object>> rows,
+			final int failingRow) {
+		return (ResultSet) createProxy(ResultSet.class, new InvocationHandler() {
+			private Iterator<Map<String, Object>> iterator = rows.iterator();
+			private int index = -1;
+			private Map<String, Object> row;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+				throws SQLException {
+				if ("next".equals(method.getName())) {
+					if (++index == failingRow) {
+						throw new SQLException("Connection reset");
+					}
+					row = iterator.hasNext() ? iterator.next() : null;
+					return Boolean.valueOf(row != null);
+				}
+				if (method.getName().startsWith("get")) {
+					Object value = row.get(args[0]);
+					if ("getString".equals(method.getName())) {
+						return value == null ? null : value.toString();
+					}
+					if ("getInt".equals(method.getName())) {
+						return Integer.valueOf(value == null ? 0 : ((Number) value).intValue());
+					}
+					if ("getLong".equals(method.getName())) {
+						return Long.valueOf(value == null ? 0L : ((Number) value).longValue());
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+				return null;
+			}
+		});
+	}
+
+	private static Object createProxy(Class<?> cls, InvocationHandler handler) {
+		return Proxy.newProxyInstance(cls.getClassLoader(), new Class<?>[] {cls}, handler);
+	}
+}
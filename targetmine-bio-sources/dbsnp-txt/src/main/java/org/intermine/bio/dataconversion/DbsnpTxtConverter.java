@@ -69,21 +69,24 @@ public class DbsnpTxtConverter extends BioFileConverter
 			LOG.info(String.format("Found %d SNPs", snpIdSet.size()));
 		}
 		System.out.println(String.format("Found %d SNPs", snpIdSet.size()));
-    	
-		if (tableType.equals("table1")) { // used to be "info"
-			System.out.println("Processing SNP information......");
-			processDbsnpTable1(reader);
-		} else if (tableType.equals("table3")) { // used to be "gene" 
-			System.out.println("Processing SNP gene association......");
-			processDbsnpTable3(reader);
-		} else if (tableType.equals("table2")) { // used to be "transcript" 
-			System.out.println("Processing SNP transcript association......");
-			processDbsnpTable2(reader);
-		} else if (tableType.equals("table4")) { // alternative format of table2 
-			System.out.println("Processing SNP transcript association......");
-			processDbsnpTable4(reader);
-		} else {
-			System.out.println("No matched table type. Finish the processing.");
+		
+		// the tables may be compressed
+		try (Reader input = InputFiles.reopen(getCurrentFile(), reader)) {
+			if (tableType.equals("table1")) { // used to be "info"
+				System.out.println("Processing SNP information......");
+				processDbsnpTable1(input);
+			} else if (tableType.equals("table3")) { // used to be "gene" 
+				System.out.println("Processing SNP gene association......");
+				processDbsnpTable3(input);
+			} else if (tableType.equals("table2")) { // used to be "transcript" 
+				System.out.println("Processing SNP transcript association......");
+				processDbsnpTable2(input);
+			} else if (tableType.equals("table4")) { // alternative format of table2 
+				System.out.println("Processing SNP transcript association......");
+				processDbsnpTable4(input);
+			} else {
+				System.out.println("No matched table type. Finish the processing.");
+			}
 		}
     }
     
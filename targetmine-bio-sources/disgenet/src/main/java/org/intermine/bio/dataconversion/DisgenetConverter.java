@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -116,8 +115,7 @@ public class DisgenetConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s ......", fn));
 		System.out.println(String.format("Parsing the file %s ......", fn));
 		
-		try {
-			FileReader reader = new FileReader(pmidFile);
+		try (Reader reader = InputFiles.openReader(pmidFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 
 			// first line is the header
@@ -139,7 +137,6 @@ public class DisgenetConverter extends BioFileConverter {
 					continue;
 				}
 			}
-			reader.close();
 			
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -155,8 +152,7 @@ public class DisgenetConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s ......", fn));
 		System.out.println(String.format("Parsing the file %s ......", fn));
 		
-		try {
-			FileReader reader = new FileReader(diseaseMapFile);
+		try (Reader reader = InputFiles.openReader(diseaseMapFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			// first line is the header
@@ -184,7 +180,6 @@ public class DisgenetConverter extends BioFileConverter {
 				}
 				ontologyIdMap.get(diseaseId).add(ontologyId);
 			}
-			reader.close();
 			
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -146,7 +145,7 @@ public class EnzymePathwayConverter extends BioFileConverter {
 			mainClassMap.clear();
 			subClassMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayClassFile));
+			BufferedReader reader = InputFiles.openReader(pathwayClassFile);
 			String line;
 			String mainClass = "";
 			String subClass = "";
@@ -186,7 +185,7 @@ public class EnzymePathwayConverter extends BioFileConverter {
 		try {
 			pathwayDescMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayDescFile));
+			BufferedReader reader = InputFiles.openReader(pathwayDescFile);
 			String line;
 			while ((line = reader.readLine()) != null) {
 				String[] split = line.split("\\t");
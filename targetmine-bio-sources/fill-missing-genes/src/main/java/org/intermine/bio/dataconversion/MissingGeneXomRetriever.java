@@ -1,15 +1,15 @@
 package org.intermine.bio.dataconversion;
 
-import java.io.BufferedReader;
 import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.Writer;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -20,7 +20,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.tools.ant.BuildException;
 import org.intermine.metadata.ConstraintOp;
-import org.intermine.metadata.StringUtil;
 import org.intermine.model.bio.Gene;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreFactory;
@@ -49,7 +48,7 @@ import nu.xom.Elements;
 public class MissingGeneXomRetriever {
 	private static final Logger LOG = LogManager.getLogger(MissingGeneXomRetriever.class);
 	
-    private static final String ESUMMARY_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/esummary.fcgi?db=gene&id=";
+	private static final String CACHE_PREFIX = "esummary/gene/";
 
 	private static final int BATCH_SIZE = 200;
 	
@@ -76,13 +75,13 @@ public class MissingGeneXomRetriever {
 		}
 		
 		Properties properties = PropertiesUtil.getPropertiesStartingWith("ncbi");
-		String apiKey = properties.getProperty("ncbi.apikey");
 
 		LOG.info("Starting MissingGeneRetriever");
 
 		Writer writer = null;
 
 		try {
+			EutilsClient client = EutilsClient.create(properties);
 			writer = new FileWriter(outputFile);
 
 			ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
@@ -92,111 +91,48 @@ public class MissingGeneXomRetriever {
 			System.out.println("There are " + genes.size() + " gene(s) without proper information.");
 			LOG.info("There are " + genes.size() + " gene(s) without proper information.");
 
-			Set<String> geneIds = new HashSet<String>();
-
-			ItemFactory itemFactory = new ItemFactory(os.getModel(), "-1_");
+			final ItemFactory itemFactory = new ItemFactory(os.getModel(), "-1_");
+			final Writer out = writer;
 			writer.write(FullRenderer.getHeader() + "\n");
 
-			for (Iterator<Gene> i = genes.iterator(); i.hasNext();) {
-				Gene gene = (Gene) i.next();
-				geneIds.add(gene.getPrimaryIdentifier());
-				if (geneIds.size() == BATCH_SIZE || !i.hasNext()) {
-					LOG.info("Querying NCBI esummary for " + geneIds.size() + " genes.");
-					System.out.println("Querying NCBI esummary for " + geneIds.size() + " genes.");
-					Reader reader = null;
-					while (reader == null) {
-						try {
-							reader = getReader(geneIds, apiKey);
-						} catch (Exception e) {
-							LOG.info(e.getMessage());
-							LOG.info("URL: " + ESUMMARY_URL + StringUtil.join(geneIds, ","));
-							System.out.println("Error occured when retrieving the data from NCBI. Waiting to retry.");
-							Thread.sleep(5000);
-							System.out.println("Try retrieving the data from NCBI again.");
-						}
-					}
-
-					XMLReader xmlreader = XMLReaderFactory.createXMLReader();
-					xmlreader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-					Builder parser = new Builder(xmlreader);
+			XMLReader xmlreader = XMLReaderFactory.createXMLReader();
+			xmlreader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			final Builder parser = new Builder(xmlreader);
+
+			// the summaries retrieved by the previous runs are read from the cache
+			final EutilsCache cache = client.getCache();
+			Set<String> geneIds = new LinkedHashSet<String>();
+			for (Gene gene : genes) {
+				String record = cache == null ? null : cache.get(CACHE_PREFIX + gene.getPrimaryIdentifier());
+				if (record != null) {
+					processGene(parser.build(new StringReader(record)).getRootElement(), itemFactory, writer);
+				} else {
+					geneIds.add(gene.getPrimaryIdentifier());
+				}
+			}
 
-					Document doc = parser.build(reader);
+			LOG.info("Querying NCBI esummary for " + geneIds.size() + " genes.");
+			System.out.println("Querying NCBI esummary for " + geneIds.size() + " genes.");
+			Map<String, String> params = new LinkedHashMap<String, String>();
+			params.put("db", "gene");
+			client.fetchBatches("esummary.fcgi", params, EutilsClient.partition(geneIds, BATCH_SIZE),
+					new EutilsClient.ResponseHandler() {
+				@Override
+				public void handle(List<String> ids, String response) throws Exception {
+					Document doc = parser.build(new StringReader(response));
 					Element entry = doc.getRootElement();
 
 					Elements elements = entry.getChildElements("DocumentSummarySet").get(0).getChildElements("DocumentSummary");
 
 					for (int k = 0; k < elements.size(); k++) {
 						Element element = elements.get(k);
-						String uid = element.getAttribute("uid").getValue();
-						if (element.getChildElements("error").size() > 0) {
-							LOG.error("Unable to retrieve gene: " + uid);
-						} else {
-							Set<String> geneSynonyms = new HashSet<String>();
-							Item geneItem = itemFactory.makeItemForClass("Gene");
-							geneItem.setAttribute("primaryIdentifier", uid);
-							
-							String symbol = element.getChildElements("NomenclatureSymbol").get(0).getValue();
-							if (StringUtils.isEmpty(symbol)) {
-								symbol = element.getChildElements("Name").get(0).getValue();
-							}
-							geneItem.setAttribute("symbol", symbol);
-							geneSynonyms.add(symbol);
-							
-							String taxonId = element.getChildElements("Organism").get(0).getChildElements("TaxID").get(0).getValue();
-							geneItem.setReference("organism", getOrganism(taxonId, itemFactory));
-
-//							String status = element.getChildElements("Status").get(0).getValue();
-							String currentId = element.getChildElements("CurrentID").get(0).getValue();
-							if (!currentId.equals("0")) {
-								geneItem.setAttribute("briefDescription", String.format("This record was replaced with Gene ID: %s", currentId));
-							}
-							
-							String name = element.getChildElements("NomenclatureName").get(0).getValue();
-							if (StringUtils.isEmpty(name)) {
-								// the 'description' attribute is more like a name?
-								name = element.getChildElements("Description").get(0).getValue();
-								if (StringUtils.isEmpty(name)) {
-									name = "unavailable";
-								}
-							}
-							geneItem.setAttribute("name", name);
-							
-							String otherDesignations = element.getChildElements("OtherDesignations").get(0).getValue();
-							if (!StringUtils.isEmpty(otherDesignations)) {
-								geneSynonyms.addAll(Arrays.asList(otherDesignations.split("\\|")));
-							}
-							String otherAliases = element.getChildElements("OtherAliases").get(0).getValue();
-							if (!StringUtils.isEmpty(otherAliases)) {
-								geneSynonyms.addAll(Arrays.asList(otherAliases.split(", ")));
-							}
-
-							String summary = element.getChildElements("Summary").get(0).getValue();
-							if (!StringUtils.isEmpty(summary)) {
-								// store 'summary' attribute in the 'description' field
-								geneItem.setAttribute("description", summary);
-							}
-
-							writer.write(FullRenderer.render(geneItem));
-							
-							for (String alias : geneSynonyms) {
-								Item item = itemFactory.makeItemForClass("Synonym");
-								item.setReference("subject", geneItem.getIdentifier());
-								item.setAttribute("value", alias);
-								writer.write(FullRenderer.render(item));
-							}
-
+						if (processGene(element, itemFactory, out) && cache != null) {
+							cache.put(CACHE_PREFIX + element.getAttribute("uid").getValue(), element.toXML());
 						}
 					}
-					
-					reader.close();
-					
-					geneIds.clear();
-					
-					// To prevent HTTP 429
-					Thread.sleep(2000);
 				}
-			}
-			
+			});
+
 			// save the Organism object
 			for (Iterator<Item> iter = organismMap.values().iterator(); iter.hasNext();) {
 				Item item = iter.next();
@@ -239,13 +175,69 @@ public class MissingGeneXomRetriever {
 		return ret;
 	}
 
-	protected Reader getReader(Set<String> ids, String apiKey) throws Exception {
-		String urlString = ESUMMARY_URL + StringUtil.join(ids, ",");
-		if (apiKey != null) {
-			urlString = urlString + "&api_key=" + apiKey;
+	/**
+	 * @return false if the summary is an error
+	 */
+	private boolean processGene(Element element, ItemFactory itemFactory, Writer writer) throws IOException {
+		String uid = element.getAttribute("uid").getValue();
+		if (element.getChildElements("error").size() > 0) {
+			LOG.error("Unable to retrieve gene: " + uid);
+			return false;
+		}
+		Set<String> geneSynonyms = new HashSet<String>();
+		Item geneItem = itemFactory.makeItemForClass("Gene");
+		geneItem.setAttribute("primaryIdentifier", uid);
+		
+		String symbol = element.getChildElements("NomenclatureSymbol").get(0).getValue();
+		if (StringUtils.isEmpty(symbol)) {
+			symbol = element.getChildElements("Name").get(0).getValue();
+		}
+		geneItem.setAttribute("symbol", symbol);
+		geneSynonyms.add(symbol);
+		
+		String taxonId = element.getChildElements("Organism").get(0).getChildElements("TaxID").get(0).getValue();
+		geneItem.setReference("organism", getOrganism(taxonId, itemFactory));
+
+//							String status = element.getChildElements("Status").get(0).getValue();
+		String currentId = element.getChildElements("CurrentID").get(0).getValue();
+		if (!currentId.equals("0")) {
+			geneItem.setAttribute("briefDescription", String.format("This record was replaced with Gene ID: %s", currentId));
+		}
+		
+		String name = element.getChildElements("NomenclatureName").get(0).getValue();
+		if (StringUtils.isEmpty(name)) {
+			// the 'description' attribute is more like a name?
+			name = element.getChildElements("Description").get(0).getValue();
+			if (StringUtils.isEmpty(name)) {
+				name = "unavailable";
+			}
+		}
+		geneItem.setAttribute("name", name);
+		
+		String otherDesignations = element.getChildElements("OtherDesignations").get(0).getValue();
+		if (!StringUtils.isEmpty(otherDesignations)) {
+			geneSynonyms.addAll(Arrays.asList(otherDesignations.split("\\|")));
+		}
+		String otherAliases = element.getChildElements("OtherAliases").get(0).getValue();
+		if (!StringUtils.isEmpty(otherAliases)) {
+			geneSynonyms.addAll(Arrays.asList(otherAliases.split(", ")));
+		}
+
+		String summary = element.getChildElements("Summary").get(0).getValue();
+		if (!StringUtils.isEmpty(summary)) {
+			// store 'summary' attribute in the 'description' field
+			geneItem.setAttribute("description", summary);
+		}
+
+		writer.write(FullRenderer.render(geneItem));
+		
+		for (String alias : geneSynonyms) {
+			Item item = itemFactory.makeItemForClass("Synonym");
+			item.setReference("subject", geneItem.getIdentifier());
+			item.setAttribute("value", alias);
+			writer.write(FullRenderer.render(item));
 		}
-		URL url = new URL(urlString);
-		return new BufferedReader(new InputStreamReader(url.openStream()));
+		return true;
 	}
 
 	private Item getOrganism(String taxonId, ItemFactory itemFactory) {
@@ -1,15 +1,15 @@
 package org.intermine.bio.dataconversion;
 
-import java.io.BufferedReader;
 import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.Writer;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -18,7 +18,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.tools.ant.BuildException;
 import org.intermine.metadata.ConstraintOp;
-import org.intermine.metadata.StringUtil;
 import org.intermine.model.bio.Publication;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreFactory;
@@ -46,14 +45,15 @@ import nu.xom.Elements;
  */
 public class MissingPublicationXomRetriever {
 	private static final Logger LOG = LogManager.getLogger(MissingPublicationXomRetriever.class);
-	// rettype=abstract or just leave it out
-	private static final String EFETCH_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi?db=pubmed&rettype=abstract&retmode=xml&id=";
+	private static final String CACHE_PREFIX = "efetch/pubmed/";
 
 	// number of records to retrieve per request
 	private static final int BATCH_SIZE = 400;
 	private String osAlias = null;
 	private String outputFile = null;
 
+	private int count = 0;
+
 	public void setOsAlias(String osAlias) {
 		this.osAlias = osAlias;
 	}
@@ -72,56 +72,59 @@ public class MissingPublicationXomRetriever {
 		}
 
 		Properties properties = PropertiesUtil.getPropertiesStartingWith("ncbi");
-		String apiKey = properties.getProperty("ncbi.apikey");
 
 		LOG.info("Starting MissingPublicationXomRetriever...");
 
 		Writer writer = null;
 
-		int i = 0;
 		try {
+			EutilsClient client = EutilsClient.create(properties);
 			writer = new FileWriter(outputFile);
 
 			ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
 
-			Set<String> pubMedIds = getPubMedIds();
+			final Set<String> pubMedIds = getPubMedIds();
 
 			System.out.println("There are " + pubMedIds.size()
 					+ " publication(s) without proper information.");
 			LOG.info("There are " + pubMedIds.size()
 					+ " publication(s) without proper information.");
 
-			ItemFactory itemFactory = new ItemFactory(os.getModel(), "-1_");
+			final ItemFactory itemFactory = new ItemFactory(os.getModel(), "-1_");
+			final Writer out = writer;
 			writer.write(FullRenderer.getHeader() + "\n");
 
-			Set<String> identifiers = new HashSet<String>();
-			for (Iterator<String> id = pubMedIds.iterator(); id.hasNext();) {
-				identifiers.add(id.next());
-				if (identifiers.size() == BATCH_SIZE || !id.hasNext()) {
-					LOG.info("Querying NCBI efetch for " + identifiers.size() + " publications.");
-					System.out.println(
-							"Querying NCBI efetch for " + identifiers.size() + " publications.");
-					Reader reader = null;
-					while (reader == null) {
-						try {
-							reader = getReader(identifiers, apiKey);
-						} catch (Exception e) {
-							LOG.info(e.getMessage());
-							LOG.info("URL: " + EFETCH_URL + StringUtil.join(identifiers, ","));
-							System.out.println(
-									"Error occured when retrieving the data from NCBI. Waiting to retry.");
-							Thread.sleep(5000);
-							System.out.println("Try retrieving the data from NCBI again.");
-						}
-					}
-
-					XMLReader xmlreader = XMLReaderFactory.createXMLReader();
-					xmlreader.setFeature(
-							"http://apache.org/xml/features/nonvalidating/load-external-dtd",
-							false);
-					Builder parser = new Builder(xmlreader);
+			XMLReader xmlreader = XMLReaderFactory.createXMLReader();
+			xmlreader.setFeature(
+					"http://apache.org/xml/features/nonvalidating/load-external-dtd",
+					false);
+			final Builder parser = new Builder(xmlreader);
+
+			// the articles retrieved by the previous runs are read from the cache
+			final EutilsCache cache = client.getCache();
+			List<String> identifiers = new ArrayList<String>();
+			for (String pubMedId : pubMedIds) {
+				String record = cache == null ? null : cache.get(CACHE_PREFIX + pubMedId);
+				if (record != null) {
+					processArticle(parser.build(new StringReader(record)).getRootElement(),
+							pubMedId, itemFactory, writer);
+				} else {
+					identifiers.add(pubMedId);
+				}
+			}
 
-					Document doc = parser.build(reader);
+			LOG.info("Querying NCBI efetch for " + identifiers.size() + " publications.");
+			System.out.println("Querying NCBI efetch for " + identifiers.size() + " publications.");
+			// rettype=abstract or just leave it out
+			Map<String, String> params = new LinkedHashMap<String, String>();
+			params.put("db", "pubmed");
+			params.put("rettype", "abstract");
+			params.put("retmode", "xml");
+			client.fetchBatches("efetch.fcgi", params, EutilsClient.partition(identifiers, BATCH_SIZE),
+					new EutilsClient.ResponseHandler() {
+				@Override
+				public void handle(List<String> ids, String response) throws Exception {
+					Document doc = parser.build(new StringReader(response));
 					Element entry = doc.getRootElement();
 
 					Elements elements = entry.getChildElements("PubmedArticle");
@@ -134,106 +137,13 @@ public class MissingPublicationXomRetriever {
 						if (!pubMedIds.contains(pubMedId)) {
 							continue;
 						}
-
-						Item publication = itemFactory.makeItemForClass("Publication");
-						publication.setAttribute("pubMedId", pubMedId);
-						// System.out.println("pubMedId: " + pubMedId);
-						// LOG.info("pubMedId: " + pubMedId);
-
-						Element article = element.getFirstChildElement("MedlineCitation")
-								.getFirstChildElement("Article");
-						String title = article.getFirstChildElement("ArticleTitle").getValue();
-						if (title == null || "".equals(title)) {
-							// some rare cases, the title is empty...
-							title = "not available";
-						}
-						publication.setAttribute("title", title);
-
-						if (article.getFirstChildElement("AuthorList") != null) {
-							Element firstAuthor = article.getFirstChildElement("AuthorList")
-									.getFirstChildElement("Author");
-							if (firstAuthor.getFirstChildElement("CollectiveName") != null) {
-								publication.setAttribute("firstAuthor", firstAuthor
-										.getFirstChildElement("CollectiveName").getValue());
-							} else {
-								// according to the DTD, this is a must have field, should not be
-								// null
-								String last = firstAuthor.getFirstChildElement("LastName")
-										.getValue();
-								if (firstAuthor.getFirstChildElement("Initials") != null) {
-									publication.setAttribute("firstAuthor", last + " " + firstAuthor
-											.getFirstChildElement("Initials").getValue());
-								} else {
-									publication.setAttribute("firstAuthor", last);
-								}
-							}
+						if (cache != null) {
+							cache.put(CACHE_PREFIX + pubMedId, element.toXML());
 						}
-
-						if (article.getFirstChildElement("Pagination") != null) {
-							if (article.getFirstChildElement("Pagination")
-									.getFirstChildElement("MedlinePgn") != null) {
-								String pages = article.getFirstChildElement("Pagination")
-										.getFirstChildElement("MedlinePgn").getValue();
-								if (!StringUtils.isEmpty(pages)) {
-									publication.setAttribute("pages", pages);
-								}
-							} else {
-								// TODO could be StartPage ...
-								// <!ELEMENT Pagination ((StartPage, EndPage?, MedlinePgn?) |
-								// MedlinePgn) >
-							}
-						}
-						Element journal = article.getFirstChildElement("Journal");
-						Element pubDate = journal.getFirstChildElement("JournalIssue")
-								.getFirstChildElement("PubDate");
-						if (pubDate.getFirstChildElement("Year") != null) {
-							publication.setAttribute("year",
-									pubDate.getFirstChildElement("Year").getValue());
-						} else if (pubDate.getFirstChildElement("MedlineDate") != null) {
-							String[] medlineDate = pubDate.getFirstChildElement("MedlineDate")
-									.getValue().split(" ");
-							String year = medlineDate[0];
-							// example: 'Fall 2016' (pmid: 28078901)
-							if (year.matches("^\\D.+")) {
-								year = medlineDate[1];
-							}
-							// some year strings are ranges, for example: '1998-1999'
-							if (year.contains("-")) {
-								year = year.substring(0, year.indexOf("-"));
-							}
-							try {
-								Integer.parseInt(year);
-								publication.setAttribute("year", year);
-							} catch (NumberFormatException e) {
-								LOG.info(String.format(
-										"Cannot parse year from publication id: %s, value: %s .",
-										pubMedId, year));
-							}
-						}
-
-						Element volume = journal.getFirstChildElement("JournalIssue")
-								.getFirstChildElement("Volume");
-						if (volume != null) {
-							publication.setAttribute("volume", volume.getValue());
-						}
-						Element issue = journal.getFirstChildElement("JournalIssue")
-								.getFirstChildElement("Issue");
-						if (issue != null) {
-							publication.setAttribute("issue", issue.getValue());
-						}
-						// use ISOAbbreviation instead of Title
-						Element journalAbbr = journal.getFirstChildElement("ISOAbbreviation");
-						if (journalAbbr != null) {
-							publication.setAttribute("journal", journalAbbr.getValue());
-						}
-						writer.write(FullRenderer.render(publication));
-						i++;
+						processArticle(element, pubMedId, itemFactory, out);
 					}
-
-					reader.close();
-					identifiers.clear();
 				}
-			}
+			});
 
 			writer.write(FullRenderer.getFooter() + "\n");
 
@@ -250,8 +160,8 @@ public class MissingPublicationXomRetriever {
 			}
 		}
 
-		System.out.println(String.format("%d publication objects were created.", i));
-		LOG.info(String.format("%d publication objects were created.", i));
+		System.out.println(String.format("%d publication objects were created.", count));
+		LOG.info(String.format("%d publication objects were created.", count));
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -291,13 +201,101 @@ public class MissingPublicationXomRetriever {
 		return pubmedIds;
 	}
 
-	private Reader getReader(Set<String> ids, String apiKey) throws Exception {
-		String urlString = EFETCH_URL + StringUtil.join(ids, ",");
-		if (apiKey != null) {
-			urlString = urlString + "&api_key=" + apiKey;
+	private void processArticle(Element element, String pubMedId, ItemFactory itemFactory,
+			Writer writer) throws IOException {
+		Item publication = itemFactory.makeItemForClass("Publication");
+		publication.setAttribute("pubMedId", pubMedId);
+		// System.out.println("pubMedId: " + pubMedId);
+		// LOG.info("pubMedId: " + pubMedId);
+
+		Element article = element.getFirstChildElement("MedlineCitation")
+				.getFirstChildElement("Article");
+		String title = article.getFirstChildElement("ArticleTitle").getValue();
+		if (title == null || "".equals(title)) {
+			// some rare cases, the title is empty...
+			title = "not available";
+		}
+		publication.setAttribute("title", title);
+
+		if (article.getFirstChildElement("AuthorList") != null) {
+			Element firstAuthor = article.getFirstChildElement("AuthorList")
+					.getFirstChildElement("Author");
+			if (firstAuthor.getFirstChildElement("CollectiveName") != null) {
+				publication.setAttribute("firstAuthor", firstAuthor
+						.getFirstChildElement("CollectiveName").getValue());
+			} else {
+				// according to the DTD, this is a must have field, should not be
+				// null
+				String last = firstAuthor.getFirstChildElement("LastName")
+						.getValue();
+				if (firstAuthor.getFirstChildElement("Initials") != null) {
+					publication.setAttribute("firstAuthor", last + " " + firstAuthor
+							.getFirstChildElement("Initials").getValue());
+				} else {
+					publication.setAttribute("firstAuthor", last);
+				}
+			}
+		}
+
+		if (article.getFirstChildElement("Pagination") != null) {
+			if (article.getFirstChildElement("Pagination")
+					.getFirstChildElement("MedlinePgn") != null) {
+				String pages = article.getFirstChildElement("Pagination")
+						.getFirstChildElement("MedlinePgn").getValue();
+				if (!StringUtils.isEmpty(pages)) {
+					publication.setAttribute("pages", pages);
+				}
+			} else {
+				// TODO could be StartPage ...
+				// <!ELEMENT Pagination ((StartPage, EndPage?, MedlinePgn?) |
+				// MedlinePgn) >
+			}
+		}
+		Element journal = article.getFirstChildElement("Journal");
+		Element pubDate = journal.getFirstChildElement("JournalIssue")
+				.getFirstChildElement("PubDate");
+		if (pubDate.getFirstChildElement("Year") != null) {
+			publication.setAttribute("year",
+					pubDate.getFirstChildElement("Year").getValue());
+		} else if (pubDate.getFirstChildElement("MedlineDate") != null) {
+			String[] medlineDate = pubDate.getFirstChildElement("MedlineDate")
+					.getValue().split(" ");
+			String year = medlineDate[0];
+			// example: 'Fall 2016' (pmid: 28078901)
+			if (year.matches("^\\D.+")) {
+				year = medlineDate[1];
+			}
+			// some year strings are ranges, for example: '1998-1999'
+			if (year.contains("-")) {
+				year = year.substring(0, year.indexOf("-"));
+			}
+			try {
+				Integer.parseInt(year);
+				publication.setAttribute("year", year);
+			} catch (NumberFormatException e) {
+				LOG.info(String.format(
+						"Cannot parse year from publication id: %s, value: %s .",
+						pubMedId, year));
+			}
+		}
+
+		Element volume = journal.getFirstChildElement("JournalIssue")
+				.getFirstChildElement("Volume");
+		if (volume != null) {
+			publication.setAttribute("volume", volume.getValue());
+		}
+		Element issue = journal.getFirstChildElement("JournalIssue")
+				.getFirstChildElement("Issue");
+		if (issue != null) {
+			publication.setAttribute("issue", issue.getValue());
+		}
+		// use ISOAbbreviation instead of Title
+		Element journalAbbr = journal.getFirstChildElement("ISOAbbreviation");
+		if (journalAbbr != null) {
+			publication.setAttribute("journal", journalAbbr.getValue());
 		}
-		return new BufferedReader(
-				new InputStreamReader(new URL(urlString).openStream(), StandardCharsets.UTF_8));
+		writer.write(FullRenderer.render(publication));
+		count++;
 	}
 
 }
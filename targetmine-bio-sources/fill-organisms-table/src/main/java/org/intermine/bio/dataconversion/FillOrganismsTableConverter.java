@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.Reader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -164,9 +163,9 @@ public class FillOrganismsTableConverter extends BioFileConverter {
 		if (taxonNamesFile == null) {
 			throw new NullPointerException("taxonNamesFile property is missing");
 		}
-		try {
+		try (Reader reader = InputFiles.openReader(taxonNamesFile)) {
             System.out.println("Reading taxonNamesFile...");
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(taxonNamesFile));
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -2,8 +2,13 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +41,9 @@ import org.intermine.metadata.Util;
 import org.intermine.xml.full.Item;
 
 /**
+ * By default the entries of the missing proteins are looked up in the accession index of the
+ * UniProt XML file (see UniprotAccessionIndex; built at the first run) and only these entries are
+ * read, memory-mapped; set the accessionIndex property to false to scan the whole file.
  * 
  * @author chenyian
  * 
@@ -73,6 +81,12 @@ public class FillProteinsXomConverter extends BioFileConverter {
 		this.osAlias = osAlias;
 	}
 
+	private boolean accessionIndex = true;
+
+	public void setAccessionIndex(String accessionIndex) {
+		this.accessionIndex = Boolean.parseBoolean(accessionIndex);
+	}
+
 	// for testing
 	private int numOfNewEntries = 0;
 
@@ -102,6 +116,20 @@ public class FillProteinsXomConverter extends BioFileConverter {
 			getProteinAcc();
 		}
 
+		if (accessionIndex) {
+			UniprotAccessionIndex index = null;
+			try {
+				index = UniprotAccessionIndex.getIndex(getCurrentFile());
+			} catch (IOException e) {
+				LOG.warn("Failed to get the accession index of " + getCurrentFile()
+						+ ", the whole file will be read.", e);
+			}
+			if (index != null) {
+				processIndexedEntries(getCurrentFile(), index);
+				return;
+			}
+		}
+
 		try {
 			BufferedReader br = new BufferedReader(reader);
 
@@ -139,334 +167,7 @@ public class FillProteinsXomConverter extends BioFileConverter {
 					// process
 					Builder parser = new Builder();
 					Document doc = parser.build(new ByteArrayInputStream(sb.toString().getBytes()));
-					Element entry = doc.getRootElement();
-
-					Elements accessions = entry.getChildElements("accession",UNIPROT_NAMESPACE);
-					String accession = accessions.get(0).getValue();
-					Set<String> otherAccessions = new HashSet<String>();
-					for (int i = 1; i < accessions.size(); i++) {
-						otherAccessions.add(accessions.get(i).getValue());
-					}
-					// check which accession is missing
-					if (proteinAcc.contains(accession) && !doneEntries.contains(accession)) {
-						// create Protein items
-						Item protein = createItem("Protein");
-						
-						protein.addToCollection("dataSets",
-								getDataSet(entry.getAttributeValue("dataset") + " data set", dataSource));
-						
-						/* primaryAccession, primaryIdentifier, name, etc */
-						String primaryIdentifier = entry.getFirstChildElement("name",UNIPROT_NAMESPACE).getValue();
-						
-						Element proteinElement = entry.getFirstChildElement("protein",UNIPROT_NAMESPACE);
-						Elements nameElements = proteinElement.getChildElements();
-						String proteinName = nameElements.get(0).getFirstChildElement("fullName",UNIPROT_NAMESPACE).getValue();
-						protein.setAttribute("name", proteinName);
-						for (int i = 0; i < nameElements.size(); i++) {
-							// these are synonyms; there are two types:
-							// recommendedName; submittedName; alternativeName --> fullName, shortName
-							// allergenName; biotechName; cdAntigenName; innName
-							Element e = nameElements.get(i);
-							if (e.getLocalName().endsWith("Name")) {
-								Elements childElements = e.getChildElements();
-								if (childElements.size() > 0) {
-									for (int c = 0; c < childElements.size(); c++) {
-										String value = childElements.get(c).getValue();
-										if (!proteinName.equals(value)) {
-											addSynonym(protein.getIdentifier(), value);
-										}
-									}
-								} else {
-									String value = e.getValue();
-									addSynonym(protein.getIdentifier(), value);
-								}
-							}
-						}
-						
-						protein.setAttribute("uniprotAccession", accession);
-						protein.setAttribute("primaryAccession", accession);
-						for (String acc: otherAccessions) {
-							// other accessions are synonyms
-							addSynonym(protein.getIdentifier(), acc);
-						}
-						
-						protein.setAttribute("primaryIdentifier", primaryIdentifier);
-						// TODO do we really need this?
-						protein.setAttribute("uniprotName", primaryIdentifier);
-						
-						Element geneEntity = entry.getFirstChildElement("gene", UNIPROT_NAMESPACE);
-						if (geneEntity != null) {
-							String geneSymbol = geneEntity
-									.getFirstChildElement("name", UNIPROT_NAMESPACE).getValue();
-							protein.setAttribute("symbol", geneSymbol);
-						} else {
-							LOG.info(String.format("No gene entity: %s", primaryIdentifier));
-							protein.setAttribute("symbol", primaryIdentifier);
-						}
-						
-						protein.setAttribute("isUniprotCanonical", "true");
-						
-						/* sequence */
-						Element sequence = entry.getFirstChildElement("sequence",UNIPROT_NAMESPACE);
-						protein.setAttribute("isFragment",
-								sequence.getAttributeValue("fragment") == null ? "false" : "true");
-						String length = sequence.getAttributeValue("length");
-						protein.setAttribute("length", length);
-						protein.setAttribute("molecularWeight", sequence.getAttributeValue("mass"));
-						
-						String md5Checksum = getSequence(sequence.getValue());
-						protein.setReference("sequence", allSequences.get(md5Checksum));
-						protein.setAttribute("md5checksum", md5Checksum);
-						
-						String taxonId = entry.getFirstChildElement("organism",UNIPROT_NAMESPACE)
-								.getFirstChildElement("dbReference",UNIPROT_NAMESPACE).getAttributeValue("id");
-						protein.setReference("organism", getOrganism(taxonId));
-						
-						/* publications */
-						Elements publications = entry.getChildElements("reference",UNIPROT_NAMESPACE);
-						for (int i = 0; i < publications.size(); i++) {
-							Elements dbRefs = publications.get(i).getFirstChildElement("citation",UNIPROT_NAMESPACE)
-									.getChildElements("dbReference",UNIPROT_NAMESPACE);
-							for (int d = 0; d < dbRefs.size(); d++) {
-								if ("PubMed".equals(dbRefs.get(d).getAttributeValue("type"))) {
-									String pubMedId = dbRefs.get(d).getAttributeValue("id");
-									protein.addToCollection("publications", getPublication(pubMedId));
-								}
-							}
-						}
-						
-						/* comments */
-						Elements comments = entry.getChildElements("comment",UNIPROT_NAMESPACE);
-						for (int i = 0; i < comments.size(); i++) {
-							Element comment = comments.get(i);
-							Element text = comment.getFirstChildElement("text",UNIPROT_NAMESPACE);
-							if (text != null) {
-								String commentText = text.getValue();
-								Item item = createItem("Comment");
-								item.setAttribute("type", comment.getAttributeValue("type"));
-								if (commentText.length() > POSTGRES_INDEX_SIZE) {
-									// comment text is a string
-									String ellipses = "...";
-									String choppedComment = commentText.substring(0,
-											POSTGRES_INDEX_SIZE - ellipses.length());
-									item.setAttribute("description", choppedComment + ellipses);
-								} else {
-									item.setAttribute("description", commentText);
-								}
-								// TODO add publications for comments?
-								store(item);
-								protein.addToCollection("comments", item);
-							}
-						}
-						
-						/* keywords */
-						Elements keywordElements = entry.getChildElements("keyword",UNIPROT_NAMESPACE);
-						for (int i = 0; i < keywordElements.size(); i++) {
-							String title = keywordElements.get(i).getValue();
-							String id = keywordElements.get(i).getAttributeValue("id");
-							String refId = keywords.get(id);
-							if (refId == null) {
-								Item item = createItem("OntologyTerm");
-								item.setAttribute("name", title);
-								item.setReference("ontology", ontologies.get("UniProtKeyword"));
-								refId = item.getIdentifier();
-								keywords.put(id, refId);
-								store(item);
-							}
-							protein.addToCollection("keywords", refId);
-						}
-						
-						/* dbrefs */
-						Set<String> geneIds = new HashSet<String>();
-						Elements dbReferences = entry.getChildElements("dbReference",UNIPROT_NAMESPACE);
-						for (int i = 0; i < dbReferences.size(); i++) {
-							Element dbRef = dbReferences.get(i);
-							String type = dbRef.getAttributeValue("type");
-							String id = dbRef.getAttributeValue("id");
-							if (type.equals("GeneID")) {
-								geneIds.add(id);
-							} else if (type.equals("Ensembl")) {
-								Elements properties = dbRef.getChildElements("property",UNIPROT_NAMESPACE);
-								for (int p = 0; p < properties.size(); p++) {
-									if (properties.get(p).getAttributeValue("type")
-											.equals("protein sequence ID")) {
-										addSynonym(protein.getIdentifier(), properties.get(p)
-												.getAttributeValue("value"));
-									}
-								}
-							} else if (type.equals("RefSeq")) {
-								addSynonym(protein.getIdentifier(), id);
-							}
-						}
-						
-						/* genes */
-						
-						if (geneIds.isEmpty()) {
-							LOG.error("no valid gene identifiers found for " + accession);
-						} else {
-							for (String identifier : geneIds) {
-								if (StringUtils.isEmpty(identifier)) {
-									continue;
-								}
-								String geneRefId = genes.get(identifier);
-								if (geneRefId == null) {
-									Item gene = createItem("Gene");
-									gene.setAttribute("primaryIdentifier", identifier);
-									gene.setReference("organism", getOrganism(taxonId));
-									geneRefId = gene.getIdentifier();
-									genes.put(identifier, geneRefId);
-									store(gene);
-								}
-								protein.addToCollection("genes", geneRefId);
-							}
-						}
-						
-						// TODO evidence?
-						
-						// store(protein);
-						// actually, the main accession should not be duplicated
-						// doneEntries.add(accession);
-						
-						/* features */
-						Elements features = entry.getChildElements("feature",UNIPROT_NAMESPACE);
-						for (int i = 0; i < features.size(); i++) {
-							Element feature = features.get(i);
-							String type = feature.getAttributeValue("type");
-							if (!featureTypes.contains(type)) {
-								continue;
-							}
-							String description = feature.getAttributeValue("description");
-							String status = feature.getAttributeValue("status");
-							
-							Item featureItem = createItem("UniProtFeature");
-							featureItem.setAttribute("type", type);
-							featureItem.setAttribute("regionType", "feature");
-//							String keywordRefId = getKeyword(type);
-//							featureItem.setReference("feature", keywordRefId);
-							String featureDescription = description;
-							if (status != null) {
-								featureDescription = (description == null ? status : description + " ("
-										+ status + ")");
-							}
-							if (!StringUtils.isEmpty(featureDescription)) {
-								featureItem.setAttribute("description", featureDescription);
-							}
-							Element location = feature.getFirstChildElement("location",UNIPROT_NAMESPACE);
-							Element position = location.getFirstChildElement("position",UNIPROT_NAMESPACE);
-							if (position != null) {
-								featureItem.setAttribute("start", position.getAttributeValue("position"));
-								featureItem.setAttribute("end", position.getAttributeValue("position"));
-							} else {
-								Element beginElement = location.getFirstChildElement("begin",UNIPROT_NAMESPACE);
-								Element endElement = location.getFirstChildElement("end",UNIPROT_NAMESPACE);
-								if (beginElement != null && endElement != null) {
-									// beware that some entries contain unknow position
-									// e.g. <end status="unknown"/>
-									String begin = beginElement.getAttributeValue("position");
-									if (begin != null) {
-										featureItem.setAttribute("start", begin);
-									}
-									String end = endElement.getAttributeValue("position");
-									if (end != null) {
-										featureItem.setAttribute("end", end);
-									}
-								}
-							}
-							featureItem.setReference("protein", protein);
-							store(featureItem);
-
-							protein.addToCollection("features", featureItem);
-						}
-						
-						store(protein);
-						// actually, the main accession should not be duplicated
-						doneEntries.add(accession);
-
-						/* components */
-						Elements components = proteinElement.getChildElements("component",UNIPROT_NAMESPACE);
-						for (int i = 0; i < components.size(); i++) {
-							Element ele = components.get(i).getFirstChildElement("recommendedName",UNIPROT_NAMESPACE);
-							if (ele != null) {
-								Item item = createItem("Component");
-								item.setAttribute("name", ele.getFirstChildElement("fullName",UNIPROT_NAMESPACE)
-										.getValue());
-								item.setReference("protein", protein);
-								store(item);
-							}
-						}
-						
-						for (String acc : otherAccessions) {
-							// other accessions are synonyms
-							Item item = createItem("ProteinAccession");
-							item.setAttribute("accession", acc);
-							item.setReference("protein", protein);
-							store(item);
-						}
-						
-						numOfNewEntries++;
-						LOG.info("Entry " + accession + " created.");
-						
-						// store all synonyms
-						for (Item item : synonymsAndXrefs) {
-							if (item == null) {
-								continue;
-							}
-							store(item);
-						}
-						
-						// reset
-						synonymsAndXrefs = new HashSet<Item>();
-					}
-//					for (String acc : otherAccessions) {
-//						// these are not uniprot canonical entries
-//						if (proteinAcc.contains(acc)) {
-//							if (doneEntries.contains(acc)) {
-//								// TODO actually the primary accession is different here ...
-//								continue;
-//							}
-//							Item protein = createItem("Protein");
-//							protein.addToCollection("dataSets",
-//									getDataSet(entry.getAttributeValue("dataset") + " data set", dataSource));
-//							// arbitrary pick the first available name
-//							protein.setAttribute("name",
-//									entry.getFirstChildElement("protein").getChildElements().get(0).getFirstChildElement("fullName").getValue());
-//							// show the canonical accession here
-//							protein.setAttribute("uniprotAccession", accession);
-//							protein.setAttribute("primaryAccession", acc);
-//							
-//							String name = entry.getFirstChildElement("name").getValue();
-//							// use acc + species name as primaryIdentifier; should be an unique value?
-//							protein.setAttribute("primaryIdentifier", acc + name.substring(name.indexOf("_")));
-//							// tag as a synonym
-//							protein.setAttribute("uniprotName", "Synonym of " + accession);
-//							
-//							protein.setAttribute("isUniprotCanonical", "false");
-//							
-//							/* sequence */
-//							Element sequence = entry.getFirstChildElement("sequence");
-//							protein.setAttribute("isFragment",
-//									sequence.getAttributeValue("fragment") == null ? "false" : "true");
-//							String length = sequence.getAttributeValue("length");
-//							protein.setAttribute("length", length);
-//							protein.setAttribute("molecularWeight", sequence.getAttributeValue("mass"));
-//							
-//							String md5Checksum = getSequence(sequence.getValue());
-//							protein.setReference("sequence", allSequences.get(md5Checksum));
-//							protein.setAttribute("md5checksum", md5Checksum);
-//							
-//							/* organism */
-//							String taxonId = entry.getFirstChildElement("organism")
-//									.getFirstChildElement("dbReference").getAttributeValue("id");
-//							protein.setReference("organism", getOrganism(taxonId));
-//
-//							store(protein);
-//							doneEntries.add(acc);
-//							
-//							numOfNewEntries++;
-//							LOG.info("Entry " + acc + " created. (non-canonical)");
-//						}
-//					}
-
+					processEntry(doc.getRootElement());
 				}
 
 			}
@@ -481,6 +182,384 @@ public class FillProteinsXomConverter extends BioFileConverter {
 
 	}
 
+	private void processIndexedEntries(File file, UniprotAccessionIndex index)
+			throws IOException, ParsingException, ObjectStoreException {
+		long start = System.currentTimeMillis();
+		List<long[]> entries = index.findAll(proteinAcc);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			for (long[] entry : entries) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+				Builder parser = new Builder();
+				Document doc = parser.build(new ByteBufferInputStream(buffer));
+				processEntry(doc.getRootElement());
+			}
+		} finally {
+			raf.close();
+		}
+		String info = String.format("%d entries of %s were read by the accession index in %d ms.",
+				entries.size(), file.getName(), System.currentTimeMillis() - start);
+		System.out.println(info);
+		LOG.info(info);
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	private void processEntry(Element entry) throws ObjectStoreException {
+		Elements accessions = entry.getChildElements("accession",UNIPROT_NAMESPACE);
+		String accession = accessions.get(0).getValue();
+		Set<String> otherAccessions = new HashSet<String>();
+		for (int i = 1; i < accessions.size(); i++) {
+			otherAccessions.add(accessions.get(i).getValue());
+		}
+		// check which accession is missing
+		if (proteinAcc.contains(accession) && !doneEntries.contains(accession)) {
+			// create Protein items
+			Item protein = createItem("Protein");
+			
+			protein.addToCollection("dataSets",
+					getDataSet(entry.getAttributeValue("dataset") + " data set", dataSource));
+			
+			/* primaryAccession, primaryIdentifier, name, etc */
+			String primaryIdentifier = entry.getFirstChildElement("name",UNIPROT_NAMESPACE).getValue();
+			
+			Element proteinElement = entry.getFirstChildElement("protein",UNIPROT_NAMESPACE);
+			Elements nameElements = proteinElement.getChildElements();
+			String proteinName = nameElements.get(0).getFirstChildElement("fullName",UNIPROT_NAMESPACE).getValue();
+			protein.setAttribute("name", proteinName);
+			for (int i = 0; i < nameElements.size(); i++) {
+				// these are synonyms; there are two types:
+				// recommendedName; submittedName; alternativeName --> fullName, shortName
+				// allergenName; biotechName; cdAntigenName; innName
+				Element e = nameElements.get(i);
+				if (e.getLocalName().endsWith("Name")) {
+					Elements childElements = e.getChildElements();
+					if (childElements.size() > 0) {
+						for (int c = 0; c < childElements.size(); c++) {
+							String value = childElements.get(c).getValue();
+							if (!proteinName.equals(value)) {
+								addSynonym(protein.getIdentifier(), value);
+							}
+						}
+					} else {
+						String value = e.getValue();
+						addSynonym(protein.getIdentifier(), value);
+					}
+				}
+			}
+			
+			protein.setAttribute("uniprotAccession", accession);
+			protein.setAttribute("primaryAccession", accession);
+			for (String acc: otherAccessions) {
+				// other accessions are synonyms
+				addSynonym(protein.getIdentifier(), acc);
+			}
+			
+			protein.setAttribute("primaryIdentifier", primaryIdentifier);
+			// TODO do we really need this?
+			protein.setAttribute("uniprotName", primaryIdentifier);
+			
+			Element geneEntity = entry.getFirstChildElement("gene", UNIPROT_NAMESPACE);
+			if (geneEntity != null) {
+				String geneSymbol = geneEntity
+						.getFirstChildElement("name", UNIPROT_NAMESPACE).getValue();
+				protein.setAttribute("symbol", geneSymbol);
+			} else {
+				LOG.info(String.format("No gene entity: %s", primaryIdentifier));
+				protein.setAttribute("symbol", primaryIdentifier);
+			}
+			
+			protein.setAttribute("isUniprotCanonical", "true");
+			
+			/* sequence */
+			Element sequence = entry.getFirstChildElement("sequence",UNIPROT_NAMESPACE);
+			protein.setAttribute("isFragment",
+					sequence.getAttributeValue("fragment") == null ? "false" : "true");
+			String length = sequence.getAttributeValue("length");
+			protein.setAttribute("length", length);
+			protein.setAttribute("molecularWeight", sequence.getAttributeValue("mass"));
+			
+			String md5Checksum = getSequence(sequence.getValue());
+			protein.setReference("sequence", allSequences.get(md5Checksum));
+			protein.setAttribute("md5checksum", md5Checksum);
+			
+			String taxonId = entry.getFirstChildElement("organism",UNIPROT_NAMESPACE)
+					.getFirstChildElement("dbReference",UNIPROT_NAMESPACE).getAttributeValue("id");
+			protein.setReference("organism", getOrganism(taxonId));
+			
+			/* publications */
+			Elements publications = entry.getChildElements("reference",UNIPROT_NAMESPACE);
+			for (int i = 0; i < publications.size(); i++) {
+				Elements dbRefs = publications.get(i).getFirstChildElement("citation",UNIPROT_NAMESPACE)
+						.getChildElements("dbReference",UNIPROT_NAMESPACE);
+				for (int d = 0; d < dbRefs.size(); d++) {
+					if ("PubMed".equals(dbRefs.get(d).getAttributeValue("type"))) {
+						String pubMedId = dbRefs.get(d).getAttributeValue("id");
+						protein.addToCollection("publications", getPublication(pubMedId));
+					}
+				}
+			}
+			
+			/* comments */
+			Elements comments = entry.getChildElements("comment",UNIPROT_NAMESPACE);
+			for (int i = 0; i < comments.size(); i++) {
+				Element comment = comments.get(i);
+				Element text = comment.getFirstChildElement("text",UNIPROT_NAMESPACE);
+				if (text != null) {
+					String commentText = text.getValue();
+					Item item = createItem("Comment");
+					item.setAttribute("type", comment.getAttributeValue("type"));
+					if (commentText.length() > POSTGRES_INDEX_SIZE) {
+						// comment text is a string
+						String ellipses = "...";
+						String choppedComment = commentText.substring(0,
+								POSTGRES_INDEX_SIZE - ellipses.length());
+						item.setAttribute("description", choppedComment + ellipses);
+					} else {
+						item.setAttribute("description", commentText);
+					}
+					// TODO add publications for comments?
+					store(item);
+					protein.addToCollection("comments", item);
+				}
+			}
+			
+			/* keywords */
+			Elements keywordElements = entry.getChildElements("keyword",UNIPROT_NAMESPACE);
+			for (int i = 0; i < keywordElements.size(); i++) {
+				String title = keywordElements.get(i).getValue();
+				String id = keywordElements.get(i).getAttributeValue("id");
+				String refId = keywords.get(id);
+				if (refId == null) {
+					Item item = createItem("OntologyTerm");
+					item.setAttribute("name", title);
+					item.setReference("ontology", ontologies.get("UniProtKeyword"));
+					refId = item.getIdentifier();
+					keywords.put(id, refId);
+					store(item);
+				}
+				protein.addToCollection("keywords", refId);
+			}
+			
+			/* dbrefs */
+			Set<String> geneIds = new HashSet<String>();
+			Elements dbReferences = entry.getChildElements("dbReference",UNIPROT_NAMESPACE);
+			for (int i = 0; i < dbReferences.size(); i++) {
+				Element dbRef = dbReferences.get(i);
+				String type = dbRef.getAttributeValue("type");
+				String id = dbRef.getAttributeValue("id");
+				if (type.equals("GeneID")) {
+					geneIds.add(id);
+				} else if (type.equals("Ensembl")) {
+					Elements properties = dbRef.getChildElements("property",UNIPROT_NAMESPACE);
+					for (int p = 0; p < properties.size(); p++) {
+						if (properties.get(p).getAttributeValue("type")
+								.equals("protein sequence ID")) {
+							addSynonym(protein.getIdentifier(), properties.get(p)
+									.getAttributeValue("value"));
+						}
+					}
+				} else if (type.equals("RefSeq")) {
+					addSynonym(protein.getIdentifier(), id);
+				}
+			}
+			
+			/* genes */
+			
+			if (geneIds.isEmpty()) {
+				LOG.error("no valid gene identifiers found for " + accession);
+			} else {
+				for (String identifier : geneIds) {
+					if (StringUtils.isEmpty(identifier)) {
+						continue;
+					}
+					String geneRefId = genes.get(identifier);
+					if (geneRefId == null) {
+						Item gene = createItem("Gene");
+						gene.setAttribute("primaryIdentifier", identifier);
+						gene.setReference("organism", getOrganism(taxonId));
+						geneRefId = gene.getIdentifier();
+						genes.put(identifier, geneRefId);
+						store(gene);
+					}
+					protein.addToCollection("genes", geneRefId);
+				}
+			}
+			
+			// TODO evidence?
+			
+			// store(protein);
+			// actually, the main accession should not be duplicated
+			// doneEntries.add(accession);
+			
+			/* features */
+			Elements features = entry.getChildElements("feature",UNIPROT_NAMESPACE);
+			for (int i = 0; i < features.size(); i++) {
+				Element feature = features.get(i);
+				String type = feature.getAttributeValue("type");
+				if (!featureTypes.contains(type)) {
+					continue;
+				}
+				String description = feature.getAttributeValue("description");
+				String status = feature.getAttributeValue("status");
+				
+				Item featureItem = createItem("UniProtFeature");
+				featureItem.setAttribute("type", type);
+				featureItem.setAttribute("regionType", "feature");
+//				String keywordRefId = getKeyword(type);
+//				featureItem.setReference("feature", keywordRefId);
+				String featureDescription = description;
+				if (status != null) {
+					featureDescription = (description == null ? status : description + " ("
+							+ status + ")");
+				}
+				if (!StringUtils.isEmpty(featureDescription)) {
+					featureItem.setAttribute("description", featureDescription);
+				}
+				Element location = feature.getFirstChildElement("location",UNIPROT_NAMESPACE);
+				Element position = location.getFirstChildElement("position",UNIPROT_NAMESPACE);
+				if (position != null) {
+					featureItem.setAttribute("start", position.getAttributeValue("position"));
+					featureItem.setAttribute("end", position.getAttributeValue("position"));
+				} else {
+					Element beginElement = location.getFirstChildElement("begin",UNIPROT_NAMESPACE);
+					Element endElement = location.getFirstChildElement("end",UNIPROT_NAMESPACE);
+					if (beginElement != null && endElement != null) {
+						// beware that some entries contain unknow position
+						// e.g. <end status="unknown"/>
+						String begin = beginElement.getAttributeValue("position");
+						if (begin != null) {
+							featureItem.setAttribute("start", begin);
+						}
+						String end = endElement.getAttributeValue("position");
+						if (end != null) {
+							featureItem.setAttribute("end", end);
+						}
+					}
+				}
+				featureItem.setReference("protein", protein);
+				store(featureItem);
+
+				protein.addToCollection("features", featureItem);
+			}
+			
+			store(protein);
+			// actually, the main accession should not be duplicated
+			doneEntries.add(accession);
+
+			/* components */
+			Elements components = proteinElement.getChildElements("component",UNIPROT_NAMESPACE);
+			for (int i = 0; i < components.size(); i++) {
+				Element ele = components.get(i).getFirstChildElement("recommendedName",UNIPROT_NAMESPACE);
+				if (ele != null) {
+					Item item = createItem("Component");
+					item.setAttribute("name", ele.getFirstChildElement("fullName",UNIPROT_NAMESPACE)
+							.getValue());
+					item.setReference("protein", protein);
+					store(item);
+				}
+			}
+			
+			for (String acc : otherAccessions) {
+				// other accessions are synonyms
+				Item item = createItem("ProteinAccession");
+				item.setAttribute("accession", acc);
+				item.setReference("protein", protein);
+				store(item);
+			}
+			
+			numOfNewEntries++;
+			LOG.info("Entry " + accession + " created.");
+			
+			// store all synonyms
+			for (Item item : synonymsAndXrefs) {
+				if (item == null) {
+					continue;
+				}
+				store(item);
+			}
+			
+			// reset
+			synonymsAndXrefs = new HashSet<Item>();
+		}
+//		for (String acc : otherAccessions) {
+//			// these are not uniprot canonical entries
+//			if (proteinAcc.contains(acc)) {
+//				if (doneEntries.contains(acc)) {
+//					// TODO actually the primary accession is different here ...
+//					continue;
+//				}
+//				Item protein = createItem("Protein");
+//				protein.addToCollection("dataSets",
+//						getDataSet(entry.getAttributeValue("dataset") + " data set", dataSource));
+//				// arbitrary pick the first available name
+//				protein.setAttribute("name",
+//						entry.getFirstChildElement("protein").getChildElements().get(0).getFirstChildElement("fullName").getValue());
+//				// show the canonical accession here
+//				protein.setAttribute("uniprotAccession", accession);
+//				protein.setAttribute("primaryAccession", acc);
+//				
+//				String name = entry.getFirstChildElement("name").getValue();
+//				// use acc + species name as primaryIdentifier; should be an unique value?
+//				protein.setAttribute("primaryIdentifier", acc + name.substring(name.indexOf("_")));
+//				// tag as a synonym
+//				protein.setAttribute("uniprotName", "Synonym of " + accession);
+//				
+//				protein.setAttribute("isUniprotCanonical", "false");
+//				
+//				/* sequence */
+//				Element sequence = entry.getFirstChildElement("sequence");
+//				protein.setAttribute("isFragment",
+//						sequence.getAttributeValue("fragment") == null ? "false" : "true");
+//				String length = sequence.getAttributeValue("length");
+//				protein.setAttribute("length", length);
+//				protein.setAttribute("molecularWeight", sequence.getAttributeValue("mass"));
+//				
+//				String md5Checksum = getSequence(sequence.getValue());
+//				protein.setReference("sequence", allSequences.get(md5Checksum));
+//				protein.setAttribute("md5checksum", md5Checksum);
+//				
+//				/* organism */
+//				String taxonId = entry.getFirstChildElement("organism")
+//						.getFirstChildElement("dbReference").getAttributeValue("id");
+//				protein.setReference("organism", getOrganism(taxonId));
+//
+//				store(protein);
+//				doneEntries.add(acc);
+//				
+//				numOfNewEntries++;
+//				LOG.info("Entry " + acc + " created. (non-canonical)");
+//			}
+//		}
+	}
+
 	private void addSynonym(String refId, String synonym) throws ObjectStoreException {
 		Item item = createSynonym(refId, synonym, false);
 		if (item != null) {
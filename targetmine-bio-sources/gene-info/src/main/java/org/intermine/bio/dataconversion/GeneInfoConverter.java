@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Arrays;
@@ -266,8 +265,7 @@ public class GeneInfoConverter extends BioFileConverter {
 		LOG.info("Parsing the file gene_history file......");
 		System.out.println("Parsing the file gene_history file......");
 		historyMap = new HashMap<String, Set<String>>();
-		try {
-			FileReader reader = new FileReader(genehistoryFile);
+		try (Reader reader = InputFiles.openReader(genehistoryFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -278,7 +276,6 @@ public class GeneInfoConverter extends BioFileConverter {
 					historyMap.get(cols[1]).add(cols[2]);
 				}
 			}
-			reader.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -292,8 +289,7 @@ public class GeneInfoConverter extends BioFileConverter {
 		System.out.println("Parsing the file knownToLocusLink......");
 		ucscMap = new HashMap<String, Set<String>>();
 
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(knownToLocusLinkFile));
+		try (BufferedReader in = InputFiles.openReader(knownToLocusLinkFile)) {
 			String line;
 			while ((line = in.readLine()) != null) {
 				String[] cols = line.split("\\t");
@@ -302,7 +298,6 @@ public class GeneInfoConverter extends BioFileConverter {
 				}
 				ucscMap.get(cols[1]).add(cols[0]);
 			}
-			in.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			throw new RuntimeException("The file 'knownToLocusLink' not found.");
@@ -318,8 +313,7 @@ public class GeneInfoConverter extends BioFileConverter {
 		System.out.println("Parsing the file gene2accession......");
 		accessionMap = new HashMap<String, Set<String>>();
 
-		try {
-			FileReader reader = new FileReader(gene2accessionFile);
+		try (Reader reader = InputFiles.openReader(gene2accessionFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -336,7 +330,6 @@ public class GeneInfoConverter extends BioFileConverter {
 					}
 				}
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -371,9 +364,9 @@ public class GeneInfoConverter extends BioFileConverter {
 		unigeneMap = new HashMap<String, Set<String>>();
 		// #Format: GeneID UniGene_cluster (tab is used as a separator, pound sign - start of a
 		// comment)
-		try {
+		try (Reader reader = InputFiles.openReader(gene2unigeneFile)) {
 			Iterator<String[]> iterator = FormattedTextParser
-					.parseTabDelimitedReader(new FileReader(gene2unigeneFile));
+					.parseTabDelimitedReader(reader);
 			// skip header
 			iterator.next();
 			while (iterator.hasNext()) {
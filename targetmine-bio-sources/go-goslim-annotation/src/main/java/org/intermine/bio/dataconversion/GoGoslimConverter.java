@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -107,7 +106,14 @@ public class GoGoslimConverter extends BioFileConverter {
 
 		initialiseMapsForFile();
 
-		BufferedReader br = new BufferedReader(reader);
+		try (BufferedReader br = new BufferedReader(InputFiles.reopen(getCurrentFile(), reader))) {
+			processLines(br);
+		}
+		storeProductCollections();
+		storeEvidence();
+	}
+
+	private void processLines(BufferedReader br) throws ObjectStoreException, IOException {
 		String line = null;
 
 		// loop through entire file
@@ -190,8 +196,6 @@ public class GoGoslimConverter extends BioFileConverter {
 				}
 			}
 		}
-		storeProductCollections();
-		storeEvidence();
 	}
 
 	// chenyian: read go-goslim mapping
@@ -203,9 +207,7 @@ public class GoGoslimConverter extends BioFileConverter {
 
 	private void readGoGoslimMap() {
 
-		BufferedReader in = null;
-		try {
-			in = new BufferedReader(new FileReader(goslimMapFile));
+		try (BufferedReader in = InputFiles.openReader(goslimMapFile)) {
 			String line;
 			while ((line = in.readLine()) != null) {
 				String[] cols = line.split("=>");
@@ -220,7 +222,6 @@ public class GoGoslimConverter extends BioFileConverter {
 				goslimIds.addAll(Arrays.asList(part[0].trim().split(" ")));
 				goGoslimMap.put(goId, goslimIds);
 			}
-			in.close();
 		} catch (FileNotFoundException e) {
 			LOG.error(e);
 			throw new RuntimeException(e);
@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -39,32 +38,34 @@ public class GostarConverter extends BioFileConverter {
 	private File structureDetailsInchiInfoFile;
 	private File targetProteinMasterFile;
 	
+	private IdentifierRegistries registries = new IdentifierRegistries();
+	
 	// key is assay_id, value is a list of Activity
 	private Map<String, List<String>> assayActivityMap = new HashMap<String, List<String>>();
 	// key is assay_id, value is PubMed Ids
 	private Map<String, List<String>> assayPublicationMap = new HashMap<String, List<String>>();
 	// key is gvk_id, value is binding site
-	private Map<String, String> bindingSiteMap = new HashMap<String, String>();
+	private IdentifierRegistry bindingSiteMap = registries.create("bindingSite");
 	// key is gvk_id, value is cas_no
-	private Map<String, String> casMap = new HashMap<String, String>();
+	private IdentifierRegistry casMap = registries.create("cas");
 	// key is gvk_id, value is compound Item's identifier
-	private Map<String, String> compoundMap = new HashMap<String, String>();
+	private IdentifierRegistry compoundMap = registries.create("compound");
 	// key is inchikey, value is compoundGroup Item's identifier
-	private Map<String, String> compoundGroupMap = new HashMap<String, String>();
+	private IdentifierRegistry compoundGroupMap = registries.create("compoundGroup");
 	// key is str_id, value is compound Item's identifier
 	private Map<String, List<String>> compoundSynonymMap = new HashMap<String, List<String>>();
 	// key is gvk id, value is inchikey
-	private Map<String, String> inchikeyMap = new HashMap<String, String>();
+	private IdentifierRegistry inchikeyMap = registries.create("inchikey");
 	// key is intId(gvkId_targetId), value is GostarInteraction Item's identifier
-	private Map<String, String> interactionMap = new HashMap<String, String>();
+	private IdentifierRegistry interactionMap = registries.create("interaction");
 	// key is uniprotId, value is protein Item's identifier
-	private Map<String, String> proteinMap = new HashMap<String, String>();
+	private IdentifierRegistry proteinMap = registries.create("protein");
 	// key is publication, value is publication Item's identifier
-	private Map<String, String> publicationMap = new HashMap<String, String>();
+	private IdentifierRegistry publicationMap = registries.create("publication");
 	// key is ref_id, value is pubmed_id
-	private Map<String, String> refPubmedMap = new HashMap<String, String>();
+	private IdentifierRegistry refPubmedMap = registries.create("refPubmed");
 	// key is target_id, value is protein Item's identifier
-	private Map<String, String> targetProteinMap = new HashMap<String, String>();
+	private IdentifierRegistry targetProteinMap = registries.create("targetProtein");
 
 	/**
 	 * Construct a new GostarConverter.
@@ -79,11 +80,34 @@ public class GostarConverter extends BioFileConverter {
 	}
 
 	private int countInteration = 0;
+
+	// the readers of the input files, closed at the end of process()
+	private List<Reader> openReaders = new ArrayList<Reader>();
+
+	private Reader openReader(File file) throws IOException {
+		return openReader(InputFiles.openReader(file));
+	}
+
+	private Reader openReader(Reader reader) {
+		openReaders.add(reader);
+		return reader;
+	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void process(Reader reader) throws Exception {
+		try {
+			processFiles(openReader(InputFiles.reopen(getCurrentFile(), reader)));
+		} finally {
+			for (Reader openReader : openReaders) {
+				openReader.close();
+			}
+			openReaders.clear();
+		}
+	}
+
+	private void processFiles(Reader reader) throws Exception {
 
 		/**
 		 * Counting how many items imported
@@ -356,6 +380,11 @@ public class GostarConverter extends BioFileConverter {
 		LOG.info( "GOSTAR: number of interaction imported="+countInteration);
 		
 	}
+	
+	@Override
+	public void close() throws Exception {
+		registries.close();
+	}
 
 	private void registerTarget( String targetId, String uniprotId ) throws ObjectStoreException {
 		
@@ -584,7 +613,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getAllActivityGostarIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.allActivityGostarFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.allActivityGostarFile ) );
 	}
 	
 	public void setAllActivityGostarFile(File allActivityGostarFile) {
@@ -592,7 +621,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getBindingSiteIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.bindingSiteFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.bindingSiteFile ) );
 	}
 	
 	public void setBindingSiteFile(File bindingSiteFile) {
@@ -600,7 +629,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getCasIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.casFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.casFile ) );
 	}
 	
 	public void setCasFile(File casFile) {
@@ -608,7 +637,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getCompoundSynonymsIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.compoundSynonymsFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.compoundSynonymsFile ) );
 	}
 	
 	public void setCompoundSynonymsFile(File compoundSynonymsFile) {
@@ -616,7 +645,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getReferenceMasterIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.referenceMasterFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.referenceMasterFile ) );
 	}
 	
 	public void setReferenceMasterFile(File referenceMasterFile) {
@@ -625,7 +654,7 @@ public class GostarConverter extends BioFileConverter {
 	
 	private Iterator<String[]> getStructureDetailsIterator() throws IOException {
 //		return GostarFileParser.parseCsvDelimitedReader( new BufferedReader( new FileReader( this.structureDetailsFile ) ) );
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.structureDetailsFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.structureDetailsFile ) );
 	}
 	
 	public void setStructureDetailsFile(File structureDetailsFile) {
@@ -633,7 +662,7 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getStructureDetailsInchiInfoIterator() throws IOException {
-		return FormattedTextParser.parseCsvDelimitedReader( new FileReader( this.structureDetailsInchiInfoFile ) );
+		return FormattedTextParser.parseCsvDelimitedReader( openReader( this.structureDetailsInchiInfoFile ) );
 	}
 	
 	public void setStructureDetailsInchiInfoFile(File structureDetailsInchiInfoFile) {
@@ -641,13 +670,27 @@ public class GostarConverter extends BioFileConverter {
 	}
 	
 	private Iterator<String[]> getTargetProteinMasterIterator() throws IOException {
-		return FormattedTextParser.parseTabDelimitedReader( new FileReader( this.targetProteinMasterFile ) );
+		return FormattedTextParser.parseTabDelimitedReader( openReader( this.targetProteinMasterFile ) );
 	}
 	
 	public void setTargetProteinMasterFile(File targetProteinMasterFile) {
 		this.targetProteinMasterFile = targetProteinMasterFile;
 	}
 	
+	/**
+	 * @param registryStorage where the identifier maps are kept: heap (default), direct or mapped
+	 */
+	public void setRegistryStorage(String registryStorage) {
+		registries.setStorage(registryStorage);
+	}
+	
+	/**
+	 * @param registryDirectory directory of the mapped registry files
+	 */
+	public void setRegistryDirectory(String registryDirectory) {
+		registries.setDirectory(registryDirectory);
+	}
+	
 	public static boolean isValidId(String s) {
 		if (s == null || s.isEmpty())
 			return false;
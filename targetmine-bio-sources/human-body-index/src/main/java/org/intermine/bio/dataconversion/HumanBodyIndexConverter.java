@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -171,24 +170,26 @@ public class HumanBodyIndexConverter extends BioFileConverter {
 	
 	private void readSampleInfoFile() throws Exception {
 		System.out.println("...Read the sampleInfoFile.");
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(sampleInfoFile));
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			String sampleId = cols[1];
-			String tissue = cols[2];
-			String organ = cols[6];
-			String category = cols[7];
+		try (Reader reader = InputFiles.openReader(sampleInfoFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				String sampleId = cols[1];
+				String tissue = cols[2];
+				String organ = cols[6];
+				String category = cols[7];
 			
-			Item item = createItem("MicroarraySample");
-			item.setAttribute("identifier", sampleId);
-			item.addToCollection("series", getSeries());
-			String tissueRef = getTissue(tissue, organ, category);
-			item.addToCollection("tissues", tissueRef);
-			item.setReference("platform", getPlatform());
-			store(item);
+				Item item = createItem("MicroarraySample");
+				item.setAttribute("identifier", sampleId);
+				item.addToCollection("series", getSeries());
+				String tissueRef = getTissue(tissue, organ, category);
+				item.addToCollection("tissues", tissueRef);
+				item.setReference("platform", getPlatform());
+				store(item);
 			
-			sampleMap.put(sampleId, item.getIdentifier());
-			sampleTissueMap.put(sampleId, tissueRef);
+				sampleMap.put(sampleId, item.getIdentifier());
+				sampleTissueMap.put(sampleId, tissueRef);
+			}
 		}
 		System.out.println("...Done.");
 	}
@@ -73,8 +73,13 @@ public class IrefindexConverter extends BioFileConverter {
 			readInteractionType();
 		}
 
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new BufferedReader(reader));
+		try (Reader input = InputFiles.reopen(getCurrentFile(), reader)) {
+			processInteractions(FormattedTextParser.parseTabDelimitedReader(new BufferedReader(
+					input)));
+		}
+	}
 
+	private void processInteractions(Iterator<String[]> iterator) throws Exception {
 		// skip header
 		iterator.next();
 
@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -35,8 +34,9 @@ public class KeggCompoundConverter extends BioFileConverter
 	private static final String DATASET_TITLE = "KEGG Compound";
 	private static final String DATA_SOURCE_NAME = "KEGG";
 
-	private Map<String, String> inchiKeyMap = new HashMap<String, String>();
-	private Map<String, String> inchiMap = new HashMap<String, String>();
+	private IdentifierRegistries registries = new IdentifierRegistries();
+	private IdentifierRegistry inchiKeyMap = registries.create("inchiKey");
+	private IdentifierRegistry inchiMap = registries.create("inchi");
 	private Map<String, Set<String>> compoundPathwayMap = new HashMap<String, Set<String>>();
 	private Map<String, Set<String>> compoundEnzymeMap = new HashMap<String, Set<String>>();
 
@@ -60,6 +60,20 @@ public class KeggCompoundConverter extends BioFileConverter
 		this.enzymeFile = enzymeFile;
 	}
 
+	/**
+	 * @param registryStorage where the identifier maps are kept: heap (default), direct or mapped
+	 */
+	public void setRegistryStorage(String registryStorage) {
+		registries.setStorage(registryStorage);
+	}
+
+	/**
+	 * @param registryDirectory directory of the mapped registry files
+	 */
+	public void setRegistryDirectory(String registryDirectory) {
+		registries.setDirectory(registryDirectory);
+	}
+
     /**
      * Constructor
      * @param writer the ItemWriter used to handle the resultant items
@@ -171,7 +185,7 @@ public class KeggCompoundConverter extends BioFileConverter
 
     }
     
-	private Map<String, String> compoundGroupMap = new HashMap<String, String>();
+	private IdentifierRegistry compoundGroupMap = registries.create("compoundGroup");
 	
 	private String getCompoundGroup(String inchiKey, String name) throws ObjectStoreException {
 		String ret = compoundGroupMap.get(inchiKey);
@@ -187,8 +201,8 @@ public class KeggCompoundConverter extends BioFileConverter
 	}
 
 	private void readInchikeyFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(inchikeyFile));
+		try (Reader reader = InputFiles.openReader(inchikeyFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -204,8 +218,8 @@ public class KeggCompoundConverter extends BioFileConverter
 	}
 
 	private void readInchiFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(inchiFile));
+		try (Reader reader = InputFiles.openReader(inchiFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -221,8 +235,8 @@ public class KeggCompoundConverter extends BioFileConverter
 	}
 
 	private void readPathwayFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(pathwayFile));
+		try (Reader reader = InputFiles.openReader(pathwayFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -242,8 +256,8 @@ public class KeggCompoundConverter extends BioFileConverter
 	}
 
 	private void readEnzymeFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(enzymeFile));
+		try (Reader reader = InputFiles.openReader(enzymeFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -262,7 +276,7 @@ public class KeggCompoundConverter extends BioFileConverter
 		
 	}
 	
-	private Map<String, String> pathwayMap = new HashMap<String, String>();
+	private IdentifierRegistry pathwayMap = registries.create("pathway");
 	private String getPathway(String pathwayId) throws ObjectStoreException {
 		String ret = pathwayMap.get(pathwayId);
 		if (ret == null) {
@@ -291,7 +305,7 @@ public class KeggCompoundConverter extends BioFileConverter
 		return ret;
 	}
 
-	private Map<String, String> enzymeMap = new HashMap<String, String>();
+	private IdentifierRegistry enzymeMap = registries.create("enzyme");
 	private String getEnzyme(String ecNumber) throws ObjectStoreException {
 		String ret = enzymeMap.get(ecNumber);
 		if (ret == null) {
@@ -332,7 +346,7 @@ public class KeggCompoundConverter extends BioFileConverter
 			mainClassMap.clear();
 			subClassMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayClassFile));
+			BufferedReader reader = InputFiles.openReader(pathwayClassFile);
 			String line;
 			String mainClass = "";
 			String subClass = "";
@@ -372,7 +386,7 @@ public class KeggCompoundConverter extends BioFileConverter
 		try {
 			pathwayDescMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayDescFile));
+			BufferedReader reader = InputFiles.openReader(pathwayDescFile);
 			String line;
 			while ((line = reader.readLine()) != null) {
 				String[] split = line.split("\\t");
@@ -387,4 +401,9 @@ public class KeggCompoundConverter extends BioFileConverter
 		
 	}
 
+	@Override
+	public void close() throws Exception {
+		registries.close();
+	}
+
 }
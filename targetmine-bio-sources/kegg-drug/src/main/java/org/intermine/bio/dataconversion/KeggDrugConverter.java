@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -39,6 +38,8 @@ public class KeggDrugConverter extends BioFileConverter {
 	private static final String DATASET_TITLE = "KEGG Drug";
 	private static final String DATA_SOURCE_NAME = "KEGG";
 
+	private IdentifierRegistries registries = new IdentifierRegistries();
+
 	private Set<String> synonymTypeSet = new HashSet<String>();
 	
 	private Set<String> therapeuticLabels = new HashSet<String>();
@@ -75,9 +76,23 @@ public class KeggDrugConverter extends BioFileConverter {
 	public void setInchiFile(File inchiFile) {
 		this.inchiFile = inchiFile;
 	}
+
+	/**
+	 * @param registryStorage where the identifier maps are kept: heap (default), direct or mapped
+	 */
+	public void setRegistryStorage(String registryStorage) {
+		registries.setStorage(registryStorage);
+	}
+
+	/**
+	 * @param registryDirectory directory of the mapped registry files
+	 */
+	public void setRegistryDirectory(String registryDirectory) {
+		registries.setDirectory(registryDirectory);
+	}
 	
-	private Map<String, String> inchiKeyMap = new HashMap<String, String>();
-	private Map<String, String> inchiMap = new HashMap<String, String>();
+	private IdentifierRegistry inchiKeyMap = registries.create("inchiKey");
+	private IdentifierRegistry inchiMap = registries.create("inchi");
 
 	/**
 	 * 
@@ -332,8 +347,8 @@ public class KeggDrugConverter extends BioFileConverter {
 	private Map<String, Set<String>> inchiKeyKeggDrugMap = new HashMap<String, Set<String>>();
 	
 	private void readInchikeyFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(inchikeyFile));
+		try (Reader reader = InputFiles.openReader(inchikeyFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -354,8 +369,8 @@ public class KeggDrugConverter extends BioFileConverter {
 	}
 
 	private void readInchiFile() {
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(inchiFile));
+		try (Reader reader = InputFiles.openReader(inchiFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			
 			while(iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -370,7 +385,7 @@ public class KeggDrugConverter extends BioFileConverter {
 		
 	}
 
-	private Map<String, String> atcMap = new HashMap<String, String>();
+	private IdentifierRegistry atcMap = registries.create("atc");
 
 	private String getAtcClassification(String atcCode, String name) throws ObjectStoreException {
 		String ret = atcMap.get(atcCode);
@@ -407,7 +422,7 @@ public class KeggDrugConverter extends BioFileConverter {
 		return ret;
 	}
 
-	private Map<String, String> compoundGroupMap = new HashMap<String, String>();
+	private IdentifierRegistry compoundGroupMap = registries.create("compoundGroup");
 	
 	private String getCompoundGroup(String inchiKey, String name) throws ObjectStoreException {
 		String ret = compoundGroupMap.get(inchiKey);
@@ -422,7 +437,7 @@ public class KeggDrugConverter extends BioFileConverter {
 		return ret;
 	}
 
-	private Map<String, String> geneMap = new HashMap<String, String>();
+	private IdentifierRegistry geneMap = registries.create("gene");
 	
 	private String getGene(String geneId) throws ObjectStoreException {
 		String ret = geneMap.get(geneId);
@@ -478,4 +493,9 @@ public class KeggDrugConverter extends BioFileConverter {
 		createTherapeuticClassification("br08370", "Dermatological agents");
 	}	 
 
+	@Override
+	public void close() throws Exception {
+		registries.close();
+	}
+
 }
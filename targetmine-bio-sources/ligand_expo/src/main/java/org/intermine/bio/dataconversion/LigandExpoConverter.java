@@ -1,8 +1,6 @@
 package org.intermine.bio.dataconversion;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -167,69 +165,72 @@ public class LigandExpoConverter extends BioFileConverter {
 	}
 
 	private void readInchiKeyFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser
-				.parseTabDelimitedReader(new BufferedReader(new FileReader(inchiKeyFile)));
+		try (Reader reader = InputFiles.openReader(inchiKeyFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 
-		// Example:
-		// CXHHBNMLPJOKQD-UHFFFAOYSA-N 000 methyl hydrogen carbonate
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
+			// Example:
+			// CXHHBNMLPJOKQD-UHFFFAOYSA-N 000 methyl hydrogen carbonate
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
 
-			if (cols.length < 3) {
-				LOG.error(StringUtils.join(cols,"\t"));
-				continue;
-			}
-			// process het name
-			String name = cols[2].trim();
-			name = name.replaceAll("^[;|\"]", "");
-			name = name.replaceAll("[;|\"]$", "");
-			hetNameMap.put(cols[1].trim(), name);
-
-			// LOG.info(cols[0]);
-			if (StringUtils.isEmpty(cols[0])) {
-				LOG.info("Empty InChIKey for id :" + cols[1]);
-				continue;
+				if (cols.length < 3) {
+					LOG.error(StringUtils.join(cols,"\t"));
+					continue;
+				}
+				// process het name
+				String name = cols[2].trim();
+				name = name.replaceAll("^[;|\"]", "");
+				name = name.replaceAll("[;|\"]$", "");
+				hetNameMap.put(cols[1].trim(), name);
+
+				// LOG.info(cols[0]);
+				if (StringUtils.isEmpty(cols[0])) {
+					LOG.info("Empty InChIKey for id :" + cols[1]);
+					continue;
+				}
+				String inchiKey = cols[0];
+				inchiKeyMap.put(cols[1], inchiKey);
 			}
-			String inchiKey = cols[0];
-			inchiKeyMap.put(cols[1], inchiKey);
 		}
 	}
 
 	private void readInchiFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser
-				.parseTabDelimitedReader(new BufferedReader(new FileReader(inchiFile)));
+		try (Reader reader = InputFiles.openReader(inchiFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 		
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
 			
-			if (cols.length < 3) {
-				LOG.error(StringUtils.join(cols,"\t"));
-				continue;
-			}
-			if (StringUtils.isEmpty(cols[0])) {
-				LOG.info("Empty InChI for id :" + cols[1]);
-				continue;
+				if (cols.length < 3) {
+					LOG.error(StringUtils.join(cols,"\t"));
+					continue;
+				}
+				if (StringUtils.isEmpty(cols[0])) {
+					LOG.info("Empty InChI for id :" + cols[1]);
+					continue;
+				}
+				inchiMap.put(cols[1], cols[0]);
 			}
-			inchiMap.put(cols[1], cols[0]);
 		}
 	}
 
 	private void readSmilesFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser
-				.parseTabDelimitedReader(new BufferedReader(new FileReader(smilesFile)));
+		try (Reader reader = InputFiles.openReader(smilesFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 		
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
 			
-			if (cols.length < 3) {
-				LOG.error(StringUtils.join(cols,"\t"));
-				continue;
-			}
-			if (StringUtils.isEmpty(cols[0])) {
-				LOG.info("Empty SMILES for id :" + cols[1]);
-				continue;
+				if (cols.length < 3) {
+					LOG.error(StringUtils.join(cols,"\t"));
+					continue;
+				}
+				if (StringUtils.isEmpty(cols[0])) {
+					LOG.info("Empty SMILES for id :" + cols[1]);
+					continue;
+				}
+				smilesMap.put(cols[1], cols[0]);
 			}
-			smilesMap.put(cols[1], cols[0]);
 		}
 	}
 	
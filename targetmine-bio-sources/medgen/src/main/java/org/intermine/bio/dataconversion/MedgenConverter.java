@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -136,8 +135,7 @@ public class MedgenConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s......", fileName));
 		System.out.println(String.format("Parsing the file %s......", fileName));
 
-		try {
-			FileReader reader = new FileReader(pubmedFile);
+		try (Reader reader = InputFiles.openReader(pubmedFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseDelimitedReader(reader, '|');
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -148,7 +146,6 @@ public class MedgenConverter extends BioFileConverter {
 				}
 				pubmedIdMap.get(cui).add(pubmedId);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -164,8 +161,7 @@ public class MedgenConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s......", fileName));
 		System.out.println(String.format("Parsing the file %s......", fileName));
 		
-		try {
-			FileReader reader = new FileReader(definitionFile);
+		try (Reader reader = InputFiles.openReader(definitionFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseCsvDelimitedReader(reader);
 			// ignore header
 			iterator.next();
@@ -175,7 +171,6 @@ public class MedgenConverter extends BioFileConverter {
 				String def = cols[1];
 				definitionMap.put(cui, def);
 			}
-			reader.close();
 			
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -88,7 +87,7 @@ public class MetazoanConverter extends DirectoryConverter {
 			intExp.setAttribute("name", cols[1]);
 			intExp.setAttribute("description", expMap.get(cols[1]));
 
-			BufferedReader reader = new BufferedReader(new FileReader(file));
+			BufferedReader reader = InputFiles.openReader(file);
 			String ncbiGeneId;
 			while ((ncbiGeneId = reader.readLine()) != null) {
 				if (ncbiGeneId.equals(cols[0])) {
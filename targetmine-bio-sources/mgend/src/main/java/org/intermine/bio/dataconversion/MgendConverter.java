@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -267,32 +266,34 @@ public class MgendConverter extends BioFileConverter {
 	
 	private Map<String, String> mimMedgenMap = new HashMap<String, String>();
 	private void readMimMedgenFile() throws Exception {
-		FileReader reader = new FileReader(mimMedgenFile);
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
+		try (Reader reader = InputFiles.openReader(mimMedgenFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
 			
-			String omimId = cols[0];
-			String medGeneCui = cols[4];
+				String omimId = cols[0];
+				String medGeneCui = cols[4];
 			
-			if (!StringUtils.isEmpty(medGeneCui)) {
-				mimMedgenMap.put(omimId, medGeneCui);
+				if (!StringUtils.isEmpty(medGeneCui)) {
+					mimMedgenMap.put(omimId, medGeneCui);
+				}
 			}
 		}
 	}
 
 	private Map<String, String> medgenUidMap = new HashMap<String, String>();
 	private void readMedgenUidFile() throws Exception {
-		FileReader reader = new FileReader(medgenUidFile);
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
+		try (Reader reader = InputFiles.openReader(medgenUidFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
 			
-			String uid = cols[0];
-			String medGeneCui = cols[1];
+				String uid = cols[0];
+				String medGeneCui = cols[1];
 			
-			if (!StringUtils.isEmpty(medGeneCui)) {
-				medgenUidMap.put(uid, medGeneCui);
+				if (!StringUtils.isEmpty(medGeneCui)) {
+					medgenUidMap.put(uid, medGeneCui);
+				}
 			}
 		}
 	}
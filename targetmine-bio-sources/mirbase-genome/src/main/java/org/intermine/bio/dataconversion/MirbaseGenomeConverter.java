@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -181,11 +180,12 @@ public class MirbaseGenomeConverter extends BioFileConverter {
 
 	private void readTaxonIdMap() throws Exception {
 		taxonIdMap = new HashMap<String, String>();
-		FileReader fileReader = new FileReader(taxonIdFile);
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(fileReader);
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			taxonIdMap.put(cols[1], cols[0]);
+		try (Reader fileReader = InputFiles.openReader(taxonIdFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(fileReader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				taxonIdMap.put(cols[1], cols[0]);
+			}
 		}
 	}
 
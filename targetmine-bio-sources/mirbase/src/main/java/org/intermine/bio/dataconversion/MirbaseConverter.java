@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -95,62 +94,62 @@ public class MirbaseConverter extends BioFileConverter {
 
 	private void readTaxonIdMap() throws Exception {
 		taxonIdMap = new HashMap<String, String>();
-		FileReader fileReader = new FileReader(taxonIdFile);
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(fileReader);
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			taxonIdMap.put(cols[1], cols[0]);
+		try (Reader fileReader = InputFiles.openReader(taxonIdFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(fileReader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				taxonIdMap.put(cols[1], cols[0]);
+			}
 		}
 	}
 
 	private void processMatureFa() throws Exception {
-		FileReader fileReader = new FileReader(matureFaFile);
-		BufferedReader br = new BufferedReader(fileReader);
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (line.startsWith(">")) {
-				// >hsa-let-7a-5p MIMAT0000062 Homo sapiens let-7a-5p
-				Pattern pattern = Pattern.compile(">(.+) (MIMAT\\d+) (.+)");
-				Matcher matcher = pattern.matcher(line);
-				if (matcher.matches()) {
-					String symbol = matcher.group(1);
-					String accession = matcher.group(2);
-					String name = matcher.group(3);
-					String seq = br.readLine();
-					String taxonId = getTaxonIdBySymbol(symbol);
-					if (taxonId == null || !taxonIds.contains(taxonId)) {
-						continue;
-					}
+		try (BufferedReader br = InputFiles.openReader(matureFaFile)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith(">")) {
+					// >hsa-let-7a-5p MIMAT0000062 Homo sapiens let-7a-5p
+					Pattern pattern = Pattern.compile(">(.+) (MIMAT\\d+) (.+)");
+					Matcher matcher = pattern.matcher(line);
+					if (matcher.matches()) {
+						String symbol = matcher.group(1);
+						String accession = matcher.group(2);
+						String name = matcher.group(3);
+						String seq = br.readLine();
+						String taxonId = getTaxonIdBySymbol(symbol);
+						if (taxonId == null || !taxonIds.contains(taxonId)) {
+							continue;
+						}
 
-					if (miRNAIdMap.get(accession) == null) {
-						Item item = createItem("MiRNA");
-						item.setAttribute("primaryIdentifier", accession);
-//						item.setAttribute("secondaryIdentifier", accession);
-						item.setAttribute("name", name);
-						item.setAttribute("symbol", symbol);
-						item.setReference("sequence", createSequence(seq));
-						item.setAttribute("length", String.valueOf(seq.length()));
-						item.setReference("organism", getOrganism(taxonId));
-						store(item);
-						miRNAMap.put(accession, item.getIdentifier());
-					} else {
-						for (String pid : miRNAIdMap.get(accession)) {
+						if (miRNAIdMap.get(accession) == null) {
 							Item item = createItem("MiRNA");
-							item.setAttribute("primaryIdentifier", pid);
-							item.setAttribute("secondaryIdentifier", accession);
+							item.setAttribute("primaryIdentifier", accession);
+//						item.setAttribute("secondaryIdentifier", accession);
 							item.setAttribute("name", name);
 							item.setAttribute("symbol", symbol);
 							item.setReference("sequence", createSequence(seq));
 							item.setAttribute("length", String.valueOf(seq.length()));
 							item.setReference("organism", getOrganism(taxonId));
 							store(item);
-							miRNAMap.put(pid, item.getIdentifier());
+							miRNAMap.put(accession, item.getIdentifier());
+						} else {
+							for (String pid : miRNAIdMap.get(accession)) {
+								Item item = createItem("MiRNA");
+								item.setAttribute("primaryIdentifier", pid);
+								item.setAttribute("secondaryIdentifier", accession);
+								item.setAttribute("name", name);
+								item.setAttribute("symbol", symbol);
+								item.setReference("sequence", createSequence(seq));
+								item.setAttribute("length", String.valueOf(seq.length()));
+								item.setReference("organism", getOrganism(taxonId));
+								store(item);
+								miRNAMap.put(pid, item.getIdentifier());
+							}
 						}
 					}
 				}
 			}
 		}
-		br.close();
 	}
 
 	private String getTaxonIdBySymbol(String identifier) {
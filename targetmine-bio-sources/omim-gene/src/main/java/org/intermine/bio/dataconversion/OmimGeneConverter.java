@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -88,7 +87,7 @@ public class OmimGeneConverter extends BioFileConverter {
 	}
 	
 	private void readTitleFile() throws Exception {
-		BufferedReader reader = new BufferedReader(new FileReader(titleFile));
+		BufferedReader reader = InputFiles.openReader(titleFile);
 		String line;
 		
 		titleMap.clear();
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -195,33 +194,38 @@ public class OrphanetConverter extends BioFileConverter {
 	
 	private void parseHumanGeneInfoFile() throws FileNotFoundException, IOException {
 
-		Iterator<String[]> humanGeneInfoIterator = FormattedTextParser
-				.parseTabDelimitedReader(new FileReader(this.humanGeneInfoFile));
-		while (humanGeneInfoIterator.hasNext()) {
-			String[] humanGeneInfoRow = humanGeneInfoIterator.next();
+		try (Reader reader = InputFiles.openReader(this.humanGeneInfoFile)) {
+			Iterator<String[]> humanGeneInfoIterator = FormattedTextParser
+					.parseTabDelimitedReader(reader);
+			while (humanGeneInfoIterator.hasNext()) {
+				String[] humanGeneInfoRow = humanGeneInfoIterator.next();
 
-			if (humanGeneInfoRow.length < 16) {
-				continue;
-			}
+				if (humanGeneInfoRow.length < 16) {
+					continue;
+				}
+
+				String idColumn = humanGeneInfoRow[1];
+				// to prevent unofficial symbol happened, use Symbol_from_nomenclature_authority
+				// instead
+				String symbolColumn = humanGeneInfoRow[10];
 
-			String idColumn = humanGeneInfoRow[1];
-			// to prevent unofficial symbol happened, use Symbol_from_nomenclature_authority
-			// instead
-			String symbolColumn = humanGeneInfoRow[10];
+				if (idColumn == null || symbolColumn == null) {
+					continue;
+				}
+				geneSymbolMap.put(symbolColumn, idColumn);
 
-			if (idColumn == null || symbolColumn == null) {
-				continue;
 			}
-			geneSymbolMap.put(symbolColumn, idColumn);
 
 		}
-
 	}
 	
 	private void parseOrdoOwlFile() throws IOException, ValidityException, ParsingException, ObjectStoreException {
 
 		Builder parser = new Builder();
-		Document doc = parser.build( new FileReader( this.ordoOwlFile ) );
+		Document doc;
+		try (Reader reader = InputFiles.openReader(this.ordoOwlFile)) {
+			doc = parser.build( reader );
+		}
 		Element rootElement = doc.getRootElement();
 		
 		Elements owlClasses = rootElement.getChildElements( "Class","http://www.w3.org/2002/07/owl#" );
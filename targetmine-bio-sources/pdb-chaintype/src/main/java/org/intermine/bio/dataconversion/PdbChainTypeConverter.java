@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -53,11 +52,12 @@ public class PdbChainTypeConverter extends BioFileConverter {
 	public void process(Reader reader) throws Exception {
 		Map<String, String> typeMap = new HashMap<String, String>();
 		if (null != mapFile) {
-			Iterator<String[]> mapItr = FormattedTextParser
-					.parseCsvDelimitedReader(new FileReader(mapFile));
-			while (mapItr.hasNext()){
-				String[] map = mapItr.next();
-				typeMap.put(map[0].trim(), map[1].trim());
+			try (Reader mapReader = InputFiles.openReader(mapFile)) {
+				Iterator<String[]> mapItr = FormattedTextParser.parseCsvDelimitedReader(mapReader);
+				while (mapItr.hasNext()){
+					String[] map = mapItr.next();
+					typeMap.put(map[0].trim(), map[1].trim());
+				}
 			}
 		} else {
 			System.out.println("The type mapping file is not set, the original string will be used.");
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -116,20 +115,21 @@ public class PdbExtConverter extends BioFileConverter {
 			throw new NullPointerException("pdbPubmedFile property not set");
 		}
 
-		BufferedReader reader = new BufferedReader(new FileReader(pdbPubmedFile));
+		try (BufferedReader reader = InputFiles.openReader(pdbPubmedFile)) {
 
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 
-		// skip header
-		iterator.next();
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			String pdbid = cols[0].toLowerCase();
-			String pubmedid = cols[2];
-			if (pdbIdPubmedIdMap.get(pdbid) == null) {
-				pdbIdPubmedIdMap.put(pdbid, new ArrayList<String>());
+			// skip header
+			iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				String pdbid = cols[0].toLowerCase();
+				String pubmedid = cols[2];
+				if (pdbIdPubmedIdMap.get(pdbid) == null) {
+					pdbIdPubmedIdMap.put(pdbid, new ArrayList<String>());
+				}
+				pdbIdPubmedIdMap.get(pdbid).add(getPublication(pubmedid));
 			}
-			pdbIdPubmedIdMap.get(pdbid).add(getPublication(pubmedid));
 		}
 	}
 
@@ -16,29 +16,17 @@ import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
-import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.ConstraintSet;
-import org.intermine.objectstore.query.ContainsConstraint;
-import org.intermine.objectstore.query.Query;
-import org.intermine.objectstore.query.QueryClass;
-import org.intermine.objectstore.query.QueryCollectionReference;
-import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryValue;
-import org.intermine.objectstore.query.Results;
-import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.xml.full.Item;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -139,84 +127,52 @@ public class PharmaprojectsConverter extends BioFileConverter
 		trialMap.put(trialId,project.getIdentifier());
 		return project.getIdentifier();
 	}
-	private Map<String, String> nameInchiKeyMap = new HashMap<String, String>();
+	// CompoundSynonym.value -> CompoundSynonym.subject.inchiKey
+	private BulkIdResolver nameResolver;
 	private String getInchiKeyByName(String name) throws Exception {
-		if(nameInchiKeyMap.containsKey(name)) {
-			return nameInchiKeyMap.get(name);
-		}
-		String inchiKey = queryInchikeyByName(name);
-		nameInchiKeyMap.put(name, inchiKey);
-		return inchiKey;
+		return getNameResolver().resolve(name);
 	}
-	@SuppressWarnings("unchecked")
-	public String queryInchikeyByName(String name) throws Exception {
-		ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-		Query q = new Query();
-		QueryClass qcCompound = new QueryClass(os.getModel().getClassDescriptorByName("Compound").getType());
-		QueryClass qcSynonym = new QueryClass(os.getModel().getClassDescriptorByName(COMPOUND_SYNONYM).getType());
-		QueryField qfInchiKey = new QueryField(qcCompound, "inchiKey");
-		QueryField qfValue = new QueryField(qcSynonym, "value");
-		q.addFrom(qcCompound);
-		q.addFrom(qcSynonym);
-		q.addToSelect(qfInchiKey);
-
-		ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-
-		QueryCollectionReference synRef = new QueryCollectionReference(qcCompound, "synonyms");
-		cs.addConstraint(new ContainsConstraint(synRef, ConstraintOp.CONTAINS, qcSynonym));
-		cs.addConstraint(new SimpleConstraint(qfValue, ConstraintOp.EQUALS, new QueryValue(name)));
-		cs.addConstraint(new SimpleConstraint(qfInchiKey, ConstraintOp.IS_NOT_NULL));
-		q.setConstraint(cs);
-
-		Results results = os.execute(q);
-		Iterator<Object> iterator = results.iterator();
-		while(iterator.hasNext()) {
-			ResultsRow<String> rr = (ResultsRow<String>) iterator.next();
-			String inchikey = rr.get(0);
-			if(inchikey!=null && inchikey.length() > 0) {
-				LOG.warn("GET_INCHIKEY " + inchikey +" : " + name);
-				return inchikey;
-			}
+	private BulkIdResolver getNameResolver() {
+		if (nameResolver == null) {
+			nameResolver = new BulkIdResolver(osAlias, COMPOUND_SYNONYM, "value", "subject",
+					"Compound", "inchiKey");
 		}
-		return null;
+		return nameResolver;
 	}
-	private Map<String, String> casInchiKeyMap = new HashMap<String, String>();
+	// Compound.casRegistryNumber -> Compound.inchiKey
+	private DBIDFinder casFinder;
 	private String getInchiKeyByCasNumber(String casNumber) throws Exception {
-		if(casInchiKeyMap.containsKey(casNumber)) {
-			return casInchiKeyMap.get(casNumber);
+		return getCasFinder().getIdentifierByValue(casNumber);
+	}
+	private DBIDFinder getCasFinder() {
+		if (casFinder == null) {
+			casFinder = new DBIDFinder(osAlias, "Compound", "casRegistryNumber", "inchiKey");
 		}
-		String inchiKey = queryInchikeyByCasNumber(casNumber);
-		casInchiKeyMap.put(casNumber, inchiKey);
-		return inchiKey;
+		return casFinder;
 	}
-	@SuppressWarnings("unchecked")
-	public String queryInchikeyByCasNumber(String casNumber) throws Exception {
-		LOG.warn("Start loading diseaseterm id");
-		ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-
-		Query q = new Query();
-		QueryClass qcCompound = new QueryClass(os.getModel().getClassDescriptorByName("Compound").getType());
-
-		QueryField qfInchiKey = new QueryField(qcCompound, "inchiKey");
-
-		q.addFrom(qcCompound);
-		q.addToSelect(qfInchiKey);
-		QueryField qcSynonymInterMineValue = new QueryField(qcCompound, "casRegistryNumber");
-		ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-		cs.addConstraint(new SimpleConstraint(qcSynonymInterMineValue, ConstraintOp.EQUALS, new QueryValue(casNumber)));
-		cs.addConstraint(new SimpleConstraint(qfInchiKey, ConstraintOp.IS_NOT_NULL));
-		q.setConstraint(cs);
-		Results results = os.execute(q);
-		Iterator<Object> iterator = results.iterator();
-		while (iterator.hasNext()) {
-			ResultsRow<String> rr = (ResultsRow<String>) iterator.next();
-			String inchikey = rr.get(0);
-			if(inchikey!=null && inchikey.length() > 0) {
-				LOG.warn("GET_INCHIKEY " + inchikey +" : " + casNumber);
-				return inchikey;
+	/**
+	 * Load the InChIKeys of all CAS numbers and names of the items by batches of queries,
+	 * instead of one query per unknown value.
+	 */
+	private void preloadInchiKeys(JSONArray items) throws Exception {
+		Set<String> casNumbers = new HashSet<String>();
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < items.length(); i++) {
+			JSONObject item = items.getJSONObject(i);
+			JSONArray casArray = item.optJSONArray("casNumbers");
+			if (casArray != null) {
+				for (int j = 0; j < casArray.length(); j++) {
+					casNumbers.add(casArray.getString(j));
+				}
+			}
+			names.add(item.getString("drugPrimaryName"));
+			JSONArray structures = item.getJSONArray("chemicalStructure");
+			for (int j = 0; j < structures.length(); j++) {
+				names.add(structures.getString(j));
 			}
 		}
-		return null;
+		getCasFinder().getResolver().preload(casNumbers);
+		getNameResolver().preload(names);
 	}
 	private String osAlias;
 	private void addCompoundGroup(Item compounds, String inchiKey,String name) throws ObjectStoreException {
@@ -391,11 +347,14 @@ public class PharmaprojectsConverter extends BioFileConverter
 		loadSmilesToInchiKey();
 		JSONObject jsonObject = new JSONObject(readAll(reader));
 		JSONArray jsonArray = jsonObject.getJSONArray("items");
+		preloadInchiKeys(jsonArray);
 		for (int i = 0; i < jsonArray.length(); i++) {
 			JSONObject item = jsonArray.getJSONObject(i);
 			String pharmaProject = createPharmaProject(item);
 			createPharmaProjectCompounds(item, pharmaProject);
 		}
+		getCasFinder().getResolver().logStatistics();
+		getNameResolver().logStatistics();
 	}
     public void setOsAlias(String osAlias) {
         this.osAlias = osAlias;
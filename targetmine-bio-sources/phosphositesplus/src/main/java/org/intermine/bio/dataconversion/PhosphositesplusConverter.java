@@ -1,9 +1,11 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,19 +16,16 @@ import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
 import org.intermine.model.bio.Protein;
-import org.intermine.model.bio.Sequence;
 import org.intermine.model.bio.Synonym;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryObjectReference;
 import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
@@ -45,6 +44,8 @@ public class PhosphositesplusConverter extends BioFileConverter {
 	//
 	private static final String DATASET_TITLE = "PhosphoSitePlus";
 	private static final String DATA_SOURCE_NAME = "PhosphoSitePlus";
+	// the rows of a chunk are processed together, see processRows()
+	private static final int CHUNK_SIZE = 10000;
 
 	/**
 	 * Constructor
@@ -84,89 +85,115 @@ public class PhosphositesplusConverter extends BioFileConverter {
 		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 		boolean flag = false;
 		Set<String> modiSet = new HashSet<String>();
+		List<String[]> rows = new ArrayList<String[]>();
 		while (iterator.hasNext()) {
 			String[] cols = iterator.next();
 			if (flag) {
-				String proteinId = cols[2];
-				String accession = null;
-				if (proteinId.startsWith("ENS")) {
-					accession = getPrimaryAccession(proteinId);
-					if (StringUtils.isEmpty(accession)) {
-						LOG.info("Unable to find the accession: " + proteinId);
-						continue;
-					}
-					LOG.info(proteinId + " -> " + accession);
-				} else if (proteinId.contains("_")) {
-					accession = getPrimaryAccession(proteinId);
-					if (StringUtils.isEmpty(accession)) {
-						LOG.info("Unable to find the accession: " + proteinId);
-						continue;
-					}
-					LOG.info(proteinId + " -> " + accession);
-				} else if (proteinId.contains("-")) {
-					LOG.info("Skip isoform: " + proteinId);
+				rows.add(cols);
+				if (rows.size() == CHUNK_SIZE) {
+					processRows(rows, modificationType, modiSet);
+					rows.clear();
+				}
+			} else {
+				if (cols[0].equals("GENE")) {
+					flag = true;
+				}
+			}
+		}
+		processRows(rows, modificationType, modiSet);
+		getSequenceResolver().logStatistics();
+
+	}
+
+	/**
+	 * Process a chunk of the rows; the sequences of their UniProt accessions are loaded by
+	 * batches of queries first, instead of one query per accession.
+	 */
+	private void processRows(List<String[]> rows, String modificationType, Set<String> modiSet) throws Exception {
+		Set<String> accessions = new HashSet<String>();
+		for (String[] cols : rows) {
+			String proteinId = cols[2];
+			// the other IDs are mapped to accessions one by one
+			if (!proteinId.startsWith("ENS") && !proteinId.contains("_") && !proteinId.contains("-")) {
+				accessions.add(proteinId);
+			}
+		}
+		getSequenceResolver().preload(accessions);
+		for (String[] cols : rows) {
+			String proteinId = cols[2];
+			String accession = null;
+			if (proteinId.startsWith("ENS")) {
+				accession = getPrimaryAccession(proteinId);
+				if (StringUtils.isEmpty(accession)) {
+					LOG.info("Unable to find the accession: " + proteinId);
+					continue;
+				}
+				LOG.info(proteinId + " -> " + accession);
+			} else if (proteinId.contains("_")) {
+				accession = getPrimaryAccession(proteinId);
+				if (StringUtils.isEmpty(accession)) {
+					LOG.info("Unable to find the accession: " + proteinId);
 					continue;
-				} else {
-					accession = proteinId;
 				}
+				LOG.info(proteinId + " -> " + accession);
+			} else if (proteinId.contains("-")) {
+				LOG.info("Skip isoform: " + proteinId);
+				continue;
+			} else {
+				accession = proteinId;
+			}
+			
+			String sequence = getProteinSequence(accession);
+			if (!StringUtils.isEmpty(sequence)) {
+				String modifiedResidue = cols[4];
+				int position = Integer.valueOf(modifiedResidue.substring(1, modifiedResidue.indexOf('-'))).intValue();
+				String residue = modifiedResidue.substring(0, 1);
 				
-				String sequence = getProteinSequence(accession);
-				if (!StringUtils.isEmpty(sequence)) {
-					String modifiedResidue = cols[4];
-					int position = Integer.valueOf(modifiedResidue.substring(1, modifiedResidue.indexOf('-'))).intValue();
-					String residue = modifiedResidue.substring(0, 1);
-					
-					if (position > sequence.length()) {
-						LOG.info(String.format("Position is greater than the length of the sequence, skip the entry. %s: %s-%d.", proteinId, residue, position));
-						continue;
-					}
-					
-					String expectedResidue = sequence.substring(position - 1, position);
-					if (!expectedResidue.equals(residue)) {
-						if (position + 1 > sequence.length()) {
+				if (position > sequence.length()) {
+					LOG.info(String.format("Position is greater than the length of the sequence, skip the entry. %s: %s-%d.", proteinId, residue, position));
+					continue;
+				}
+				
+				String expectedResidue = sequence.substring(position - 1, position);
+				if (!expectedResidue.equals(residue)) {
+					if (position + 1 > sequence.length()) {
 //							throw new RuntimeException(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position)); 
-							LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position));
-							continue;
-						}
-						expectedResidue = sequence.substring(position, position + 1);
-						if (expectedResidue.equals(residue)) {
-							LOG.info(String.format("Inconsistence residue. Automatically correct the position. %s: %d -> %d.", proteinId, position, position + 1));
-							position = position + 1;
-						} else {
-							LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position));
-							continue;
-						}
+						LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position));
+						continue;
 					}
-					
-					String key = String.format("%s-%d", accession, position);
-					
-					// different methylation (e.g. m1, m2) may be annotated to the same position
-					if (modiSet.contains(key)) {
+					expectedResidue = sequence.substring(position, position + 1);
+					if (expectedResidue.equals(residue)) {
+						LOG.info(String.format("Inconsistence residue. Automatically correct the position. %s: %d -> %d.", proteinId, position, position + 1));
+						position = position + 1;
+					} else {
+						LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position));
 						continue;
 					}
-					
-					Item protein = getProtein(accession);
-					Item modification = createItem("Modification");
-					modification.setReference("protein", protein);
-					modification.setAttribute("type", modificationType);
-					modification.setAttribute("position", String.valueOf(position));
-					modification.setAttribute("residue", residue);
-					modification.setAttribute("start", String.valueOf(position));
-					modification.setAttribute("end", String.valueOf(position));
-					modification.setAttribute("regionType", "modification");
-					store(modification);
-					protein.addToCollection("modifications", modification);
-					
-					modiSet.add(key);
 				}
-
-			} else {
-				if (cols[0].equals("GENE")) {
-					flag = true;
+				
+				String key = String.format("%s-%d", accession, position);
+				
+				// different methylation (e.g. m1, m2) may be annotated to the same position
+				if (modiSet.contains(key)) {
+					continue;
 				}
+				
+				Item protein = getProtein(accession);
+				Item modification = createItem("Modification");
+				modification.setReference("protein", protein);
+				modification.setAttribute("type", modificationType);
+				modification.setAttribute("position", String.valueOf(position));
+				modification.setAttribute("residue", residue);
+				modification.setAttribute("start", String.valueOf(position));
+				modification.setAttribute("end", String.valueOf(position));
+				modification.setAttribute("regionType", "modification");
+				store(modification);
+				protein.addToCollection("modifications", modification);
+				
+				modiSet.add(key);
 			}
-		}
 
+		}
 	}
 	
 	@Override
@@ -234,43 +261,19 @@ public class PhosphositesplusConverter extends BioFileConverter {
 		return ret;
 	}
 
-	private Map<String, String> proteinSequenceMap = new HashMap<String, String>();
-
-	@SuppressWarnings("unchecked")
-	private String getProteinSequence(String proteinAccession) throws Exception {
-		String ret = proteinSequenceMap.get(proteinAccession);
-
-		if (ret == null) {
-			Query q = new Query();
-			QueryClass qcProtein = new QueryClass(Protein.class);
-			QueryClass qcSequence = new QueryClass(Sequence.class);
-			QueryField qfPrimaryAcc = new QueryField(qcProtein, "primaryAccession");
-			QueryField qfResidues = new QueryField(qcSequence, "residues");
-			q.addFrom(qcProtein);
-			q.addFrom(qcSequence);
-			q.addToSelect(qfResidues);
+	// Protein.primaryAccession -> Protein.sequence.residues
+	private BulkIdResolver sequenceResolver;
 
-			ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-
-			QueryObjectReference synRef = new QueryObjectReference(qcProtein, "sequence");
-			cs.addConstraint(new ContainsConstraint(synRef, ConstraintOp.CONTAINS, qcSequence));
-			cs.addConstraint(new SimpleConstraint(qfPrimaryAcc, ConstraintOp.EQUALS, new QueryValue(proteinAccession)));
-			q.setConstraint(cs);
-
-			// LOG.info("querying for " + qs + " ......");
-			ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-			Results results = os.execute(q);
-			Iterator<Object> iterator = results.iterator();
-			if (iterator.hasNext()) {
-				ResultsRow<ClobAccess> rr = (ResultsRow<ClobAccess>) iterator.next();
-				ret = rr.get(0).toString();
-			} else {
-				ret = "";
-			}
-			proteinSequenceMap.put(proteinAccession, ret);
+	private BulkIdResolver getSequenceResolver() {
+		if (sequenceResolver == null) {
+			sequenceResolver = new BulkIdResolver(osAlias, "Protein", "primaryAccession", "sequence",
+					null, "residues");
 		}
+		return sequenceResolver;
+	}
 
-		return ret;
+	private String getProteinSequence(String proteinAccession) throws Exception {
+		return getSequenceResolver().resolve(proteinAccession);
 	}
 
 }
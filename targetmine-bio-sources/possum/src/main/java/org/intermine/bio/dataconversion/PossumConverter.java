@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -105,13 +104,15 @@ public class PossumConverter extends BioFileConverter
     }
 
 	private void readLigandChemblIdMap() throws Exception{
-		Iterator<String[]> iterator = FormattedTextParser.parseCsvDelimitedReader(new FileReader(ligandFile));
-		// ignore the header (slightly risky)
-		iterator.next();
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			ligandChemblIdMap.put(cols[1], cols[3]);
-			ligandNameMap.put(cols[1], cols[4]);
+		try (Reader reader = InputFiles.openReader(ligandFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseCsvDelimitedReader(reader);
+			// ignore the header (slightly risky)
+			iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				ligandChemblIdMap.put(cols[1], cols[3]);
+				ligandNameMap.put(cols[1], cols[4]);
+			}
 		}
 	}
 	
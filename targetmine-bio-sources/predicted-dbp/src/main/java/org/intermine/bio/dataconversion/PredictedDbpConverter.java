@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -100,28 +99,29 @@ public class PredictedDbpConverter extends BioFileConverter {
 			throw new RuntimeException("pathwayClassFile property not set");
 		}
 		
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(
-				dbpScoreFile));
-    	// skip header ..
-		iterator.next();
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			String accession = cols[1];
-			Float consensus2 = Float.valueOf(cols[5]);
-//			Float precision = Float.valueOf(cols[12]);
+		try (Reader reader = InputFiles.openReader(dbpScoreFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+	    	// skip header ..
+			iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				String accession = cols[1];
+				Float consensus2 = Float.valueOf(cols[5]);
+	//			Float precision = Float.valueOf(cols[12]);
 
-			if (consensus2 >= 0.12f) {
-				String confidence = "medium";
-				if (consensus2 >= 0.22) {
-					confidence = "high";
+				if (consensus2 >= 0.12f) {
+					String confidence = "medium";
+					if (consensus2 >= 0.22) {
+						confidence = "high";
+					}
+					Item item = createItem("PredictedAnnotation");
+					item.setAttribute("type", ANNOTATION_TYPE);
+					item.setAttribute("confidence", confidence);
+	//				item.setAttribute("score", precision.toString());
+					item.setReference("protein", getProtein(accession));
+					store(item);
+					predictedAnnotationMap.put(accession, item.getIdentifier());
 				}
-				Item item = createItem("PredictedAnnotation");
-				item.setAttribute("type", ANNOTATION_TYPE);
-				item.setAttribute("confidence", confidence);
-//				item.setAttribute("score", precision.toString());
-				item.setReference("protein", getProtein(accession));
-				store(item);
-				predictedAnnotationMap.put(accession, item.getIdentifier());
 			}
 		}
     }
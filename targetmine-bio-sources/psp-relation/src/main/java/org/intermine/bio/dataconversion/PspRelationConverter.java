@@ -1,9 +1,13 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.Logger;
@@ -14,12 +18,10 @@ import org.intermine.metadata.Model;
 import org.intermine.model.bio.Gene;
 import org.intermine.model.bio.Organism;
 import org.intermine.model.bio.Protein;
-import org.intermine.model.bio.Sequence;
 import org.intermine.model.bio.Synonym;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -47,6 +49,8 @@ public class PspRelationConverter extends BioFileConverter
 	private static final String PHOSPHORYLATION = "Phosphorylation";
 	private static final String DATASET_TITLE = "PhosphoSitePlus";
 	private static final String DATA_SOURCE_NAME = "PhosphoSitePlus";
+	// the rows of a chunk are processed together, see processRows()
+	private static final int CHUNK_SIZE = 10000;
 
     /**
      * Constructor
@@ -65,95 +69,129 @@ public class PspRelationConverter extends BioFileConverter
     public void process(Reader reader) throws Exception {
 		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 		boolean flag = false;
+		List<String[]> rows = new ArrayList<String[]>();
 		while (iterator.hasNext()) {
 			String[] cols = iterator.next();
 			if (flag) {
-				if (!cols[3].equals(cols[8])) {
-					LOG.info(String.format("Cross species: %s, %s -> %s", cols[0], cols[3], cols[8]));
-					continue;
+				rows.add(cols);
+				if (rows.size() == CHUNK_SIZE) {
+					processRows(rows);
+					rows.clear();
 				}
-				
-				String kinaseGeneId = getGeneId(cols[0], cols[3], cols[2]);
-				if (StringUtils.isEmpty(kinaseGeneId)) {
-					LOG.info(String.format("Kinase Gene ID not found: %s, %s", cols[0], cols[3]));
-					continue;
+			} else {
+				if (cols[0].equals("GENE")) {
+					flag = true;
 				}
+			}
+		}
+		processRows(rows);
+		getSequenceResolver().logStatistics();
+		getGeneResolver().logStatistics();
+    }
+
+	/**
+	 * Process a chunk of the rows; the sequences of their UniProt accessions and the genes of
+	 * the targets without a gene ID are loaded by batches of queries first, instead of one
+	 * query per accession.
+	 */
+	private void processRows(List<String[]> rows) throws Exception {
+		Set<String> accessions = new HashSet<String>();
+		Set<String> targetAccessions = new HashSet<String>();
+		for (String[] cols : rows) {
+			String proteinId = cols[6];
+			// the other IDs are mapped to accessions one by one
+			if (!proteinId.startsWith("ENS") && !proteinId.contains("_") && !proteinId.contains("-")) {
+				accessions.add(proteinId);
+			}
+			if (StringUtils.isEmpty(cols[5])) {
+				targetAccessions.add(proteinId);
+			}
+		}
+		getSequenceResolver().preload(accessions);
+		getGeneResolver().preload(targetAccessions);
+		for (String[] cols : rows) {
+			if (!cols[3].equals(cols[8])) {
+				LOG.info(String.format("Cross species: %s, %s -> %s", cols[0], cols[3], cols[8]));
+				continue;
+			}
+			
+			String kinaseGeneId = getGeneId(cols[0], cols[3], cols[2]);
+			if (StringUtils.isEmpty(kinaseGeneId)) {
+				LOG.info(String.format("Kinase Gene ID not found: %s, %s", cols[0], cols[3]));
+				continue;
+			}
 //				LOG.info(String.format("%s, %s -> %s", cols[0], cols[3], kinaseGeneId));
-				String targetGeneId = cols[5];
+			String targetGeneId = cols[5];
 //				LOG.info(String.format("%s->%s", kinaseGeneId, targetGeneId));
-				
-				// TODO should also check synonyms 
+			
+			// TODO should also check synonyms 
+			if (StringUtils.isEmpty(targetGeneId)) {
+				targetGeneId = getGeneIdByAccession(cols[6]);
 				if (StringUtils.isEmpty(targetGeneId)) {
-					targetGeneId = getGeneIdByAccession(cols[6]);
-					if (StringUtils.isEmpty(targetGeneId)) {
-						LOG.info(String.format("Target Gene ID not found: %s, %s, %s", cols[6], cols[7], cols[8]));
-						continue;
-					}
+					LOG.info(String.format("Target Gene ID not found: %s, %s, %s", cols[6], cols[7], cols[8]));
+					continue;
 				}
-				Item relation = createRelation(kinaseGeneId, targetGeneId);
-				
-				// identify the target protein accession
-				String targetProteinId = cols[6];
-				String accession = null;
-				if (targetProteinId.startsWith("ENS")) {
-					accession = getPrimaryAccession(targetProteinId);
-					if (StringUtils.isEmpty(accession)) {
-						LOG.info("Unable to find the accession: " + targetProteinId);
-					}
-					LOG.info(targetProteinId + " -> " + accession);
-				} else if (targetProteinId.contains("_")) {
-					accession = getPrimaryAccession(targetProteinId);
-					if (StringUtils.isEmpty(accession)) {
-						LOG.info("Unable to find the accession: " + targetProteinId);
-					}
-					LOG.info(targetProteinId + " -> " + accession);
-				} else if (targetProteinId.contains("-")) {
-					LOG.info("Skip isoform: " + targetProteinId);
-				} else {
-					accession = targetProteinId;
+			}
+			Item relation = createRelation(kinaseGeneId, targetGeneId);
+			
+			// identify the target protein accession
+			String targetProteinId = cols[6];
+			String accession = null;
+			if (targetProteinId.startsWith("ENS")) {
+				accession = getPrimaryAccession(targetProteinId);
+				if (StringUtils.isEmpty(accession)) {
+					LOG.info("Unable to find the accession: " + targetProteinId);
 				}
-				
-				if (!StringUtils.isEmpty(accession)) {
-					String sequence = getProteinSequence(accession);
-					if (!StringUtils.isEmpty(sequence)) {
-						String modifiedResidue = cols[9];
-						int position = Integer.valueOf(modifiedResidue.substring(1)).intValue();
-						String residue = modifiedResidue.substring(0, 1);
-						
-						if (position > sequence.length()) {
-							LOG.info(String.format("Position is greater than the length of the sequence, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
+				LOG.info(targetProteinId + " -> " + accession);
+			} else if (targetProteinId.contains("_")) {
+				accession = getPrimaryAccession(targetProteinId);
+				if (StringUtils.isEmpty(accession)) {
+					LOG.info("Unable to find the accession: " + targetProteinId);
+				}
+				LOG.info(targetProteinId + " -> " + accession);
+			} else if (targetProteinId.contains("-")) {
+				LOG.info("Skip isoform: " + targetProteinId);
+			} else {
+				accession = targetProteinId;
+			}
+			
+			if (!StringUtils.isEmpty(accession)) {
+				String sequence = getProteinSequence(accession);
+				if (!StringUtils.isEmpty(sequence)) {
+					String modifiedResidue = cols[9];
+					int position = Integer.valueOf(modifiedResidue.substring(1)).intValue();
+					String residue = modifiedResidue.substring(0, 1);
+					
+					if (position > sequence.length()) {
+						LOG.info(String.format("Position is greater than the length of the sequence, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
+						continue;
+					}
+					
+					String expectedResidue = sequence.substring(position - 1, position);
+					if (!expectedResidue.equals(residue)) {
+						if (position + 1 > sequence.length()) {
+//								throw new RuntimeException(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position)); 
+							LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
 							continue;
 						}
-						
-						String expectedResidue = sequence.substring(position - 1, position);
-						if (!expectedResidue.equals(residue)) {
-							if (position + 1 > sequence.length()) {
-//								throw new RuntimeException(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", proteinId, residue, position)); 
-								LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
-								continue;
-							}
-							expectedResidue = sequence.substring(position, position + 1);
-							if (expectedResidue.equals(residue)) {
-								LOG.info(String.format("Inconsistence residue. Automatically correct the position. %s: %d -> %d.", targetProteinId, position, position + 1));
-								position = position + 1;
-							} else {
-								LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
-								continue;
-							}
+						expectedResidue = sequence.substring(position, position + 1);
+						if (expectedResidue.equals(residue)) {
+							LOG.info(String.format("Inconsistence residue. Automatically correct the position. %s: %d -> %d.", targetProteinId, position, position + 1));
+							position = position + 1;
+						} else {
+							LOG.info(String.format("Inconsistence residue. Unable to correct the position, skip the entry. %s: %s-%d.", targetProteinId, residue, position));
+							continue;
 						}
-						
-						relation.addToCollection("modifications", getModification(accession, String.valueOf(position), residue));
 					}
 					
+					relation.addToCollection("modifications", getModification(accession, String.valueOf(position), residue));
 				}
-
-			} else {
-				if (cols[0].equals("GENE")) {
-					flag = true;
-				}
+				
 			}
+
 		}
-    }
+	}
+
 
 	@Override
 	public void close() throws Exception {
@@ -291,38 +329,20 @@ public class PspRelationConverter extends BioFileConverter
 		return ret;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private String getGeneIdByAccession(String proteinAccession) throws Exception {
-		String ret = null;
-		if (ret == null) {
-			Query q = new Query();
-			QueryClass qcProtein = new QueryClass(Protein.class);
-			QueryClass qcGene = new QueryClass(Gene.class);
-			QueryField qfPrimaryAcc = new QueryField(qcProtein, "primaryAccession");
-			QueryField qfPrimaryIdentifier = new QueryField(qcGene, "primaryIdentifier");
-			q.addFrom(qcProtein);
-			q.addFrom(qcGene);
-			q.addToSelect(qfPrimaryIdentifier);
-			
-			ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-			
-			QueryCollectionReference qcr = new QueryCollectionReference(qcProtein, "genes");
-			cs.addConstraint(new ContainsConstraint(qcr, ConstraintOp.CONTAINS, qcGene));
-			cs.addConstraint(new SimpleConstraint(qfPrimaryAcc, ConstraintOp.EQUALS, new QueryValue(proteinAccession)));
-			q.setConstraint(cs);
-			
-			// LOG.info("querying for " + qs + " ......");
-			ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-			Results results = os.execute(q);
-			Iterator<Object> iterator = results.iterator();
-			if (iterator.hasNext()) {
-				ResultsRow<String> rr = (ResultsRow<String>) iterator.next();
-				ret = rr.get(0);
-			} else {
-				ret = "";
-			}
+	// Protein.primaryAccession -> Protein.genes.primaryIdentifier
+	private BulkIdResolver geneResolver;
+
+	private BulkIdResolver getGeneResolver() {
+		if (geneResolver == null) {
+			geneResolver = new BulkIdResolver(osAlias, "Protein", "primaryAccession", "genes",
+					null, "primaryIdentifier");
 		}
-		return ret;
+		return geneResolver;
+	}
+
+	private String getGeneIdByAccession(String proteinAccession) throws Exception {
+		String ret = getGeneResolver().resolve(proteinAccession);
+		return ret == null ? "" : ret;
 	}
 
 	private Map<String, String> primaryAccessionMap = new HashMap<String, String>();
@@ -364,43 +384,19 @@ public class PspRelationConverter extends BioFileConverter
 		return ret;
 	}
 
-	private Map<String, String> proteinSequenceMap = new HashMap<String, String>();
-
-	@SuppressWarnings("unchecked")
-	private String getProteinSequence(String proteinAccession) throws Exception {
-		String ret = proteinSequenceMap.get(proteinAccession);
+	// Protein.primaryAccession -> Protein.sequence.residues
+	private BulkIdResolver sequenceResolver;
 
-		if (ret == null) {
-			Query q = new Query();
-			QueryClass qcProtein = new QueryClass(Protein.class);
-			QueryClass qcSequence = new QueryClass(Sequence.class);
-			QueryField qfPrimaryAcc = new QueryField(qcProtein, "primaryAccession");
-			QueryField qfResidues = new QueryField(qcSequence, "residues");
-			q.addFrom(qcProtein);
-			q.addFrom(qcSequence);
-			q.addToSelect(qfResidues);
-
-			ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
-
-			QueryObjectReference synRef = new QueryObjectReference(qcProtein, "sequence");
-			cs.addConstraint(new ContainsConstraint(synRef, ConstraintOp.CONTAINS, qcSequence));
-			cs.addConstraint(new SimpleConstraint(qfPrimaryAcc, ConstraintOp.EQUALS, new QueryValue(proteinAccession)));
-			q.setConstraint(cs);
-
-			// LOG.info("querying for " + qs + " ......");
-			ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
-			Results results = os.execute(q);
-			Iterator<Object> iterator = results.iterator();
-			if (iterator.hasNext()) {
-				ResultsRow<ClobAccess> rr = (ResultsRow<ClobAccess>) iterator.next();
-				ret = rr.get(0).toString();
-			} else {
-				ret = "";
-			}
-			proteinSequenceMap.put(proteinAccession, ret);
+	private BulkIdResolver getSequenceResolver() {
+		if (sequenceResolver == null) {
+			sequenceResolver = new BulkIdResolver(osAlias, "Protein", "primaryAccession", "sequence",
+					null, "residues");
 		}
+		return sequenceResolver;
+	}
 
-		return ret;
+	private String getProteinSequence(String proteinAccession) throws Exception {
+		return getSequenceResolver().resolve(proteinAccession);
 	}
 
 }
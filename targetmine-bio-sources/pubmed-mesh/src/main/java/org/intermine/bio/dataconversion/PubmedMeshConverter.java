@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -71,7 +70,9 @@ public class PubmedMeshConverter extends BioFileConverter
     		// update file contents should be read first
     		System.out.println("Processing the update file ...");
     		LOG.info("Processing the update file ...");
-    		processMeshTxtFile(new FileReader(updateFile));
+    		try (Reader updateReader = InputFiles.openReader(updateFile)) {
+    			processMeshTxtFile(updateReader);
+    		}
     	}
     	
 		String fileName = getCurrentFile().getName();
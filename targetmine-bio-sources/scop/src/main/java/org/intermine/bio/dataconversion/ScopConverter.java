@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -123,41 +122,42 @@ public class ScopConverter extends BioFileConverter {
 			throw new NullPointerException("claFile property not set");
 		}
 
-		Iterator<String[]> iterator = FormattedTextParser
-				.parseTabDelimitedReader(new BufferedReader(new FileReader(claFile)));
-
-		Pattern pattern = Pattern
-				.compile("cl=(\\d+),cf=(\\d+),sf=(\\d+),fa=(\\d+),dm=(\\d+),sp=(\\d+),px=(\\d+)");
-		// content start
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-
-			Matcher matcher = pattern.matcher(cols[5]);
-			if (matcher.matches()) {
-				List<String> parentRefIds = new ArrayList<String>();
-				for (int i = 0; i < 7; i++) {
-					Integer identifier = Integer.valueOf(matcher.group(i + 1));
-					Item item = scopEntryMap.get(identifier);
-					if (i > 0) {
-						parentRefIds.add(scopEntryMap.get(Integer.valueOf(matcher.group(i)))
-								.getIdentifier());
-						item.setCollection("parents", parentRefIds);
-					}
-					if (savedEntries.contains(item.getIdentifier())) {
-						continue;
-					}
-					if (i == 6) {
-						createStructuralRegion(cols[1], cols[2], item.getIdentifier());
+		try (Reader reader = InputFiles.openReader(claFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+
+			Pattern pattern = Pattern
+					.compile("cl=(\\d+),cf=(\\d+),sf=(\\d+),fa=(\\d+),dm=(\\d+),sp=(\\d+),px=(\\d+)");
+			// content start
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+
+				Matcher matcher = pattern.matcher(cols[5]);
+				if (matcher.matches()) {
+					List<String> parentRefIds = new ArrayList<String>();
+					for (int i = 0; i < 7; i++) {
+						Integer identifier = Integer.valueOf(matcher.group(i + 1));
+						Item item = scopEntryMap.get(identifier);
+						if (i > 0) {
+							parentRefIds.add(scopEntryMap.get(Integer.valueOf(matcher.group(i)))
+									.getIdentifier());
+							item.setCollection("parents", parentRefIds);
+						}
+						if (savedEntries.contains(item.getIdentifier())) {
+							continue;
+						}
+						if (i == 6) {
+							createStructuralRegion(cols[1], cols[2], item.getIdentifier());
+						}
+						store(item);
+						savedEntries.add(item.getIdentifier());
 					}
-					store(item);
-					savedEntries.add(item.getIdentifier());
+				} else {
+					throw new RuntimeException("Unexpected string format: " + cols[5]);
 				}
-			} else {
-				throw new RuntimeException("Unexpected string format: " + cols[5]);
+
 			}
 
 		}
-
 	}
 
 	private void createStructuralRegion(String pdbid, String chainRegion, String referencefId)
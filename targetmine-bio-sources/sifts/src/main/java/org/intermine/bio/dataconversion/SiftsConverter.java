@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -148,27 +147,28 @@ public class SiftsConverter extends BioFileConverter {
 	private Map<String, Set<String>> chainOrganismMap;
 
 	private void readPdbChainTaxonFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(
-				pdbChainTaxonFile));
-
-		chainOrganismMap = new HashMap<String, Set<String>>();
-
-		// skip header
-		iterator.next();
-		while (iterator.hasNext()) {
-			// there are more than one tab between columns, for example,
-			// "101m\tA\t9755\t\tPROTEIN\t\t\tPhyseter catodon"
-			String[] cols = iterator.next();
-			String identifier = cols[0] + cols[1];
-			String taxId = cols[2];
-
-			if (!StringUtils.isEmpty(taxId) && StringUtils.isNumeric(taxId)) {
-				if (chainOrganismMap.get(identifier) == null) {
-					chainOrganismMap.put(identifier, new HashSet<String>());
+		try (Reader reader = InputFiles.openReader(pdbChainTaxonFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+
+			chainOrganismMap = new HashMap<String, Set<String>>();
+
+			// skip header
+			iterator.next();
+			while (iterator.hasNext()) {
+				// there are more than one tab between columns, for example,
+				// "101m\tA\t9755\t\tPROTEIN\t\t\tPhyseter catodon"
+				String[] cols = iterator.next();
+				String identifier = cols[0] + cols[1];
+				String taxId = cols[2];
+
+				if (!StringUtils.isEmpty(taxId) && StringUtils.isNumeric(taxId)) {
+					if (chainOrganismMap.get(identifier) == null) {
+						chainOrganismMap.put(identifier, new HashSet<String>());
+					}
+					chainOrganismMap.get(identifier).add(taxId);
 				}
-				chainOrganismMap.get(identifier).add(taxId);
-			}
 
+			}
 		}
 	}
 
@@ -188,21 +188,22 @@ public class SiftsConverter extends BioFileConverter {
 
 		pdbIdPubmedIdMap = new HashMap<String, List<String>>();
 
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(
-				pdbPubmedFile));
-
-		// skip header
-		iterator.next();
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			String pdbId = cols[0].toLowerCase();
-			// Entry 5ii6 contains pubmed ids with strange leading '0' (2018/4/6)  
-			// e.g. 0001690843", 0006819087", 0006793422", 0006928658
-			String pubmedId = String.valueOf(Integer.parseInt(cols[2]));
-			if (pdbIdPubmedIdMap.get(pdbId) == null) {
-				pdbIdPubmedIdMap.put(pdbId, new ArrayList<String>());
+		try (Reader reader = InputFiles.openReader(pdbPubmedFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+
+			// skip header
+			iterator.next();
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				String pdbId = cols[0].toLowerCase();
+				// Entry 5ii6 contains pubmed ids with strange leading '0' (2018/4/6)  
+				// e.g. 0001690843", 0006819087", 0006793422", 0006928658
+				String pubmedId = String.valueOf(Integer.parseInt(cols[2]));
+				if (pdbIdPubmedIdMap.get(pdbId) == null) {
+					pdbIdPubmedIdMap.put(pdbId, new ArrayList<String>());
+				}
+				pdbIdPubmedIdMap.get(pdbId).add(pubmedId);
 			}
-			pdbIdPubmedIdMap.get(pdbId).add(pubmedId);
 		}
 	}
 
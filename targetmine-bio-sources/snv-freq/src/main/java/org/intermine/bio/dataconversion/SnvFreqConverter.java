@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -64,8 +63,7 @@ public class SnvFreqConverter extends BioFileConverter
     }
 
 	private void getPopulationRefMap() throws ObjectStoreException {
-		try {
-			FileReader reader = new FileReader(populationFile);
+		try (Reader reader = InputFiles.openReader(populationFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 
 			while (iterator.hasNext()) {
@@ -81,7 +79,6 @@ public class SnvFreqConverter extends BioFileConverter
 				populationRefMap.put(code, refId);
 				populationRefMap.put(popId, refId);
 			}
-			reader.close();
 			
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -146,7 +145,7 @@ public class TaxonPathwayConverter extends BioFileConverter {
 		}
 		try {
 			taxonCodeIdMap.clear();
-			BufferedReader reader = new BufferedReader(new FileReader(taxonMapFile));
+			BufferedReader reader = InputFiles.openReader(taxonMapFile);
 			String line;
 			while ((line = reader.readLine()) != null) {
 				if (line.startsWith("#")) {
@@ -174,7 +173,7 @@ public class TaxonPathwayConverter extends BioFileConverter {
 			subClassMap.clear();
 			pathwayNameMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayClassFile));
+			BufferedReader reader = InputFiles.openReader(pathwayClassFile);
 			String line;
 			String mainClass = "";
 			String subClass = "";
@@ -214,7 +213,7 @@ public class TaxonPathwayConverter extends BioFileConverter {
 		try {
 			pathwayDescMap.clear();
 			
-			BufferedReader reader = new BufferedReader(new FileReader(pathwayDescFile));
+			BufferedReader reader = InputFiles.openReader(pathwayDescFile);
 			String line;
 			while ((line = reader.readLine()) != null) {
 				String[] split = line.split("\\t");
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -112,8 +111,8 @@ public class TaxonomyConverter extends BioFileConverter
     private Map<String, String> readNameMap() {
 		System.out.println("Processing the file names.dmp......");
 		Map<String,String> ret = new HashMap<String, String>();
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseDelimitedReader(new FileReader(nameFile), '|');
+		try (Reader reader = InputFiles.openReader(nameFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseDelimitedReader(reader, '|');
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				String taxonId = cols[0].trim();
@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -90,8 +89,8 @@ public class TmClinvarConverter extends BioFileConverter {
 		
 		Set<String> processedAllele = new HashSet<String>();
 
-		try {
-			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+		try (Reader input = InputFiles.reopen(getCurrentFile(), reader)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(input);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				String alleleId = cols[0];
@@ -159,7 +158,6 @@ public class TmClinvarConverter extends BioFileConverter {
 				
 				processedAllele.add(alleleId);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -175,8 +173,7 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info("Parsing the file submission_summary.txt......");
 		System.out.println("Parsing the file submission_summary.txt......");
 
-		try {
-			FileReader reader = new FileReader(submissionSummaryFile);
+		try (Reader reader = InputFiles.openReader(submissionSummaryFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -234,7 +231,6 @@ public class TmClinvarConverter extends BioFileConverter {
 
 				store(item);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -250,8 +246,7 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info("Parsing the file var_citations.txt......");
 		System.out.println("Parsing the file var_citations.txt......");
 
-		try {
-			FileReader reader = new FileReader(variationCitationsFile);
+		try (Reader reader = InputFiles.openReader(variationCitationsFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			Map<String, Set<String>> varPubMap = new HashMap<String, Set<String>>();
 			while (iterator.hasNext()) {
@@ -269,7 +264,6 @@ public class TmClinvarConverter extends BioFileConverter {
 					varPubMap.get(cols[1]).add(cid);
 				}
 			}
-			reader.close();
 
 			for (String varId : varPubMap.keySet()) {
 				Item item = createItem("Variation");
@@ -312,8 +306,7 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info("Parsing the file variation_allele.txt......");
 		System.out.println("Parsing the file variation_allele.txt......");
 
-		try {
-			FileReader reader = new FileReader(variationAlleleFile);
+		try (Reader reader = InputFiles.openReader(variationAlleleFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -323,7 +316,6 @@ public class TmClinvarConverter extends BioFileConverter {
 				}
 				alleleVariationMap.get(cols[2]).add(cols[0]);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -346,14 +338,12 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info("Parsing the file allele_gene.txt......");
 		System.out.println("Parsing the file allele_gene.txt......");
 
-		try {
-			FileReader reader = new FileReader(alleleGeneFile);
+		try (Reader reader = InputFiles.openReader(alleleGeneFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
 				snpTypeMap.put(cols[0] + "-" + cols[1], cols[5]);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -490,8 +480,7 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s......", fileName));
 		System.out.println(String.format("Parsing the file %s......", fileName));
 
-		try {
-			FileReader reader = new FileReader(variationNameFile);
+		try (Reader reader = InputFiles.openReader(variationNameFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -502,7 +491,6 @@ public class TmClinvarConverter extends BioFileConverter {
 				}
 				variationNameMap.put(vid, name);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -520,8 +508,7 @@ public class TmClinvarConverter extends BioFileConverter {
 		LOG.info(String.format("Parsing the file %s......", fileName));
 		System.out.println(String.format("Parsing the file %s......", fileName));
 
-		try {
-			FileReader reader = new FileReader(clinicalAssertionPubmedFile);
+		try (Reader reader = InputFiles.openReader(clinicalAssertionPubmedFile)) {
 			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
 			while (iterator.hasNext()) {
 				String[] cols = iterator.next();
@@ -529,7 +516,6 @@ public class TmClinvarConverter extends BioFileConverter {
 				String pids = cols[2];
 				accPubmedIdMap.put(acc, pids);
 			}
-			reader.close();
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
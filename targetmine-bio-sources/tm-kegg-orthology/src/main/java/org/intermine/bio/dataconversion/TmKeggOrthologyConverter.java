@@ -1,7 +1,6 @@
 package org.intermine.bio.dataconversion;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -131,10 +130,12 @@ public class TmKeggOrthologyConverter extends BioFileConverter {
 	}
 	private Map<String, String> orgCodeTaxonIdMap = new HashMap<String, String>();
 	private void processTaxonRankFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(taxonRankFile));
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			orgCodeTaxonIdMap.put(cols[0], cols[1]);
+		try (Reader reader = InputFiles.openReader(taxonRankFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				orgCodeTaxonIdMap.put(cols[0], cols[1]);
+			}
 		}
 	}
 
@@ -146,10 +147,12 @@ public class TmKeggOrthologyConverter extends BioFileConverter {
 	
 	private Map<String, String> flyIdMap = new HashMap<String, String>();
 	private void processFlyIdMapFile() throws Exception {
-		Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(new FileReader(flyIdMapFile));
-		while (iterator.hasNext()) {
-			String[] cols = iterator.next();
-			flyIdMap.put(cols[3], cols[1]);
+		try (Reader reader = InputFiles.openReader(flyIdMapFile)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseTabDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				String[] cols = iterator.next();
+				flyIdMap.put(cols[3], cols[1]);
+			}
 		}
 	}
 
@@ -4,16 +4,24 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import nu.xom.Attribute;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
@@ -25,7 +33,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
-import org.intermine.metadata.Util;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.xml.full.Item;
 
@@ -33,6 +40,12 @@ import org.intermine.xml.full.Item;
  * A new UniProt XML parser using XOM library Some settings were hard-coded which may be only
  * suitable for TargetMine
  * 
+ * By default the entries are read by the streaming UniprotEntryParser; set the parser property
+ * to "xom" to build a XOM document per entry as before. Both are read into UniprotEntry objects
+ * and converted by processEntry(). With the threads property above 1, the
+ * entries are split from the file by one thread and parsed by chunks in a thread pool, while the
+ * calling thread creates and stores the items in the order of the file.
+ * 
  * @author chenyian
  * 
  */
@@ -43,9 +56,10 @@ public class UniprotXomConverter extends BioFileConverter {
 	private static final String DATA_SOURCE_NAME = "UniProt";
 	private static final int POSTGRES_INDEX_SIZE = 2712;
 	private static final String FEATURE_TYPES = "initiator methionine, signal peptide, transit peptide, propeptide, chain, peptide, topological domain, transmembrane region, intramembrane region, domain, repeat, calcium-binding region, zinc finger region, DNA-binding region, nucleotide phosphate-binding region, region of interest, coiled-coil region, short sequence motif, compositionally biased region, active site, metal ion-binding site, binding site, site, non-standard amino acid, modified residue, lipid moiety-binding region, glycosylation site, disulfide bond, cross-link";
-	private static final String UNIPROT_NAMESPACE = "https://uniprot.org/uniprot";
 
 	private static final String SUBCELLULAR_LOCATION = "subcellular location";
+	private static final int ENTRIES_PER_CHUNK = 100;
+	private static final int CHUNKS_PER_THREAD = 4;
 	
 	private String dataSource;
 	private Set<String> featureTypes = new HashSet<String>(Arrays.asList(FEATURE_TYPES
@@ -67,6 +81,33 @@ public class UniprotXomConverter extends BioFileConverter {
 	// for logging
 	private int numOfNewEntries = 0;
 
+	private String parser = "stax";
+
+	/**
+	 * @param parser "stax" (default) or "xom"
+	 */
+	public void setParser(String parser) {
+		this.parser = parser;
+	}
+
+	private int threads = 1;
+
+	/**
+	 * @param threads number of threads parsing the entries, 1 (default) for no extra threads
+	 */
+	public void setThreads(String threads) {
+		this.threads = Integer.parseInt(threads.trim());
+	}
+
+	private int entriesPerChunk = ENTRIES_PER_CHUNK;
+
+	/**
+	 * @param entriesPerChunk number of entries parsed together by a thread, 100 by default
+	 */
+	public void setEntriesPerChunk(String entriesPerChunk) {
+		this.entriesPerChunk = Math.max(1, Integer.parseInt(entriesPerChunk.trim()));
+	}
+
 	public UniprotXomConverter(ItemWriter writer, Model model) {
 		super(writer, model);
 		dataSource = getDataSource(DATA_SOURCE_NAME);
@@ -84,6 +125,10 @@ public class UniprotXomConverter extends BioFileConverter {
 			loadPtmListFile();
 		}
 		LOG.info("Start to process uniprot");
+		if (!"xom".equals(parser)) {
+			processEntries(reader);
+			return;
+		}
 		try {
 			BufferedReader br = new BufferedReader(reader);
 
@@ -108,439 +153,655 @@ public class UniprotXomConverter extends BioFileConverter {
 					// process
 					Builder parser = new Builder();
 					Document doc = parser.build(new ByteArrayInputStream(sb.toString().getBytes()));
-					Element entry = doc.getRootElement();
+					processEntry(readXomEntry(doc.getRootElement()));
+				}
+
+			}
+
+			br.close();
+
+		} catch (ParsingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		String info = "Create " + numOfNewEntries + " entries.";
+		System.out.println(info);
+		LOG.info(info);
+
+	}
 
-					Elements accessions = entry.getChildElements("accession",UNIPROT_NAMESPACE);
-					if ( accessions.size() == 0 ){
-						continue;
+	private long entryNum = 0;
+
+	private void processEntries(Reader reader) throws Exception {
+		if (threads > 1) {
+			processEntriesInParallel(reader);
+		} else {
+			UniprotEntryParser entryParser = new UniprotEntryParser(new BufferedReader(reader));
+			UniprotEntry entry;
+			while ((entry = entryParser.next()) != null) {
+				processEntry(entry);
+			}
+			entryParser.close();
+		}
+
+		String info = "Create " + numOfNewEntries + " entries.";
+		System.out.println(info);
+		LOG.info(info);
+	}
+
+	/**
+	 * The file is split into chunks of entries by a splitter thread and the chunks are parsed by
+	 * the workers. The futures are queued in the order of the file, so that the items are created
+	 * here in the same order as by the sequential parser; the bounded queue blocks the splitter
+	 * when the workers or this thread fall behind.
+	 */
+	private void processEntriesInParallel(final Reader reader) throws Exception {
+		LOG.info("Parse the entries with " + threads + " threads");
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final BlockingQueue<Future<List<UniprotEntry>>> chunks =
+				new ArrayBlockingQueue<Future<List<UniprotEntry>>>(threads * CHUNKS_PER_THREAD);
+		final FutureTask<List<UniprotEntry>> end = new FutureTask<List<UniprotEntry>>(
+				new Callable<List<UniprotEntry>>() {
+					@Override
+					public List<UniprotEntry> call() {
+						return null;
 					}
-					String accession = accessions.get(0).getValue();
-					Set<String> otherAccessions = new HashSet<String>();
-					for (int i = 1; i < accessions.size(); i++) {
-						otherAccessions.add(accessions.get(i).getValue());
+				});
+		final Exception[] splitError = new Exception[1];
+		Thread splitter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					splitEntries(new BufferedReader(reader), workers, chunks);
+				} catch (InterruptedException e) {
+					// the items are not being stored any more
+					return;
+				} catch (Exception e) {
+					splitError[0] = e;
+				}
+				try {
+					chunks.put(end);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "uniprot-splitter");
+		splitter.start();
+
+		try {
+			Future<List<UniprotEntry>> chunk;
+			while ((chunk = chunks.take()) != end) {
+				List<UniprotEntry> entries;
+				try {
+					entries = chunk.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Failed to parse the entries", e.getCause());
+				}
+				for (UniprotEntry entry : entries) {
+					processEntry(entry);
+				}
+			}
+			splitter.join();
+		} finally {
+			splitter.interrupt();
+			workers.shutdownNow();
+			reader.close();
+		}
+		if (splitError[0] != null) {
+			throw splitError[0];
+		}
+	}
+
+	/**
+	 * Split the file into chunks of entriesPerChunk entries by the lines, as the XOM
+	 * implementation does, wrapped in the root element of the file.
+	 */
+	private void splitEntries(BufferedReader br, ExecutorService workers,
+			BlockingQueue<Future<List<UniprotEntry>>> chunks) throws IOException,
+			InterruptedException {
+		String root = "<uniprot>";
+		StringBuilder sb = null;
+		int entries = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (sb == null) {
+				if (line.startsWith("<uniprot")) {
+					root = line;
+				}
+				if (!line.startsWith("<entry")) {
+					continue;
+				}
+				sb = new StringBuilder(root).append('\n');
+			}
+			sb.append(line).append('\n');
+			if (line.startsWith("</entry>")) {
+				entries++;
+				if (entries == entriesPerChunk) {
+					chunks.put(workers.submit(new ChunkParser(sb.append("</uniprot>\n"))));
+					sb = null;
+					entries = 0;
+				}
+			}
+		}
+		if (sb != null) {
+			chunks.put(workers.submit(new ChunkParser(sb.append("</uniprot>\n"))));
+		}
+	}
+
+	private static class ChunkParser implements Callable<List<UniprotEntry>> {
+		private StringBuilder chunk;
+
+		ChunkParser(StringBuilder chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		public List<UniprotEntry> call() throws Exception {
+			List<UniprotEntry> ret = UniprotEntryParser.parseEntries(new StringReader(chunk
+					.toString()));
+			chunk = null;
+			for (UniprotEntry entry : ret) {
+				// calculated here rather than by the thread storing the items
+				entry.getSequenceChecksum();
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Create the items of an entry, whichever parser has read it.
+	 */
+	private void processEntry(UniprotEntry entry) throws ObjectStoreException {
+		entryNum++;
+		if (entryNum % 1000000 == 0) {
+			System.out.println(String.format("%,d entries were processed", entryNum));
+			LOG.info(String.format("%,d entries were processed", entryNum));
+		}
+		List<String> accessions = entry.getAccessions();
+		if (accessions.isEmpty()) {
+			return;
+		}
+		String accession = accessions.get(0);
+		// should not find duplicated primary accessions
+		if (doneEntries.contains(accession)) {
+			return;
+		}
+		Set<String> otherAccessions = new HashSet<String>(accessions.subList(1,
+				accessions.size()));
+		Item protein = createItem("Protein");
+		String dataSet = getDataSet(entry.getDataset() + " data set", dataSource);
+		protein.addToCollection("dataSets", dataSet);
+
+		/* primaryAccession, primaryIdentifier, name, etc */
+		String primaryIdentifier = entry.getName();
+		protein.setAttribute("name", entry.getProteinName());
+		for (String value : entry.getProteinSynonyms()) {
+			addSynonym(protein.getIdentifier(), value);
+		}
+
+		protein.setAttribute("uniprotAccession", accession);
+		protein.setAttribute("primaryAccession", accession);
+		for (String acc : otherAccessions) {
+			// other accessions are synonyms
+			addSynonym(protein.getIdentifier(), acc);
+		}
+
+		protein.setAttribute("primaryIdentifier", primaryIdentifier);
+		protein.setAttribute("uniprotName", primaryIdentifier);
+
+		if (entry.hasGene()) {
+			protein.setAttribute("symbol", entry.getGeneSymbol());
+		} else {
+			LOG.info(String.format("No gene entity: %s", primaryIdentifier));
+			protein.setAttribute("symbol", primaryIdentifier);
+		}
+
+		protein.setAttribute("isUniprotCanonical", "true");
+
+		/* sequence */
+		protein.setAttribute("isFragment", entry.isFragment() ? "true" : "false");
+		protein.setAttribute("length", entry.getLength());
+		protein.setAttribute("molecularWeight", entry.getMass());
+
+		String aaSeq = entry.getSequence();
+		String md5Checksum = getSequence(aaSeq, entry.getSequenceChecksum());
+		protein.setReference("sequence", allSequences.get(md5Checksum));
+		protein.setAttribute("md5checksum", md5Checksum);
+
+		String taxonId = entry.getTaxonId();
+		protein.setReference("organism", getOrganism(taxonId));
+
+		/* publications */
+		for (String pubMedId : entry.getPublications()) {
+			protein.addToCollection("publications", getPublication(pubMedId));
+		}
+
+		// only ECO:0000269, i.e. published experimental evidence
+		Map<String, String> evidPubMap = entry.getEvidencePublications();
+
+		/* comments */
+		for (UniprotEntry.Comment comment : entry.getComments()) {
+			String commentType = comment.getType();
+			if (comment.hasText()) {
+				String commentText = comment.getText();
+				Item item = createItem("Comment");
+				item.setAttribute("type", commentType);
+				if (commentText.length() > POSTGRES_INDEX_SIZE) {
+					// comment text is a string
+					String ellipses = "...";
+					String choppedComment = commentText.substring(0, POSTGRES_INDEX_SIZE
+							- ellipses.length());
+					item.setAttribute("description", choppedComment + ellipses);
+				} else {
+					item.setAttribute("description", commentText);
+				}
+				addEvidencePublications(item, comment.getTextEvidence(), evidPubMap);
+				store(item);
+				protein.addToCollection("comments", item);
+			}
+
+			if (commentType.equals(SUBCELLULAR_LOCATION)) {
+				for (UniprotEntry.Location location : comment.getLocations()) {
+					Item item = createItem("SubcellularLocation");
+					item.setAttribute("name", location.getValue());
+					addEvidencePublications(item, location.getEvidence(), evidPubMap);
+					store(item);
+					protein.addToCollection("subcellularLocations", item);
+				}
+			}
+		}
+
+		/* keywords */
+		for (UniprotEntry.Keyword keyword : entry.getKeywords()) {
+			String id = keyword.getId();
+			String refId = keywords.get(id);
+			if (refId == null) {
+				Item item = createItem("OntologyTerm");
+				item.setAttribute("identifier", id);
+				item.setAttribute("name", keyword.getValue());
+				item.setReference("ontology", ontologies.get("UniProtKeyword"));
+				refId = item.getIdentifier();
+				keywords.put(id, refId);
+				store(item);
+			}
+			protein.addToCollection("keywords", refId);
+		}
+
+		/* dbrefs */
+		Set<String> geneIds = new HashSet<String>();
+		for (UniprotEntry.DbReference dbRef : entry.getDbReferences()) {
+			String type = dbRef.getType();
+			if (type.equals("GeneID")) {
+				geneIds.add(dbRef.getId());
+			} else if (type.equals("Ensembl")) {
+				for (String value : dbRef.getPropertyValues("protein sequence ID")) {
+					addSynonym(protein.getIdentifier(), value);
+				}
+			} else if (type.equals("RefSeq")) {
+				addSynonym(protein.getIdentifier(), dbRef.getId());
+			}
+		}
+
+		/* genes */
+		if (geneIds.isEmpty()) {
+			LOG.error("no valid gene identifiers found for " + accession);
+		} else {
+			for (String identifier : geneIds) {
+				if (StringUtils.isEmpty(identifier)) {
+					continue;
+				}
+				String geneRefId = genes.get(identifier);
+				if (geneRefId == null) {
+					Item gene = createItem("Gene");
+					gene.setAttribute("primaryIdentifier", identifier);
+					gene.setReference("organism", getOrganism(taxonId));
+					geneRefId = gene.getIdentifier();
+					genes.put(identifier, geneRefId);
+					store(gene);
+				}
+				protein.addToCollection("genes", geneRefId);
+			}
+		}
+
+		/* features */
+		Set<String> modificationSet = new HashSet<String>();
+		for (UniprotEntry.Feature feature : entry.getFeatures()) {
+			String type = feature.getType();
+			if (!featureTypes.contains(type)) {
+				continue;
+			}
+
+			String description = feature.getDescription();
+			String status = feature.getStatus();
+
+			Item featureItem = createItem("UniProtFeature");
+			featureItem.setAttribute("type", type);
+			featureItem.setAttribute("regionType", "feature");
+			String featureDescription = description;
+			if (status != null) {
+				featureDescription = (description == null ? status : description + " ("
+						+ status + ")");
+			}
+			if (!StringUtils.isEmpty(featureDescription)) {
+				featureItem.setAttribute("description", featureDescription);
+			}
+			String sequence = feature.getLocationSequence();
+			if (sequence != null && !sequence.equals(accession)) {
+				// skip this feature
+				continue;
+			}
+
+			String modiPos = null;
+			if (feature.hasPosition()) {
+				modiPos = feature.getPosition();
+				featureItem.setAttribute("start", modiPos);
+				featureItem.setAttribute("end", modiPos);
+			} else if (feature.hasRange()) {
+				// beware that some entries contain unknown position
+				// e.g. <end status="unknown"/>
+				String begin = feature.getBegin();
+				if (begin != null) {
+					featureItem.setAttribute("start", begin);
+				}
+				String end = feature.getEnd();
+				if (end != null) {
+					featureItem.setAttribute("end", end);
+				}
+				if (begin != null && begin.equals(end)) {
+					modiPos = begin;
+					// should not happen?
+					LOG.info("Protein " + accession + " contains the same begin and end values.");
+				}
+			}
+			featureItem.setReference("protein", protein);
+
+			Set<String> pubRefIds = new HashSet<String>();
+			String evidStringIds = feature.getEvidence();
+			if (evidStringIds != null) {
+				for (String eId : evidStringIds.split(" ")) {
+					if (evidPubMap.get(eId) != null) {
+						pubRefIds.add(getPublication(evidPubMap.get(eId)));
 					}
-					// should not find duplicated primary accessions
-					if (!doneEntries.contains(accession)) {
-						// create Protein items
-						Item protein = createItem("Protein");
-
-						protein.addToCollection(
-								"dataSets",
-								getDataSet(entry.getAttributeValue("dataset") + " data set",
-										dataSource));
-
-						/* primaryAccession, primaryIdentifier, name, etc */
-						String primaryIdentifier = entry.getFirstChildElement("name",UNIPROT_NAMESPACE).getValue();
-
-						Element proteinElement = entry.getFirstChildElement("protein",UNIPROT_NAMESPACE);
-						Elements nameElements = proteinElement.getChildElements();
-						String proteinName = nameElements.get(0).getFirstChildElement("fullName",UNIPROT_NAMESPACE)
-								.getValue();
-						protein.setAttribute("name", proteinName);
-						for (int i = 0; i < nameElements.size(); i++) {
-							// these are synonyms; there are two types:
-							// recommendedName; submittedName; alternativeName --> fullName,
-							// shortName
-							// allergenName; biotechName; cdAntigenName; innName
-							Element e = nameElements.get(i);
-							if (e.getLocalName().endsWith("Name")) {
-								Elements childElements = e.getChildElements();
-								if (childElements.size() > 0) {
-									for (int c = 0; c < childElements.size(); c++) {
-										String value = childElements.get(c).getValue();
-										if (!proteinName.equals(value)) {
-											addSynonym(protein.getIdentifier(), value);
-										}
-									}
-								} else {
-									String value = e.getValue();
-									addSynonym(protein.getIdentifier(), value);
-								}
-							}
-						}
+				}
+			}
 
-						protein.setAttribute("uniprotAccession", accession);
-						protein.setAttribute("primaryAccession", accession);
-						for (String acc : otherAccessions) {
-							// other accessions are synonyms
-							addSynonym(protein.getIdentifier(), acc);
-						}
+			if (modiPos != null) {
+				String kw = ptmListMap.get(description);
 
-						protein.setAttribute("primaryIdentifier", primaryIdentifier);
-						// TODO do we really need this?
-						protein.setAttribute("uniprotName", primaryIdentifier);
-						
-						Element geneEntity = entry.getFirstChildElement("gene", UNIPROT_NAMESPACE);
-						if (geneEntity != null) {
-							String geneSymbol = geneEntity
-									.getFirstChildElement("name", UNIPROT_NAMESPACE).getValue();
-							protein.setAttribute("symbol", geneSymbol);
-						} else {
-							LOG.info(String.format("No gene entity: %s", primaryIdentifier));
-							protein.setAttribute("symbol", primaryIdentifier);
-						}
+				if (kw == null) {
+					if (type.equals("glycosylation site")) {
+						kw = "Glycosylation";
+					} else if (!StringUtils.isEmpty(description)) {
+						kw = searchPtmListMap(description);
+					}
+				}
 
-						protein.setAttribute("isUniprotCanonical", "true");
-
-						/* sequence */
-						Element sequence = entry.getFirstChildElement("sequence",UNIPROT_NAMESPACE);
-						protein.setAttribute("isFragment",
-								sequence.getAttributeValue("fragment") == null ? "false" : "true");
-						String length = sequence.getAttributeValue("length");
-						protein.setAttribute("length", length);
-						protein.setAttribute("molecularWeight", sequence.getAttributeValue("mass"));
-
-						String aaSeq = sequence.getValue();
-						String md5Checksum = getSequence(aaSeq);
-						protein.setReference("sequence", allSequences.get(md5Checksum));
-						protein.setAttribute("md5checksum", md5Checksum);
-
-						String taxonId = entry.getFirstChildElement("organism",UNIPROT_NAMESPACE)
-								.getFirstChildElement("dbReference",UNIPROT_NAMESPACE).getAttributeValue("id");
-						protein.setReference("organism", getOrganism(taxonId));
-
-						/* publications */
-						Elements publications = entry.getChildElements("reference",UNIPROT_NAMESPACE);
-						for (int i = 0; i < publications.size(); i++) {
-							Elements dbRefs = publications.get(i).getFirstChildElement("citation",UNIPROT_NAMESPACE)
-									.getChildElements("dbReference",UNIPROT_NAMESPACE);
-							for (int d = 0; d < dbRefs.size(); d++) {
-								if ("PubMed".equals(dbRefs.get(d).getAttributeValue("type"))) {
-									String pubMedId = dbRefs.get(d).getAttributeValue("id");
-									protein.addToCollection("publications",
-											getPublication(pubMedId));
-								}
-							}
+				if (kw != null) {
+					for (String modType : kw.split("; ")) {
+						if (modType.equals("Phosphoprotein")) {
+							modType = "Phosphorylation";
 						}
 
-						// Extract pubmedId from evidence
-						// Only looking for ECO:0000269, which means 
-						// "manually curated information for which there is published experimental evidence"
-						Elements evidences = entry.getChildElements("evidence",UNIPROT_NAMESPACE);
-						Map<String,String> evidPubMap = new HashMap<String, String>();
-						for (int i = 0; i < evidences.size(); i++) {
-							Element evidenceEle = evidences.get(i);
-							String key = evidenceEle.getAttributeValue("key");
-							String type = evidenceEle.getAttributeValue("type");
-							if (type.equals("ECO:0000269")) {
-								Element sourceEle = evidenceEle.getFirstChildElement("source",UNIPROT_NAMESPACE);
-								if (sourceEle != null) {
-									Element dbReferenceEle = sourceEle.getFirstChildElement("dbReference",UNIPROT_NAMESPACE);
-									if (dbReferenceEle != null && "PubMed".equals(dbReferenceEle.getAttributeValue("type"))) {
-										evidPubMap.put(key, dbReferenceEle.getAttributeValue("id"));
-									}
-								}
+						String key = String.format("%s-%s", modiPos, modType);
+						if (!modificationSet.contains(key)) {
+							Item modification = createItem("Modification");
+							modification.setReference("protein", protein);
+							modification.setAttribute("type", modType);
+							modification.setAttribute("position", modiPos);
+							modification.setAttribute("start", modiPos);
+							modification.setAttribute("end", modiPos);
+							modification.setAttribute("regionType", "modification");
+
+							int pos = Integer.valueOf(modiPos).intValue();
+							if (pos > aaSeq.length()) {
+								throw new RuntimeException(accession + " position out of range: "
+										+ pos);
 							}
-						}
+							modification.setAttribute("residue", aaSeq.substring(pos - 1, pos));
 
-						/* comments */
-						Elements comments = entry.getChildElements("comment",UNIPROT_NAMESPACE);
-						for (int i = 0; i < comments.size(); i++) {
-							Element comment = comments.get(i);
-							Element text = comment.getFirstChildElement("text",UNIPROT_NAMESPACE);
-							String commentType = comment.getAttributeValue("type");
-							if (text != null) {
-								String commentText = text.getValue();
-								Item item = createItem("Comment");
-								item.setAttribute("type", commentType);
-								if (commentText.length() > POSTGRES_INDEX_SIZE) {
-									// comment text is a string
-									String ellipses = "...";
-									String choppedComment = commentText.substring(0,
-											POSTGRES_INDEX_SIZE - ellipses.length());
-									item.setAttribute("description", choppedComment + ellipses);
-								} else {
-									item.setAttribute("description", commentText);
-								}
-								String evidStringIds = text.getAttributeValue("evidence");
-								if (evidStringIds != null) {
-									for (String eId : evidStringIds.split(" ")) {
-										if (evidPubMap.get(eId) != null) {
-											item.addToCollection("publications", getPublication(evidPubMap.get(eId)));
-										}
-									}
-								}
-								
-								store(item);
-								protein.addToCollection("comments", item);
-							}
-							
-							if (commentType.equals(SUBCELLULAR_LOCATION)) {
-								Elements subLocs = comment.getChildElements("subcellularLocation",UNIPROT_NAMESPACE);
-								for (int j = 0; j < subLocs.size(); j++) {
-									Elements locs = subLocs.get(j).getChildElements("location",UNIPROT_NAMESPACE);
-									for (int k = 0; k < locs.size(); k++) {
-										Element location = locs.get(k);
-										String value = location.getValue();
-										Item item = createItem("SubcellularLocation");
-										item.setAttribute("name", value);
-										String evidStringIds = location.getAttributeValue("evidence");
-										if (evidStringIds != null) {
-											for (String eId : evidStringIds.split(" ")) {
-												if (evidPubMap.get(eId) != null) {
-													item.addToCollection("publications", getPublication(evidPubMap.get(eId)));
-												}
-											}
-										}
-										store(item);
-										protein.addToCollection("subcellularLocations", item);
-									}
-								}
+							modification.addToCollection("dataSets", dataSet);
+							for (String refId : pubRefIds) {
+								modification.addToCollection("publications", refId);
 							}
-						}
 
-						/* keywords */
-						Elements keywordElements = entry.getChildElements("keyword",UNIPROT_NAMESPACE);
-						for (int i = 0; i < keywordElements.size(); i++) {
-							String title = keywordElements.get(i).getValue();
-							String id = keywordElements.get(i).getAttributeValue("id");
-							String refId = keywords.get(id);
-							if (refId == null) {
-								Item item = createItem("OntologyTerm");
-								item.setAttribute("identifier", id);
-								item.setAttribute("name", title);
-								item.setReference("ontology", ontologies.get("UniProtKeyword"));
-								refId = item.getIdentifier();
-								keywords.put(id, refId);
-								store(item);
-							}
-							protein.addToCollection("keywords", refId);
-						}
+							store(modification);
 
-						/* dbrefs */
-						Set<String> geneIds = new HashSet<String>();
-						Elements dbReferences = entry.getChildElements("dbReference",UNIPROT_NAMESPACE);
-						for (int i = 0; i < dbReferences.size(); i++) {
-							Element dbRef = dbReferences.get(i);
-							String type = dbRef.getAttributeValue("type");
-							String id = dbRef.getAttributeValue("id");
-							if (type.equals("GeneID")) {
-								geneIds.add(id);
-							} else if (type.equals("Ensembl")) {
-								Elements properties = dbRef.getChildElements("property",UNIPROT_NAMESPACE);
-								for (int p = 0; p < properties.size(); p++) {
-									if (properties.get(p).getAttributeValue("type")
-											.equals("protein sequence ID")) {
-										addSynonym(protein.getIdentifier(), properties.get(p)
-												.getAttributeValue("value"));
-									}
-								}
-							} else if (type.equals("RefSeq")) {
-								addSynonym(protein.getIdentifier(), id);
-							}
-						}
+							protein.addToCollection("modifications", modification);
 
-						/* genes */
-
-						if (geneIds.isEmpty()) {
-							LOG.error("no valid gene identifiers found for " + accession);
-						} else {
-							for (String identifier : geneIds) {
-								if (StringUtils.isEmpty(identifier)) {
-									continue;
-								}
-								String geneRefId = genes.get(identifier);
-								if (geneRefId == null) {
-									Item gene = createItem("Gene");
-									gene.setAttribute("primaryIdentifier", identifier);
-									gene.setReference("organism", getOrganism(taxonId));
-									geneRefId = gene.getIdentifier();
-									genes.put(identifier, geneRefId);
-									store(gene);
-								}
-								protein.addToCollection("genes", geneRefId);
-							}
+							modificationSet.add(key);
 						}
+					}
+				}
+			}
+			for (String refId : pubRefIds) {
+				featureItem.addToCollection("publications", refId);
+			}
+			store(featureItem);
 
-						/* features */
-						Elements features = entry.getChildElements("feature",UNIPROT_NAMESPACE);
-						Set<String> modificationSet = new HashSet<String>();
-						for (int i = 0; i < features.size(); i++) {
-							Element feature = features.get(i);
-							String type = feature.getAttributeValue("type");
-							if (!featureTypes.contains(type)) {
-								continue;
-							}
-							
-							String description = feature.getAttributeValue("description");
-							String status = feature.getAttributeValue("status");
-
-							Item featureItem = createItem("UniProtFeature");
-							featureItem.setAttribute("type", type);
-							featureItem.setAttribute("regionType", "feature");
-//							String keywordRefId = getKeyword(type);
-//							featureItem.setReference("feature", keywordRefId);
-							String featureDescription = description;
-							if (status != null) {
-								featureDescription = (description == null ? status : description
-										+ " (" + status + ")");
-							}
-							if (!StringUtils.isEmpty(featureDescription)) {
-								featureItem.setAttribute("description", featureDescription);
-							}
-							Element location = feature.getFirstChildElement("location",UNIPROT_NAMESPACE);
-							Attribute sequenceAttr = location.getAttribute("sequence");
-							if (sequenceAttr != null && !sequenceAttr.getValue().equals(accession)) {
-								// skip this feature
-								continue;
-							}
-							
-							Element position = location.getFirstChildElement("position",UNIPROT_NAMESPACE);
-							String modiPos = null;
-							if (position != null) {
-								modiPos = position.getAttributeValue("position");
-								featureItem.setAttribute("start", modiPos);
-								featureItem.setAttribute("end", modiPos);
-							} else {
-								Element beginElement = location.getFirstChildElement("begin",UNIPROT_NAMESPACE);
-								Element endElement = location.getFirstChildElement("end",UNIPROT_NAMESPACE);
-								if (beginElement != null && endElement != null) {
-									// beware that some entries contain unknown position
-									// e.g. <end status="unknown"/>
-									String begin = beginElement.getAttributeValue("position");
-									if (begin != null) {
-										featureItem.setAttribute("start", begin);
-									}
-									String end = endElement.getAttributeValue("position");
-									if (end != null) {
-										featureItem.setAttribute("end", end);
-									}
-									if (begin != null && begin.equals(end)) {
-										modiPos = begin;
-										// should not happen?
-										LOG.info("Protein " + accession + " contains the same begin and end values.");
-									}
-								}
-							}
-							featureItem.setReference("protein", protein);
-
-							// example:
-							// <feature evidence="9 10 13 20 21 22" description="Phosphoserine; by AURKB, AURKC and RPS6KA5" type="modified residue">
-							Set<String> pubRefIds = new HashSet<String>();
-							String evidStringIds = feature.getAttributeValue("evidence");
-							if (evidStringIds != null) {
-								for (String eId : evidStringIds.split(" ")) {
-									if (evidPubMap.get(eId) != null) {
-										pubRefIds.add(getPublication(evidPubMap.get(eId)));
-									}
-								}
-							}
+			protein.addToCollection("features", featureItem);
+		}
 
-							if (modiPos != null) {
-								String kw = ptmListMap.get(description);
-								
-								if (kw == null) {
-									// TODO slightly tricky?
-									if (type.equals("glycosylation site")) {
-										kw = "Glycosylation";
-									} else if (!StringUtils.isEmpty(description)) {
-										kw = searchPtmListMap(description);
-									}
-								}
-								
-								if (kw != null) {
-									for (String modType: kw.split("; ")) {
-										if (modType.equals("Phosphoprotein")) {
-											modType = "Phosphorylation";
-										}
-										
-										String key = String.format("%s-%s", modiPos, modType);
-										if (!modificationSet.contains(key)) {
-											Item modification = createItem("Modification");
-											modification.setReference("protein", protein);
-											modification.setAttribute("type", modType);
-											modification.setAttribute("position", modiPos);
-											modification.setAttribute("start", modiPos);
-											modification.setAttribute("end", modiPos);
-											modification.setAttribute("regionType", "modification");
-											
-											int pos = Integer.valueOf(modiPos).intValue();
-											if (pos > aaSeq.length()) {
-												throw new RuntimeException(accession + " position out of range: " + pos);
-											}
-											modification.setAttribute("residue", aaSeq.substring(pos - 1, pos));
-											
-											modification.addToCollection(
-													"dataSets",
-													getDataSet(entry.getAttributeValue("dataset")
-															+ " data set", dataSource));
-											for (String refId: pubRefIds) {
-												modification.addToCollection("publications", refId);
-											}
-											
-											store(modification);
-											
-											protein.addToCollection("modifications", modification);
-											
-											modificationSet.add(key);
-										}
-									}
-								}
-							}
-							for (String refId: pubRefIds) {
-								featureItem.addToCollection("publications", refId);
-							}
-							store(featureItem);
+		store(protein);
+		doneEntries.add(accession);
 
-							protein.addToCollection("features", featureItem);
-						}
+		/* components */
+		for (String componentName : entry.getComponentNames()) {
+			Item item = createItem("Component");
+			item.setAttribute("name", componentName);
+			item.setReference("protein", protein);
+			store(item);
+		}
 
-						store(protein);
-						// actually, the main accession should not be duplicated
-						doneEntries.add(accession);
-
-						/* components */
-						Elements components = proteinElement.getChildElements("component",UNIPROT_NAMESPACE);
-						for (int i = 0; i < components.size(); i++) {
-							Element ele = components.get(i).getFirstChildElement("recommendedName",UNIPROT_NAMESPACE);
-							if (ele != null) {
-								Item item = createItem("Component");
-								item.setAttribute("name", ele.getFirstChildElement("fullName",UNIPROT_NAMESPACE)
-										.getValue());
-								item.setReference("protein", protein);
-								store(item);
-							}
-						}
+		for (String acc : otherAccessions) {
+			Item item = createItem("ProteinAccession");
+			item.setAttribute("accession", acc);
+			item.setReference("protein", protein);
+			store(item);
+		}
 
-						for (String acc : otherAccessions) {
-							// other accessions are synonyms
-							Item item = createItem("ProteinAccession");
-							item.setAttribute("accession", acc);
-							item.setReference("protein", protein);
-							store(item);
-						}
-						
-						numOfNewEntries++;
-						LOG.info("Entry " + accession + " created.");
-
-						// store all synonyms
-						for (Item item : synonymsAndXrefs) {
-							if (item == null) {
-								continue;
-							}
-							store(item);
-						}
+		numOfNewEntries++;
+		LOG.info("Entry " + accession + " created.");
+
+		// store all synonyms
+		for (Item item : synonymsAndXrefs) {
+			if (item == null) {
+				continue;
+			}
+			store(item);
+		}
 
-						// reset
-						synonymsAndXrefs = new HashSet<Item>();
+		// reset
+		synonymsAndXrefs = new HashSet<Item>();
+	}
+
+	/**
+	 * Read a XOM entry element into a UniprotEntry, as UniprotEntryParser reads the XML, so that
+	 * both parsers share processEntry(). Elements are matched by their local names.
+	 */
+	static UniprotEntry readXomEntry(Element element) {
+		UniprotEntry entry = new UniprotEntry();
+		entry.dataset = element.getAttributeValue("dataset");
+		Elements children = element.getChildElements();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			String localName = child.getLocalName();
+			if ("accession".equals(localName)) {
+				entry.accessions.add(child.getValue());
+			} else if ("name".equals(localName) && entry.name == null) {
+				entry.name = child.getValue();
+			} else if ("protein".equals(localName) && entry.proteinName == null) {
+				readXomProtein(child, entry);
+			} else if ("gene".equals(localName) && !entry.hasGene) {
+				entry.hasGene = true;
+				entry.geneSymbol = getFirstChildValue(child, "name");
+			} else if ("organism".equals(localName) && entry.taxonId == null) {
+				Element dbRef = getFirstChild(child, "dbReference");
+				if (dbRef != null) {
+					entry.taxonId = dbRef.getAttributeValue("id");
+				}
+			} else if ("reference".equals(localName)) {
+				Element citation = getFirstChild(child, "citation");
+				if (citation != null) {
+					Elements dbRefs = citation.getChildElements();
+					for (int d = 0; d < dbRefs.size(); d++) {
+						if ("dbReference".equals(dbRefs.get(d).getLocalName())
+								&& "PubMed".equals(dbRefs.get(d).getAttributeValue("type"))) {
+							entry.publications.add(dbRefs.get(d).getAttributeValue("id"));
+						}
 					}
+				}
+			} else if ("evidence".equals(localName)) {
+				// only ECO:0000269, i.e. published experimental evidence
+				Element source = getFirstChild(child, "source");
+				if ("ECO:0000269".equals(child.getAttributeValue("type")) && source != null) {
+					Element dbRef = getFirstChild(source, "dbReference");
+					if (dbRef != null && "PubMed".equals(dbRef.getAttributeValue("type"))) {
+						entry.evidencePublications.put(child.getAttributeValue("key"),
+								dbRef.getAttributeValue("id"));
+					}
+				}
+			} else if ("comment".equals(localName)) {
+				entry.comments.add(readXomComment(child));
+			} else if ("dbReference".equals(localName)) {
+				UniprotEntry.DbReference dbRef = new UniprotEntry.DbReference();
+				dbRef.type = child.getAttributeValue("type");
+				dbRef.id = child.getAttributeValue("id");
+				Elements properties = child.getChildElements();
+				for (int p = 0; p < properties.size(); p++) {
+					if ("property".equals(properties.get(p).getLocalName())) {
+						dbRef.properties.add(new String[] {
+								properties.get(p).getAttributeValue("type"),
+								properties.get(p).getAttributeValue("value") });
+					}
+				}
+				entry.dbReferences.add(dbRef);
+			} else if ("keyword".equals(localName)) {
+				UniprotEntry.Keyword keyword = new UniprotEntry.Keyword();
+				keyword.id = child.getAttributeValue("id");
+				keyword.value = child.getValue();
+				entry.keywords.add(keyword);
+			} else if ("feature".equals(localName)) {
+				entry.features.add(readXomFeature(child));
+			} else if ("sequence".equals(localName) && !entry.hasSequence) {
+				entry.hasSequence = true;
+				entry.fragment = child.getAttributeValue("fragment") != null;
+				entry.length = child.getAttributeValue("length");
+				entry.mass = child.getAttributeValue("mass");
+				entry.sequence = child.getValue();
+			}
+		}
+		return entry;
+	}
 
+	private static void readXomProtein(Element protein, UniprotEntry entry) {
+		Elements nameElements = protein.getChildElements();
+		for (int i = 0; i < nameElements.size(); i++) {
+			Element e = nameElements.get(i);
+			if ("component".equals(e.getLocalName())) {
+				Element recommendedName = getFirstChild(e, "recommendedName");
+				if (recommendedName != null) {
+					entry.componentNames.add(getFirstChildValue(recommendedName, "fullName"));
 				}
+			} else if (e.getLocalName().endsWith("Name")) {
+				// recommendedName; submittedName; alternativeName --> fullName, shortName
+				// allergenName; biotechName; cdAntigenName; innName
+				if (i == 0) {
+					entry.proteinName = getFirstChildValue(e, "fullName");
+				}
+				Elements childElements = e.getChildElements();
+				if (childElements.size() > 0) {
+					for (int c = 0; c < childElements.size(); c++) {
+						String value = childElements.get(c).getValue();
+						if (!value.equals(entry.proteinName)) {
+							entry.proteinSynonyms.add(value);
+						}
+					}
+				} else {
+					entry.proteinSynonyms.add(e.getValue());
+				}
+			}
+		}
+	}
 
+	private static UniprotEntry.Comment readXomComment(Element element) {
+		UniprotEntry.Comment comment = new UniprotEntry.Comment();
+		comment.type = element.getAttributeValue("type");
+		Elements children = element.getChildElements();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if ("text".equals(child.getLocalName()) && !comment.hasText) {
+				comment.hasText = true;
+				comment.textEvidence = child.getAttributeValue("evidence");
+				comment.text = child.getValue();
+			} else if ("subcellularLocation".equals(child.getLocalName())) {
+				Elements locs = child.getChildElements();
+				for (int k = 0; k < locs.size(); k++) {
+					if ("location".equals(locs.get(k).getLocalName())) {
+						UniprotEntry.Location location = new UniprotEntry.Location();
+						location.value = locs.get(k).getValue();
+						location.evidence = locs.get(k).getAttributeValue("evidence");
+						comment.locations.add(location);
+					}
+				}
 			}
+		}
+		return comment;
+	}
 
-			br.close();
+	private static UniprotEntry.Feature readXomFeature(Element element) {
+		UniprotEntry.Feature feature = new UniprotEntry.Feature();
+		feature.type = element.getAttributeValue("type");
+		feature.description = element.getAttributeValue("description");
+		feature.status = element.getAttributeValue("status");
+		feature.evidence = element.getAttributeValue("evidence");
+		Element location = getFirstChild(element, "location");
+		if (location != null) {
+			feature.locationSequence = location.getAttributeValue("sequence");
+			Element position = getFirstChild(location, "position");
+			if (position != null) {
+				feature.hasPosition = true;
+				feature.position = position.getAttributeValue("position");
+			}
+			Element begin = getFirstChild(location, "begin");
+			if (begin != null) {
+				feature.hasBegin = true;
+				feature.begin = begin.getAttributeValue("position");
+			}
+			Element end = getFirstChild(location, "end");
+			if (end != null) {
+				feature.hasEnd = true;
+				feature.end = end.getAttributeValue("position");
+			}
+		}
+		return feature;
+	}
 
-		} catch (ParsingException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+	private static Element getFirstChild(Element element, String localName) {
+		Elements children = element.getChildElements();
+		for (int i = 0; i < children.size(); i++) {
+			if (localName.equals(children.get(i).getLocalName())) {
+				return children.get(i);
+			}
 		}
+		return null;
+	}
 
-		String info = "Create " + numOfNewEntries + " entries.";
-		System.out.println(info);
-		LOG.info(info);
+	private static String getFirstChildValue(Element element, String localName) {
+		Element child = getFirstChild(element, localName);
+		return child == null ? null : child.getValue();
+	}
 
+	private void addEvidencePublications(Item item, String evidStringIds,
+			Map<String, String> evidPubMap) throws ObjectStoreException {
+		if (evidStringIds != null) {
+			for (String eId : evidStringIds.split(" ")) {
+				if (evidPubMap.get(eId) != null) {
+					item.addToCollection("publications", getPublication(evidPubMap.get(eId)));
+				}
+			}
+		}
 	}
 
 	private String searchPtmListMap(String description) {
@@ -561,8 +822,7 @@ public class UniprotXomConverter extends BioFileConverter {
 	private void loadPtmListFile() {
 		System.out.println("Processing ptmlist.txt ...");
 		ptmListMap.clear();
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(ptmlistFile));
+		try (BufferedReader in = InputFiles.openReader(ptmlistFile)) {
 			String line;
 			String id = "";
 			while ((line = in.readLine()) != null) {
@@ -575,7 +835,6 @@ public class UniprotXomConverter extends BioFileConverter {
 					ptmListMap.put(id, line.substring(5).replaceAll("\\.$", ""));
 				}
 			}
-			in.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			throw new RuntimeException("The file 'ptmlist.txt' is not found.");
@@ -608,11 +867,11 @@ public class UniprotXomConverter extends BioFileConverter {
 	 * Create Sequence item if not existed.
 	 * 
 	 * @param residues
+	 * @param md5Checksum
 	 * @return md5Checksum as the key of the Sequence item in the allSequences map.
 	 * @throws ObjectStoreException
 	 */
-	private String getSequence(String residues) throws ObjectStoreException {
-		String md5Checksum = Util.getMd5checksum(residues);
+	private String getSequence(String residues, String md5Checksum) throws ObjectStoreException {
 		if (!allSequences.containsKey(md5Checksum)) {
 			Item item = createItem("Sequence");
 			item.setAttribute("residues", residues);
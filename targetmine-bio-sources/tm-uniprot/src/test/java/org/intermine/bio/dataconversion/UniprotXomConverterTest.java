@@ -0,0 +1,199 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nu.xom.Builder;
+import nu.xom.Document;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+
+/**
+ * Checks that the XOM and the streaming parsers read the same entries, that the converter
+ * creates the items of the original XOM converter with either of them, and the same items with
+ * the entries parsed in parallel.
+ *
+ * @author chenyian
+ */
+public class UniprotXomConverterTest extends ItemsTestCase
+{
+	private static final String SAMPLE = "uniprot_sample.xml";
+
+	Model model = Model.getInstanceByName("genomic");
+
+	public UniprotXomConverterTest(String arg) {
+		super(arg);
+	}
+
+	public void testReadXomEntry() throws Exception {
+		List<UniprotEntry> expected = UniprotEntryParser.parseEntries(getSample());
+		List<UniprotEntry> actual = readXomEntries(getSample());
+		assertEquals(3, expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(dump(expected.get(i)), dump(actual.get(i)));
+		}
+	}
+
+	public void testSampleEntry() throws Exception {
+		UniprotEntry entry = readXomEntries(getSample()).get(0);
+		assertEquals("Swiss-Prot", entry.getDataset());
+		assertEquals("P00533", entry.getPrimaryAccession());
+		assertEquals("EGFR_HUMAN", entry.getName());
+		assertEquals("Epidermal growth factor receptor", entry.getProteinName());
+		// all the children of the names except the protein name, the EC number included
+		assertEquals("[2.7.10.1, Proto-oncogene c-ErbB-1, ErbB1, CD175]", entry
+				.getProteinSynonyms().toString());
+		assertEquals("EGFR", entry.getGeneSymbol());
+		assertEquals("9606", entry.getTaxonId());
+		assertEquals("[6328312, 15950906]", entry.getPublications().toString());
+		assertEquals("15950906", entry.getEvidencePublications().get("5"));
+		assertNull(entry.getEvidencePublications().get("7"));
+		assertEquals("P00533-2", entry.getFeatures().get(4).getLocationSequence());
+		assertFalse(entry.isFragment());
+		assertTrue(readXomEntries(getSample()).get(1).isFragment());
+		assertEquals("[Somatotropin fragment A, Somatotropin fragment B]",
+				readXomEntries(getSample()).get(1).getComponentNames().toString());
+	}
+
+	public void testProcess() throws Exception {
+		File ptmlist = createPtmlist();
+		try {
+			// written by the converter before the streaming parser was added
+			Set<Item> expected = readItemSet("UniprotXomConverterTest_tgt.xml");
+			assertEquals(expected, new HashSet<Item>(process("stax", "1", ptmlist)));
+			assertEquals(expected, new HashSet<Item>(process("xom", "1", ptmlist)));
+		} finally {
+			ptmlist.delete();
+		}
+	}
+
+	public void testParallel() throws Exception {
+		File ptmlist = createPtmlist();
+		try {
+			List<Item> expected = process("stax", "1", ptmlist);
+			List<Item> actual = process("stax", "4", ptmlist);
+			// the same items, stored in the same order
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i), actual.get(i));
+			}
+		} finally {
+			ptmlist.delete();
+		}
+	}
+
+	private static File createPtmlist() throws Exception {
+		File ret = File.createTempFile("ptmlist", ".txt");
+		FileWriter out = new FileWriter(ret);
+		out.write("ID   Phosphoserine\nKW   Phosphoprotein.\n//\n");
+		out.write("ID   N-linked (GlcNAc...) asparagine\nKW   Glycoprotein.\n//\n");
+		out.close();
+		return ret;
+	}
+
+	// the stored items in the order of storing; one entry per chunk, so that with more than one
+	// thread the entries of the sample are parsed by different threads
+	private List<Item> process(String parser, String threads, File ptmlist) throws Exception {
+		Map<String, org.intermine.model.fulldata.Item> storedItems =
+				new LinkedHashMap<String, org.intermine.model.fulldata.Item>();
+		MockItemWriter itemWriter = new MockItemWriter(storedItems);
+		UniprotXomConverter converter = new UniprotXomConverter(itemWriter, model);
+		converter.setParser(parser);
+		converter.setThreads(threads);
+		converter.setEntriesPerChunk("1");
+		converter.setptmlistFile(ptmlist);
+		converter.process(getSample());
+		converter.close();
+		List<Item> ret = new ArrayList<Item>();
+		for (org.intermine.model.fulldata.Item item : storedItems.values()) {
+			ret.add(ItemHelper.convert(item));
+		}
+		return ret;
+	}
+
+	private Reader getSample() {
+		return new InputStreamReader(getClass().getClassLoader().getResourceAsStream(SAMPLE));
+	}
+
+	// split the entries as UniprotXomConverter.process() does
+	private static List<UniprotEntry> readXomEntries(Reader reader) throws Exception {
+		List<UniprotEntry> ret = new ArrayList<UniprotEntry>();
+		BufferedReader br = new BufferedReader(reader);
+		StringBuilder sb = null;
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.startsWith("<entry")) {
+				sb = new StringBuilder();
+			}
+			if (sb != null) {
+				sb.append(line + "\n");
+			}
+			if (line.startsWith("</entry>")) {
+				Document doc = new Builder().build(new ByteArrayInputStream(sb.toString()
+						.getBytes()));
+				ret.add(UniprotXomConverter.readXomEntry(doc.getRootElement()));
+				sb = null;
+			}
+		}
+		br.close();
+		return ret;
+	}
+
+	private static String dump(UniprotEntry entry) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(entry.dataset).append('|').append(entry.accessions).append('|')
+				.append(entry.name).append('|').append(entry.proteinName).append('|')
+				.append(entry.proteinSynonyms).append('|').append(entry.componentNames)
+				.append('|').append(entry.hasGene).append('|').append(entry.geneSymbol)
+				.append('|').append(entry.taxonId).append('|').append(entry.publications)
+				.append('|').append(entry.evidencePublications).append('\n');
+		for (UniprotEntry.Comment comment : entry.comments) {
+			sb.append("comment|").append(comment.type).append('|').append(comment.hasText)
+					.append('|').append(comment.text).append('|')
+					.append(comment.textEvidence).append('\n');
+			for (UniprotEntry.Location location : comment.locations) {
+				sb.append("location|").append(location.value).append('|')
+						.append(location.evidence).append('\n');
+			}
+		}
+		for (UniprotEntry.DbReference dbRef : entry.dbReferences) {
+			sb.append("dbReference|").append(dbRef.type).append('|').append(dbRef.id);
+			for (String[] property : dbRef.properties) {
+				sb.append('|').append(property[0]).append('=').append(property[1]);
+			}
+			sb.append('\n');
+		}
+		for (UniprotEntry.Keyword keyword : entry.keywords) {
+			sb.append("keyword|").append(keyword.id).append('|').append(keyword.value)
+					.append('\n');
+		}
+		for (UniprotEntry.Feature feature : entry.features) {
+			sb.append("feature|").append(feature.type).append('|').append(feature.description)
+					.append('|').append(feature.status).append('|').append(feature.evidence)
+					.append('|').append(feature.locationSequence).append('|')
+					.append(feature.hasPosition).append('|').append(feature.position)
+					.append('|').append(feature.hasBegin).append('|').append(feature.begin)
+					.append('|').append(feature.hasEnd).append('|').append(feature.end)
+					.append('\n');
+		}
+		sb.append(entry.hasSequence).append('|').append(entry.fragment).append('|')
+				.append(entry.length).append('|').append(entry.mass).append('|')
+				.append(entry.sequence);
+		return sb.toString();
+	}
+}
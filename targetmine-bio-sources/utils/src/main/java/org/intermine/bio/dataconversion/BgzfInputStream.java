@@ -0,0 +1,208 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file (blocked gzip, as made by bgzip) with several threads: the blocks are
+ * independent gzip members of at most 64 KB whose compressed size is in the header, so they are
+ * read in order and inflated concurrently.
+ *
+ * @author chenyian
+ *
+ */
+public class BgzfInputStream extends InputStream {
+	private static final int HEADER_SIZE = 12;
+	private static final int FEXTRA = 4;
+
+	private final InputStream in;
+	private final ExecutorService executor;
+	private final int maxPending;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private boolean endOfInput = false;
+
+	private byte[] block = new byte[0];
+	private int position = 0;
+
+	public BgzfInputStream(InputStream in) {
+		this(in, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+	}
+
+	/**
+	 * @param threads number of threads inflating the blocks
+	 */
+	public BgzfInputStream(InputStream in, int threads) {
+		this.in = new BufferedInputStream(in, 1 << 16);
+		this.executor = Executors.newFixedThreadPool(threads,
+				InputFiles.daemonThreadFactory("bgzf"));
+		this.maxPending = threads * 4;
+	}
+
+	/**
+	 * @param header the first bytes of a file
+	 * @param length number of bytes read
+	 * @return true if the header is a gzip header with the BC extra subfield of BGZF
+	 */
+	static boolean isBgzfHeader(byte[] header, int length) {
+		return length >= 18 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b
+				&& (header[3] & FEXTRA) != 0 && getShort(header, 10) >= 6
+				&& header[12] == 'B' && header[13] == 'C';
+	}
+
+	private static int getShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return getShort(bytes, offset) | getShort(bytes, offset + 2) << 16;
+	}
+
+	/**
+	 * @return false at the end of the input
+	 */
+	private boolean nextBlock() throws IOException {
+		while (position == block.length) {
+			while (!endOfInput && pending.size() < maxPending) {
+				final byte[] data = readBlock();
+				if (data == null) {
+					endOfInput = true;
+				} else {
+					pending.add(executor.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws Exception {
+							return inflate(data);
+						}
+					}));
+				}
+			}
+			Future<byte[]> next = pending.poll();
+			if (next == null) {
+				return false;
+			}
+			try {
+				block = next.get();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while inflating", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			position = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the compressed data, CRC32 and size of the next block, null at the end of the input
+	 */
+	private byte[] readBlock() throws IOException {
+		byte[] header = new byte[HEADER_SIZE];
+		int n = readFully(header, 0, HEADER_SIZE);
+		if (n == 0) {
+			return null;
+		}
+		if (n < HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+				|| (header[3] & FEXTRA) == 0) {
+			throw new IOException("Not a BGZF block");
+		}
+		byte[] extra = new byte[getShort(header, 10)];
+		if (readFully(extra, 0, extra.length) < extra.length) {
+			throw new EOFException("Truncated BGZF block");
+		}
+		int blockSize = -1;
+		for (int i = 0; i + 4 <= extra.length; i += 4 + getShort(extra, i + 2)) {
+			if (extra[i] == 'B' && extra[i + 1] == 'C') {
+				blockSize = getShort(extra, i + 4) + 1;
+			}
+		}
+		if (blockSize < 0) {
+			throw new IOException("Not a BGZF block, no BC subfield");
+		}
+		byte[] data = new byte[blockSize - HEADER_SIZE - extra.length];
+		if (readFully(data, 0, data.length) < data.length) {
+			throw new EOFException("Truncated BGZF block");
+		}
+		return data;
+	}
+
+	private static byte[] inflate(byte[] data) throws IOException {
+		int compressedSize = data.length - 8;
+		byte[] ret = new byte[getInt(data, compressedSize + 4)];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data, 0, compressedSize);
+			int n = 0;
+			while (n < ret.length) {
+				int inflated = inflater.inflate(ret, n, ret.length - n);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IOException("Corrupt BGZF block");
+				}
+				n += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt BGZF block", e);
+		} finally {
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(ret, 0, ret.length);
+		if ((int) crc.getValue() != getInt(data, compressedSize)) {
+			throw new IOException("CRC error in a BGZF block");
+		}
+		return ret;
+	}
+
+	private int readFully(byte[] bytes, int offset, int length) throws IOException {
+		int n = 0;
+		while (n < length) {
+			int read = in.read(bytes, offset + n, length - n);
+			if (read == -1) {
+				break;
+			}
+			n += read;
+		}
+		return n;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextBlock()) {
+			return -1;
+		}
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, block.length - position);
+		System.arraycopy(block, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		in.close();
+	}
+}
@@ -0,0 +1,331 @@
+package org.intermine.bio.dataconversion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryEvaluable;
+import org.intermine.objectstore.query.QueryExpression;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryReference;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * Resolve a key field of a class to an identifier, e.g. Synonym.value to the
+ * primaryIdentifier of its subject, with a memory cache that is filled by bulk queries:
+ * either all at once (preload()) or by batches of keys in a BagConstraint. A key resolves to
+ * its first non-empty identifier; a single lookup and a preloaded one give the same result.
+ * The keys may be compared in lower case, as LOWER(keyField) = lower(key).
+ *
+ * @author chenyian
+ *
+ */
+public class BulkIdResolver {
+	private static final Logger LOG = LogManager.getLogger(BulkIdResolver.class);
+
+	private static final int BATCH_SIZE = 1000;
+
+	private String osAlias;
+	private ObjectStore os;
+	private String className;
+	private String keyField;
+	private String referenceName;
+	private String referencedClassName;
+	private String identifierField;
+	private boolean ignoreCase = false;
+
+	// a null value means the key is known to have no identifier
+	private Map<String, String> cache = new HashMap<String, String>();
+	private boolean complete = false;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long queries = 0;
+	private long queryTime = 0;
+
+	/**
+	 * className.keyField -> className.identifierField
+	 */
+	public BulkIdResolver(String osAlias, String className, String keyField, String identifierField) {
+		this(osAlias, className, keyField, null, null, identifierField);
+	}
+
+	/**
+	 * className.keyField -> className.referenceName.identifierField, referenceName being a
+	 * reference or a collection
+	 *
+	 * @param referencedClassName restricts the referenced objects to this class; null for the
+	 *            declared type of the reference, i.e. any referenced object
+	 */
+	public BulkIdResolver(String osAlias, String className, String keyField, String referenceName,
+			String referencedClassName, String identifierField) {
+		this.osAlias = osAlias;
+		this.className = className;
+		this.keyField = keyField;
+		this.referenceName = referenceName;
+		this.referencedClassName = referencedClassName;
+		this.identifierField = identifierField;
+	}
+
+	/**
+	 * Synonym.value -> Synonym.subject.primaryIdentifier, whatever the class of the subject is,
+	 * as the one by one lookup of GeneIdFinder did
+	 */
+	public static BulkIdResolver createGeneSynonymResolver(String osAlias) {
+		return new BulkIdResolver(osAlias, "Synonym", "value", "subject", null,
+				"primaryIdentifier");
+	}
+
+	/**
+	 * Gene.ncbiGeneId -> Gene.primaryIdentifier
+	 */
+	public static BulkIdResolver createNcbiGeneIdResolver(String osAlias) {
+		return new BulkIdResolver(osAlias, "Gene", "ncbiGeneId", "primaryIdentifier");
+	}
+
+	/**
+	 * Compare the keys in lower case; set it before any lookup.
+	 */
+	public void setIgnoreCase(boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+	}
+
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+
+	// the key in the cache and in the queries
+	private String normalize(String key) {
+		return ignoreCase ? key.toLowerCase() : key;
+	}
+
+	private ObjectStore getObjectStore() throws Exception {
+		if (os == null) {
+			os = ObjectStoreFactory.getObjectStore(osAlias);
+		}
+		return os;
+	}
+
+	/**
+	 * Load all keys by one query; any key not found afterwards is resolved to null without
+	 * querying.
+	 */
+	public void preload() throws Exception {
+		int before = cache.size();
+		query(null);
+		complete = true;
+		LOG.info(String.format("preloaded %d %s.%s keys", cache.size() - before, className,
+				keyField));
+	}
+
+	/**
+	 * Load the keys not yet cached by batches of BagConstraint queries.
+	 */
+	public void preload(Collection<String> keys) throws Exception {
+		if (complete) {
+			return;
+		}
+		Set<String> missing = new LinkedHashSet<String>();
+		for (String key : keys) {
+			if (!Utils.isEmpty(key) && !cache.containsKey(normalize(key))) {
+				missing.add(normalize(key));
+			}
+		}
+		List<String> batch = new ArrayList<String>();
+		for (String key : missing) {
+			batch.add(key);
+			if (batch.size() == BATCH_SIZE) {
+				queryBatch(batch);
+				batch = new ArrayList<String>();
+			}
+		}
+		if (!batch.isEmpty()) {
+			queryBatch(batch);
+		}
+	}
+
+	private void queryBatch(List<String> batch) throws Exception {
+		query(batch);
+		for (String key : batch) {
+			if (!cache.containsKey(key)) {
+				cache.put(key, null);
+			}
+		}
+	}
+
+	public String resolve(String key) throws Exception {
+		if (Utils.isEmpty(key)) {
+			return null;
+		}
+		key = normalize(key);
+		if (cache.containsKey(key)) {
+			hits++;
+			return cache.get(key);
+		}
+		misses++;
+		if (complete) {
+			cache.put(key, null);
+			return null;
+		}
+		List<String> batch = new ArrayList<String>();
+		batch.add(key);
+		queryBatch(batch);
+		return cache.get(key);
+	}
+
+	/**
+	 * @param keys keys to be resolved; null or empty keys are ignored
+	 * @return key -> identifier, for the resolved keys only
+	 */
+	public Map<String, String> resolveAll(Collection<String> keys) throws Exception {
+		preload(keys);
+		Map<String, String> ret = new HashMap<String, String>();
+		for (String key : keys) {
+			String identifier = resolve(key);
+			if (identifier != null) {
+				ret.put(key, identifier);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param keys null for all keys
+	 */
+	private void query(List<String> keys) throws Exception {
+		long start = System.currentTimeMillis();
+		Iterator<Object[]> rows = fetch(keys);
+		while (rows.hasNext()) {
+			Object[] row = rows.next();
+			String key = row[0] == null ? null : row[0].toString();
+			// e.g. the ClobAccess of Sequence.residues
+			String identifier = row[1] == null ? null : row[1].toString();
+			// the first identifier of a key wins, as the one by one lookup did
+			if (key != null && !Utils.isEmpty(identifier) && cache.get(key) == null) {
+				cache.put(key, identifier);
+			}
+		}
+		queries++;
+		queryTime += System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Run the query of the keys.
+	 *
+	 * @param keys null for all keys; in lower case if the case is ignored
+	 * @return the rows of the results: key (in lower case if the case is ignored), identifier
+	 */
+	@SuppressWarnings("unchecked")
+	Iterator<Object[]> fetch(List<String> keys) throws Exception {
+		ObjectStore store = getObjectStore();
+
+		Query q = new Query();
+		ClassDescriptor cld = store.getModel().getClassDescriptorByName(className);
+		QueryClass qc = new QueryClass(cld.getType());
+		QueryEvaluable qfKey = new QueryField(qc, keyField);
+		if (ignoreCase) {
+			qfKey = new QueryExpression(QueryExpression.LOWER, qfKey);
+		}
+		q.addFrom(qc);
+		q.addToSelect(qfKey);
+
+		ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+		if (referenceName == null) {
+			q.addToSelect(new QueryField(qc, identifierField));
+		} else {
+			ReferenceDescriptor rd = (ReferenceDescriptor) cld.getFieldDescriptorByName(
+					referenceName);
+			ClassDescriptor referencedCld;
+			if (referencedClassName == null) {
+				referencedCld = rd.getReferencedClassDescriptor();
+			} else {
+				referencedCld = store.getModel().getClassDescriptorByName(referencedClassName);
+			}
+			QueryClass qcReferenced = new QueryClass(referencedCld.getType());
+			q.addFrom(qcReferenced);
+			q.addToSelect(new QueryField(qcReferenced, identifierField));
+			QueryReference qr;
+			if (rd.isCollection()) {
+				qr = new QueryCollectionReference(qc, referenceName);
+			} else {
+				qr = new QueryObjectReference(qc, referenceName);
+			}
+			cs.addConstraint(new ContainsConstraint(qr, ConstraintOp.CONTAINS, qcReferenced));
+		}
+		if (keys != null) {
+			cs.addConstraint(new BagConstraint(qfKey, ConstraintOp.IN, keys));
+		}
+		if (cs.getConstraints().size() > 0) {
+			q.setConstraint(cs);
+		}
+
+		Results results = store.execute(q, 10000, true, false, false);
+		final Iterator<Object> iterator = results.iterator();
+		return new Iterator<Object[]>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Object[] next() {
+				ResultsRow<Object> rr = (ResultsRow<Object>) iterator.next();
+				return new Object[] {rr.get(0), rr.get(1)};
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return total time spent in the queries, in milliseconds
+	 */
+	public long getQueryTime() {
+		return queryTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s.%s: %d cached, %d hits, %d misses, %d queries in %d ms",
+				className, keyField, cache.size(), hits, misses, queries, queryTime);
+	}
+
+	public void logStatistics() {
+		LOG.info(toString());
+	}
+}
@@ -5,21 +5,32 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class CSVParser implements Iterable<Map<String,String>>,AutoCloseable{
 	private boolean multiColumnHeader = false; 
 	private BufferedReader reader;
+	private char delimiter = ',';
 	
 	public CSVParser(Reader reader,boolean multiColumnHeader) {
 		super();
 		this.reader = new BufferedReader(reader);
 		this.multiColumnHeader = multiColumnHeader;
 	}
+	/**
+	 * @param delimiter delimiter of the fields for rows(), e.g. '\t'
+	 */
+	public CSVParser(Reader reader,boolean multiColumnHeader,char delimiter) {
+		this(reader, multiColumnHeader);
+		this.delimiter = delimiter;
+	}
 	public CSVParser(Reader reader) {
 		super();
 		this.reader = new BufferedReader(reader);
@@ -105,6 +116,279 @@ public class CSVParser implements Iterable<Map<String,String>>,AutoCloseable{
 	public Iterator<Map<String, String>> iterator() {
 		return new RowIterator();
 	}
+	/**
+	 * The rows scanned from the characters instead of split by splitLine(): a quoted field may
+	 * contain delimiters, line breaks and quotes (doubled), and \n is read as a line break in
+	 * any field. Blank lines are skipped.
+	 * Unlike the Map mode, which drops the trailing empty fields of a line as String.split()
+	 * does, a trailing empty field is kept: its value is "" instead of null.
+	 * The iterator returns the same Row, refilled at each step; use toMap() to keep a row.
+	 */
+	public Iterable<Row> rows() {
+		return new Iterable<Row>() {
+			@Override
+			public Iterator<Row> iterator() {
+				return new FastRowIterator();
+			}
+		};
+	}
+	class FastRowIterator implements Iterator<Row>{
+		private Tokenizer tokenizer = new Tokenizer(reader, delimiter);
+		private Row row;
+		private boolean ready = false;
+		public FastRowIterator() {
+			try {
+				if(multiColumnHeader) {
+					String[] cols = readHeaderLine();
+					String prevHeader = null;
+					for (int i = 0; i < cols.length; i++) {
+						if(Utils.empty(cols[i])) {
+							cols[i] = prevHeader;
+						}
+						prevHeader = cols[i];
+					}
+					CSVParser.this.headerTypes = cols;
+				}
+				headers = readHeaderLine();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			row = new Row(tokenizer, headers);
+		}
+		private String[] readHeaderLine() throws IOException {
+			if(!tokenizer.next()) {
+				throw new RuntimeException("No line");
+			}
+			String[] ret = new String[tokenizer.fields];
+			for (int i = 0; i < ret.length; i++) {
+				ret[i] = tokenizer.getField(i);
+			}
+			return ret;
+		}
+		@Override
+		public boolean hasNext() {
+			if(!ready) {
+				try {
+					ready = tokenizer.next();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return ready;
+		}
+		@Override
+		public Row next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return row;
+		}
+	}
+	/**
+	 * A row of rows(), read through the index of the headers; the values are only created when
+	 * they are got. As a Map, the keys are the headers of the columns present in the row.
+	 */
+	public static class Row extends AbstractMap<String, String>{
+		private Tokenizer tokenizer;
+		private String[] headers;
+		private Map<String, Integer> columnIndex = new HashMap<String, Integer>();
+		Row(Tokenizer tokenizer, String[] headers) {
+			this.tokenizer = tokenizer;
+			this.headers = headers;
+			for (int i = 0; i < headers.length; i++) {
+				columnIndex.put(headers[i], Integer.valueOf(i));
+			}
+		}
+		/**
+		 * @return index of the column of the header, -1 if there is no such column
+		 */
+		public int getColumnIndex(String header) {
+			Integer index = columnIndex.get(header);
+			return index == null ? -1 : index.intValue();
+		}
+		/**
+		 * @return number of fields in the row
+		 */
+		public int getColumnCount() {
+			return tokenizer.fields;
+		}
+		/**
+		 * @return value of the column, null if the row is shorter
+		 */
+		public String get(int index) {
+			return index < tokenizer.fields ? tokenizer.getField(index) : null;
+		}
+		@Override
+		public String get(Object header) {
+			Integer index = columnIndex.get(header);
+			return index == null ? null : get(index.intValue());
+		}
+		@Override
+		public boolean containsKey(Object header) {
+			Integer index = columnIndex.get(header);
+			return index != null && index.intValue() < tokenizer.fields;
+		}
+		/**
+		 * @return a copy of the row, as the iterator of the Map mode gives except for the
+		 * trailing empty fields, see rows()
+		 */
+		public Map<String, String> toMap() {
+			Map<String, String> ret = new HashMap<String, String>();
+			for (int i = 0; i < headers.length && i < tokenizer.fields; i++) {
+				ret.put(headers[i], tokenizer.getField(i));
+			}
+			return ret;
+		}
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			return toMap().entrySet();
+		}
+	}
+	/**
+	 * Scans a row at a time into one char array, unquoted and unescaped, with the end offset of
+	 * each field.
+	 */
+	static class Tokenizer {
+		private Reader reader;
+		private char delimiter;
+		private char[] buffer = new char[1 << 16];
+		private int position = 0;
+		private int limit = 0;
+		private char[] chars = new char[1 << 10];
+		private int length = 0;
+		private int[] ends = new int[64];
+		int fields = 0;
+		Tokenizer(Reader reader, char delimiter) {
+			this.reader = reader;
+			this.delimiter = delimiter;
+		}
+		String getField(int index) {
+			int start = index == 0 ? 0 : ends[index - 1];
+			return new String(chars, start, ends[index] - start);
+		}
+		/**
+		 * @return false at the end of the input
+		 */
+		boolean next() throws IOException {
+			fields = 0;
+			length = 0;
+			int c;
+			do {
+				c = read();
+			} while (c == '\n' || c == '\r');
+			if (c == -1) {
+				return false;
+			}
+			while (true) {
+				if (c == '"') {
+					c = readQuoted();
+				} else {
+					c = readPlain(c);
+				}
+				endField();
+				if (c != delimiter) {
+					// end of the line or of the input
+					if (c == '\r' && peek() == '\n') {
+						position++;
+					}
+					return true;
+				}
+				c = read();
+			}
+		}
+		/**
+		 * @return the character following the field
+		 */
+		private int readPlain(int c) throws IOException {
+			while (c != -1 && c != delimiter && c != '\n' && c != '\r') {
+				if (c == '\\') {
+					readEscape();
+				} else {
+					append((char) c);
+				}
+				c = read();
+			}
+			return c;
+		}
+		/**
+		 * Read the field after its opening quote; a quote is taken as the closing one only if
+		 * followed by a delimiter or the end of the line.
+		 *
+		 * @return the character following the closing quote
+		 */
+		private int readQuoted() throws IOException {
+			while (true) {
+				int c = read();
+				if (c == -1) {
+					return c;
+				}
+				if (c == '"') {
+					int n = peek();
+					if (n == '"') {
+						position++;
+						append('"');
+					} else if (n == delimiter || n == '\n' || n == '\r' || n == -1) {
+						return read();
+					} else {
+						append('"');
+					}
+				} else if (c == '\\') {
+					readEscape();
+				} else {
+					append((char) c);
+				}
+			}
+		}
+		private void readEscape() throws IOException {
+			if (peek() == 'n') {
+				position++;
+				append('\n');
+			} else {
+				append('\\');
+			}
+		}
+		private void append(char c) {
+			if (length == chars.length) {
+				char[] newChars = new char[chars.length * 2];
+				System.arraycopy(chars, 0, newChars, 0, length);
+				chars = newChars;
+			}
+			chars[length++] = c;
+		}
+		private void endField() {
+			if (fields == ends.length) {
+				int[] newEnds = new int[ends.length * 2];
+				System.arraycopy(ends, 0, newEnds, 0, fields);
+				ends = newEnds;
+			}
+			ends[fields++] = length;
+		}
+		private int read() throws IOException {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			return buffer[position++];
+		}
+		private int peek() throws IOException {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			return buffer[position];
+		}
+		private boolean fill() throws IOException {
+			int n;
+			do {
+				n = reader.read(buffer, 0, buffer.length);
+			} while (n == 0);
+			if (n < 0) {
+				return false;
+			}
+			position = 0;
+			limit = n;
+			return true;
+		}
+	}
 	private static String[] splitLine(String line) {
 		line = line.replaceFirst("^\"", "");
 		line = line.replaceFirst("\"$", "");
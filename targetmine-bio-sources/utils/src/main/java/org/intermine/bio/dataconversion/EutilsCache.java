@@ -0,0 +1,106 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A content-addressed disk cache of NCBI E-utilities records: a record is stored in a file named
+ * by the SHA-1 of its key (e.g. "esummary/gene/1234"), under a directory named by the first two
+ * hex digits. Delete the directory to refresh the records.
+ *
+ * @author chenyian
+ *
+ */
+public class EutilsCache {
+	private File dir;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	public EutilsCache(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to create the cache directory: " + dir);
+		}
+		this.dir = dir;
+	}
+
+	/**
+	 * @return the record, null if not cached
+	 */
+	public synchronized String get(String key) throws IOException {
+		File file = getFile(key);
+		if (!file.exists()) {
+			misses++;
+			return null;
+		}
+		hits++;
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < bytes.length) {
+				int read = in.read(bytes, n, bytes.length - n);
+				if (read == -1) {
+					throw new IOException("Truncated cache file: " + file);
+				}
+				n += read;
+			}
+		} finally {
+			in.close();
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public synchronized void put(String key, String record) throws IOException {
+		File file = getFile(key);
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Failed to create the cache directory: " + parent);
+		}
+		// written aside and renamed, so that an interrupted run leaves no partial record
+		File tmpFile = new File(parent, file.getName() + ".tmp");
+		OutputStream out = new FileOutputStream(tmpFile);
+		try {
+			out.write(record.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+			throw new IOException("Failed to write the cache file: " + file);
+		}
+	}
+
+	private File getFile(String key) {
+		String hash = sha1(key);
+		return new File(new File(dir, hash.substring(0, 2)), hash);
+	}
+
+	static String sha1(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+}
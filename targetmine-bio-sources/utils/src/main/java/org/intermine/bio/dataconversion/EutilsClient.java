@@ -0,0 +1,373 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A client of the NCBI E-utilities for the fill-missing-* sources. The requests are limited by a
+ * token bucket to the rate NCBI allows (3 requests per second, 10 with an API key), several of
+ * them can be in flight, large ID lists are sent by POST and failed requests are retried with an
+ * exponential backoff.
+ *
+ * Configured by the ncbi.* properties, see create(Properties); ncbi.eutils.url allows pointing
+ * the client to a local server.
+ *
+ * @author chenyian
+ *
+ */
+public class EutilsClient {
+	private static final Logger LOG = LogManager.getLogger(EutilsClient.class);
+
+	public static final String DEFAULT_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/";
+
+	// NCBI recommends POST for more than about 200 UIDs
+	private static final int MAX_GET_IDS = 200;
+	private static final int MAX_GET_LENGTH = 2000;
+
+	private String baseUrl;
+	private String apiKey;
+	private RateLimiter rateLimiter;
+	private int maxInFlight = 1;
+	private int maxRetries = 5;
+	private long initialBackoff = 1000L;
+	private int timeout = 300000;
+	private EutilsCache cache = null;
+
+	private int requests = 0;
+	private int retries = 0;
+
+	/**
+	 * @param baseUrl URL of the E-utilities, ending with '/'
+	 * @param apiKey NCBI API key, may be null
+	 */
+	public EutilsClient(String baseUrl, String apiKey) {
+		this.baseUrl = baseUrl;
+		this.apiKey = StringUtils.isBlank(apiKey) ? null : apiKey.trim();
+		this.rateLimiter = new RateLimiter(this.apiKey == null ? 3d : 10d);
+	}
+
+	/**
+	 * Properties (all optional):
+	 * ncbi.apikey, ncbi.eutils.url, ncbi.eutils.rate (requests per second),
+	 * ncbi.eutils.parallel (requests in flight), ncbi.eutils.retries, ncbi.eutils.cache.dir
+	 */
+	public static EutilsClient create(Properties properties) throws IOException {
+		EutilsClient client = new EutilsClient(properties.getProperty("ncbi.eutils.url",
+				DEFAULT_URL), properties.getProperty("ncbi.apikey"));
+		String rate = properties.getProperty("ncbi.eutils.rate");
+		if (!StringUtils.isBlank(rate)) {
+			client.setRate(Double.parseDouble(rate.trim()));
+		}
+		String parallel = properties.getProperty("ncbi.eutils.parallel");
+		if (!StringUtils.isBlank(parallel)) {
+			client.setMaxInFlight(Integer.parseInt(parallel.trim()));
+		} else {
+			client.setMaxInFlight(client.apiKey == null ? 2 : 4);
+		}
+		String retries = properties.getProperty("ncbi.eutils.retries");
+		if (!StringUtils.isBlank(retries)) {
+			client.setMaxRetries(Integer.parseInt(retries.trim()));
+		}
+		String cacheDir = properties.getProperty("ncbi.eutils.cache.dir");
+		if (!StringUtils.isBlank(cacheDir)) {
+			client.setCache(new EutilsCache(new File(cacheDir.trim())));
+		}
+		return client;
+	}
+
+	public void setRate(double requestsPerSecond) {
+		this.rateLimiter = new RateLimiter(requestsPerSecond);
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(maxInFlight, 1);
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @param initialBackoff milliseconds to wait before the first retry; doubled at each retry
+	 */
+	public void setInitialBackoff(long initialBackoff) {
+		this.initialBackoff = initialBackoff;
+	}
+
+	public void setCache(EutilsCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the record cache, null if not configured
+	 */
+	public EutilsCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Callback of fetchBatches().
+	 */
+	public interface ResponseHandler {
+		void handle(List<String> ids, String response) throws Exception;
+	}
+
+	/**
+	 * Send a request; thread-safe.
+	 *
+	 * @param utility e.g. "esummary.fcgi"
+	 * @param params parameters other than the IDs, e.g. db
+	 * @param ids the UIDs
+	 * @return the response body
+	 */
+	public String fetch(String utility, Map<String, String> params, Collection<String> ids)
+			throws IOException, InterruptedException {
+		String query = getQuery(params, ids);
+		String url = baseUrl + utility;
+		boolean post = ids.size() > MAX_GET_IDS
+				|| url.length() + query.length() + 1 > MAX_GET_LENGTH;
+		for (int attempt = 0;; attempt++) {
+			rateLimiter.acquire();
+			try {
+				return request(url, query, post);
+			} catch (IOException e) {
+				long wait = initialBackoff << Math.min(attempt, 16);
+				if (e instanceof HttpStatusException) {
+					HttpStatusException hse = (HttpStatusException) e;
+					if (!hse.isRetryable()) {
+						throw e;
+					}
+					wait = Math.max(wait, hse.retryAfter);
+				}
+				if (attempt >= maxRetries) {
+					throw e;
+				}
+				synchronized (this) {
+					retries++;
+				}
+				LOG.warn(String.format("%s (%d ids) failed: %s; retry in %d ms.", utility,
+						ids.size(), e.getMessage(), wait));
+				Thread.sleep(wait);
+			}
+		}
+	}
+
+	/**
+	 * Fetch the batches with up to maxInFlight requests at a time. The handler is called by this
+	 * thread, in the order of the batches.
+	 */
+	public void fetchBatches(final String utility, final Map<String, String> params,
+			List<List<String>> batches, ResponseHandler handler) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+		try {
+			// the responses waiting for the handler are limited as well
+			Deque<Pending> pending = new ArrayDeque<Pending>();
+			Iterator<List<String>> iterator = batches.iterator();
+			while (iterator.hasNext() || !pending.isEmpty()) {
+				while (iterator.hasNext() && pending.size() < maxInFlight * 2) {
+					final List<String> ids = iterator.next();
+					pending.add(new Pending(ids, executor.submit(new Callable<String>() {
+						@Override
+						public String call() throws Exception {
+							return fetch(utility, params, ids);
+						}
+					})));
+				}
+				Pending next = pending.poll();
+				String response;
+				try {
+					response = next.response.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+				handler.handle(next.ids, response);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		LOG.info(toString());
+	}
+
+	private static class Pending {
+		private List<String> ids;
+		private Future<String> response;
+
+		Pending(List<String> ids, Future<String> response) {
+			this.ids = ids;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * @return the IDs by batches of the size, in order
+	 */
+	public static List<List<String>> partition(Collection<String> ids, int size) {
+		List<List<String>> ret = new ArrayList<List<String>>();
+		List<String> batch = new ArrayList<String>();
+		for (String id : ids) {
+			batch.add(id);
+			if (batch.size() == size) {
+				ret.add(batch);
+				batch = new ArrayList<String>();
+			}
+		}
+		if (!batch.isEmpty()) {
+			ret.add(batch);
+		}
+		return ret;
+	}
+
+	private String getQuery(Map<String, String> params, Collection<String> ids)
+			throws UnsupportedEncodingException {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			sb.append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=')
+					.append(URLEncoder.encode(param.getValue(), "UTF-8")).append('&');
+		}
+		sb.append("id=").append(URLEncoder.encode(StringUtils.join(ids, ","), "UTF-8"));
+		if (apiKey != null) {
+			sb.append("&api_key=").append(URLEncoder.encode(apiKey, "UTF-8"));
+		}
+		return sb.toString();
+	}
+
+	private String request(String url, String query, boolean post) throws IOException {
+		synchronized (this) {
+			requests++;
+		}
+		HttpURLConnection connection = (HttpURLConnection) new URL(post ? url : url + "?"
+				+ query).openConnection();
+		try {
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+			if (post) {
+				byte[] body = query.getBytes(StandardCharsets.UTF_8);
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type",
+						"application/x-www-form-urlencoded");
+				connection.setFixedLengthStreamingMode(body.length);
+				OutputStream out = connection.getOutputStream();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				long retryAfter = 0;
+				String header = connection.getHeaderField("Retry-After");
+				if (header != null && header.trim().matches("\\d+")) {
+					retryAfter = Long.parseLong(header.trim()) * 1000L;
+				}
+				throw new HttpStatusException(status, retryAfter);
+			}
+			InputStream in = connection.getInputStream();
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+				in = new GZIPInputStream(in);
+			}
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+				return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+			} finally {
+				in.close();
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static class HttpStatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private int status;
+		private long retryAfter;
+
+		HttpStatusException(int status, long retryAfter) {
+			super("HTTP " + status);
+			this.status = status;
+			this.retryAfter = retryAfter;
+		}
+
+		/**
+		 * @return true for 429 (too many requests) and server errors
+		 */
+		boolean isRetryable() {
+			return status == 429 || status >= 500;
+		}
+	}
+
+	/**
+	 * A token bucket holding one token, refilled at the rate, so that the requests are evenly
+	 * spaced whatever the number of threads.
+	 */
+	static class RateLimiter {
+		private long interval;
+		private long next = 0;
+
+		RateLimiter(double permitsPerSecond) {
+			this.interval = (long) (1000000000d / permitsPerSecond);
+		}
+
+		void acquire() throws InterruptedException {
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (next < now) {
+					next = now;
+				}
+				wait = next - now;
+				next += interval;
+			}
+			if (wait > 0) {
+				Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		String ret = String.format("E-utilities: %d requests, %d retries", requests, retries);
+		if (cache != null) {
+			ret += String.format("; cache: %d hits, %d misses", cache.getHits(),
+					cache.getMisses());
+		}
+		return ret;
+	}
+}
@@ -1,23 +1,12 @@
 package org.intermine.bio.dataconversion;
 
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.intermine.dataconversion.DataConverter;
-import org.intermine.metadata.ConstraintOp;
-import org.intermine.model.InterMineObject;
-import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.objectstore.ObjectStoreFactory;
-import org.intermine.objectstore.query.Query;
-import org.intermine.objectstore.query.QueryClass;
-import org.intermine.objectstore.query.QueryField;
-import org.intermine.objectstore.query.QueryValue;
-import org.intermine.objectstore.query.Results;
-import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.xml.full.Item;
 
 public class GeneIdFinder {
@@ -28,76 +17,60 @@ public class GeneIdFinder {
 		this.converter = converter;
 		this.osAlias = osAlias;
 	}
-    Map<String, String> synonymSubjectIdMap = new HashMap<>();
-    public String getGenePrimayIdBySynonym(String refCore) throws Exception {
-    	if(Utils.isEmpty(refCore)) {
-    		return null;
+    private BulkIdResolver synonymResolver;
+    private BulkIdResolver ncbiGeneIdResolver;
+
+    private BulkIdResolver getSynonymResolver() {
+    	if (synonymResolver == null) {
+    		synonymResolver = BulkIdResolver.createGeneSynonymResolver(osAlias);
     	}
-    	if(synonymSubjectIdMap.containsKey(refCore)) {
-    		return synonymSubjectIdMap.get(refCore);
+    	return synonymResolver;
+    }
+
+    private BulkIdResolver getNcbiGeneIdResolver() {
+    	if (ncbiGeneIdResolver == null) {
+    		ncbiGeneIdResolver = BulkIdResolver.createNcbiGeneIdResolver(osAlias);
     	}
-        ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
+    	return ncbiGeneIdResolver;
+    }
 
-        Query q = new Query();
-        QueryClass qcSynonym = new QueryClass(os.getModel().
-                getClassDescriptorByName("Synonym").getType());
+    /**
+     * Load all synonyms of genes by one query, instead of one query per unknown synonym.
+     */
+    public void preloadSynonyms() throws Exception {
+    	getSynonymResolver().preload();
+    }
 
-        q.addFrom(qcSynonym);
-        q.addToSelect(qcSynonym);
-        QueryField qcSynonymInterMineValue = new QueryField(qcSynonym, "value");
-        SimpleConstraint sc = new SimpleConstraint(qcSynonymInterMineValue, ConstraintOp.EQUALS, new QueryValue(refCore));
-        q.setConstraint(sc);
-        // query = select * from synonym where value = refCore;
-        Results results = os.execute(q);
-        Iterator<Object> iterator = results.iterator();
+    /**
+     * Load all NCBI gene IDs by one query, instead of one query per unknown ID.
+     */
+    public void preloadEntrezGeneIds() throws Exception {
+    	getNcbiGeneIdResolver().preload();
+    }
 
-        while (iterator.hasNext()) {
-            ResultsRow<InterMineObject> rr = (ResultsRow<InterMineObject>) iterator.next();
-            InterMineObject p = rr.get(0);
+    public Map<String, String> getGenePrimayIdsBySynonym(Collection<String> refCores) throws Exception {
+    	return getSynonymResolver().resolveAll(refCores);
+    }
 
-            // synonym.subject is 'gene' Item, get subject.
-            InterMineObject geneItem = (InterMineObject) p.getFieldValue("subject");
-            String genePrimaryId = (String) geneItem.getFieldValue("primaryIdentifier");
-            if (genePrimaryId != null) {
-                synonymSubjectIdMap.put(refCore, genePrimaryId);
-                return genePrimaryId;
-            }
-        }
-        return null;
+    public Map<String, String> getGenePrimayIdsByEntrezGeneId(Collection<String> entrezGeneIds) throws Exception {
+    	return getNcbiGeneIdResolver().resolveAll(entrezGeneIds);
     }
-    Map<String, String> entrezGeneIdMap = new HashMap<>();
-    public String getGenePrimayIdByEntrezGeneId(String entrezGeneId) throws Exception {
-    	if(Utils.isEmpty(entrezGeneId)) {
-    		return null;
-    	}
-    	if(entrezGeneIdMap.containsKey(entrezGeneId)) {
-    		return entrezGeneIdMap.get(entrezGeneId);
-    	}
-        ObjectStore os = ObjectStoreFactory.getObjectStore(osAlias);
 
-        Query q = new Query();
-        QueryClass gene = new QueryClass(os.getModel().
-                getClassDescriptorByName("Gene").getType());
+    public String getGenePrimayIdBySynonym(String refCore) throws Exception {
+    	return getSynonymResolver().resolve(refCore);
+    }
 
-        q.addFrom(gene);
-        q.addToSelect(gene);
-        QueryField qcGeneNcbiGeneId = new QueryField(gene, "ncbigeneid");
-        SimpleConstraint sc = new SimpleConstraint(qcGeneNcbiGeneId, ConstraintOp.EQUALS, new QueryValue(entrezGeneId));
-        q.setConstraint(sc);
-        Results results = os.execute(q);
-        Iterator<Object> iterator = results.iterator();
-        String genePrimaryId = null;
-        while (iterator.hasNext()) {
-            ResultsRow<InterMineObject> rr = (ResultsRow<InterMineObject>) iterator.next();
-            InterMineObject p = rr.get(0);
+    public String getGenePrimayIdByEntrezGeneId(String entrezGeneId) throws Exception {
+    	return getNcbiGeneIdResolver().resolve(entrezGeneId);
+    }
 
-            // synonym.subject is 'gene' Item, get subject.
-            InterMineObject geneItem = (InterMineObject) p.getFieldValue("subject");
-            genePrimaryId = (String) geneItem.getFieldValue("primaryIdentifier");
-            break;
-        }
-    	entrezGeneIdMap.put(entrezGeneId, genePrimaryId);
-        return genePrimaryId;
+    public void logStatistics() {
+    	if (synonymResolver != null) {
+    		synonymResolver.logStatistics();
+    	}
+    	if (ncbiGeneIdResolver != null) {
+    		ncbiGeneIdResolver.logStatistics();
+    	}
     }
 
     public String getGeneRef(String primaryIdentifier) throws ObjectStoreException {
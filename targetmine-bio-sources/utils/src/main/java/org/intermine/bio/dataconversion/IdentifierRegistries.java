@@ -0,0 +1,78 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Creates the IdentifierRegistry of a converter and holds where they are stored:
+ * "heap" (default), "direct" (off-heap buffers) or "mapped" (memory-mapped temporary files, in
+ * the directory if set, which the OS can write to disk). The storage is to be set before the
+ * registries are used, typically by a converter property.
+ *
+ * @author chenyian
+ *
+ */
+public class IdentifierRegistries {
+	private static final Logger LOG = LogManager.getLogger(IdentifierRegistries.class);
+
+	public enum Storage {
+		HEAP, DIRECT, MAPPED
+	}
+
+	private Storage storage = Storage.HEAP;
+	private File directory = null;
+	private List<IdentifierRegistry> registries = new ArrayList<IdentifierRegistry>();
+
+	public IdentifierRegistry create(String name) {
+		IdentifierRegistry ret = new IdentifierRegistry(this, name);
+		registries.add(ret);
+		return ret;
+	}
+
+	/**
+	 * @param storage "heap", "direct" or "mapped"
+	 */
+	public void setStorage(String storage) {
+		this.storage = Storage.valueOf(storage.trim().toUpperCase());
+	}
+
+	public Storage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @param directory where the mapped files are created, the default temporary directory if
+	 * not set
+	 */
+	public void setDirectory(String directory) {
+		this.directory = new File(directory.trim());
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public void logStatistics() {
+		long total = 0;
+		for (IdentifierRegistry registry : registries) {
+			LOG.info(registry.toString());
+			total += registry.getAllocatedBytes();
+		}
+		LOG.info(String.format("%d registries, %d bytes (%s)", registries.size(), total,
+				storage.name().toLowerCase()));
+	}
+
+	/**
+	 * Log the statistics and release the registries.
+	 */
+	public void close() {
+		logStatistics();
+		for (IdentifierRegistry registry : registries) {
+			registry.close();
+		}
+	}
+}
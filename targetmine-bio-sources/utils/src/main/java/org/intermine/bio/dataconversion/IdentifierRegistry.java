@@ -0,0 +1,361 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A String to String map for the identifier registries of the converters (identifier to item
+ * reference, e.g. compoundMap). The entries are kept as UTF-8 records in pages instead of String
+ * objects and are found by an open addressing hash table of record addresses, so that millions of
+ * entries take a fraction of the heap of a HashMap. The pages and the table are on the heap, in
+ * direct buffers or in a memory-mapped temporary file, according to the storage of the
+ * IdentifierRegistries which created the registry.
+ *
+ * Not thread-safe. Null values are allowed, null keys are not.
+ *
+ * @author chenyian
+ *
+ */
+public class IdentifierRegistry {
+	private static final int MIN_CAPACITY = 1 << 10;
+	private static final float LOAD_FACTOR = 0.6f;
+	// a slot is the address (long, 0 for an empty slot) and the hash (int) of a record
+	private static final int SLOT_SIZE = 12;
+
+	private IdentifierRegistries registries;
+	private String name;
+	private IdentifierRegistries.Storage storage;
+	private int pageSize;
+
+	private ByteBuffer table;
+	private int capacity;
+	private int size = 0;
+
+	private List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+	private ByteBuffer page;
+
+	private File file;
+	private FileChannel channel;
+	private long fileLength = 0;
+
+	private byte[] keyBuffer = new byte[64];
+	private int keyLength;
+	// offset following the last varint read
+	private int readPosition;
+
+	private long keyBytes = 0;
+	private long valueBytes = 0;
+	private long garbageBytes = 0;
+	private long pageBytes = 0;
+
+	IdentifierRegistry(IdentifierRegistries registries, String name) {
+		this.registries = registries;
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(String key) {
+		return size > 0 && find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of the key, null if the key is not registered or its value is null
+	 */
+	public String get(String key) {
+		if (size == 0) {
+			return null;
+		}
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		return readValue(table.getLong(slot * SLOT_SIZE));
+	}
+
+	/**
+	 * Register the value of the key; a previous value is replaced.
+	 */
+	public void put(String key, String value) {
+		if (table == null) {
+			init();
+		}
+		int slot = find(key);
+		int hash = hash(key);
+		byte[] valueUtf8 = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+		if (slot >= 0) {
+			long old = table.getLong(slot * SLOT_SIZE);
+			garbageBytes += getRecordLength(old);
+			valueBytes -= getValueLength(old);
+			table.putLong(slot * SLOT_SIZE, writeRecord(valueUtf8));
+			return;
+		}
+		if (size + 1 > capacity * LOAD_FACTOR) {
+			resize(capacity * 2);
+		}
+		insert(writeRecord(valueUtf8), hash);
+		size++;
+		keyBytes += keyLength;
+	}
+
+	/**
+	 * Release the buffers; the registry can not be used any more.
+	 */
+	public void close() {
+		table = null;
+		pages.clear();
+		page = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			channel = null;
+			file.delete();
+		}
+	}
+
+	private void init() {
+		storage = registries.getStorage();
+		pageSize = storage == IdentifierRegistries.Storage.MAPPED ? 1 << 26 : 1 << 20;
+		capacity = MIN_CAPACITY;
+		table = allocate(capacity * SLOT_SIZE);
+	}
+
+	private ByteBuffer allocate(int bytes) {
+		switch (storage) {
+		case DIRECT:
+			return ByteBuffer.allocateDirect(bytes);
+		case MAPPED:
+			try {
+				if (channel == null) {
+					file = File.createTempFile("registry-" + name + "-", ".tmp",
+							registries.getDirectory());
+					file.deleteOnExit();
+					channel = new RandomAccessFile(file, "rw").getChannel();
+				}
+				// the regions are mapped at the end of the file, which grows as needed
+				ByteBuffer ret = channel.map(FileChannel.MapMode.READ_WRITE, fileLength, bytes);
+				fileLength += bytes;
+				return ret;
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to map the registry file of " + name, e);
+			}
+		default:
+			return ByteBuffer.allocate(bytes);
+		}
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Encode the key into keyBuffer and look for it.
+	 *
+	 * @return the slot of the key, or -1
+	 */
+	private int find(String key) {
+		encodeKey(key);
+		int hash = hash(key);
+		int mask = capacity - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			long address = table.getLong(slot * SLOT_SIZE);
+			if (address == 0) {
+				return -1;
+			}
+			if (table.getInt(slot * SLOT_SIZE + 8) == hash && keyEquals(address)) {
+				return slot;
+			}
+		}
+	}
+
+	private void insert(long address, int hash) {
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		while (table.getLong(slot * SLOT_SIZE) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table.putLong(slot * SLOT_SIZE, address);
+		table.putInt(slot * SLOT_SIZE + 8, hash);
+	}
+
+	private void resize(int newCapacity) {
+		if ((long) newCapacity * SLOT_SIZE > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many entries in the registry " + name);
+		}
+		ByteBuffer oldTable = table;
+		int oldCapacity = capacity;
+		table = allocate(newCapacity * SLOT_SIZE);
+		capacity = newCapacity;
+		for (int i = 0; i < oldCapacity; i++) {
+			long address = oldTable.getLong(i * SLOT_SIZE);
+			if (address != 0) {
+				insert(address, oldTable.getInt(i * SLOT_SIZE + 8));
+			}
+		}
+	}
+
+	private void encodeKey(String key) {
+		int length = key.length();
+		if (keyBuffer.length < length) {
+			keyBuffer = new byte[Math.max(length, keyBuffer.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c >= 0x80) {
+				// not ASCII
+				keyBuffer = key.getBytes(StandardCharsets.UTF_8);
+				keyLength = keyBuffer.length;
+				return;
+			}
+			keyBuffer[i] = (byte) c;
+		}
+		keyLength = length;
+	}
+
+	/**
+	 * A record is the key and the value, each preceded by its length as a varint; the length of
+	 * the value is stored plus 1, 0 meaning null.
+	 *
+	 * @return the address of the record: page index + 1 in the upper 32 bits, offset in the
+	 * lower 32 bits
+	 */
+	private long writeRecord(byte[] value) {
+		int valueLength = value == null ? 0 : value.length;
+		int recordLength = 10 + keyLength + valueLength;
+		if (page == null || page.remaining() < recordLength) {
+			page = allocate(Math.max(pageSize, recordLength));
+			pages.add(page);
+			pageBytes += page.capacity();
+		}
+		long address = ((long) pages.size() << 32) | page.position();
+		putVarint(page, keyLength);
+		page.put(keyBuffer, 0, keyLength);
+		if (value == null) {
+			putVarint(page, 0);
+		} else {
+			putVarint(page, valueLength + 1);
+			page.put(value);
+			valueBytes += valueLength;
+		}
+		return address;
+	}
+
+	private ByteBuffer getPage(long address) {
+		return pages.get((int) (address >>> 32) - 1);
+	}
+
+	private boolean keyEquals(long address) {
+		ByteBuffer p = getPage(address);
+		int length = readVarint(p, (int) address);
+		if (length != keyLength) {
+			return false;
+		}
+		int position = readPosition;
+		for (int i = 0; i < length; i++) {
+			if (p.get(position + i) != keyBuffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the stored length of the value (length + 1, 0 for null), readPosition is set to
+	 * the offset of the value
+	 */
+	private int readValueLength(long address) {
+		ByteBuffer p = getPage(address);
+		int length = readVarint(p, (int) address);
+		return readVarint(p, readPosition + length);
+	}
+
+	private String readValue(long address) {
+		int length = readValueLength(address) - 1;
+		if (length < 0) {
+			return null;
+		}
+		ByteBuffer p = getPage(address);
+		if (p.hasArray()) {
+			return new String(p.array(), p.arrayOffset() + readPosition, length,
+					StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer duplicate = p.duplicate();
+		duplicate.position(readPosition);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int getValueLength(long address) {
+		return Math.max(readValueLength(address) - 1, 0);
+	}
+
+	private int getRecordLength(long address) {
+		int valueLength = getValueLength(address);
+		return readPosition + valueLength - (int) address;
+	}
+
+	private int readVarint(ByteBuffer buffer, int position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		readPosition = position;
+		return value;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	public long getKeyBytes() {
+		return keyBytes;
+	}
+
+	public long getValueBytes() {
+		return valueBytes;
+	}
+
+	/**
+	 * @return bytes allocated for the pages and the hash table
+	 */
+	public long getAllocatedBytes() {
+		return pageBytes + (long) capacity * SLOT_SIZE;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d entries, keys %d bytes, values %d bytes, replaced %d bytes,"
+				+ " %d pages + table of %d slots = %d bytes (%s)", name, size, keyBytes,
+				valueBytes, garbageBytes, pages.size(), capacity, getAllocatedBytes(),
+				storage == null ? "empty" : storage.name().toLowerCase());
+	}
+}
@@ -0,0 +1,358 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Opens the input files of the converters, whatever their compression: gzip (.gz), BGZF (.bgz,
+ * decompressed by several threads) and Zstandard (.zst) are recognised by their magic number, so
+ * that the dumps need not be decompressed to disk. Compressed files are decompressed ahead by a
+ * thread; large plain files are read through memory-mapped regions.
+ *
+ * The Reader given to process() is opened by the converter task on the raw file; reopen() replaces
+ * it when the current file is compressed.
+ *
+ * @author chenyian
+ *
+ */
+public class InputFiles {
+	// plain files at least this large are memory-mapped
+	private static final long MAPPED_THRESHOLD = 1L << 28;
+	private static final int MAPPED_REGION_SIZE = 1 << 28;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// chunks decompressed ahead of the reader
+	private static final int READ_AHEAD_CHUNK_SIZE = 1 << 20;
+	private static final int READ_AHEAD_CHUNKS = 8;
+	// how often a blocked read-ahead thread checks whether the stream is closed
+	private static final long READ_AHEAD_POLL_MS = 100;
+
+	public enum Compression {
+		NONE, GZIP, BGZF, ZSTD
+	}
+
+	private InputFiles() {
+		// static methods only
+	}
+
+	/**
+	 * @return a buffered reader of the decompressed content, in the default charset as FileReader
+	 */
+	public static BufferedReader openReader(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(openStream(file)), BUFFER_SIZE);
+	}
+
+	/**
+	 * @return the decompressed content
+	 */
+	public static InputStream openStream(File file) throws IOException {
+		switch (getCompression(file)) {
+		case BGZF:
+			return new BgzfInputStream(new FileInputStream(file));
+		case GZIP:
+			return new ReadAheadInputStream(new GZIPInputStream(new FileInputStream(file),
+					BUFFER_SIZE), file.getName());
+		case ZSTD:
+			return new ReadAheadInputStream(new ZstdInputStream(new BufferedInputStream(
+					new FileInputStream(file), BUFFER_SIZE)), file.getName());
+		default:
+			if (file.length() >= MAPPED_THRESHOLD) {
+				return new MappedInputStream(file);
+			}
+			return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * @param currentFile the file being processed, may be null
+	 * @param reader the reader of the file given to process()
+	 * @return the reader if the file is not compressed, otherwise a reader of the decompressed
+	 * content, to be closed by the caller
+	 */
+	public static Reader reopen(File currentFile, Reader reader) throws IOException {
+		if (currentFile == null || !currentFile.isFile()
+				|| getCompression(currentFile) == Compression.NONE) {
+			return reader;
+		}
+		return openReader(currentFile);
+	}
+
+	/**
+	 * @return the compression given by the first bytes of the file
+	 */
+	public static Compression getCompression(File file) throws IOException {
+		byte[] header = new byte[18];
+		int n = 0;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while (n < header.length && (read = in.read(header, n, header.length - n)) != -1) {
+				n += read;
+			}
+		} finally {
+			in.close();
+		}
+		if (n >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+			return BgzfInputStream.isBgzfHeader(header, n) ? Compression.BGZF : Compression.GZIP;
+		}
+		if (n >= 4 && (header[0] & 0xff) == 0x28 && (header[1] & 0xff) == 0xb5
+				&& (header[2] & 0xff) == 0x2f && (header[3] & 0xff) == 0xfd) {
+			return Compression.ZSTD;
+		}
+		return Compression.NONE;
+	}
+
+	static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				// an input which is not closed does not keep the JVM alive
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Reads a stream ahead in a thread, so that decompressing overlaps with parsing. The stream
+	 * is only used, and closed, by that thread.
+	 */
+	static class ReadAheadInputStream extends InputStream {
+		private static final byte[] END = new byte[0];
+
+		private final InputStream in;
+		private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(
+				READ_AHEAD_CHUNKS);
+		private final Thread thread;
+		private volatile IOException error = null;
+		private volatile boolean closed = false;
+
+		private byte[] chunk = null;
+		private int position = 0;
+
+		ReadAheadInputStream(InputStream input, String name) {
+			this.in = input;
+			this.thread = daemonThreadFactory("read-ahead-" + name).newThread(new Runnable() {
+				@Override
+				public void run() {
+					readAhead();
+				}
+			});
+			thread.start();
+		}
+
+		private void readAhead() {
+			try {
+				while (!closed) {
+					byte[] buffer = new byte[READ_AHEAD_CHUNK_SIZE];
+					int n = 0;
+					int read;
+					while (n < buffer.length && (read = in.read(buffer, n, buffer.length - n)) != -1) {
+						n += read;
+					}
+					if (n > 0 && !put(n == buffer.length ? buffer : Arrays.copyOf(buffer, n))) {
+						return;
+					}
+					if (n < buffer.length) {
+						break;
+					}
+				}
+				put(END);
+			} catch (IOException e) {
+				error = e;
+				try {
+					put(END);
+				} catch (InterruptedException ie) {
+					// closed
+				}
+			} catch (InterruptedException e) {
+				// closed
+			} finally {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing left to read
+				}
+			}
+		}
+
+		/**
+		 * @return false if the stream is closed, the reader will not take the chunk
+		 */
+		private boolean put(byte[] buffer) throws InterruptedException {
+			while (!queue.offer(buffer, READ_AHEAD_POLL_MS, TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (chunk != END && (chunk == null || position == chunk.length)) {
+				try {
+					chunk = queue.take();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while reading ahead", e);
+				}
+				position = 0;
+				if (chunk == END && error != null) {
+					throw error;
+				}
+			}
+			return chunk != END;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			return chunk[position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int n = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			// the thread closes the stream once it is out of read()
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Reads a file through successive memory-mapped regions, mapped one at a time; a region is
+	 * unmapped when the next one is mapped.
+	 */
+	static class MappedInputStream extends InputStream {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long length;
+		private long offset = 0;
+		private MappedByteBuffer region = null;
+
+		MappedInputStream(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			this.channel = this.file.getChannel();
+			this.length = channel.size();
+		}
+
+		private boolean nextRegion() throws IOException {
+			if (region != null && region.hasRemaining()) {
+				return true;
+			}
+			unmap(region);
+			region = null;
+			if (offset >= length) {
+				return false;
+			}
+			long size = Math.min(MAPPED_REGION_SIZE, length - offset);
+			region = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+			offset += size;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextRegion()) {
+				return -1;
+			}
+			return region.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextRegion()) {
+				return -1;
+			}
+			int n = Math.min(len, region.remaining());
+			region.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			unmap(region);
+			region = null;
+			file.close();
+		}
+
+		/**
+		 * Release a region now rather than when it is garbage collected, through the cleaner of
+		 * the JDK (Unsafe.invokeCleaner from Java 9, DirectBuffer.cleaner() before); if neither
+		 * is accessible the region is left to the garbage collector.
+		 */
+		private static void unmap(MappedByteBuffer buffer) {
+			if (buffer == null) {
+				return;
+			}
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				invokeCleaner.invoke(field.get(null), buffer);
+				return;
+			} catch (NoSuchMethodException e) {
+				// Java 8
+			} catch (Exception e) {
+				return;
+			}
+			try {
+				Method cleaner = buffer.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object clean = cleaner.invoke(buffer);
+				if (clean != null) {
+					clean.getClass().getMethod("clean").invoke(clean);
+				}
+			} catch (Exception e) {
+				// left to the garbage collector
+			}
+		}
+	}
+}
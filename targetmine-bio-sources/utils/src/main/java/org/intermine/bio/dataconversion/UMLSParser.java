@@ -2,7 +2,6 @@ package org.intermine.bio.dataconversion;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
@@ -21,7 +20,7 @@ public class UMLSParser implements AutoCloseable{
 	
 	public UMLSParser(File consoFile, File styFile,String[] semanticTypes) throws IOException {
 		this.semanticTypes = semanticTypes;
-		this.reader = new BufferedReader(new FileReader(consoFile));
+		this.reader = InputFiles.openReader(consoFile);
 		this.styFile = styFile;
 		loadStyFile();
 	}
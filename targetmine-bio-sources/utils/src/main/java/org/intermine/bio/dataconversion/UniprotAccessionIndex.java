@@ -0,0 +1,561 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A byte offset index of the entries of a UniProt XML file by accession, stored in a sorted
+ * binary file next to the XML file (&lt;file&gt;.idx), so that a few entries can be read without
+ * scanning the whole file.
+ *
+ * The entries are found by the lines as the converters do: an entry starts at a line beginning
+ * with "&lt;entry" and ends after a line beginning with "&lt;/entry&gt;"; all accessions before
+ * the protein element are indexed.
+ *
+ * The file has a header (magic, version, length and modification time of the XML file, number of
+ * records) followed by the records sorted by accession, each an accession packed in a long, the
+ * offset (long) and the length (int) of the entry.
+ *
+ * @author chenyian
+ *
+ */
+public class UniprotAccessionIndex {
+	private static final Logger LOG = LogManager.getLogger(UniprotAccessionIndex.class);
+
+	private static final int MAGIC = 0x55504958;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+	private static final int RECORD_SIZE = 8 + 8 + 4;
+	// records per mapped segment, as a buffer is limited to 2GB
+	private static final int SEGMENT_RECORDS = (1 << 30) / RECORD_SIZE;
+	// records sorted in memory before being merged
+	private static final int RUN_RECORDS = 1 << 22;
+	private static final int MAX_ACCESSION_LENGTH = 10;
+
+	private static final byte[] ENTRY_START = "<entry".getBytes();
+	private static final byte[] ENTRY_END = "</entry>".getBytes();
+	private static final byte[] ACCESSION = "<accession>".getBytes();
+	private static final byte[] PROTEIN = "<protein".getBytes();
+
+	private long sourceLength;
+	private long sourceLastModified;
+	private long size;
+	private MappedByteBuffer[] segments;
+
+	private UniprotAccessionIndex() {
+		// use open()
+	}
+
+	public static File getIndexFile(File xmlFile) {
+		return new File(xmlFile.getPath() + ".idx");
+	}
+
+	/**
+	 * @return the index of the XML file, built first if it does not exist or is out of date
+	 */
+	public static UniprotAccessionIndex getIndex(File xmlFile) throws IOException {
+		File indexFile = getIndexFile(xmlFile);
+		if (indexFile.exists()) {
+			UniprotAccessionIndex index = open(indexFile);
+			if (index.isUpToDate(xmlFile)) {
+				return index;
+			}
+			LOG.info(indexFile + " is out of date.");
+		}
+		build(xmlFile, indexFile);
+		return open(indexFile);
+	}
+
+	public static UniprotAccessionIndex open(File indexFile) throws IOException {
+		UniprotAccessionIndex index = new UniprotAccessionIndex();
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+				throw new IOException("Not an accession index file: " + indexFile);
+			}
+			index.sourceLength = raf.readLong();
+			index.sourceLastModified = raf.readLong();
+			index.size = raf.readLong();
+			if (raf.length() != HEADER_SIZE + index.size * RECORD_SIZE) {
+				throw new IOException("Truncated accession index file: " + indexFile);
+			}
+			FileChannel channel = raf.getChannel();
+			int count = (int) ((index.size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+			index.segments = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long first = (long) i * SEGMENT_RECORDS;
+				long records = Math.min(SEGMENT_RECORDS, index.size - first);
+				index.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE
+						+ first * RECORD_SIZE, records * RECORD_SIZE);
+			}
+		} finally {
+			// the mappings stay valid
+			raf.close();
+		}
+		return index;
+	}
+
+	public boolean isUpToDate(File xmlFile) {
+		return xmlFile.length() == sourceLength && xmlFile.lastModified() == sourceLastModified;
+	}
+
+	/**
+	 * @return number of indexed accessions
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @param accession a UniProt accession
+	 * @return {offset, length} of the entries having the accession, usually one or none
+	 */
+	public List<long[]> find(String accession) {
+		List<long[]> ret = new ArrayList<long[]>();
+		long key = encode(accession);
+		if (key == -1) {
+			return ret;
+		}
+		// the first record not less than the key
+		long low = 0;
+		long high = size;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (getKey(mid) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		for (long i = low; i < size && getKey(i) == key; i++) {
+			ByteBuffer segment = segments[(int) (i / SEGMENT_RECORDS)];
+			int position = (int) (i % SEGMENT_RECORDS) * RECORD_SIZE;
+			ret.add(new long[] {segment.getLong(position + 8), segment.getInt(position + 16)});
+		}
+		return ret;
+	}
+
+	/**
+	 * @param accessions UniProt accessions
+	 * @return {offset, length} of the entries having any of the accessions, in the order of the
+	 * file and without duplicates
+	 */
+	public List<long[]> findAll(Collection<String> accessions) {
+		List<long[]> found = new ArrayList<long[]>();
+		for (String accession : accessions) {
+			found.addAll(find(accession));
+		}
+		long[][] entries = found.toArray(new long[found.size()][]);
+		Arrays.sort(entries, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] o1, long[] o2) {
+				return Long.compare(o1[0], o2[0]);
+			}
+		});
+		List<long[]> ret = new ArrayList<long[]>();
+		for (long[] entry : entries) {
+			if (ret.isEmpty() || ret.get(ret.size() - 1)[0] != entry[0]) {
+				ret.add(entry);
+			}
+		}
+		return ret;
+	}
+
+	private long getKey(long i) {
+		return segments[(int) (i / SEGMENT_RECORDS)].getLong((int) (i % SEGMENT_RECORDS)
+				* RECORD_SIZE);
+	}
+
+	/**
+	 * Pack an accession of up to 10 digits and upper case letters in a long, in base 37 with 0
+	 * for the padding, so that the keys sort as the accessions do.
+	 *
+	 * @return the key, or -1 if the accession can not be packed
+	 */
+	static long encode(String accession) {
+		if (accession == null || accession.isEmpty()
+				|| accession.length() > MAX_ACCESSION_LENGTH) {
+			return -1;
+		}
+		long key = 0;
+		for (int i = 0; i < MAX_ACCESSION_LENGTH; i++) {
+			int code = 0;
+			if (i < accession.length()) {
+				code = encode(accession.charAt(i));
+				if (code == -1) {
+					return -1;
+				}
+			}
+			key = key * 37 + code;
+		}
+		return key;
+	}
+
+	private static int encode(int c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0' + 1;
+		}
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A' + 11;
+		}
+		return -1;
+	}
+
+	/**
+	 * Scan the XML file once and write the index file.
+	 */
+	public static void build(File xmlFile, File indexFile) throws IOException {
+		long start = System.currentTimeMillis();
+		long sourceLength = xmlFile.length();
+		long sourceLastModified = xmlFile.lastModified();
+
+		List<File> runs = new ArrayList<File>();
+		Run run = new Run();
+		InputStream in = new FileInputStream(xmlFile);
+		try {
+			byte[] buffer = new byte[1 << 20];
+			int filled = 0;
+			// offset of buffer[0] in the file
+			long base = 0;
+			long entryStart = -1;
+			boolean inAccessions = false;
+			List<Long> keys = new ArrayList<Long>();
+			int read;
+			boolean eof = false;
+			while (!eof) {
+				read = in.read(buffer, filled, buffer.length - filled);
+				if (read == -1) {
+					eof = true;
+					if (filled == 0) {
+						break;
+					}
+				} else {
+					filled += read;
+				}
+				int lineStart = 0;
+				while (true) {
+					int lineEnd = indexOf(buffer, (byte) '\n', lineStart, filled);
+					if (lineEnd == -1) {
+						if (!eof) {
+							break;
+						}
+						// the last line without a line break
+						lineEnd = filled;
+						if (lineStart == lineEnd) {
+							break;
+						}
+					}
+					if (startsWith(buffer, lineStart, lineEnd, ENTRY_START)) {
+						entryStart = base + lineStart;
+						inAccessions = true;
+						keys.clear();
+					} else if (inAccessions) {
+						int i = lineStart;
+						while (i < lineEnd && (buffer[i] == ' ' || buffer[i] == '\t')) {
+							i++;
+						}
+						if (startsWith(buffer, i, lineEnd, ACCESSION)) {
+							int from = i + ACCESSION.length;
+							int to = indexOf(buffer, (byte) '<', from, lineEnd);
+							String accession = new String(buffer, from, (to == -1 ? lineEnd : to)
+									- from, "US-ASCII");
+							long key = encode(accession);
+							if (key == -1) {
+								LOG.warn("Accession not indexed: " + accession);
+							} else {
+								keys.add(Long.valueOf(key));
+							}
+						} else if (startsWith(buffer, i, lineEnd, PROTEIN)) {
+							inAccessions = false;
+						}
+					}
+					if (entryStart != -1 && startsWith(buffer, lineStart, lineEnd, ENTRY_END)) {
+						long entryEnd = base + Math.min(lineEnd + 1, filled);
+						for (Long key : keys) {
+							if (run.size == RUN_RECORDS) {
+								runs.add(run.write(indexFile, runs.size()));
+								run = new Run();
+							}
+							run.add(key.longValue(), entryStart, (int) (entryEnd - entryStart));
+						}
+						entryStart = -1;
+						inAccessions = false;
+						keys.clear();
+					}
+					lineStart = lineEnd + 1;
+					if (lineStart >= filled) {
+						break;
+					}
+				}
+				if (eof) {
+					break;
+				}
+				// keep the incomplete line
+				int remaining = Math.max(filled - lineStart, 0);
+				if (remaining == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				} else {
+					System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+				}
+				base += filled - remaining;
+				filled = remaining;
+			}
+		} finally {
+			in.close();
+		}
+
+		long size = 0;
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmpFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sourceLength);
+			out.writeLong(sourceLastModified);
+			out.writeLong(0L);
+			if (runs.isEmpty()) {
+				run.sort();
+				run.writeRecords(out);
+				size = run.size;
+			} else {
+				runs.add(run.write(indexFile, runs.size()));
+				size = merge(runs, out);
+			}
+		} finally {
+			out.close();
+			for (File file : runs) {
+				file.delete();
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+		try {
+			raf.seek(HEADER_SIZE - 8);
+			raf.writeLong(size);
+		} finally {
+			raf.close();
+		}
+		if (indexFile.exists() && !indexFile.delete() || !tmpFile.renameTo(indexFile)) {
+			throw new IOException("Failed to write " + indexFile);
+		}
+		LOG.info(String.format("Indexed %,d accessions of %s in %,d ms.", size, xmlFile,
+				System.currentTimeMillis() - start));
+	}
+
+	private static int indexOf(byte[] buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(byte[] buffer, int from, int to, byte[] prefix) {
+		if (to - from < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[from + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long merge(List<File> runs, DataOutputStream out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+		List<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (File file : runs) {
+				RunReader reader = new RunReader(file);
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			long size = 0;
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				out.writeLong(reader.key);
+				out.writeLong(reader.offset);
+				out.writeInt(reader.length);
+				size++;
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			return size;
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Records sorted in memory, by key then offset.
+	 */
+	private static class Run {
+		private long[] keys = new long[1024];
+		private long[] offsets = new long[1024];
+		private int[] lengths = new int[1024];
+		private int size = 0;
+
+		void add(long key, long offset, int length) {
+			if (size == keys.length) {
+				int capacity = Math.min(keys.length * 2, RUN_RECORDS);
+				keys = Arrays.copyOf(keys, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+			}
+			keys[size] = key;
+			offsets[size] = offset;
+			lengths[size] = length;
+			size++;
+		}
+
+		void sort() {
+			sort(0, size - 1);
+		}
+
+		private int compare(int i, int j) {
+			int ret = Long.compare(keys[i], keys[j]);
+			return ret != 0 ? ret : Long.compare(offsets[i], offsets[j]);
+		}
+
+		private void sort(int low, int high) {
+			while (high - low > 16) {
+				int mid = (low + high) >>> 1;
+				// median of three as the pivot, moved to high
+				if (compare(mid, low) < 0) {
+					swap(mid, low);
+				}
+				if (compare(high, low) < 0) {
+					swap(high, low);
+				}
+				if (compare(mid, high) < 0) {
+					swap(mid, high);
+				}
+				int store = low;
+				for (int i = low; i < high; i++) {
+					if (compare(i, high) < 0) {
+						swap(i, store++);
+					}
+				}
+				swap(store, high);
+				// recurse into the smaller part
+				if (store - low < high - store) {
+					sort(low, store - 1);
+					low = store + 1;
+				} else {
+					sort(store + 1, high);
+					high = store - 1;
+				}
+			}
+			for (int i = low + 1; i <= high; i++) {
+				for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+					swap(j, j - 1);
+				}
+			}
+		}
+
+		private void swap(int i, int j) {
+			long key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+			long offset = offsets[i];
+			offsets[i] = offsets[j];
+			offsets[j] = offset;
+			int length = lengths[i];
+			lengths[i] = lengths[j];
+			lengths[j] = length;
+		}
+
+		void writeRecords(DataOutputStream out) throws IOException {
+			for (int i = 0; i < size; i++) {
+				out.writeLong(keys[i]);
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+			}
+		}
+
+		File write(File indexFile, int number) throws IOException {
+			sort();
+			File file = new File(indexFile.getPath() + ".run" + number);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file), 1 << 16));
+			try {
+				writeRecords(out);
+			} finally {
+				out.close();
+			}
+			return file;
+		}
+	}
+
+	private static class RunReader implements Comparable<RunReader> {
+		private DataInputStream in;
+		long key;
+		long offset;
+		int length;
+
+		RunReader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		}
+
+		boolean next() throws IOException {
+			try {
+				key = in.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			offset = in.readLong();
+			length = in.readInt();
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+
+		@Override
+		public int compareTo(RunReader o) {
+			int ret = Long.compare(key, o.key);
+			return ret != 0 ? ret : Long.compare(offset, o.offset);
+		}
+	}
+
+	/**
+	 * Build the index files of UniProt XML files.
+	 *
+	 * @param args paths of the XML files
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String path : args) {
+			File xmlFile = new File(path);
+			build(xmlFile, getIndexFile(xmlFile));
+		}
+	}
+}
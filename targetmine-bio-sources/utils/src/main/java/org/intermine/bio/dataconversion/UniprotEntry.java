@@ -0,0 +1,288 @@
+package org.intermine.bio.dataconversion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.metadata.Util;
+
+/**
+ * The parts of a UniProt XML entry used by the converters, filled by UniprotEntryParser.
+ * Element values are the text content of the element and its descendants, as XOM getValue()
+ * gives; unset values are null.
+ *
+ * @author chenyian
+ *
+ */
+public class UniprotEntry {
+	String dataset;
+	List<String> accessions = new ArrayList<String>();
+	String name;
+	String proteinName;
+	// the values of the *Name elements of protein, except the ones equal to proteinName
+	List<String> proteinSynonyms = new ArrayList<String>();
+	List<String> componentNames = new ArrayList<String>();
+	boolean hasGene = false;
+	String geneSymbol;
+	String taxonId;
+	List<String> publications = new ArrayList<String>();
+	// evidence key -> PubMed ID, only for ECO:0000269
+	Map<String, String> evidencePublications = new HashMap<String, String>();
+	List<Comment> comments = new ArrayList<Comment>();
+	List<Keyword> keywords = new ArrayList<Keyword>();
+	List<DbReference> dbReferences = new ArrayList<DbReference>();
+	List<Feature> features = new ArrayList<Feature>();
+	boolean hasSequence = false;
+	boolean fragment = false;
+	String length;
+	String mass;
+	String sequence;
+	private String sequenceChecksum;
+
+	public String getDataset() {
+		return dataset;
+	}
+
+	public List<String> getAccessions() {
+		return accessions;
+	}
+
+	/**
+	 * @return the primary accession, or null if there is no accession
+	 */
+	public String getPrimaryAccession() {
+		return accessions.isEmpty() ? null : accessions.get(0);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getProteinName() {
+		return proteinName;
+	}
+
+	public List<String> getProteinSynonyms() {
+		return proteinSynonyms;
+	}
+
+	public List<String> getComponentNames() {
+		return componentNames;
+	}
+
+	public boolean hasGene() {
+		return hasGene;
+	}
+
+	public String getGeneSymbol() {
+		return geneSymbol;
+	}
+
+	public String getTaxonId() {
+		return taxonId;
+	}
+
+	/**
+	 * @return PubMed IDs of the references, in order
+	 */
+	public List<String> getPublications() {
+		return publications;
+	}
+
+	public Map<String, String> getEvidencePublications() {
+		return evidencePublications;
+	}
+
+	public List<Comment> getComments() {
+		return comments;
+	}
+
+	public List<Keyword> getKeywords() {
+		return keywords;
+	}
+
+	public List<DbReference> getDbReferences() {
+		return dbReferences;
+	}
+
+	public List<Feature> getFeatures() {
+		return features;
+	}
+
+	public boolean hasSequence() {
+		return hasSequence;
+	}
+
+	public boolean isFragment() {
+		return fragment;
+	}
+
+	public String getLength() {
+		return length;
+	}
+
+	public String getMass() {
+		return mass;
+	}
+
+	public String getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return MD5 checksum of the sequence, calculated at the first call
+	 */
+	public String getSequenceChecksum() {
+		if (sequenceChecksum == null && sequence != null) {
+			sequenceChecksum = Util.getMd5checksum(sequence);
+		}
+		return sequenceChecksum;
+	}
+
+	public static class Comment {
+		String type;
+		boolean hasText = false;
+		String text;
+		String textEvidence;
+		List<Location> locations = new ArrayList<Location>();
+
+		public String getType() {
+			return type;
+		}
+
+		public boolean hasText() {
+			return hasText;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public String getTextEvidence() {
+			return textEvidence;
+		}
+
+		/**
+		 * @return the subcellularLocation/location elements
+		 */
+		public List<Location> getLocations() {
+			return locations;
+		}
+	}
+
+	public static class Location {
+		String value;
+		String evidence;
+
+		public String getValue() {
+			return value;
+		}
+
+		public String getEvidence() {
+			return evidence;
+		}
+	}
+
+	public static class Keyword {
+		String id;
+		String value;
+
+		public String getId() {
+			return id;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+
+	public static class DbReference {
+		String type;
+		String id;
+		// property type, value pairs
+		List<String[]> properties = new ArrayList<String[]>();
+
+		public String getType() {
+			return type;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * @param type property type
+		 * @return values of the properties of the type, in order
+		 */
+		public List<String> getPropertyValues(String type) {
+			List<String> ret = new ArrayList<String>();
+			for (String[] property : properties) {
+				if (type.equals(property[0])) {
+					ret.add(property[1]);
+				}
+			}
+			return ret;
+		}
+	}
+
+	public static class Feature {
+		String type;
+		String description;
+		String status;
+		String evidence;
+		String locationSequence;
+		boolean hasPosition = false;
+		String position;
+		boolean hasBegin = false;
+		String begin;
+		boolean hasEnd = false;
+		String end;
+
+		public String getType() {
+			return type;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getStatus() {
+			return status;
+		}
+
+		public String getEvidence() {
+			return evidence;
+		}
+
+		/**
+		 * @return the sequence attribute of the location, set if the feature is on an isoform
+		 */
+		public String getLocationSequence() {
+			return locationSequence;
+		}
+
+		public boolean hasPosition() {
+			return hasPosition;
+		}
+
+		public String getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return true if the location has both begin and end elements
+		 */
+		public boolean hasRange() {
+			return hasBegin && hasEnd;
+		}
+
+		public String getBegin() {
+			return begin;
+		}
+
+		public String getEnd() {
+			return end;
+		}
+	}
+}
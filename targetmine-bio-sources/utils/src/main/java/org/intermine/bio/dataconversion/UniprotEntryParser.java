@@ -0,0 +1,409 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming parser of UniProt XML, reading the entries one by one with a StAX reader in a
+ * single pass, without building a document tree per entry. Elements are matched by their local
+ * names, whatever the namespace is.
+ *
+ * @author chenyian
+ *
+ */
+public class UniprotEntryParser {
+
+	private static final String PUBMED = "PubMed";
+	private static final String EXPERIMENTAL_EVIDENCE = "ECO:0000269";
+
+	// the factories are not guaranteed to be thread-safe
+	private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY =
+			new ThreadLocal<XMLInputFactory>() {
+				@Override
+				protected XMLInputFactory initialValue() {
+					return createInputFactory();
+				}
+			};
+
+	private XMLStreamReader reader;
+
+	public UniprotEntryParser(Reader in) throws XMLStreamException {
+		this.reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+	}
+
+	public static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * @return the next entry, or null at the end of the document
+	 */
+	public UniprotEntry next() throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT
+					&& "entry".equals(reader.getLocalName())) {
+				return readEntry(reader);
+			}
+		}
+		return null;
+	}
+
+	public void close() throws XMLStreamException {
+		reader.close();
+	}
+
+	/**
+	 * Parse all entries of a document, e.g. a chunk of entries wrapped in a root element.
+	 */
+	public static List<UniprotEntry> parseEntries(Reader in) throws XMLStreamException {
+		UniprotEntryParser parser = new UniprotEntryParser(in);
+		List<UniprotEntry> ret = new ArrayList<UniprotEntry>();
+		UniprotEntry entry;
+		while ((entry = parser.next()) != null) {
+			ret.add(entry);
+		}
+		parser.close();
+		return ret;
+	}
+
+	/**
+	 * @param reader positioned at the start of an entry element; left at its end
+	 * @return the entry
+	 */
+	public static UniprotEntry readEntry(XMLStreamReader reader) throws XMLStreamException {
+		UniprotEntry entry = new UniprotEntry();
+		entry.dataset = reader.getAttributeValue(null, "dataset");
+		while (nextChild(reader)) {
+			String localName = reader.getLocalName();
+			if ("accession".equals(localName)) {
+				entry.accessions.add(readText(reader));
+			} else if ("name".equals(localName) && entry.name == null) {
+				entry.name = readText(reader);
+			} else if ("protein".equals(localName) && entry.proteinName == null) {
+				readProtein(reader, entry);
+			} else if ("gene".equals(localName) && !entry.hasGene) {
+				entry.hasGene = true;
+				entry.geneSymbol = readFirstChildText(reader, "name");
+			} else if ("organism".equals(localName) && entry.taxonId == null) {
+				readOrganism(reader, entry);
+			} else if ("reference".equals(localName)) {
+				readReference(reader, entry);
+			} else if ("comment".equals(localName)) {
+				readComment(reader, entry);
+			} else if ("dbReference".equals(localName)) {
+				readDbReference(reader, entry);
+			} else if ("keyword".equals(localName)) {
+				UniprotEntry.Keyword keyword = new UniprotEntry.Keyword();
+				keyword.id = reader.getAttributeValue(null, "id");
+				keyword.value = readText(reader);
+				entry.keywords.add(keyword);
+			} else if ("feature".equals(localName)) {
+				readFeature(reader, entry);
+			} else if ("evidence".equals(localName)) {
+				readEvidence(reader, entry);
+			} else if ("sequence".equals(localName) && !entry.hasSequence) {
+				entry.hasSequence = true;
+				entry.fragment = reader.getAttributeValue(null, "fragment") != null;
+				entry.length = reader.getAttributeValue(null, "length");
+				entry.mass = reader.getAttributeValue(null, "mass");
+				entry.sequence = readText(reader);
+			} else {
+				skip(reader);
+			}
+		}
+		return entry;
+	}
+
+	private static void readProtein(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		boolean first = true;
+		while (nextChild(reader)) {
+			String localName = reader.getLocalName();
+			if ("component".equals(localName)) {
+				readComponent(reader, entry);
+			} else if (localName.endsWith("Name")) {
+				// recommendedName; submittedName; alternativeName --> fullName, shortName
+				// allergenName; biotechName; cdAntigenName; innName
+				List<String> childNames = new ArrayList<String>();
+				List<String> childValues = new ArrayList<String>();
+				String text = readChildValues(reader, childNames, childValues);
+				if (first) {
+					int i = childNames.indexOf("fullName");
+					entry.proteinName = i == -1 ? null : childValues.get(i);
+				}
+				if (childValues.isEmpty()) {
+					entry.proteinSynonyms.add(text);
+				} else {
+					for (String value : childValues) {
+						if (!value.equals(entry.proteinName)) {
+							entry.proteinSynonyms.add(value);
+						}
+					}
+				}
+			} else {
+				skip(reader);
+			}
+			first = false;
+		}
+	}
+
+	private static void readComponent(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		boolean found = false;
+		while (nextChild(reader)) {
+			if (!found && "recommendedName".equals(reader.getLocalName())) {
+				found = true;
+				entry.componentNames.add(readFirstChildText(reader, "fullName"));
+			} else {
+				skip(reader);
+			}
+		}
+	}
+
+	private static void readOrganism(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		while (nextChild(reader)) {
+			if (entry.taxonId == null && "dbReference".equals(reader.getLocalName())) {
+				entry.taxonId = reader.getAttributeValue(null, "id");
+			}
+			skip(reader);
+		}
+	}
+
+	private static void readReference(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		boolean found = false;
+		while (nextChild(reader)) {
+			if (!found && "citation".equals(reader.getLocalName())) {
+				found = true;
+				while (nextChild(reader)) {
+					if ("dbReference".equals(reader.getLocalName())
+							&& PUBMED.equals(reader.getAttributeValue(null, "type"))) {
+						entry.publications.add(reader.getAttributeValue(null, "id"));
+					}
+					skip(reader);
+				}
+			} else {
+				skip(reader);
+			}
+		}
+	}
+
+	private static void readEvidence(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		String key = reader.getAttributeValue(null, "key");
+		boolean experimental = EXPERIMENTAL_EVIDENCE.equals(reader.getAttributeValue(null,
+				"type"));
+		boolean found = false;
+		while (nextChild(reader)) {
+			if (experimental && !found && "source".equals(reader.getLocalName())) {
+				found = true;
+				boolean foundRef = false;
+				while (nextChild(reader)) {
+					if (!foundRef && "dbReference".equals(reader.getLocalName())) {
+						foundRef = true;
+						if (PUBMED.equals(reader.getAttributeValue(null, "type"))) {
+							entry.evidencePublications.put(key,
+									reader.getAttributeValue(null, "id"));
+						}
+					}
+					skip(reader);
+				}
+			} else {
+				skip(reader);
+			}
+		}
+	}
+
+	private static void readComment(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		UniprotEntry.Comment comment = new UniprotEntry.Comment();
+		comment.type = reader.getAttributeValue(null, "type");
+		while (nextChild(reader)) {
+			String localName = reader.getLocalName();
+			if ("text".equals(localName) && !comment.hasText) {
+				comment.hasText = true;
+				comment.textEvidence = reader.getAttributeValue(null, "evidence");
+				comment.text = readText(reader);
+			} else if ("subcellularLocation".equals(localName)) {
+				while (nextChild(reader)) {
+					if ("location".equals(reader.getLocalName())) {
+						UniprotEntry.Location location = new UniprotEntry.Location();
+						location.evidence = reader.getAttributeValue(null, "evidence");
+						location.value = readText(reader);
+						comment.locations.add(location);
+					} else {
+						skip(reader);
+					}
+				}
+			} else {
+				skip(reader);
+			}
+		}
+		entry.comments.add(comment);
+	}
+
+	private static void readDbReference(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		UniprotEntry.DbReference dbReference = new UniprotEntry.DbReference();
+		dbReference.type = reader.getAttributeValue(null, "type");
+		dbReference.id = reader.getAttributeValue(null, "id");
+		while (nextChild(reader)) {
+			if ("property".equals(reader.getLocalName())) {
+				dbReference.properties.add(new String[] {
+						reader.getAttributeValue(null, "type"),
+						reader.getAttributeValue(null, "value") });
+			}
+			skip(reader);
+		}
+		entry.dbReferences.add(dbReference);
+	}
+
+	private static void readFeature(XMLStreamReader reader, UniprotEntry entry)
+			throws XMLStreamException {
+		UniprotEntry.Feature feature = new UniprotEntry.Feature();
+		feature.type = reader.getAttributeValue(null, "type");
+		feature.description = reader.getAttributeValue(null, "description");
+		feature.status = reader.getAttributeValue(null, "status");
+		feature.evidence = reader.getAttributeValue(null, "evidence");
+		boolean found = false;
+		while (nextChild(reader)) {
+			if (!found && "location".equals(reader.getLocalName())) {
+				found = true;
+				feature.locationSequence = reader.getAttributeValue(null, "sequence");
+				while (nextChild(reader)) {
+					String localName = reader.getLocalName();
+					if ("position".equals(localName) && !feature.hasPosition) {
+						feature.hasPosition = true;
+						feature.position = reader.getAttributeValue(null, "position");
+					} else if ("begin".equals(localName) && !feature.hasBegin) {
+						feature.hasBegin = true;
+						feature.begin = reader.getAttributeValue(null, "position");
+					} else if ("end".equals(localName) && !feature.hasEnd) {
+						feature.hasEnd = true;
+						feature.end = reader.getAttributeValue(null, "position");
+					}
+					skip(reader);
+				}
+			} else {
+				skip(reader);
+			}
+		}
+		entry.features.add(feature);
+	}
+
+	/**
+	 * Move to the next child element of the current element.
+	 *
+	 * @return true if positioned at the start of a child, false at the end of the current
+	 * element
+	 */
+	private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Move to the end of the current element.
+	 */
+	private static void skip(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static boolean isText(int event) {
+		return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+				|| event == XMLStreamConstants.SPACE;
+	}
+
+	/**
+	 * @return the text of the current element and its descendants; left at the end of the
+	 * element
+	 */
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		// usually there is only one text event, which does not need to be copied again
+		String text = "";
+		StringBuilder sb = null;
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (isText(event)) {
+				if (sb != null) {
+					sb.append(reader.getText());
+				} else if (text.isEmpty()) {
+					text = reader.getText();
+				} else {
+					sb = new StringBuilder(text).append(reader.getText());
+				}
+			}
+		}
+		return sb == null ? text : sb.toString();
+	}
+
+	/**
+	 * @return the text of the first child element of the name, null if there is none
+	 */
+	private static String readFirstChildText(XMLStreamReader reader, String localName)
+			throws XMLStreamException {
+		String ret = null;
+		boolean found = false;
+		while (nextChild(reader)) {
+			if (!found && localName.equals(reader.getLocalName())) {
+				found = true;
+				ret = readText(reader);
+			} else {
+				skip(reader);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Read the names and the texts of the child elements.
+	 *
+	 * @return the text directly in the current element
+	 */
+	private static String readChildValues(XMLStreamReader reader, List<String> names,
+			List<String> values) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				names.add(reader.getLocalName());
+				values.add(readText(reader));
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return sb.toString();
+			} else if (isText(event)) {
+				sb.append(reader.getText());
+			}
+		}
+	}
+}
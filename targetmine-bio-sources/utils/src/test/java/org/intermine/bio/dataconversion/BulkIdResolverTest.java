@@ -0,0 +1,189 @@
+package org.intermine.bio.dataconversion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of BulkIdResolver: a preloaded lookup gives the same identifier as a single one.
+ *
+ * @author chenyian
+ */
+public class BulkIdResolverTest extends TestCase
+{
+	private static final List<String> KEYS = Arrays.asList("A", "B", "C", "D", "E", "", null,
+			"A");
+
+	public BulkIdResolverTest(String arg) {
+		super(arg);
+	}
+
+	/**
+	 * A resolver reading the rows of a table instead of the objectstore.
+	 */
+	private static class TableResolver extends BulkIdResolver
+	{
+		private List<Object[]> table;
+		private List<List<String>> fetched = new ArrayList<List<String>>();
+
+		TableResolver(List<Object[]> table) {
+			super("os.test", "Synonym", "value", "subject", null, "primaryIdentifier");
+			this.table = table;
+		}
+
+		@Override
+		Iterator<Object[]> fetch(List<String> keys) {
+			fetched.add(keys == null ? null : new ArrayList<String>(keys));
+			List<Object[]> ret = new ArrayList<Object[]>();
+			for (Object[] row : table) {
+				// as LOWER(keyField) in the query
+				Object key = isIgnoreCase() && row[0] != null ? row[0].toString().toLowerCase()
+						: row[0];
+				if (keys == null || keys.contains(key)) {
+					ret.add(new Object[] {key, row[1]});
+				}
+			}
+			return ret.iterator();
+		}
+	}
+
+	// a value which is not a String, as the ClobAccess of a sequence
+	private static class Residues
+	{
+		private String residues;
+
+		Residues(String residues) {
+			this.residues = residues;
+		}
+
+		@Override
+		public String toString() {
+			return residues;
+		}
+	}
+
+	private static List<Object[]> createTable() {
+		List<Object[]> ret = new ArrayList<Object[]>();
+		// the first identifier wins
+		ret.add(new Object[] {"A", "gene1"});
+		ret.add(new Object[] {"A", "gene2"});
+		// no identifier, then one
+		ret.add(new Object[] {"B", null});
+		ret.add(new Object[] {"B", "gene3"});
+		// an empty identifier is none
+		ret.add(new Object[] {"C", ""});
+		ret.add(new Object[] {"D", new Residues("MKTAYIAKQR")});
+		ret.add(new Object[] {null, "gene4"});
+		return ret;
+	}
+
+	public void testSameAsSingleLookup() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (String key : KEYS) {
+			// a new resolver per key, as the one by one lookup
+			expected.add(new TableResolver(createTable()).resolve(key));
+		}
+		assertEquals(Arrays.asList("gene1", "gene3", null, "MKTAYIAKQR", null, null, null,
+				"gene1"), expected);
+
+		TableResolver all = new TableResolver(createTable());
+		all.preload();
+		TableResolver batches = new TableResolver(createTable());
+		batches.preload(KEYS);
+		TableResolver single = new TableResolver(createTable());
+		for (int i = 0; i < KEYS.size(); i++) {
+			String key = KEYS.get(i);
+			assertEquals(String.valueOf(key), expected.get(i), all.resolve(key));
+			assertEquals(String.valueOf(key), expected.get(i), batches.resolve(key));
+			assertEquals(String.valueOf(key), expected.get(i), single.resolve(key));
+		}
+
+		Map<String, String> resolved = new TableResolver(createTable()).resolveAll(KEYS);
+		assertEquals(3, resolved.size());
+		assertEquals("gene1", resolved.get("A"));
+		assertEquals("gene3", resolved.get("B"));
+		assertEquals("MKTAYIAKQR", resolved.get("D"));
+	}
+
+	public void testQueries() throws Exception {
+		List<Object[]> table = new ArrayList<Object[]>();
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 2500; i++) {
+			table.add(new Object[] {"key" + i, "id" + i});
+			keys.add("key" + i);
+		}
+		TableResolver resolver = new TableResolver(table);
+		resolver.preload(keys);
+		// batches of 1000 keys, without duplicates
+		assertEquals(3, resolver.fetched.size());
+		assertEquals(1000, resolver.fetched.get(0).size());
+		assertEquals(500, resolver.fetched.get(2).size());
+		Set<String> queried = new HashSet<String>();
+		for (List<String> batch : resolver.fetched) {
+			queried.addAll(batch);
+		}
+		assertEquals(2500, queried.size());
+
+		for (int i = 0; i < 2500; i++) {
+			assertEquals("id" + i, resolver.resolve("key" + i));
+		}
+		// the cached keys are not queried again
+		resolver.preload(keys.subList(0, 10));
+		assertEquals(3, resolver.fetched.size());
+		assertEquals(2500, resolver.getHits());
+		assertEquals(0, resolver.getMisses());
+
+		// a key outside the preloaded ones is queried alone, once
+		assertNull(resolver.resolve("unknown"));
+		assertNull(resolver.resolve("unknown"));
+		assertEquals(4, resolver.fetched.size());
+		assertEquals(Arrays.asList("unknown"), resolver.fetched.get(3));
+
+		// after preloading all, nothing is queried
+		TableResolver complete = new TableResolver(table);
+		complete.preload();
+		assertNull(complete.resolve("unknown"));
+		assertEquals("id7", complete.resolve("key7"));
+		complete.preload(keys);
+		assertEquals(1, complete.fetched.size());
+		assertNull(complete.fetched.get(0));
+		assertEquals(1, complete.getQueries());
+		assertEquals(4, resolver.getQueries());
+	}
+
+	public void testIgnoreCase() throws Exception {
+		List<Object[]> table = new ArrayList<Object[]>();
+		table.add(new Object[] {"Liver", "tissue1"});
+		table.add(new Object[] {"BRAIN", "tissue2"});
+		table.add(new Object[] {"brain", "tissue3"});
+
+		TableResolver exact = new TableResolver(table);
+		assertEquals("tissue1", exact.resolve("Liver"));
+		assertNull(exact.resolve("liver"));
+
+		TableResolver single = new TableResolver(table);
+		single.setIgnoreCase(true);
+		TableResolver batches = new TableResolver(table);
+		batches.setIgnoreCase(true);
+		batches.preload(Arrays.asList("LIVER", "Brain", "heart"));
+		assertEquals(1, batches.fetched.size());
+		assertEquals(Arrays.asList("liver", "brain", "heart"), batches.fetched.get(0));
+		for (TableResolver resolver : Arrays.asList(single, batches)) {
+			assertEquals("tissue1", resolver.resolve("liver"));
+			assertEquals("tissue1", resolver.resolve("LIVER"));
+			assertEquals("tissue2", resolver.resolve("Brain"));
+			assertNull(resolver.resolve("Heart"));
+		}
+		assertEquals(1, batches.fetched.size());
+
+		Map<String, String> resolved = batches.resolveAll(Arrays.asList("Liver", "heart"));
+		assertEquals(1, resolved.size());
+		assertEquals("tissue1", resolved.get("Liver"));
+	}
+}
@@ -0,0 +1,132 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.util.FormattedTextParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the reading of a CSV file by the Map mode and the Row mode of CSVParser and
+ * by FormattedTextParser, touching every value of every row. Each benchmark returns the number
+ * of characters read, so that the JIT cannot drop the reading.
+ *
+ * The file is generated with quoted values, unless one is given:
+ *
+ * usage: CSVParserBenchmark [JMH options], e.g. -p file=/data/ctod.csv or -p rows=1000000
+ *
+ * @author chenyian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CSVParserBenchmark {
+
+	// the file to be read; empty for a generated one
+	@Param({""})
+	public String file;
+
+	// the number of rows of the generated file
+	@Param({"100000"})
+	public int rows;
+
+	private File input;
+	private boolean generated;
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(CSVParserBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		if (!file.isEmpty()) {
+			input = new File(file);
+			return;
+		}
+		input = File.createTempFile("CSVParserBenchmark", ".csv");
+		generated = true;
+		Random random = new Random(42);
+		try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+			writer.println("Reference ID,Arm ID,Title,Treatment1 name,Outcome point estimate");
+			for (int i = 0; i < rows; i++) {
+				writer.println(String.format("%d,%d,\"A trial of %d, \"\"arm\"\" %d\",drug%d,%.3f",
+						i / 4, i, random.nextInt(1000), i % 4, random.nextInt(5000),
+						random.nextDouble()));
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (generated) {
+			input.delete();
+		}
+	}
+
+	@Benchmark
+	public long readMaps() throws Exception {
+		long ret = 0;
+		try (CSVParser parser = new CSVParser(new FileReader(input))) {
+			for (Map<String, String> map : parser) {
+				for (String value : map.values()) {
+					ret += value.length();
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public long readRows() throws Exception {
+		long ret = 0;
+		try (CSVParser parser = new CSVParser(new FileReader(input))) {
+			for (CSVParser.Row row : parser.rows()) {
+				for (int i = 0; i < row.getColumnCount(); i++) {
+					ret += row.get(i).length();
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public long readFormatted() throws IOException {
+		long ret = 0;
+		try (FileReader reader = new FileReader(input)) {
+			Iterator<String[]> iterator = FormattedTextParser.parseCsvDelimitedReader(reader);
+			while (iterator.hasNext()) {
+				for (String value : iterator.next()) {
+					ret += value.length();
+				}
+			}
+		}
+		return ret;
+	}
+}
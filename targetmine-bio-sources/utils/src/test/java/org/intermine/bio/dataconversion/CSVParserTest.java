@@ -0,0 +1,158 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the Row mode of CSVParser, against the Map mode where they agree.
+ *
+ * @author chenyian
+ */
+public class CSVParserTest extends TestCase
+{
+	public CSVParserTest(String arg) {
+		super(arg);
+	}
+
+	private static List<Map<String, String>> readRows(CSVParser parser) {
+		List<Map<String, String>> ret = new ArrayList<Map<String, String>>();
+		for (CSVParser.Row row : parser.rows()) {
+			ret.add(row.toMap());
+		}
+		return ret;
+	}
+
+	private static List<Map<String, String>> readMaps(CSVParser parser) {
+		List<Map<String, String>> ret = new ArrayList<Map<String, String>>();
+		for (Map<String, String> map : parser) {
+			ret.add(map);
+		}
+		return ret;
+	}
+
+	private static Map<String, String> map(String... keysAndValues) {
+		Map<String, String> ret = new HashMap<String, String>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			ret.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return ret;
+	}
+
+	public void testSameAsMapMode() throws Exception {
+		String csv = "\"id\",\"name\",\"description\"\n"
+				+ "\"1\",\"aspirin\",\"first line\\nsecond line\"\n"
+				+ "\"2\",\"\",\"no name\"\n"
+				+ "\"3\",\"short\"\n";
+		List<Map<String, String>> expected = readMaps(new CSVParser(new StringReader(csv)));
+		assertEquals(Arrays.asList(map("id", "1", "name", "aspirin", "description",
+				"first line\nsecond line"), map("id", "2", "name", "", "description", "no name"),
+				map("id", "3", "name", "short")), expected);
+		assertEquals(expected, readRows(new CSVParser(new StringReader(csv))));
+	}
+
+	public void testQuotedFields() throws Exception {
+		String csv = "id,value\r\n"
+				+ "1,\"a, b\"\r\n"
+				+ "2,\"two\r\nlines\"\r\n"
+				+ "\r\n"
+				+ "3,\"say \"\"hi\"\"\"\r\n"
+				+ "4,\"inner \"quote\" kept\"\r\n"
+				+ "5,plain \"text\"\r\n"
+				+ "6,\"\"\n"
+				+ "7,\"unterminated";
+		List<Map<String, String>> rows = readRows(new CSVParser(new StringReader(csv)));
+		assertEquals(Arrays.asList(map("id", "1", "value", "a, b"),
+				map("id", "2", "value", "two\r\nlines"),
+				map("id", "3", "value", "say \"hi\""),
+				map("id", "4", "value", "inner \"quote\" kept"),
+				map("id", "5", "value", "plain \"text\""),
+				map("id", "6", "value", ""),
+				map("id", "7", "value", "unterminated")), rows);
+	}
+
+	public void testTrailingEmptyFields() throws Exception {
+		String csv = "\"id\",\"name\",\"note\"\n\"1\",\"aspirin\",\"\"\n";
+		// dropped by the Map mode, "" in the Row mode
+		Map<String, String> map = readMaps(new CSVParser(new StringReader(csv))).get(0);
+		assertFalse(map.containsKey("note"));
+		assertNull(map.get("note"));
+		CSVParser.Row row = new CSVParser(new StringReader(csv)).rows().iterator().next();
+		assertEquals(3, row.getColumnCount());
+		assertTrue(row.containsKey("note"));
+		assertEquals("", row.get("note"));
+	}
+
+	public void testRow() throws Exception {
+		String csv = "id\tname\tsynonyms\n1\taspirin\tASA\n\n2\tcaffeine\n";
+		Iterator<CSVParser.Row> iterator = new CSVParser(new StringReader(csv), false, '\t')
+				.rows().iterator();
+		CSVParser.Row row = iterator.next();
+		assertEquals(0, row.getColumnIndex("id"));
+		assertEquals(2, row.getColumnIndex("synonyms"));
+		assertEquals(-1, row.getColumnIndex("unknown"));
+		assertEquals("aspirin", row.get(1));
+		assertEquals("ASA", row.get("synonyms"));
+		assertNull(row.get("unknown"));
+		Map<String, String> first = row.toMap();
+
+		// the same row, refilled
+		assertTrue(iterator.hasNext());
+		assertTrue(iterator.hasNext());
+		assertSame(row, iterator.next());
+		assertEquals(2, row.getColumnCount());
+		assertEquals("caffeine", row.get("name"));
+		assertNull(row.get(2));
+		assertNull(row.get("synonyms"));
+		assertFalse(row.containsKey("synonyms"));
+		assertEquals(map("id", "2", "name", "caffeine"), row);
+		assertEquals(map("id", "1", "name", "aspirin", "synonyms", "ASA"), first);
+
+		assertFalse(iterator.hasNext());
+		try {
+			iterator.next();
+			fail("expected NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	public void testMultiColumnHeader() throws Exception {
+		String csv = "\"compound\",\"\",\"target\",\"\"\n\"id\",\"name\",\"id\",\"gene\"\n"
+				+ "\"C1\",\"aspirin\",\"T1\",\"PTGS1\"\n";
+		CSVParser parser = new CSVParser(new StringReader(csv), true);
+		CSVParser.Row row = parser.rows().iterator().next();
+		assertEquals("PTGS1", row.get("gene"));
+		Map<String, List<String>> groups = parser.getHeaderGroups();
+		assertEquals(Arrays.asList("id", "name"), groups.get("compound"));
+		assertEquals(Arrays.asList("id", "gene"), groups.get("target"));
+	}
+
+	public void testLongFields() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 200000) {
+			sb.append("ACGT");
+		}
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			csv.append(i == 0 ? "" : ",").append("h").append(i);
+		}
+		csv.append('\n');
+		for (int i = 0; i < 100; i++) {
+			csv.append(i == 0 ? "" : ",").append(i == 50 ? sb : String.valueOf(i));
+		}
+		csv.append('\n');
+		CSVParser.Row row = new CSVParser(new StringReader(csv.toString())).rows().iterator()
+				.next();
+		assertEquals(100, row.getColumnCount());
+		assertEquals(sb.toString(), row.get("h50"));
+		assertEquals("99", row.get("h99"));
+	}
+}
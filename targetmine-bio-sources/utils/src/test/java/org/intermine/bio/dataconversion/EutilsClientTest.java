@@ -0,0 +1,316 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of EutilsClient and EutilsCache against a local server.
+ *
+ * @author chenyian
+ */
+public class EutilsClientTest extends TestCase
+{
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private EutilsClient client;
+	private File cacheDir;
+
+	// the requests received: method and IDs
+	private List<String> methods = Collections.synchronizedList(new ArrayList<String>());
+	private List<List<String>> requestIds = Collections.synchronizedList(
+			new ArrayList<List<String>>());
+	// the statuses to return before answering, and their Retry-After header
+	private List<Integer> failures = Collections.synchronizedList(new ArrayList<Integer>());
+	private String retryAfter = null;
+	// milliseconds to wait before answering the request with the first ID
+	private Map<String, Long> delays = Collections.synchronizedMap(new HashMap<String, Long>());
+
+	public EutilsClientTest(String arg) {
+		super(arg);
+	}
+
+	public void setUp() throws Exception {
+		super.setUp();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(8);
+		server.setExecutor(serverExecutor);
+		server.start();
+		client = new EutilsClient("http://127.0.0.1:" + server.getAddress().getPort() + "/",
+				null);
+		client.setRate(1000d);
+		client.setInitialBackoff(10L);
+		cacheDir = File.createTempFile("eutils-cache", "");
+		cacheDir.delete();
+	}
+
+	public void tearDown() throws Exception {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		delete(cacheDir);
+		super.tearDown();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		String query;
+		if ("POST".equals(exchange.getRequestMethod())) {
+			query = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+		} else {
+			query = exchange.getRequestURI().getRawQuery();
+		}
+		List<String> ids = new ArrayList<String>();
+		for (String param : query.split("&")) {
+			if (param.startsWith("id=")) {
+				ids = Arrays.asList(URLDecoder.decode(param.substring(3), "UTF-8").split(","));
+			}
+		}
+		methods.add(exchange.getRequestMethod());
+		requestIds.add(ids);
+
+		Integer status = null;
+		synchronized (failures) {
+			if (!failures.isEmpty()) {
+				status = failures.remove(0);
+			}
+		}
+		if (status != null) {
+			if (retryAfter != null) {
+				exchange.getResponseHeaders().set("Retry-After", retryAfter);
+			}
+			exchange.sendResponseHeaders(status.intValue(), -1);
+			exchange.close();
+			return;
+		}
+		Long delay = delays.get(ids.get(0));
+		if (delay != null) {
+			try {
+				Thread.sleep(delay.longValue());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String id : ids) {
+			sb.append(id).append("\trecord of ").append(id).append('\n');
+		}
+		byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	private static List<String> ids(int from, int count) {
+		List<String> ret = new ArrayList<String>();
+		for (int i = from; i < from + count; i++) {
+			ret.add(String.valueOf(i));
+		}
+		return ret;
+	}
+
+	private static Map<String, String> params() {
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		ret.put("db", "gene");
+		return ret;
+	}
+
+	public void testGet() throws Exception {
+		String response = client.fetch("esummary.fcgi", params(), ids(1, 200));
+		assertEquals(Arrays.asList("GET"), methods);
+		assertEquals(ids(1, 200), requestIds.get(0));
+		assertTrue(response.startsWith("1\trecord of 1\n"));
+	}
+
+	public void testPostForManyIds() throws Exception {
+		String response = client.fetch("esummary.fcgi", params(), ids(1, 201));
+		assertEquals(Arrays.asList("POST"), methods);
+		assertEquals(ids(1, 201), requestIds.get(0));
+		assertTrue(response.endsWith("201\trecord of 201\n"));
+	}
+
+	public void testRetryAfter() throws Exception {
+		failures.add(Integer.valueOf(429));
+		retryAfter = "1";
+		long start = System.currentTimeMillis();
+		String response = client.fetch("esummary.fcgi", params(), ids(1, 3));
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(2, methods.size());
+		assertEquals("1\trecord of 1\n2\trecord of 2\n3\trecord of 3\n", response);
+		// Retry-After: 1 rather than the 10 ms backoff
+		assertTrue("retried after " + elapsed + " ms", elapsed >= 1000L);
+	}
+
+	public void testRetryServerErrors() throws Exception {
+		failures.add(Integer.valueOf(500));
+		failures.add(Integer.valueOf(503));
+		client.fetch("esummary.fcgi", params(), ids(1, 3));
+		assertEquals(3, methods.size());
+	}
+
+	public void testRetriesExhausted() throws Exception {
+		client.setMaxRetries(2);
+		for (int i = 0; i < 5; i++) {
+			failures.add(Integer.valueOf(502));
+		}
+		try {
+			client.fetch("esummary.fcgi", params(), ids(1, 3));
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("HTTP 502", e.getMessage());
+		}
+		assertEquals(3, methods.size());
+	}
+
+	public void testClientErrorNotRetried() throws Exception {
+		failures.add(Integer.valueOf(400));
+		retryAfter = "1";
+		try {
+			client.fetch("esummary.fcgi", params(), ids(1, 3));
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("HTTP 400", e.getMessage());
+		}
+		assertEquals(1, methods.size());
+	}
+
+	public void testFetchBatchesInOrder() throws Exception {
+		client.setMaxInFlight(4);
+		List<List<String>> batches = EutilsClient.partition(ids(1, 100), 10);
+		assertEquals(10, batches.size());
+		// the first batches are answered last
+		for (int i = 0; i < 4; i++) {
+			delays.put(batches.get(i).get(0), Long.valueOf(400L - i * 100L));
+		}
+		final List<List<String>> handled = new ArrayList<List<String>>();
+		final List<String> responses = new ArrayList<String>();
+		client.fetchBatches("esummary.fcgi", params(), batches,
+				new EutilsClient.ResponseHandler() {
+					@Override
+					public void handle(List<String> ids, String response) {
+						handled.add(ids);
+						responses.add(response);
+					}
+				});
+		assertEquals(batches, handled);
+		for (int i = 0; i < batches.size(); i++) {
+			assertTrue(responses.get(i).startsWith(batches.get(i).get(0) + "\t"));
+		}
+	}
+
+	public void testFetchBatchesFailure() throws Exception {
+		client.setMaxRetries(0);
+		failures.add(Integer.valueOf(404));
+		try {
+			client.fetchBatches("esummary.fcgi", params(), EutilsClient.partition(ids(1, 5), 2),
+					new EutilsClient.ResponseHandler() {
+						@Override
+						public void handle(List<String> ids, String response) {
+							// nothing to do
+						}
+					});
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("HTTP 404", e.getMessage());
+		}
+	}
+
+	public void testCacheRerun() throws Exception {
+		client.setCache(new EutilsCache(cacheDir));
+		Map<String, String> records = retrieve(ids(1, 30));
+		assertEquals(30, records.size());
+		assertEquals("record of 7", records.get("7"));
+		assertEquals(3, methods.size());
+		assertEquals(30, client.getCache().getMisses());
+
+		// a rerun reads the records from the disk only
+		client.setCache(new EutilsCache(cacheDir));
+		assertEquals(records, retrieve(ids(1, 30)));
+		assertEquals(3, methods.size());
+		assertEquals(30, client.getCache().getHits());
+		assertEquals(0, client.getCache().getMisses());
+
+		// only the missing records are requested
+		client.setCache(new EutilsCache(cacheDir));
+		assertEquals(35, retrieve(ids(1, 35)).size());
+		assertEquals(4, methods.size());
+		assertEquals(ids(31, 5), requestIds.get(3));
+	}
+
+	// as the fill-missing-* retrievers: cached records first, the others by batches
+	private Map<String, String> retrieve(List<String> ids) throws Exception {
+		final Map<String, String> ret = new LinkedHashMap<String, String>();
+		final EutilsCache cache = client.getCache();
+		List<String> missing = new ArrayList<String>();
+		for (String id : ids) {
+			String record = cache.get("esummary/gene/" + id);
+			if (record == null) {
+				missing.add(id);
+			} else {
+				ret.put(id, record);
+			}
+		}
+		final AtomicInteger count = new AtomicInteger();
+		client.fetchBatches("esummary.fcgi", params(), EutilsClient.partition(missing, 10),
+				new EutilsClient.ResponseHandler() {
+					@Override
+					public void handle(List<String> batch, String response) throws Exception {
+						for (String line : response.split("\n")) {
+							String[] cols = line.split("\t");
+							cache.put("esummary/gene/" + cols[0], cols[1]);
+							ret.put(cols[0], cols[1]);
+							count.incrementAndGet();
+						}
+					}
+				});
+		assertEquals(missing.size(), count.get());
+		return ret;
+	}
+}
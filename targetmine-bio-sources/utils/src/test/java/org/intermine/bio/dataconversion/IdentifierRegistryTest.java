@@ -0,0 +1,117 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of IdentifierRegistry, with each storage of IdentifierRegistries.
+ *
+ * @author chenyian
+ */
+public class IdentifierRegistryTest extends TestCase
+{
+	private File dir;
+
+	public IdentifierRegistryTest(String arg) {
+		super(arg);
+	}
+
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("registries", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	public void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private IdentifierRegistry create(String storage) {
+		IdentifierRegistries registries = new IdentifierRegistries();
+		registries.setStorage(storage);
+		registries.setDirectory(dir.getPath());
+		return registries.create("test");
+	}
+
+	public void testHeap() throws Exception {
+		checkRegistry(create("heap"));
+	}
+
+	public void testDirect() throws Exception {
+		checkRegistry(create("direct"));
+	}
+
+	public void testMapped() throws Exception {
+		IdentifierRegistry registry = create(" Mapped ");
+		checkRegistry(registry);
+		assertEquals(1, dir.listFiles().length);
+		registry.close();
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	private void checkRegistry(IdentifierRegistry registry) {
+		assertTrue(registry.isEmpty());
+		assertNull(registry.get("missing"));
+		assertFalse(registry.containsKey("missing"));
+
+		// random puts and replacements, checked against a HashMap
+		Map<String, String> expected = new HashMap<String, String>();
+		Random random = new Random(42);
+		for (int i = 0; i < 50000; i++) {
+			String key = "CHEMBL" + random.nextInt(20000);
+			String value = random.nextInt(10) == 0 ? null : "Compound_" + i;
+			registry.put(key, value);
+			expected.put(key, value);
+		}
+		assertEquals(expected.size(), registry.size());
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertTrue(registry.containsKey(entry.getKey()));
+			assertEquals(entry.getValue(), registry.get(entry.getKey()));
+		}
+		assertFalse(registry.containsKey("CHEMBL20000"));
+		assertFalse(registry.containsKey("CHEMBL"));
+
+		// the same hash codes
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		registry.put("Aa", "1");
+		registry.put("BB", "2");
+		assertEquals("1", registry.get("Aa"));
+		assertEquals("2", registry.get("BB"));
+
+		// not ASCII
+		registry.put("\u03b1-synuclein", "\u00e9t\u00e9");
+		assertEquals("\u00e9t\u00e9", registry.get("\u03b1-synuclein"));
+		assertNull(registry.get("a-synuclein"));
+		// longer than a page, with lengths of several varint bytes
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < (1 << 21)) {
+			sb.append("0123456789");
+		}
+		String longValue = sb.toString();
+		registry.put("long", longValue);
+		registry.put(longValue, "long key");
+		assertEquals(longValue, registry.get("long"));
+		assertEquals("long key", registry.get(longValue));
+
+		// an empty string is not null
+		registry.put("empty", "");
+		assertEquals("", registry.get("empty"));
+		registry.put("empty", null);
+		assertTrue(registry.containsKey("empty"));
+		assertNull(registry.get("empty"));
+
+		assertEquals(expected.size() + 6, registry.size());
+		assertTrue(registry.getAllocatedBytes() > registry.getKeyBytes()
+				+ registry.getValueBytes());
+		assertTrue(registry.toString().startsWith("test: " + registry.size() + " entries"));
+	}
+}
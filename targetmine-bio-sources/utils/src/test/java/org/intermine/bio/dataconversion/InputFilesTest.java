@@ -0,0 +1,187 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of InputFiles and BgzfInputStream.
+ *
+ * @author chenyian
+ */
+public class InputFilesTest extends TestCase
+{
+	private File dir;
+
+	public InputFilesTest(String arg) {
+		super(arg);
+	}
+
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("input-files", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	public void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private static byte[] lines(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append("line ").append(i).append("\tvalue ").append(i * 7).append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+	private File write(String name, byte[] content) throws IOException {
+		File file = new File(dir, name);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private File writeGzip(String name, byte[] content) throws IOException {
+		File file = new File(dir, name);
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * @return the content as BGZF blocks of at most blockSize bytes, with the empty end block
+	 */
+	private static byte[] bgzf(byte[] content, int blockSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int offset = 0; offset <= content.length; offset += blockSize) {
+			int length = Math.min(blockSize, content.length - offset);
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(content, offset, length);
+			deflater.finish();
+			byte[] buffer = new byte[length + 1024];
+			int compressed = deflater.deflate(buffer);
+			deflater.end();
+			CRC32 crc = new CRC32();
+			crc.update(content, offset, length);
+			int total = 18 + compressed + 8;
+			out.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0,
+				'B', 'C', 2, 0, (byte) ((total - 1) & 0xff), (byte) ((total - 1) >> 8)});
+			out.write(buffer, 0, compressed);
+			writeInt(out, (int) crc.getValue());
+			writeInt(out, length);
+			if (length == 0) {
+				break;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		for (int i = 0; i < 4; i++) {
+			out.write((value >> (8 * i)) & 0xff);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8191];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	public void testPlain() throws Exception {
+		byte[] content = lines(1000);
+		File file = write("plain.txt", content);
+		assertEquals(InputFiles.Compression.NONE, InputFiles.getCompression(file));
+		assertTrue(Arrays.equals(content, readAll(InputFiles.openStream(file))));
+		assertTrue(Arrays.equals(content, readAll(new InputFiles.MappedInputStream(file))));
+	}
+
+	public void testGzip() throws Exception {
+		// several read-ahead chunks
+		byte[] content = lines(200000);
+		File file = writeGzip("lines.txt.gz", content);
+		assertEquals(InputFiles.Compression.GZIP, InputFiles.getCompression(file));
+		assertTrue(Arrays.equals(content, readAll(InputFiles.openStream(file))));
+
+		BufferedReader reader = InputFiles.openReader(file);
+		assertEquals("line 0\tvalue 0", reader.readLine());
+		assertEquals("line 1\tvalue 7", reader.readLine());
+		reader.close();
+	}
+
+	public void testCloseWhileReadingAhead() throws Exception {
+		File file = writeGzip("close.txt.gz", lines(500000));
+		InputStream in = InputFiles.openStream(file);
+		assertEquals('l', in.read());
+		// the thread is blocked on the full queue
+		Thread.sleep(200);
+		in.close();
+		in.close();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			assertFalse(thread.getName(), thread.getName().equals("read-ahead-close.txt.gz")
+					&& thread.isAlive());
+		}
+	}
+
+	public void testBgzf() throws Exception {
+		byte[] content = lines(50000);
+		File file = write("lines.txt.bgz", bgzf(content, 65280));
+		assertEquals(InputFiles.Compression.BGZF, InputFiles.getCompression(file));
+		assertTrue(Arrays.equals(content, readAll(InputFiles.openStream(file))));
+
+		// small blocks, more than the pending blocks of the threads
+		byte[] small = bgzf(content, 1000);
+		assertTrue(Arrays.equals(content, readAll(new BgzfInputStream(
+				new java.io.ByteArrayInputStream(small), 3))));
+	}
+
+	public void testBgzfCorrupt() throws Exception {
+		byte[] bytes = bgzf(lines(100), 65280);
+		// the CRC32 of the first block
+		int crcOffset = bytes.length - 28 - 8;
+		bytes[crcOffset] ^= 1;
+		try {
+			readAll(new BgzfInputStream(new java.io.ByteArrayInputStream(bytes), 2));
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("CRC error in a BGZF block", e.getMessage());
+		}
+
+		byte[] truncated = Arrays.copyOf(bgzf(lines(100), 65280), 30);
+		try {
+			readAll(new BgzfInputStream(new java.io.ByteArrayInputStream(truncated), 2));
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("Truncated BGZF block", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of UniprotAccessionIndex.
+ *
+ * @author chenyian
+ */
+public class UniprotAccessionIndexTest extends TestCase
+{
+	private File dir;
+	private File xmlFile;
+	private String[] entries;
+
+	public UniprotAccessionIndexTest(String arg) {
+		super(arg);
+	}
+
+	public void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("accession-index", "");
+		dir.delete();
+		dir.mkdir();
+		xmlFile = new File(dir, "uniprot_sprot.xml");
+		StringBuilder sequence = new StringBuilder();
+		// longer than the read buffer
+		while (sequence.length() < 1500000) {
+			sequence.append("MKTAYIAKQR");
+		}
+		entries = new String[] {
+				entry("P12345", "Q00001", "Q00002"), entry("A0A024R161"),
+				entry("P99999").replace("</sequence>", sequence + "</sequence>"),
+				// an accession of the protein element is not indexed
+				entry("O00001").replace("<protein>", "<protein>\n  <accession>X99999</accession>"),
+				entry("Q00001") };
+		write(xmlFile, "<?xml version=\"1.0\"?>\n<uniprot>\n" + join(entries)
+				// the last line without a line break
+				+ "<copyright>text</copyright>\n</uniprot>");
+	}
+
+	public void tearDown() throws Exception {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private static String entry(String... accessions) {
+		StringBuilder sb = new StringBuilder("<entry dataset=\"Swiss-Prot\">\n");
+		for (String accession : accessions) {
+			sb.append("  <accession>").append(accession).append("</accession>\n");
+		}
+		sb.append("  <name>TEST</name>\n  <protein>\n  </protein>\n");
+		sb.append("  <sequence length=\"1\">M</sequence>\n</entry>\n");
+		return sb.toString();
+	}
+
+	private static String join(String[] strings) {
+		StringBuilder sb = new StringBuilder();
+		for (String s : strings) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	private static void write(File file, String content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("US-ASCII"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private String read(long[] entry) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(xmlFile, "r");
+		try {
+			byte[] bytes = new byte[(int) entry[1]];
+			raf.seek(entry[0]);
+			raf.readFully(bytes);
+			return new String(bytes, "US-ASCII");
+		} finally {
+			raf.close();
+		}
+	}
+
+	public void testFind() throws Exception {
+		UniprotAccessionIndex index = UniprotAccessionIndex.getIndex(xmlFile);
+		assertTrue(UniprotAccessionIndex.getIndexFile(xmlFile).exists());
+		assertEquals(7, index.size());
+		assertEquals(entries[0], read(index.find("P12345").get(0)));
+		assertEquals(entries[0], read(index.find("Q00002").get(0)));
+		assertEquals(entries[1], read(index.find("A0A024R161").get(0)));
+		assertEquals(entries[2], read(index.find("P99999").get(0)));
+		assertEquals(entries[3], read(index.find("O00001").get(0)));
+		assertTrue(index.find("X99999").isEmpty());
+		assertTrue(index.find("P00000").isEmpty());
+		assertTrue(index.find("p12345").isEmpty());
+		assertTrue(index.find("").isEmpty());
+		// a secondary accession of one entry and the primary of another
+		List<long[]> found = index.find("Q00001");
+		assertEquals(2, found.size());
+		assertEquals(entries[0], read(found.get(0)));
+		assertEquals(entries[4], read(found.get(1)));
+	}
+
+	public void testFindAll() throws Exception {
+		UniprotAccessionIndex index = UniprotAccessionIndex.getIndex(xmlFile);
+		List<long[]> found = index.findAll(Arrays.asList("Q00001", "O00001", "P12345",
+				"Q00002", "UNKNOWN"));
+		// in the order of the file, without duplicates
+		assertEquals(3, found.size());
+		assertEquals(entries[0], read(found.get(0)));
+		assertEquals(entries[3], read(found.get(1)));
+		assertEquals(entries[4], read(found.get(2)));
+	}
+
+	public void testUpToDate() throws Exception {
+		UniprotAccessionIndex index = UniprotAccessionIndex.getIndex(xmlFile);
+		assertTrue(index.isUpToDate(xmlFile));
+		write(xmlFile, "<uniprot>\n" + entry("P11111") + "</uniprot>\n");
+		xmlFile.setLastModified(xmlFile.lastModified() + 2000L);
+		assertFalse(UniprotAccessionIndex.open(UniprotAccessionIndex.getIndexFile(xmlFile))
+				.isUpToDate(xmlFile));
+		index = UniprotAccessionIndex.getIndex(xmlFile);
+		assertTrue(index.isUpToDate(xmlFile));
+		assertEquals(1, index.size());
+		assertEquals("<entry", read(index.find("P11111").get(0)).substring(0, 6));
+		assertTrue(index.find("P12345").isEmpty());
+	}
+
+	public void testNotAnIndex() throws Exception {
+		File file = new File(dir, "not.idx");
+		write(file, "not an index file at all, but long enough for the header");
+		try {
+			UniprotAccessionIndex.open(file);
+			fail("expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testEncode() throws Exception {
+		assertEquals(-1L, UniprotAccessionIndex.encode(null));
+		assertEquals(-1L, UniprotAccessionIndex.encode("A0A024R1612"));
+		assertEquals(-1L, UniprotAccessionIndex.encode("P1234-5"));
+		String[] sorted = new String[] {"0", "00", "1", "A", "A0A024R161", "O00001", "P1",
+				"P12345", "P9", "Q00001", "ZZZZZZZZZZ"};
+		for (int i = 1; i < sorted.length; i++) {
+			assertTrue(sorted[i], UniprotAccessionIndex.encode(sorted[i - 1])
+					< UniprotAccessionIndex.encode(sorted[i]));
+		}
+	}
+}
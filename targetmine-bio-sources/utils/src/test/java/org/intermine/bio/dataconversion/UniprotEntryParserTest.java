@@ -0,0 +1,166 @@
+package org.intermine.bio.dataconversion;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of UniprotEntryParser.
+ *
+ * @author chenyian
+ */
+public class UniprotEntryParserTest extends TestCase
+{
+	private static final String ENTRY = "<entry dataset=\"Swiss-Prot\">"
+			+ "<accession>P12345</accession><accession>Q00001</accession>"
+			+ "<name>TEST_HUMAN</name><name>IGNORED</name>"
+			+ "<protein><recommendedName><fullName>Test protein</fullName>"
+			+ "<shortName>TP</shortName></recommendedName>"
+			+ "<alternativeName><fullName>Test protein</fullName></alternativeName>"
+			+ "<innName>testinin</innName>"
+			+ "<component><recommendedName><fullName>Test peptide 1</fullName>"
+			+ "</recommendedName></component></protein>"
+			+ "<gene><name type=\"primary\">TST</name></gene>"
+			+ "<organism><name type=\"scientific\">Homo sapiens</name>"
+			+ "<dbReference type=\"NCBI Taxonomy\" id=\"9606\"/></organism>"
+			+ "<reference key=\"1\"><citation type=\"journal article\">"
+			+ "<title>A <i>test</i></title><dbReference type=\"DOI\" id=\"10.1/x\"/>"
+			+ "<dbReference type=\"PubMed\" id=\"111\"/></citation></reference>"
+			+ "<comment type=\"function\"><text evidence=\"1\">Does <b>tests</b>.</text></comment>"
+			+ "<comment type=\"subcellular location\"><subcellularLocation>"
+			+ "<location evidence=\"1 2\">Nucleus</location><topology>Peripheral</topology>"
+			+ "<location>Cytoplasm</location></subcellularLocation></comment>"
+			+ "<dbReference type=\"Ensembl\" id=\"ENST1\"><molecule id=\"P12345-1\"/>"
+			+ "<property type=\"gene ID\" value=\"ENSG1\"/>"
+			+ "<property type=\"gene ID\" value=\"ENSG2\"/></dbReference>"
+			+ "<keyword id=\"KW-0001\">Test</keyword>"
+			+ "<feature type=\"modified residue\" description=\"Phosphoserine\" evidence=\"1\">"
+			+ "<location><position position=\"3\"/></location></feature>"
+			+ "<feature type=\"chain\"><location sequence=\"P12345-2\"><begin position=\"1\"/>"
+			+ "<end status=\"unknown\"/></location></feature>"
+			+ "<evidence type=\"ECO:0000269\" key=\"1\"><source>"
+			+ "<dbReference type=\"PubMed\" id=\"222\"/></source></evidence>"
+			+ "<evidence type=\"ECO:0000269\" key=\"2\"><source>"
+			+ "<dbReference type=\"DOI\" id=\"10.1/y\"/>"
+			+ "<dbReference type=\"PubMed\" id=\"333\"/></source></evidence>"
+			+ "<evidence type=\"ECO:0000250\" key=\"3\"><source>"
+			+ "<dbReference type=\"PubMed\" id=\"444\"/></source></evidence>"
+			+ "<sequence length=\"5\" mass=\"500\" fragment=\"single\">\nMKTAY\n</sequence>"
+			+ "</entry>";
+
+	public UniprotEntryParserTest(String arg) {
+		super(arg);
+	}
+
+	private static List<UniprotEntry> parse(String entries) throws Exception {
+		return UniprotEntryParser.parseEntries(new StringReader(
+				"<uniprot xmlns=\"http://uniprot.org/uniprot\">" + entries + "</uniprot>"));
+	}
+
+	public void testEntry() throws Exception {
+		UniprotEntry entry = parse(ENTRY).get(0);
+		assertEquals("Swiss-Prot", entry.getDataset());
+		assertEquals(Arrays.asList("P12345", "Q00001"), entry.getAccessions());
+		assertEquals("P12345", entry.getPrimaryAccession());
+		assertEquals("TEST_HUMAN", entry.getName());
+		assertTrue(entry.hasGene());
+		assertEquals("TST", entry.getGeneSymbol());
+		assertEquals("9606", entry.getTaxonId());
+		assertEquals(Arrays.asList("111"), entry.getPublications());
+		assertEquals("KW-0001", entry.getKeywords().get(0).getId());
+		assertEquals("Test", entry.getKeywords().get(0).getValue());
+		assertTrue(entry.hasSequence());
+		assertTrue(entry.isFragment());
+		assertEquals("5", entry.getLength());
+		assertEquals("500", entry.getMass());
+		assertEquals("\nMKTAY\n", entry.getSequence());
+	}
+
+	public void testProteinNames() throws Exception {
+		UniprotEntry entry = parse(ENTRY).get(0);
+		assertEquals("Test protein", entry.getProteinName());
+		// the values equal to the protein name are not synonyms, the names without children are
+		assertEquals(Arrays.asList("TP", "testinin"), entry.getProteinSynonyms());
+		assertEquals(Arrays.asList("Test peptide 1"), entry.getComponentNames());
+	}
+
+	public void testProteinNameNotFirst() throws Exception {
+		UniprotEntry entry = parse("<entry><accession>P1</accession><protein><component>"
+				+ "<recommendedName><fullName>C</fullName></recommendedName></component>"
+				+ "<recommendedName><fullName>N</fullName></recommendedName></protein>"
+				+ "</entry>").get(0);
+		// only the first child of protein gives the protein name
+		assertNull(entry.getProteinName());
+		assertEquals(Arrays.asList("N"), entry.getProteinSynonyms());
+		assertFalse(entry.hasGene());
+		assertFalse(entry.hasSequence());
+	}
+
+	public void testComments() throws Exception {
+		List<UniprotEntry.Comment> comments = parse(ENTRY).get(0).getComments();
+		assertEquals(2, comments.size());
+		assertEquals("function", comments.get(0).getType());
+		assertTrue(comments.get(0).hasText());
+		// the text of the descendants is included
+		assertEquals("Does tests.", comments.get(0).getText());
+		assertEquals("1", comments.get(0).getTextEvidence());
+		assertFalse(comments.get(1).hasText());
+		List<UniprotEntry.Location> locations = comments.get(1).getLocations();
+		assertEquals(2, locations.size());
+		assertEquals("Nucleus", locations.get(0).getValue());
+		assertEquals("1 2", locations.get(0).getEvidence());
+		assertEquals("Cytoplasm", locations.get(1).getValue());
+		assertNull(locations.get(1).getEvidence());
+	}
+
+	public void testEvidencePublications() throws Exception {
+		UniprotEntry entry = parse(ENTRY).get(0);
+		// only the first reference of experimental evidences, if it is a PubMed one
+		assertEquals("222", entry.getEvidencePublications().get("1"));
+		assertFalse(entry.getEvidencePublications().containsKey("2"));
+		assertFalse(entry.getEvidencePublications().containsKey("3"));
+	}
+
+	public void testDbReferences() throws Exception {
+		List<UniprotEntry.DbReference> dbReferences = parse(ENTRY).get(0).getDbReferences();
+		assertEquals(1, dbReferences.size());
+		assertEquals("Ensembl", dbReferences.get(0).getType());
+		assertEquals("ENST1", dbReferences.get(0).getId());
+		assertEquals(Arrays.asList("ENSG1", "ENSG2"), dbReferences.get(0).getPropertyValues(
+				"gene ID"));
+		assertTrue(dbReferences.get(0).getPropertyValues("protein sequence ID").isEmpty());
+	}
+
+	public void testFeatures() throws Exception {
+		List<UniprotEntry.Feature> features = parse(ENTRY).get(0).getFeatures();
+		assertEquals(2, features.size());
+		UniprotEntry.Feature feature = features.get(0);
+		assertEquals("modified residue", feature.getType());
+		assertEquals("Phosphoserine", feature.getDescription());
+		assertEquals("1", feature.getEvidence());
+		assertTrue(feature.hasPosition());
+		assertEquals("3", feature.getPosition());
+		assertFalse(feature.hasRange());
+		assertNull(feature.getLocationSequence());
+		feature = features.get(1);
+		assertFalse(feature.hasPosition());
+		assertTrue(feature.hasRange());
+		assertEquals("1", feature.getBegin());
+		// <end status="unknown"/>
+		assertNull(feature.getEnd());
+		assertEquals("P12345-2", feature.getLocationSequence());
+	}
+
+	public void testNext() throws Exception {
+		UniprotEntryParser parser = new UniprotEntryParser(new StringReader("<uniprot>"
+				+ "<entry><accession>A1</accession></entry>"
+				+ "<entry><accession>A2</accession></entry>"
+				+ "<copyright>text</copyright></uniprot>"));
+		assertEquals("A1", parser.next().getPrimaryAccession());
+		assertEquals("A2", parser.next().getPrimaryAccession());
+		assertNull(parser.next());
+		parser.close();
+	}
+}
@@ -3,7 +3,6 @@ package org.intermine.bio.dataconversion;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
@@ -197,7 +196,7 @@ public class WwpdbConverter extends BioFileConverter {
 	private void readStructureFactorsFile() throws Exception {
 		BufferedReader in = null;
 		try {
-			in = new BufferedReader(new FileReader(structureFactorsFile));
+			in = InputFiles.openReader(structureFactorsFile);
 			String line;
 			while ((line = in.readLine()) != null) {
 				structureFactors.add(line.trim());
@@ -215,7 +214,7 @@ public class WwpdbConverter extends BioFileConverter {
 		BufferedReader in = null;
 		try {
 			// # pdbid,entry_id,ls_R_factor_obs,ls_R_factor_all,ls_R_factor_R_work,ls_R_factor_R_free,B_iso_mean,ls_d_res_high
-			in = new BufferedReader(new FileReader(refinementDetailsFile));
+			in = InputFiles.openReader(refinementDetailsFile);
 			String line;
 			while ((line = in.readLine()) != null) {
 				if (line.startsWith("#")) {
@@ -0,0 +1,1223 @@
+package org.intermine.bio.postprocess;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.sql.Database;
+
+/**
+ * Calculate the biological theme backgrounds (term counts, N and test numbers) of all
+ * processed organisms from a few table scans.
+ *
+ * Each annotation join is streamed only once. Genes, probe sets and proteins are mapped to
+ * dense int indexes, the direct annotations are kept as int arrays per gene, and the counts
+ * for every taxon, namespace (or data set) and IEA variant are derived in memory by walking
+ * the term ancestors of each entity. The numbers are the same as the ones produced by the
+ * per taxon SQL queries of CalculateBioThemeBackground.
+ *
+ */
+public class BioThemeBackgroundEngine {
+	private static final Logger LOG = LogManager.getLogger(BioThemeBackgroundEngine.class);
+
+	private static final int FETCH_SIZE = 10000;
+
+	private static final int[] EMPTY = new int[0];
+
+	static final List<String> ROOT_TERMS = Arrays.asList("GO:0008150", "GO:0003674", "GO:0005575");
+
+	static final List<String> NAME_SPACES = Arrays.asList("biological_process",
+			"molecular_function", "cellular_component");
+
+	static final List<String> PATHWAY_DATA_SETS = Arrays.asList("KEGG Pathway", "Reactome",
+			"NCI Pathway Interaction Database");
+
+	static final List<String> ENTITY_TYPES = Arrays.asList("Gene", "ProbeSet", "Protein");
+
+	/**
+	 * Receives every calculated Statistics value.
+	 */
+	public interface StatisticsSink {
+		void add(String identifier, String type, String dataSet, int count, String taxonId)
+				throws ObjectStoreException;
+	}
+
+	private Connection connection;
+
+	private List<String> taxonIds;
+
+	// gene object id -> dense index; the taxon of each gene is kept as an index of taxonIds
+	private Map<Integer, Integer> geneIndex = new HashMap<Integer, Integer>();
+	private byte[] geneTaxon;
+
+	// entity -> genes, for the entity types other than Gene
+	private Map<String, int[][]> entityGenes = new HashMap<String, int[][]>();
+
+	// gene -> probe set object ids, used for the tissue expression
+	private int[][] geneProbeSets;
+
+	private List<Family> families;
+
+	public BioThemeBackgroundEngine(Connection connection, List<String> taxonIds) {
+		this.connection = connection;
+		this.taxonIds = taxonIds;
+		this.families = createFamilies();
+	}
+
+	/**
+	 * @param family name of a background family, e.g. GO or Pathway
+	 * @param taxonId taxon ID
+	 * @return the key of the family and taxon in the fingerprints and the unit selection
+	 */
+	public static String getUnitKey(String family, String taxonId) {
+		return family + "/" + taxonId;
+	}
+
+	/**
+	 * @return the names of the background families
+	 */
+	public List<String> getFamilyNames() {
+		List<String> ret = new ArrayList<String>();
+		for (Family family : families) {
+			ret.add(family.name);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param familyName name of a background family
+	 * @return the Statistics dataSet values written by the family
+	 */
+	public Collection<String> getDataSets(String familyName) {
+		return getFamily(familyName).getDataSets();
+	}
+
+	/**
+	 * @param familyName name of a background family
+	 * @return the Statistics identifiers written by the family whatever the dataSet value
+	 */
+	public Collection<String> getIdentifiers(String familyName) {
+		return getFamily(familyName).getIdentifiers();
+	}
+
+	private Family getFamily(String familyName) {
+		for (Family family : families) {
+			if (family.name.equals(familyName)) {
+				return family;
+			}
+		}
+		throw new IllegalArgumentException("Unknown background family: " + familyName);
+	}
+
+	/**
+	 * Fingerprint the input tables of every family and taxon by row counts and id checksums.
+	 *
+	 * @return unit key -> fingerprint
+	 * @throws SQLException
+	 */
+	public Map<String, String> fingerprint() throws SQLException {
+		long start = System.currentTimeMillis();
+		Map<String, String> entities = new LinkedHashMap<String, String>();
+		entities.put("gene", "select org.taxonid, count(*), sum(g.id) from gene as g "
+				+ " join organism as org on org.id = g.organismid " + taxonConstraint());
+		entities.put("genesprobesets", "select org.taxonid, count(*), "
+				+ " sum(gps.genes::bigint + gps.probesets) from genesprobesets as gps "
+				+ " join gene as g on g.id = gps.genes "
+				+ " join organism as org on org.id = g.organismid " + taxonConstraint());
+		entities.put("genesproteins", "select org.taxonid, count(*), "
+				+ " sum(gpr.genes::bigint + gpr.proteins) from genesproteins as gpr "
+				+ " join gene as g on g.id = gpr.genes "
+				+ " join organism as org on org.id = g.organismid " + taxonConstraint());
+
+		// the same tables are shared by several families
+		Map<String, String> globalChecksums = new HashMap<String, String>();
+		Map<String, Map<String, String>> taxonChecksums = new HashMap<String, Map<String, String>>();
+		Statement statement = connection.createStatement();
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		for (Family family : families) {
+			Map<String, String> taxonInputs = new LinkedHashMap<String, String>(entities);
+			taxonInputs.putAll(family.getTaxonInputs());
+			for (String name : taxonInputs.keySet()) {
+				if (!taxonChecksums.containsKey(name)) {
+					taxonChecksums.put(name, getTaxonChecksums(statement, taxonInputs.get(name)));
+				}
+			}
+			StringBuffer global = new StringBuffer();
+			for (Map.Entry<String, String> entry : family.getGlobalInputs().entrySet()) {
+				String checksum = globalChecksums.get(entry.getKey());
+				if (checksum == null) {
+					ResultSet resultSet = statement.executeQuery(entry.getValue());
+					resultSet.next();
+					checksum = resultSet.getLong(1) + ":" + resultSet.getString(2);
+					resultSet.close();
+					globalChecksums.put(entry.getKey(), checksum);
+				}
+				global.append(entry.getKey() + "=" + checksum + ";");
+			}
+			for (String taxonId : taxonIds) {
+				StringBuffer sb = new StringBuffer(global);
+				for (String name : taxonInputs.keySet()) {
+					String checksum = taxonChecksums.get(name).get(taxonId);
+					sb.append(name + "=" + (checksum == null ? "0:null" : checksum) + ";");
+				}
+				ret.put(getUnitKey(family.name, taxonId), sb.toString());
+			}
+		}
+		statement.close();
+		LOG.info(String.format("Fingerprinted the background inputs (%d ms).",
+				System.currentTimeMillis() - start));
+		return ret;
+	}
+
+	private String taxonConstraint() {
+		return " where org.taxonid in ('" + StringUtils.join(taxonIds, "','") + "') "
+				+ " group by org.taxonid ";
+	}
+
+	/**
+	 * @param sql returns the taxon ID, a row count and a checksum
+	 * @return taxon ID -> row count and checksum
+	 */
+	private static Map<String, String> getTaxonChecksums(Statement statement, String sql)
+			throws SQLException {
+		Map<String, String> ret = new HashMap<String, String>();
+		ResultSet resultSet = statement.executeQuery(sql);
+		while (resultSet.next()) {
+			ret.put(resultSet.getString(1), resultSet.getLong(2) + ":" + resultSet.getString(3));
+		}
+		resultSet.close();
+		return ret;
+	}
+
+	/**
+	 * Calculate all the backgrounds, one work unit after another, on the engine connection.
+	 *
+	 * @param sink where the values go
+	 * @throws SQLException
+	 * @throws ObjectStoreException
+	 */
+	public void calculate(StatisticsSink sink) throws SQLException, ObjectStoreException {
+		calculate(sink, null, 1);
+	}
+
+	/**
+	 * Calculate all the backgrounds and hand the values to the sink.
+	 *
+	 * With more than one thread, each background family is loaded on its own connection of the
+	 * database and the (family, taxon, entity type) work units are counted concurrently on a
+	 * bounded pool. The values are still handed to the sink from the calling thread, in the same
+	 * order as the sequential run.
+	 *
+	 * @param sink where the values go
+	 * @param database where to get the extra connections from; may be null for a single thread
+	 * @param threads maximum number of concurrent loads and work units
+	 * @throws SQLException
+	 * @throws ObjectStoreException
+	 */
+	public void calculate(StatisticsSink sink, Database database, int threads)
+			throws SQLException, ObjectStoreException {
+		calculate(sink, database, threads, null);
+	}
+
+	/**
+	 * Calculate the backgrounds of the selected families and taxa only; the families without
+	 * any selected taxon are not even loaded.
+	 *
+	 * @param sink where the values go
+	 * @param database where to get the extra connections from; may be null for a single thread
+	 * @param threads maximum number of concurrent loads and work units
+	 * @param selection unit keys (see getUnitKey) to calculate, null for all
+	 * @throws SQLException
+	 * @throws ObjectStoreException
+	 */
+	public void calculate(StatisticsSink sink, Database database, int threads,
+			Set<String> selection) throws SQLException, ObjectStoreException {
+		List<Family> selected = new ArrayList<Family>();
+		for (Family family : families) {
+			family.selection = selection;
+			if (!family.getUnits().isEmpty()) {
+				selected.add(family);
+			}
+		}
+		if (selected.isEmpty()) {
+			return;
+		}
+
+		boolean autoCommit = connection.getAutoCommit();
+		// the PostgreSQL driver only streams a result set within a transaction
+		connection.setAutoCommit(false);
+		try {
+			loadEntities();
+			if (threads <= 1 || database == null) {
+				for (Family family : selected) {
+					loadFamily(family, connection);
+					for (WorkUnit unit : family.getUnits()) {
+						long start = System.currentTimeMillis();
+						CountingSink counter = new CountingSink(sink);
+						unit.run(counter);
+						report(unit, counter.count, System.currentTimeMillis() - start);
+					}
+				}
+			} else {
+				calculateConcurrently(selected, sink, database, threads);
+			}
+		} finally {
+			connection.commit();
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private void calculateConcurrently(List<Family> selected, StatisticsSink sink,
+			final Database database, int threads) throws SQLException, ObjectStoreException {
+		System.out.println("calculating backgrounds with " + threads + " threads...");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Family>> loads = new ArrayList<Future<Family>>();
+			for (final Family family : selected) {
+				loads.add(executor.submit(new Callable<Family>() {
+					@Override
+					public Family call() throws Exception {
+						Connection familyConnection = database.getConnection();
+						try {
+							familyConnection.setAutoCommit(false);
+							loadFamily(family, familyConnection);
+							familyConnection.commit();
+						} finally {
+							familyConnection.close();
+						}
+						return family;
+					}
+				}));
+			}
+
+			// the units of a family are queued as soon as the family is loaded
+			List<WorkUnit> units = new ArrayList<WorkUnit>();
+			List<Future<StatisticsBuffer>> results = new ArrayList<Future<StatisticsBuffer>>();
+			for (Future<Family> load : loads) {
+				for (final WorkUnit unit : getResult(load).getUnits()) {
+					units.add(unit);
+					results.add(executor.submit(new Callable<StatisticsBuffer>() {
+						@Override
+						public StatisticsBuffer call() throws Exception {
+							long start = System.currentTimeMillis();
+							StatisticsBuffer buffer = new StatisticsBuffer();
+							unit.run(buffer);
+							buffer.elapsed = System.currentTimeMillis() - start;
+							return buffer;
+						}
+					}));
+				}
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				StatisticsBuffer buffer = getResult(results.get(i));
+				buffer.replay(sink);
+				report(units.get(i), buffer.size(), buffer.elapsed);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> T getResult(Future<T> future) throws SQLException, ObjectStoreException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while calculating the backgrounds.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			if (cause instanceof ObjectStoreException) {
+				throw (ObjectStoreException) cause;
+			}
+			throw new RuntimeException("Failed to calculate the backgrounds.", cause);
+		}
+	}
+
+	private static void report(WorkUnit unit, int values, long elapsed) {
+		String message = String.format("%s: %d values (%d ms)", unit, values, elapsed);
+		LOG.info(message);
+		System.out.println(message);
+	}
+
+	private List<Family> createFamilies() {
+		return Arrays.asList(
+				new GeneOntologyFamily("GO", "goterm", "goa.ontologytermid", "", "GO",
+						"GOAnnotation"),
+				new GeneOntologyFamily("GOSlim", "goslimterm", "gogos.goslimterms",
+						" join goannotationgoslimterms as gogos on gogos.goannotation = goa.id ",
+						"GOS", "GOSlim"),
+				new PathwayFamily(), new TissueFamily());
+	}
+
+	private void loadFamily(Family family, Connection familyConnection) throws SQLException {
+		long start = System.currentTimeMillis();
+		family.load(familyConnection);
+		String message = String.format("Loaded %s background data (%d ms).", family.name,
+				System.currentTimeMillis() - start);
+		LOG.info(message);
+		System.out.println(message);
+	}
+
+	private void loadEntities() throws SQLException {
+		long start = System.currentTimeMillis();
+		Statement statement = createStatement(connection);
+		ResultSet resultSet = statement.executeQuery("select g.id, org.taxonid from gene as g "
+				+ " join organism as org on org.id = g.organismid "
+				+ " where org.taxonid in ('" + StringUtils.join(taxonIds, "','") + "') ");
+		List<Byte> taxa = new ArrayList<Byte>();
+		while (resultSet.next()) {
+			geneIndex.put(Integer.valueOf(resultSet.getInt(1)), Integer.valueOf(taxa.size()));
+			taxa.add(Byte.valueOf((byte) taxonIds.indexOf(resultSet.getString(2))));
+		}
+		resultSet.close();
+		geneTaxon = new byte[taxa.size()];
+		for (int i = 0; i < geneTaxon.length; i++) {
+			geneTaxon[i] = taxa.get(i).byteValue();
+		}
+
+		LongList geneToProbeSet = new LongList();
+		entityGenes.put("ProbeSet", loadEntityGenes(statement,
+				"select gps.probesets, gps.genes from genesprobesets as gps", geneToProbeSet));
+		geneProbeSets = toAdjacency(geneToProbeSet, geneTaxon.length);
+		entityGenes.put("Protein", loadEntityGenes(statement,
+				"select gpr.proteins, gpr.genes from genesproteins as gpr", null));
+
+		statement.close();
+		LOG.info(String.format("Loaded %d genes, %d probe sets and %d proteins (%d ms).",
+				geneTaxon.length, entityGenes.get("ProbeSet").length,
+				entityGenes.get("Protein").length, System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * @param sql should return the entity id and the gene id
+	 * @param geneToEntity if not null, collect the gene index and the entity object id pairs
+	 * @return entity index -> gene indexes
+	 */
+	private int[][] loadEntityGenes(Statement statement, String sql, LongList geneToEntity)
+			throws SQLException {
+		Map<Integer, Integer> entityIndex = new HashMap<Integer, Integer>();
+		LongList pairs = new LongList();
+		ResultSet resultSet = statement.executeQuery(sql);
+		while (resultSet.next()) {
+			Integer gene = geneIndex.get(Integer.valueOf(resultSet.getInt(2)));
+			if (gene == null) {
+				continue;
+			}
+			int entityId = resultSet.getInt(1);
+			Integer entity = entityIndex.get(Integer.valueOf(entityId));
+			if (entity == null) {
+				entity = Integer.valueOf(entityIndex.size());
+				entityIndex.put(Integer.valueOf(entityId), entity);
+			}
+			pairs.add(entity.intValue(), gene.intValue());
+			if (geneToEntity != null) {
+				geneToEntity.add(gene.intValue(), entityId);
+			}
+		}
+		resultSet.close();
+		return toAdjacency(pairs, entityIndex.size());
+	}
+
+	/**
+	 * A group of backgrounds sharing the same input tables, e.g. GO or pathway.
+	 */
+	private abstract class Family {
+		final String name;
+		Set<String> selection = null;
+
+		Family(String name) {
+			this.name = name;
+		}
+
+		abstract void load(Connection familyConnection) throws SQLException;
+
+		abstract void calculate(int taxon, String type, StatisticsSink sink)
+				throws ObjectStoreException;
+
+		/**
+		 * @return input name -> SQL returning the taxon ID, a row count and a checksum
+		 */
+		abstract Map<String, String> getTaxonInputs();
+
+		/**
+		 * @return input name -> SQL returning a row count and a checksum
+		 */
+		abstract Map<String, String> getGlobalInputs();
+
+		abstract Collection<String> getDataSets();
+
+		Collection<String> getIdentifiers() {
+			return Collections.emptyList();
+		}
+
+		List<String> getEntityTypes() {
+			return ENTITY_TYPES;
+		}
+
+		List<WorkUnit> getUnits() {
+			List<WorkUnit> units = new ArrayList<WorkUnit>();
+			for (int taxon = 0; taxon < taxonIds.size(); taxon++) {
+				if (selection != null
+						&& !selection.contains(getUnitKey(name, taxonIds.get(taxon)))) {
+					continue;
+				}
+				for (String type : getEntityTypes()) {
+					units.add(new WorkUnit(this, taxon, type));
+				}
+			}
+			return units;
+		}
+	}
+
+	private class WorkUnit {
+		private Family family;
+		private int taxon;
+		private String type;
+
+		WorkUnit(Family family, int taxon, String type) {
+			this.family = family;
+			this.taxon = taxon;
+			this.type = type;
+		}
+
+		void run(StatisticsSink sink) throws ObjectStoreException {
+			family.calculate(taxon, type, sink);
+		}
+
+		@Override
+		public String toString() {
+			return family.name + "/" + taxonIds.get(taxon) + "/" + type;
+		}
+	}
+
+	private class GeneOntologyFamily extends Family {
+		private final String[] suffixes = new String[] { "_w_IEA", "_wo_IEA" };
+		private String table;
+		private String termColumn;
+		private String join;
+		private String prefix;
+		private String category;
+
+		private TermDictionary dict;
+		// [0] with IEA, [1] without IEA: gene index -> direct term indexes
+		private int[][][] geneTerms;
+		// [taxon][IEA variant][name space]
+		private int[][][] testNumbers;
+
+		GeneOntologyFamily(String name, String table, String termColumn, String join,
+				String prefix, String category) {
+			super(name);
+			this.table = table;
+			this.termColumn = termColumn;
+			this.join = join;
+			this.prefix = prefix;
+			this.category = category;
+		}
+
+		private String getDataSet(int ns, int variant) {
+			String[] chars = NAME_SPACES.get(ns).split("_");
+			return prefix + chars[0].substring(0, 1).toUpperCase()
+					+ chars[1].substring(0, 1).toUpperCase() + suffixes[variant];
+		}
+
+		@Override
+		Collection<String> getDataSets() {
+			List<String> ret = new ArrayList<String>();
+			for (int v = 0; v < suffixes.length; v++) {
+				for (int ns = 0; ns < NAME_SPACES.size(); ns++) {
+					ret.add(getDataSet(ns, v));
+				}
+			}
+			return ret;
+		}
+
+		@Override
+		Map<String, String> getTaxonInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("goannotation", "select org.taxonid, count(*), "
+					+ " sum(goa.id::bigint + goa.ontologytermid) from goannotation as goa "
+					+ " join gene as g on g.id = goa.subjectid "
+					+ " join organism as org on org.id = g.organismid " + taxonConstraint());
+			return ret;
+		}
+
+		@Override
+		Map<String, String> getGlobalInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("evidenceontologyannotation", "select count(*), "
+					+ " sum(ontologyannotation::bigint + evidence) from evidenceontologyannotation ");
+			ret.put("goevidence", "select count(*), sum(id::bigint + codeid) from goevidence ");
+			ret.put(table, "select count(*), sum(id) from " + table);
+			ret.put("ontologytermparents", "select count(*), sum(ontologyterm::bigint + parents) "
+					+ " from ontologytermparents ");
+			if (join.length() > 0) {
+				ret.put("goannotationgoslimterms", "select count(*), "
+						+ " sum(goannotation::bigint + goslimterms) from goannotationgoslimterms ");
+			}
+			return ret;
+		}
+
+		@Override
+		void load(Connection familyConnection) throws SQLException {
+			dict = loadTerms(familyConnection);
+			geneTerms = loadAnnotations(familyConnection);
+
+			// the test numbers are those of the genes, whatever the entity type
+			testNumbers = new int[taxonIds.size()][suffixes.length][NAME_SPACES.size()];
+			for (int taxon = 0; taxon < taxonIds.size(); taxon++) {
+				for (int v = 0; v < suffixes.length; v++) {
+					BitSet terms = annotatedTerms(taxon, geneTerms[v], dict);
+					for (int term = terms.nextSetBit(0); term >= 0; term = terms
+							.nextSetBit(term + 1)) {
+						if (!dict.excluded[term]) {
+							for (int ns : dict.groups[term]) {
+								testNumbers[taxon][v][ns]++;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * The terms and their parents; the name space is the group.
+		 */
+		private TermDictionary loadTerms(Connection familyConnection) throws SQLException {
+			TermDictionary terms = new TermDictionary(NAME_SPACES, false);
+			Statement statement = createStatement(familyConnection);
+			ResultSet resultSet = statement.executeQuery("select t.id, t.identifier, t.namespace from "
+					+ table + " as t ");
+			while (resultSet.next()) {
+				int term = terms.addTerm(resultSet.getInt(1), resultSet.getString(2));
+				terms.addGroup(term, resultSet.getString(3));
+			}
+			resultSet.close();
+
+			LongList parents = new LongList();
+			resultSet = statement.executeQuery("select otp.ontologyterm, otp.parents "
+					+ " from ontologytermparents as otp "
+					+ " join " + table + " as t on t.id = otp.ontologyterm "
+					+ " join " + table + " as pt on pt.id = otp.parents ");
+			while (resultSet.next()) {
+				int term = terms.getTerm(resultSet.getInt(1));
+				int parent = terms.getTerm(resultSet.getInt(2));
+				if (term >= 0 && parent >= 0) {
+					parents.add(term, parent);
+				}
+			}
+			resultSet.close();
+			statement.close();
+
+			terms.freeze(parents, ROOT_TERMS);
+			return terms;
+		}
+
+		private int[][][] loadAnnotations(Connection familyConnection) throws SQLException {
+			LongList withIEA = new LongList();
+			LongList withoutIEA = new LongList();
+			Statement statement = createStatement(familyConnection);
+			ResultSet resultSet = statement.executeQuery("select goa.subjectid, " + termColumn
+					+ ", goec.code "
+					+ " from goannotation as goa "
+					+ " join evidenceontologyannotation as egoa on egoa.ontologyannotation = goa.id "
+					+ " join goevidence as goe on goe.id = egoa.evidence "
+					+ " join goevidencecode as goec on goec.id = goe.codeid "
+					+ join
+					+ " join gene as g on g.id = goa.subjectid "
+					+ " join organism as org on org.id = g.organismid "
+					+ " where org.taxonid in ('" + StringUtils.join(taxonIds, "','") + "') "
+					+ " and goa.isnegation = false ");
+			while (resultSet.next()) {
+				Integer gene = geneIndex.get(Integer.valueOf(resultSet.getInt(1)));
+				int term = dict.getTerm(resultSet.getInt(2));
+				if (gene == null || term < 0) {
+					continue;
+				}
+				withIEA.add(gene.intValue(), term);
+				String code = resultSet.getString(3);
+				if (code != null && !code.equals("IEA")) {
+					withoutIEA.add(gene.intValue(), term);
+				}
+			}
+			resultSet.close();
+			statement.close();
+
+			return new int[][][] { toAdjacency(withIEA, geneTaxon.length),
+					toAdjacency(withoutIEA, geneTaxon.length) };
+		}
+
+		@Override
+		void calculate(int taxon, String type, StatisticsSink sink) throws ObjectStoreException {
+			String taxonId = taxonIds.get(taxon);
+			for (int v = 0; v < suffixes.length; v++) {
+				String[] dataSets = new String[NAME_SPACES.size()];
+				for (int ns = 0; ns < dataSets.length; ns++) {
+					dataSets[ns] = getDataSet(ns, v);
+				}
+
+				Background background = count(taxon, entityGenes.get(type), geneTerms[v], dict);
+				for (int term = 0; term < dict.size(); term++) {
+					int count = background.termCounts[term];
+					if (count > 0) {
+						for (int ns : dict.groups[term]) {
+							sink.add(dict.identifiers.get(term), type, dataSets[ns], count, taxonId);
+						}
+					}
+				}
+				for (int ns = 0; ns < dataSets.length; ns++) {
+					if (background.groupCounts[ns] > 0) {
+						sink.add(category + " N", type, dataSets[ns], background.groupCounts[ns],
+								taxonId);
+					}
+					if (testNumbers[taxon][v][ns] > 0) {
+						sink.add(category + " test number", type, dataSets[ns],
+								testNumbers[taxon][v][ns], taxonId);
+					}
+				}
+			}
+		}
+	}
+
+	private class PathwayFamily extends Family {
+		private TermDictionary dict;
+		private int[][] geneTerms;
+		// taxon -> data set name -> number of pathways
+		private Map<String, Map<String, Integer>> testNumbers = new HashMap<String, Map<String, Integer>>();
+
+		PathwayFamily() {
+			super("Pathway");
+		}
+
+		@Override
+		Collection<String> getDataSets() {
+			List<String> ret = new ArrayList<String>(PATHWAY_DATA_SETS);
+			ret.add("All");
+			return ret;
+		}
+
+		@Override
+		Collection<String> getIdentifiers() {
+			// the test numbers are written for every data set of pathways
+			return Arrays.asList("Pathway N", "Pathway test number");
+		}
+
+		@Override
+		Map<String, String> getTaxonInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("genespathways", "select org.taxonid, count(*), "
+					+ " sum(gp.genes::bigint + gp.pathways) from genespathways as gp "
+					+ " join gene as g on g.id = gp.genes "
+					+ " join organism as org on org.id = g.organismid " + taxonConstraint());
+			return ret;
+		}
+
+		@Override
+		Map<String, String> getGlobalInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("pathway", "select count(*), sum(id::bigint + coalesce(organismid, 0)) "
+					+ " from pathway ");
+			ret.put("datasetspathway", "select count(*), sum(pathway::bigint + datasets) "
+					+ " from datasetspathway ");
+			return ret;
+		}
+
+		@Override
+		void load(Connection familyConnection) throws SQLException {
+			// pathways of the other data sets only count for "All"
+			dict = new TermDictionary(PATHWAY_DATA_SETS, true);
+			for (String taxonId : taxonIds) {
+				testNumbers.put(taxonId, new LinkedHashMap<String, Integer>());
+			}
+			Set<Integer> pathwaysWithDataSet = new HashSet<Integer>();
+
+			Statement statement = createStatement(familyConnection);
+			ResultSet resultSet = statement.executeQuery("select p.id, p.identifier, ds.name, org.taxonid "
+					+ " from pathway as p "
+					+ " join datasetspathway as dsp on dsp.pathway = p.id "
+					+ " join dataset as ds on ds.id = dsp.datasets "
+					+ " left join organism as org on org.id = p.organismid ");
+			while (resultSet.next()) {
+				int pathwayId = resultSet.getInt(1);
+				String dataSetName = resultSet.getString(3);
+				int term = dict.addTerm(pathwayId, resultSet.getString(2));
+				dict.addGroup(term, dataSetName);
+				pathwaysWithDataSet.add(Integer.valueOf(pathwayId));
+
+				Map<String, Integer> numbers = testNumbers.get(resultSet.getString(4));
+				if (numbers != null && !StringUtils.isEmpty(dataSetName)) {
+					Integer number = numbers.get(dataSetName);
+					numbers.put(dataSetName, Integer.valueOf(number == null ? 1 : number.intValue() + 1));
+				}
+			}
+			resultSet.close();
+			dict.freeze(null, null);
+
+			LongList pairs = new LongList();
+			resultSet = statement.executeQuery("select gp.genes, gp.pathways from genespathways as gp ");
+			while (resultSet.next()) {
+				Integer gene = geneIndex.get(Integer.valueOf(resultSet.getInt(1)));
+				if (gene == null || !pathwaysWithDataSet.contains(Integer.valueOf(resultSet.getInt(2)))) {
+					continue;
+				}
+				pairs.add(gene.intValue(), dict.getTerm(resultSet.getInt(2)));
+			}
+			resultSet.close();
+			statement.close();
+			geneTerms = toAdjacency(pairs, geneTaxon.length);
+		}
+
+		@Override
+		void calculate(int taxon, String type, StatisticsSink sink) throws ObjectStoreException {
+			String taxonId = taxonIds.get(taxon);
+			Background background = count(taxon, entityGenes.get(type), geneTerms, dict);
+			for (int term = 0; term < dict.size(); term++) {
+				int count = background.termCounts[term];
+				if (count > 0) {
+					for (int ds : dict.groups[term]) {
+						if (ds >= PATHWAY_DATA_SETS.size()) {
+							continue;
+						}
+						sink.add(dict.identifiers.get(term), type, PATHWAY_DATA_SETS.get(ds), count,
+								taxonId);
+					}
+				}
+			}
+			for (int ds = 0; ds < PATHWAY_DATA_SETS.size(); ds++) {
+				sink.add("Pathway N", type, PATHWAY_DATA_SETS.get(ds), background.groupCounts[ds],
+						taxonId);
+			}
+			sink.add("Pathway N", type, "All", background.anyCount, taxonId);
+
+			int total = 0;
+			for (Map.Entry<String, Integer> entry : testNumbers.get(taxonId).entrySet()) {
+				sink.add("Pathway test number", type, entry.getKey(), entry.getValue().intValue(),
+						taxonId);
+				total += entry.getValue().intValue();
+			}
+			sink.add("Pathway test number", type, "All", total, taxonId);
+		}
+	}
+
+	private class TissueFamily extends Family {
+		private TermDictionary dict;
+		private int[][] geneTerms;
+		// taxon of the probe set -> distinct tissue ids
+		private Map<String, Set<Integer>> testTissues = new HashMap<String, Set<Integer>>();
+
+		TissueFamily() {
+			super("Tissue");
+		}
+
+		@Override
+		Collection<String> getDataSets() {
+			return Arrays.asList("barcode3");
+		}
+
+		@Override
+		Map<String, String> getTaxonInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("expression", "select org.taxonid, count(*), "
+					+ " sum(e.id::bigint + e.tissueid + case when e.isexpressed then 1 else 0 end) "
+					+ " from expression as e "
+					+ " join probeset as ps on ps.id = e.probesetid "
+					+ " join organism as org on org.id = ps.organismid " + taxonConstraint());
+			return ret;
+		}
+
+		@Override
+		Map<String, String> getGlobalInputs() {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			ret.put("tissue", "select count(*), sum(id) from tissue ");
+			return ret;
+		}
+
+		@Override
+		List<String> getEntityTypes() {
+			return Arrays.asList("Gene");
+		}
+
+		@Override
+		void load(Connection familyConnection) throws SQLException {
+			dict = new TermDictionary(Arrays.asList("barcode3"), false);
+			Statement statement = createStatement(familyConnection);
+			ResultSet resultSet = statement.executeQuery("select t.id, t.identifier from tissue as t ");
+			while (resultSet.next()) {
+				int term = dict.addTerm(resultSet.getInt(1), resultSet.getString(2));
+				dict.addGroup(term, "barcode3");
+			}
+			resultSet.close();
+			dict.freeze(null, null);
+
+			// probe set object id -> expressed tissues
+			Map<Integer, BitSet> expressed = new HashMap<Integer, BitSet>();
+			for (String taxonId : taxonIds) {
+				testTissues.put(taxonId, new HashSet<Integer>());
+			}
+			resultSet = statement.executeQuery("select e.probesetid, e.tissueid, e.isexpressed, org.taxonid "
+					+ " from expression as e "
+					+ " join probeset as ps on ps.id = e.probesetid "
+					+ " left join organism as org on org.id = ps.organismid ");
+			while (resultSet.next()) {
+				int tissueId = resultSet.getInt(2);
+				int term = dict.getTerm(tissueId);
+				if (term < 0) {
+					continue;
+				}
+				Set<Integer> tissues = testTissues.get(resultSet.getString(4));
+				if (tissues != null) {
+					tissues.add(Integer.valueOf(tissueId));
+				}
+				if (resultSet.getBoolean(3)) {
+					Integer probeSetId = Integer.valueOf(resultSet.getInt(1));
+					BitSet bitSet = expressed.get(probeSetId);
+					if (bitSet == null) {
+						bitSet = new BitSet(dict.size());
+						expressed.put(probeSetId, bitSet);
+					}
+					bitSet.set(term);
+				}
+			}
+			resultSet.close();
+			statement.close();
+
+			geneTerms = new int[geneTaxon.length][];
+			BitSet tissues = new BitSet(dict.size());
+			for (int gene = 0; gene < geneTerms.length; gene++) {
+				for (int probeSetId : geneProbeSets[gene]) {
+					BitSet bitSet = expressed.get(Integer.valueOf(probeSetId));
+					if (bitSet != null) {
+						tissues.or(bitSet);
+					}
+				}
+				geneTerms[gene] = toArray(tissues);
+				tissues.clear();
+			}
+		}
+
+		@Override
+		void calculate(int taxon, String type, StatisticsSink sink) throws ObjectStoreException {
+			String taxonId = taxonIds.get(taxon);
+			Background background = count(taxon, null, geneTerms, dict);
+			for (int term = 0; term < dict.size(); term++) {
+				if (background.termCounts[term] > 0) {
+					sink.add(dict.identifiers.get(term), type, "barcode3",
+							background.termCounts[term], taxonId);
+				}
+			}
+			sink.add("Tissue N", type, "barcode3", background.groupCounts[0], taxonId);
+			sink.add("Tissue test number", type, "barcode3", testTissues.get(taxonId).size(),
+					taxonId);
+		}
+	}
+
+	/**
+	 * @return all the terms reached by the genes of one taxon
+	 */
+	private BitSet annotatedTerms(int taxon, int[][] geneTerms, TermDictionary dict) {
+		BitSet terms = new BitSet(dict.size());
+		for (int gene = 0; gene < geneTerms.length; gene++) {
+			if (geneTaxon[gene] == taxon) {
+				for (int term : geneTerms[gene]) {
+					for (int ancestor : dict.ancestors[term]) {
+						terms.set(ancestor);
+					}
+				}
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Count the distinct entities of one taxon for every term and every group.
+	 *
+	 * @param taxon index of the taxon
+	 * @param entityGenes entity -> genes; null for genes themselves
+	 * @param geneTerms gene -> direct terms
+	 * @param dict the terms
+	 * @return the counts
+	 */
+	private Background count(int taxon, int[][] entityGenes, int[][] geneTerms,
+			TermDictionary dict) {
+		Background background = new Background(dict.size(), dict.groupNames.size());
+		BitSet terms = new BitSet(dict.size());
+		BitSet groups = new BitSet(dict.groupNames.size());
+		int[] single = new int[1];
+		int numEntities = entityGenes == null ? geneTerms.length : entityGenes.length;
+		for (int entity = 0; entity < numEntities; entity++) {
+			int[] genes;
+			if (entityGenes == null) {
+				single[0] = entity;
+				genes = single;
+			} else {
+				genes = entityGenes[entity];
+			}
+			boolean annotated = false;
+			for (int gene : genes) {
+				if (geneTaxon[gene] != taxon) {
+					continue;
+				}
+				for (int term : geneTerms[gene]) {
+					annotated = true;
+					if (!dict.excluded[term]) {
+						for (int group : dict.groups[term]) {
+							groups.set(group);
+						}
+					}
+					for (int ancestor : dict.ancestors[term]) {
+						terms.set(ancestor);
+					}
+				}
+			}
+			if (!annotated) {
+				continue;
+			}
+			for (int term = terms.nextSetBit(0); term >= 0; term = terms.nextSetBit(term + 1)) {
+				if (!dict.excluded[term]) {
+					background.termCounts[term]++;
+				}
+			}
+			for (int group = groups.nextSetBit(0); group >= 0; group = groups.nextSetBit(group + 1)) {
+				background.groupCounts[group]++;
+			}
+			if (!groups.isEmpty()) {
+				background.anyCount++;
+			}
+			terms.clear();
+			groups.clear();
+		}
+		return background;
+	}
+
+	private static Statement createStatement(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.setFetchSize(FETCH_SIZE);
+		return statement;
+	}
+
+	private static int[] toArray(BitSet bitSet) {
+		if (bitSet.isEmpty()) {
+			return EMPTY;
+		}
+		int[] ret = new int[bitSet.cardinality()];
+		int i = 0;
+		for (int bit = bitSet.nextSetBit(0); bit >= 0; bit = bitSet.nextSetBit(bit + 1)) {
+			ret[i++] = bit;
+		}
+		return ret;
+	}
+
+	/**
+	 * @param pairs packed (key, value) pairs
+	 * @param size number of keys
+	 * @return key -> sorted distinct values
+	 */
+	static int[][] toAdjacency(LongList pairs, int size) {
+		long[] values = pairs.toSortedArray();
+		int[] counts = new int[size];
+		for (int i = 0; i < values.length; i++) {
+			if (i == 0 || values[i] != values[i - 1]) {
+				counts[(int) (values[i] >>> 32)]++;
+			}
+		}
+		int[][] ret = new int[size][];
+		for (int key = 0; key < size; key++) {
+			ret[key] = counts[key] == 0 ? EMPTY : new int[counts[key]];
+			counts[key] = 0;
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (i == 0 || values[i] != values[i - 1]) {
+				int key = (int) (values[i] >>> 32);
+				ret[key][counts[key]++] = (int) values[i];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * A growable array of packed (int, int) pairs.
+	 */
+	static class LongList {
+		private long[] data = new long[1024];
+		private int size = 0;
+
+		void add(int key, int value) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = ((long) key << 32) | (value & 0xffffffffL);
+		}
+
+		int size() {
+			return size;
+		}
+
+		long[] toSortedArray() {
+			long[] ret = Arrays.copyOf(data, size);
+			Arrays.sort(ret);
+			return ret;
+		}
+	}
+
+	/**
+	 * Terms keyed by identifier, as the SQL queries group by identifier.
+	 */
+	static class TermDictionary {
+		private Map<Integer, Integer> objectIds = new HashMap<Integer, Integer>();
+		private Map<String, Integer> termIndex = new HashMap<String, Integer>();
+		private List<String> identifiers = new ArrayList<String>();
+		private List<String> groupNames;
+		private boolean openGroups;
+		private LongList termGroups = new LongList();
+
+		boolean[] excluded;
+		int[][] groups;
+		int[][] ancestors;
+
+		/**
+		 * @param groupNames the known groups
+		 * @param openGroups whether the groups not in groupNames are appended or ignored
+		 */
+		TermDictionary(List<String> groupNames, boolean openGroups) {
+			this.groupNames = new ArrayList<String>(groupNames);
+			this.openGroups = openGroups;
+		}
+
+		int addTerm(int objectId, String identifier) {
+			Integer term = termIndex.get(identifier);
+			if (term == null) {
+				term = Integer.valueOf(identifiers.size());
+				termIndex.put(identifier, term);
+				identifiers.add(identifier);
+			}
+			objectIds.put(Integer.valueOf(objectId), term);
+			return term.intValue();
+		}
+
+		void addGroup(int term, String groupName) {
+			int group = groupNames.indexOf(groupName);
+			if (group < 0 && openGroups) {
+				group = groupNames.size();
+				groupNames.add(groupName);
+			}
+			if (group >= 0) {
+				termGroups.add(term, group);
+			}
+		}
+
+		/**
+		 * @return the term index of an object id, or -1 if it is not a term of this dictionary
+		 */
+		int getTerm(int objectId) {
+			Integer term = objectIds.get(Integer.valueOf(objectId));
+			return term == null ? -1 : term.intValue();
+		}
+
+		int size() {
+			return identifiers.size();
+		}
+
+		/**
+		 * @param parents packed (term, parent) pairs; if null, a term is its own only ancestor
+		 * @param excludedIdentifiers terms not to be counted
+		 */
+		void freeze(LongList parents, List<String> excludedIdentifiers) {
+			groups = toAdjacency(termGroups, size());
+			termGroups = null;
+			if (parents == null) {
+				ancestors = new int[size()][];
+				for (int term = 0; term < ancestors.length; term++) {
+					ancestors[term] = new int[] { term };
+				}
+			} else {
+				ancestors = toAdjacency(parents, size());
+			}
+			excluded = new boolean[size()];
+			if (excludedIdentifiers != null) {
+				for (String identifier : excludedIdentifiers) {
+					Integer term = termIndex.get(identifier);
+					if (term != null) {
+						excluded[term.intValue()] = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps the values of one work unit until they can be written.
+	 */
+	private static class StatisticsBuffer implements StatisticsSink {
+		private List<String[]> names = new ArrayList<String[]>();
+		private List<Integer> counts = new ArrayList<Integer>();
+		private long elapsed;
+
+		@Override
+		public void add(String identifier, String type, String dataSet, int count, String taxonId) {
+			names.add(new String[] { identifier, type, dataSet, taxonId });
+			counts.add(Integer.valueOf(count));
+		}
+
+		int size() {
+			return counts.size();
+		}
+
+		void replay(StatisticsSink sink) throws ObjectStoreException {
+			for (int i = 0; i < counts.size(); i++) {
+				String[] name = names.get(i);
+				sink.add(name[0], name[1], name[2], counts.get(i).intValue(), name[3]);
+			}
+		}
+	}
+
+	private static class CountingSink implements StatisticsSink {
+		private StatisticsSink sink;
+		private int count = 0;
+
+		CountingSink(StatisticsSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public void add(String identifier, String type, String dataSet, int value, String taxonId)
+				throws ObjectStoreException {
+			sink.add(identifier, type, dataSet, value, taxonId);
+			count++;
+		}
+	}
+
+	private static class Background {
+		int[] termCounts;
+		int[] groupCounts;
+		int anyCount = 0;
+
+		Background(int numTerms, int numGroups) {
+			termCounts = new int[numTerms];
+			groupCounts = new int[numGroups];
+		}
+	}
+}
@@ -1,15 +1,23 @@
 package org.intermine.bio.postprocess;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +25,7 @@ import org.apache.logging.log4j.LogManager;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
@@ -42,12 +51,21 @@ public class CalculateBioThemeBackground extends PostProcessor {
 
 	private static final List<String> PROCESS_TAXONIDS = Arrays.asList("9606", "10090", "10116");
 
+	private static final String PROPERTIES_FILE = "calculate-biotheme-background.properties";
+
+	// key of the fingerprints of the last incremental run in the intermine_metadata table
+	private static final String MANIFEST_KEY = "biotheme.background.manifest";
+
 	protected Connection connection;
 
+	private Database database;
+
 	private Model model;
 
 	private Map<String, InterMineObject> organismMap = new HashMap<String, InterMineObject>();
 
+	private PostProcessProperties properties = new PostProcessProperties(PROPERTIES_FILE);
+
 	public CalculateBioThemeBackground(ObjectStoreWriter osw) throws Exception {
 		super(osw);
 		model = Model.getInstanceByName("genomic");
@@ -55,9 +73,9 @@ public class CalculateBioThemeBackground extends PostProcessor {
 		getOrganism(PROCESS_TAXONIDS);
 
 		if (osw instanceof ObjectStoreWriterInterMineImpl) {
-			Database db = ((ObjectStoreWriterInterMineImpl) osw).getDatabase();
+			database = ((ObjectStoreWriterInterMineImpl) osw).getDatabase();
 			try {
-				connection = db.getConnection();
+				connection = database.getConnection();
 			} catch (SQLException e) {
 				e.printStackTrace();
 				throw new RuntimeException("Unable to get a DB connection.");
@@ -68,6 +86,18 @@ public class CalculateBioThemeBackground extends PostProcessor {
 		}
 	}
 
+	/**
+	 * Work on the given connection, e.g. of a test database. The organisms are not looked up,
+	 * so the Statistics should be caught by overriding storeStatistics.
+	 *
+	 * @param osw the ObjectStoreWriter, only used for its transactions
+	 * @param connection where the backgrounds are calculated
+	 */
+	CalculateBioThemeBackground(ObjectStoreWriter osw, Connection connection) {
+		super(osw);
+		this.connection = connection;
+	}
+
 	/**
 	 * 
 	 * @param taxonIds
@@ -96,6 +126,241 @@ public class CalculateBioThemeBackground extends PostProcessor {
 
 	}
 
+	/**
+	 * Calculate all the backgrounds at once; see BioThemeBackgroundEngine.
+	 * 
+	 * The work units run on 'background.threads' threads (each loader has its own connection)
+	 * and the Statistics are written in transactions of 'background.batch.size' objects.
+	 * 
+	 * @throws ObjectStoreException if the backgrounds can not be calculated or stored
+	 */
+	public void calculateAllBackgrounds() throws ObjectStoreException {
+		calculateAllBackgrounds("true".equals(StringUtils.trim(properties
+				.getProperty("background.incremental"))));
+	}
+
+	/**
+	 * Calculate all the backgrounds, or only those whose inputs changed since the last
+	 * incremental run.
+	 * 
+	 * The stale Statistics are deleted and the new ones written in several transactions, so a
+	 * failed run can leave them half-deleted or half-written. The manifest is therefore removed
+	 * before anything is deleted or written, and stored again only once the whole run has
+	 * succeeded: after a failed run, or a full run, the next incremental run recomputes all.
+	 * 
+	 * @param incremental whether only the changed families and taxa are recomputed
+	 * @throws ObjectStoreException if the backgrounds can not be calculated or stored
+	 */
+	void calculateAllBackgrounds(boolean incremental) throws ObjectStoreException {
+		int threads = properties.getIntProperty("background.threads", 1);
+		int batchSize = properties.getIntProperty("background.batch.size", 50000);
+		System.out.println("calculating all backgrounds by single-pass engine (" + threads
+				+ " threads" + (incremental ? ", incremental" : "") + ")...");
+		long start = System.currentTimeMillis();
+		BatchedStatisticsWriter writer = new BatchedStatisticsWriter(batchSize);
+		try {
+			BioThemeBackgroundEngine engine = new BioThemeBackgroundEngine(connection,
+					PROCESS_TAXONIDS);
+			Map<String, String> fingerprints = null;
+			Set<String> changed = null;
+			if (incremental) {
+				fingerprints = engine.fingerprint();
+				changed = getChangedUnits(fingerprints);
+			}
+			storeManifest(null);
+
+			osw.beginTransaction();
+			if (!incremental) {
+				engine.calculate(writer, database, threads);
+			} else if (!changed.isEmpty()) {
+				deleteStatistics(engine, changed);
+				engine.calculate(writer, database, threads, changed);
+			}
+			osw.commitTransaction();
+
+			if (incremental) {
+				storeManifest(formatManifest(fingerprints));
+			}
+		} catch (SQLException e) {
+			throw new ObjectStoreException("Unable to calculate the backgrounds.", e);
+		} finally {
+			if (osw.isInTransaction()) {
+				osw.abortTransaction();
+			}
+		}
+		System.out.println("Stored " + writer.total + " Statistics, spent "
+				+ (System.currentTimeMillis() - start) / 1000 + " seconds");
+	}
+
+	/**
+	 * Compare the fingerprints with the manifest of the last incremental run. The units of a
+	 * family and taxon whose inputs are unchanged are skipped.
+	 * 
+	 * @param fingerprints unit key -> fingerprint of the current database
+	 * @return the unit keys to recompute
+	 * @throws SQLException
+	 */
+	private Set<String> getChangedUnits(Map<String, String> fingerprints) throws SQLException {
+		Properties manifest = new Properties();
+		String value = retrieveManifest();
+		if (value != null) {
+			try {
+				manifest.load(new StringReader(value));
+			} catch (IOException e) {
+				LOG.error("Unable to read the background manifest, recompute all.", e);
+			}
+		} else {
+			System.out.println("no background manifest found, recompute all.");
+		}
+		Set<String> changed = new TreeSet<String>();
+		Set<String> skipped = new TreeSet<String>();
+		for (String key : fingerprints.keySet()) {
+			if (fingerprints.get(key).equals(manifest.getProperty(key))) {
+				skipped.add(key);
+			} else {
+				changed.add(key);
+			}
+		}
+		System.out.println("backgrounds to recompute: " + changed);
+		System.out.println("backgrounds unchanged: " + skipped);
+		return changed;
+	}
+
+	private static String formatManifest(Map<String, String> fingerprints) {
+		Properties manifest = new Properties();
+		manifest.putAll(fingerprints);
+		StringWriter writer = new StringWriter();
+		try {
+			manifest.store(writer, null);
+		} catch (IOException e) {
+			// never happens with a StringWriter
+			throw new RuntimeException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * @return the manifest of the last incremental run, null if none
+	 * @throws SQLException
+	 */
+	String retrieveManifest() throws SQLException {
+		return MetadataManager.retrieve(database, MANIFEST_KEY);
+	}
+
+	/**
+	 * @param manifest the fingerprints of the inputs, null to remove the manifest
+	 * @throws SQLException
+	 */
+	void storeManifest(String manifest) throws SQLException {
+		MetadataManager.store(database, MANIFEST_KEY, manifest);
+	}
+
+	/**
+	 * Delete the Statistics of the given families and taxa before they are recomputed, with
+	 * one SQL delete per table of the class, in a transaction of their own.
+	 * 
+	 * @param engine
+	 * @param unitKeys family/taxonId
+	 * @throws SQLException
+	 */
+	private void deleteStatistics(BioThemeBackgroundEngine engine, Set<String> unitKeys)
+			throws SQLException {
+		// a condition per unit: the organism and the data sets or identifiers of the family
+		List<String> conditions = new ArrayList<String>();
+		List<Object> values = new ArrayList<Object>();
+		for (String family : engine.getFamilyNames()) {
+			for (String taxonId : PROCESS_TAXONIDS) {
+				if (!unitKeys.contains(BioThemeBackgroundEngine.getUnitKey(family, taxonId))) {
+					continue;
+				}
+				values.add(taxonId);
+				String condition = "(organismid in (select id from organism where taxonid = ?)"
+						+ " and (dataset in ("
+						+ addValues(values, engine.getDataSets(family)) + ")";
+				Collection<String> identifiers = engine.getIdentifiers(family);
+				if (!identifiers.isEmpty()) {
+					condition += " or identifier in (" + addValues(values, identifiers) + ")";
+				}
+				conditions.add(condition + "))");
+			}
+		}
+		if (conditions.isEmpty()) {
+			return;
+		}
+		String where = StringUtils.join(conditions, " or ");
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			// the Statistics are also rows of the table of InterMineObject
+			executeUpdate("delete from intermineobject where id in (select id from statistics "
+					+ " where " + where + ")", values);
+			int count = executeUpdate("delete from statistics where " + where, values);
+			connection.commit();
+			System.out.println("Deleted " + count + " stale Statistics.");
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+		// the deleted objects may be cached
+		osw.getObjectStore().flushObjectById();
+	}
+
+	private static String addValues(List<Object> values, Collection<String> added) {
+		List<String> placeholders = new ArrayList<String>();
+		for (String value : added) {
+			values.add(value);
+			placeholders.add("?");
+		}
+		return StringUtils.join(placeholders, ", ");
+	}
+
+	private int executeUpdate(String sql, List<Object> values) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			for (int i = 0; i < values.size(); i++) {
+				statement.setObject(i + 1, values.get(i));
+			}
+			return statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Store the Statistics and commit every batchSize objects, so that the batch writer of
+	 * the ObjectStoreWriter flushes them in bulk rather than holding the whole stage in one
+	 * transaction.
+	 */
+	private class BatchedStatisticsWriter implements BioThemeBackgroundEngine.StatisticsSink {
+		private int batchSize;
+		private int inBatch = 0;
+		private int total = 0;
+		private long batchStart = System.currentTimeMillis();
+
+		BatchedStatisticsWriter(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void add(String identifier, String type, String dataSet, int count, String taxonId)
+				throws ObjectStoreException {
+			storeStatistics(identifier, type, dataSet, count, taxonId);
+			total++;
+			inBatch++;
+			if (inBatch >= batchSize) {
+				osw.commitTransaction();
+				LOG.info(String.format("Committed %d Statistics (%d in total, %d ms).", inBatch,
+						total, System.currentTimeMillis() - batchStart));
+				osw.beginTransaction();
+				inBatch = 0;
+				batchStart = System.currentTimeMillis();
+			}
+		}
+	}
+
 	public void calculateGOBackgroundForGene() {
 		System.out.println("calculating GO Background for gene...");
 		try {
@@ -123,7 +388,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 
-						osw.store(createStatisticsItem(id, "Gene", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "Gene", ns + "_wo_IEA", count, taxonId);
 
 					}
 				}
@@ -141,7 +406,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 
-						osw.store(createStatisticsItem(id, "Gene", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "Gene", ns + "_w_IEA", count, taxonId);
 					}
 				}
 
@@ -156,8 +421,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "Gene", ns + "_wo_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "Gene", ns + "_wo_IEA", testNumber,
+							taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOClass(taxonId, true));
 				while (resultN.next()) {
@@ -169,8 +434,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "Gene", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "Gene", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 
 				// calculate Test number
@@ -181,8 +446,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "Gene", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "Gene", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -191,8 +456,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "Gene", ns + "_w_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "Gene", ns + "_w_IEA",
+							testNumber, taxonId);
 				}
 
 			}
@@ -286,7 +551,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					while (resultSet.next()) {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
-						osw.store(createStatisticsItem(id, "Gene", dataSetName, count, taxonId));
+						storeStatistics(id, "Gene", dataSetName, count, taxonId);
 					}
 
 					// calculate N
@@ -294,14 +559,14 @@ public class CalculateBioThemeBackground extends PostProcessor {
 							dataSetName));
 					resultN.next();
 					int count = resultN.getInt("count");
-					osw.store(createStatisticsItem("Pathway N", "Gene", dataSetName, count, taxonId));
+					storeStatistics("Pathway N", "Gene", dataSetName, count, taxonId);
 				}
 
 				ResultSet resultN = statement
 						.executeQuery(getSqlQueryForPathwayClassOfGene(taxonId, null));
 				resultN.next();
 				int count = resultN.getInt("count");
-				osw.store(createStatisticsItem("Pathway N", "Gene", "All", count, taxonId));
+				storeStatistics("Pathway N", "Gene", "All", count, taxonId);
 				// System.out.println(String.format("(%d) %s - %s: %d", taxonId,
 				// "Pathway class",
 				// "All", count));
@@ -314,11 +579,11 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					if (StringUtils.isEmpty(dataSetName)) {
 						continue;
 					}
-					osw.store(createStatisticsItem("Pathway test number", "Gene", dataSetName, testNumber,
-							taxonId));
+					storeStatistics("Pathway test number", "Gene", dataSetName, testNumber,
+							taxonId);
 					total += testNumber;
 				}
-				osw.store(createStatisticsItem("Pathway test number", "Gene", "All", total, taxonId));
+				storeStatistics("Pathway test number", "Gene", "All", total, taxonId);
 			}
 
 			statement.close();
@@ -384,19 +649,19 @@ public class CalculateBioThemeBackground extends PostProcessor {
 				while (resultSet.next()) {
 					String id = resultSet.getString("identifier");
 					int count = resultSet.getInt("count");
-					osw.store(createStatisticsItem(id, "Gene", "barcode3", count, taxonId));
+					storeStatistics(id, "Gene", "barcode3", count, taxonId);
 				}
 				
 				// calculate N
 				ResultSet resultN = statement.executeQuery(getSqlQueryForTissueClassOfGene(taxonId));
 				resultN.next();
 				int count = resultN.getInt("count");
-				osw.store(createStatisticsItem("Tissue N", "Gene", "barcode3", count, taxonId));
+				storeStatistics("Tissue N", "Gene", "barcode3", count, taxonId);
 				
 				ResultSet resultTN = statement.executeQuery(getSqlQueryForTissueTestNumber(taxonId));
 				resultTN.next();
 				int testNumber = resultTN.getInt("count");
-				osw.store(createStatisticsItem("Tissue test number", "Gene", "barcode3", testNumber, taxonId));
+				storeStatistics("Tissue test number", "Gene", "barcode3", testNumber, taxonId);
 			}
 			
 			statement.close();
@@ -475,7 +740,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 
-						osw.store(createStatisticsItem(id, "Gene", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "Gene", ns + "_wo_IEA", count, taxonId);
 
 					}
 				}
@@ -493,7 +758,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 
-						osw.store(createStatisticsItem(id, "Gene", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "Gene", ns + "_w_IEA", count, taxonId);
 					}
 				}
 
@@ -509,7 +774,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "Gene", ns + "_wo_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "Gene", ns + "_wo_IEA", testNumber, taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOSlimClassOfGene(taxonId, true));
 				while (resultN.next()) {
@@ -521,7 +786,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "Gene", ns + "_w_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "Gene", ns + "_w_IEA", testNumber, taxonId);
 				}
 
 				// calculate Test number
@@ -532,8 +797,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "Gene", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOSlim test number", "Gene", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOSlimTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -542,8 +807,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "Gene", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOSlim test number", "Gene", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 
 			}
@@ -640,7 +905,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					while (resultSet.next()) {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
-						osw.store(createStatisticsItem(id, "ProbeSet", dataSetName, count, taxonId));
+						storeStatistics(id, "ProbeSet", dataSetName, count, taxonId);
 					}
 
 					// calculate N
@@ -648,14 +913,14 @@ public class CalculateBioThemeBackground extends PostProcessor {
 							dataSetName));
 					resultN.next();
 					int count = resultN.getInt("count");
-					osw.store(createStatisticsItem("Pathway N", "ProbeSet", dataSetName, count, taxonId));
+					storeStatistics("Pathway N", "ProbeSet", dataSetName, count, taxonId);
 				}
 
 				ResultSet resultN = statement
 						.executeQuery(getSqlQueryForPathwayClassOfProbeset(taxonId, null));
 				resultN.next();
 				int count = resultN.getInt("count");
-				osw.store(createStatisticsItem("Pathway N", "ProbeSet", "All", count, taxonId));
+				storeStatistics("Pathway N", "ProbeSet", "All", count, taxonId);
 
 				ResultSet result = statement.executeQuery(getSqlQueryForPathwayTestNumber(taxonId));
 				int total = 0;
@@ -665,11 +930,11 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					if (StringUtils.isEmpty(dataSetName)) {
 						continue;
 					}
-					osw.store(createStatisticsItem("Pathway test number", "ProbeSet", dataSetName, testNumber,
-							taxonId));
+					storeStatistics("Pathway test number", "ProbeSet", dataSetName, testNumber,
+							taxonId);
 					total += testNumber;
 				}
-				osw.store(createStatisticsItem("Pathway test number", "ProbeSet", "All", total, taxonId));
+				storeStatistics("Pathway test number", "ProbeSet", "All", total, taxonId);
 			}
 
 			statement.close();
@@ -741,7 +1006,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 
-						osw.store(createStatisticsItem(id, "ProbeSet", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "ProbeSet", ns + "_wo_IEA", count, taxonId);
 
 					}
 				}
@@ -759,7 +1024,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 
-						osw.store(createStatisticsItem(id, "ProbeSet", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "ProbeSet", ns + "_w_IEA", count, taxonId);
 					}
 				}
 
@@ -774,8 +1039,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "ProbeSet", ns + "_wo_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "ProbeSet", ns + "_wo_IEA", testNumber,
+							taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOClassOfProbeset(taxonId, true));
 				while (resultN.next()) {
@@ -787,8 +1052,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "ProbeSet", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "ProbeSet", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 
 				// calculate Test number
@@ -799,8 +1064,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "ProbeSet", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "ProbeSet", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -809,8 +1074,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "ProbeSet", ns + "_w_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "ProbeSet", ns + "_w_IEA",
+							testNumber, taxonId);
 				}
 
 			}
@@ -887,7 +1152,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					while (resultSet.next()) {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
-						osw.store(createStatisticsItem(id, "Protein", dataSetName, count, taxonId));
+						storeStatistics(id, "Protein", dataSetName, count, taxonId);
 					}
 					
 					// calculate N
@@ -895,14 +1160,14 @@ public class CalculateBioThemeBackground extends PostProcessor {
 							dataSetName));
 					resultN.next();
 					int count = resultN.getInt("count");
-					osw.store(createStatisticsItem("Pathway N", "Protein", dataSetName, count, taxonId));
+					storeStatistics("Pathway N", "Protein", dataSetName, count, taxonId);
 				}
 				
 				ResultSet resultN = statement
 						.executeQuery(getSqlQueryForPathwayClassOfProtein(taxonId, null));
 				resultN.next();
 				int count = resultN.getInt("count");
-				osw.store(createStatisticsItem("Pathway N", "Protein", "All", count, taxonId));
+				storeStatistics("Pathway N", "Protein", "All", count, taxonId);
 				
 				ResultSet result = statement.executeQuery(getSqlQueryForPathwayTestNumber(taxonId));
 				int total = 0;
@@ -912,11 +1177,11 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					if (StringUtils.isEmpty(dataSetName)) {
 						continue;
 					}
-					osw.store(createStatisticsItem("Pathway test number", "Protein", dataSetName, testNumber,
-							taxonId));
+					storeStatistics("Pathway test number", "Protein", dataSetName, testNumber,
+							taxonId);
 					total += testNumber;
 				}
-				osw.store(createStatisticsItem("Pathway test number", "Protein", "All", total, taxonId));
+				storeStatistics("Pathway test number", "Protein", "All", total, taxonId);
 			}
 			
 			statement.close();
@@ -988,7 +1253,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 
-						osw.store(createStatisticsItem(id, "Protein", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "Protein", ns + "_wo_IEA", count, taxonId);
 
 					}
 				}
@@ -1006,7 +1271,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 
-						osw.store(createStatisticsItem(id, "Protein", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "Protein", ns + "_w_IEA", count, taxonId);
 					}
 				}
 
@@ -1021,8 +1286,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "Protein", ns + "_wo_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "Protein", ns + "_wo_IEA", testNumber,
+							taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOClassOfProtein(taxonId, true));
 				while (resultN.next()) {
@@ -1034,8 +1299,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation N", "Protein", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOAnnotation N", "Protein", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 
 				// calculate Test number
@@ -1046,8 +1311,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "Protein", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "Protein", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -1056,8 +1321,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GO" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOAnnotation test number", "Protein", ns + "_w_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOAnnotation test number", "Protein", ns + "_w_IEA",
+							testNumber, taxonId);
 				}
 
 			}
@@ -1140,7 +1405,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 
-						osw.store(createStatisticsItem(id, "Protein", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "Protein", ns + "_wo_IEA", count, taxonId);
 
 					}
 				}
@@ -1158,7 +1423,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 
-						osw.store(createStatisticsItem(id, "Protein", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "Protein", ns + "_w_IEA", count, taxonId);
 					}
 				}
 
@@ -1174,7 +1439,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "Protein", ns + "_wo_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "Protein", ns + "_wo_IEA", testNumber, taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOSlimClassOfProtein(taxonId, true));
 				while (resultN.next()) {
@@ -1186,7 +1451,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "Protein", ns + "_w_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "Protein", ns + "_w_IEA", testNumber, taxonId);
 				}
 
 				// calculate Test number
@@ -1197,8 +1462,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "Protein", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOSlim test number", "Protein", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOSlimTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -1207,8 +1472,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "Protein", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOSlim test number", "Protein", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 
 			}
@@ -1293,7 +1558,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						int count = resultSet.getInt("count");
 						// LOG.info(String.format("(%d) %s --> %d", i, id, count));
 						
-						osw.store(createStatisticsItem(id, "ProbeSet", ns + "_wo_IEA", count, taxonId));
+						storeStatistics(id, "ProbeSet", ns + "_wo_IEA", count, taxonId);
 						
 					}
 				}
@@ -1311,7 +1576,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 						String id = resultSet.getString("identifier");
 						int count = resultSet.getInt("count");
 						
-						osw.store(createStatisticsItem(id, "ProbeSet", ns + "_w_IEA", count, taxonId));
+						storeStatistics(id, "ProbeSet", ns + "_w_IEA", count, taxonId);
 					}
 				}
 				
@@ -1327,7 +1592,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "ProbeSet", ns + "_wo_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "ProbeSet", ns + "_wo_IEA", testNumber, taxonId);
 				}
 				resultN = statement.executeQuery(getSqlQueryForGOSlimClassOfProbeSet(taxonId, true));
 				while (resultN.next()) {
@@ -1339,7 +1604,7 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = namespace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim N", "ProbeSet", ns + "_w_IEA", testNumber, taxonId));
+					storeStatistics("GOSlim N", "ProbeSet", ns + "_w_IEA", testNumber, taxonId);
 				}
 				
 				// calculate Test number
@@ -1350,8 +1615,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = resultTn.getString("namespace").split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "ProbeSet", ns + "_wo_IEA",
-							testNumber, taxonId));
+					storeStatistics("GOSlim test number", "ProbeSet", ns + "_wo_IEA",
+							testNumber, taxonId);
 				}
 				resultTn = statement.executeQuery(getSqlQueryForGOSlimTestNumber(taxonId, true));
 				while (resultTn.next()) {
@@ -1360,8 +1625,8 @@ public class CalculateBioThemeBackground extends PostProcessor {
 					String[] chars = nameSpace.split("_");
 					String ns = "GOS" + chars[0].substring(0, 1).toUpperCase()
 							+ chars[1].substring(0, 1).toUpperCase();
-					osw.store(createStatisticsItem("GOSlim test number", "ProbeSet", ns + "_w_IEA", testNumber,
-							taxonId));
+					storeStatistics("GOSlim test number", "ProbeSet", ns + "_w_IEA", testNumber,
+							taxonId);
 				}
 				
 			}
@@ -1419,6 +1684,21 @@ public class CalculateBioThemeBackground extends PostProcessor {
 		return sqlQuery;
 	}
 	
+	/**
+	 * Store a Statistics object; every background, legacy or single-pass, is written here.
+	 *
+	 * @param identifier
+	 * @param type Gene, Protein or ProbeSet
+	 * @param dataset
+	 * @param count
+	 * @param taxonId
+	 * @throws ObjectStoreException
+	 */
+	void storeStatistics(String identifier, String type, String dataset, int count,
+			String taxonId) throws ObjectStoreException {
+		osw.store(createStatisticsItem(identifier, type, dataset, count, taxonId));
+	}
+
 	/**
 	 * 
 	 * @param identifier
@@ -1453,6 +1733,16 @@ public class CalculateBioThemeBackground extends PostProcessor {
 	@Override
 	public void postProcess() throws ObjectStoreException, IllegalAccessException {
 
+		// "legacy" runs the original per taxon queries, e.g. to verify the numbers
+		if (!"legacy".equals(StringUtils.trim(properties.getProperty("background.engine")))) {
+			try {
+				this.calculateAllBackgrounds();
+			} finally {
+				this.closeDbConnection();
+			}
+			return;
+		}
+
 		this.calculateGOBackgroundForGene();
 		this.calculatePathwayBackgroundForGene();
 		this.calculateGOSlimBackgroundForGene();
@@ -0,0 +1,512 @@
+package org.intermine.bio.postprocess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreWriter;
+
+/**
+ * Tests that BioThemeBackgroundEngine gives the values of the legacy per taxon queries of
+ * CalculateBioThemeBackground, for every family, taxon and entity type.
+ *
+ * Both run on the same random tables in an in-memory H2 database: the legacy methods with
+ * their own SQL, the engine with its table scans.
+ *
+ * @author chenyian
+ */
+public class BioThemeBackgroundEngineTest extends TestCase
+{
+	static final List<String> TAXON_IDS = Arrays.asList("9606", "10090", "10116");
+	// the genes of the last organism are never counted
+	private static final List<String> ORGANISMS = Arrays.asList("9606", "10090", "10116", "7227");
+	private static final List<String> CODES = Arrays.asList("IEA", "IDA", "TAS", "IEA", null);
+	private static final List<String> DATA_SETS = Arrays.asList("KEGG Pathway", "Reactome",
+			"NCI Pathway Interaction Database", "WikiPathways");
+	private static final List<String> FAMILIES = Arrays.asList("GO", "GOSlim", "Pathway",
+			"Tissue");
+
+	private static int databaseNumber = 0;
+
+	private Connection connection;
+	private int nextId;
+
+	public BioThemeBackgroundEngineTest(String arg) {
+		super(arg);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		connection = createDatabase();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		connection.close();
+		super.tearDown();
+	}
+
+	public void testSameAsLegacy() throws Exception {
+		createTables(connection, new Random(42));
+		assertSameValues(calculateLegacy(connection), calculate(connection));
+	}
+
+	public void testSameAsLegacyOtherTables() throws Exception {
+		createTables(connection, new Random(7));
+		assertSameValues(calculateLegacy(connection), calculate(connection));
+	}
+
+	/**
+	 * Compare the values of each family, taxon and entity type; each of them must have values,
+	 * except the tissues of the probe sets and proteins, which are never calculated.
+	 */
+	private static void assertSameValues(Map<String, Integer> expected,
+			Map<String, Integer> actual) {
+		for (String family : FAMILIES) {
+			for (String taxonId : TAXON_IDS) {
+				for (String type : BioThemeBackgroundEngine.ENTITY_TYPES) {
+					String unit = family + "/" + taxonId + "/" + type;
+					Map<String, Integer> expectedValues = getUnitValues(expected, family, taxonId,
+							type);
+					Map<String, Integer> actualValues = getUnitValues(actual, family, taxonId,
+							type);
+					if (family.equals("Tissue") && !type.equals("Gene")) {
+						assertTrue(unit, expectedValues.isEmpty());
+					} else {
+						assertFalse(unit, expectedValues.isEmpty());
+					}
+					assertEquals(unit, expectedValues, actualValues);
+				}
+			}
+		}
+		assertEquals(expected.keySet(), actual.keySet());
+	}
+
+	/**
+	 * @param values key (see getKey) -> value
+	 * @return the values of one family, taxon and type
+	 */
+	private static Map<String, Integer> getUnitValues(Map<String, Integer> values,
+			String family, String taxonId, String type) {
+		Map<String, Integer> ret = new TreeMap<String, Integer>();
+		for (Map.Entry<String, Integer> entry : values.entrySet()) {
+			String[] key = entry.getKey().split("\\|");
+			if (key[0].equals(taxonId) && key[1].equals(type)
+					&& getFamily(key[2]).equals(family)) {
+				ret.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return ret;
+	}
+
+	static String getFamily(String dataSet) {
+		if (dataSet.startsWith("GOS")) {
+			return "GOSlim";
+		}
+		if (dataSet.startsWith("GO")) {
+			return "GO";
+		}
+		if (dataSet.equals("barcode3")) {
+			return "Tissue";
+		}
+		return "Pathway";
+	}
+
+	static String getKey(String identifier, String type, String dataSet, String taxonId) {
+		return taxonId + "|" + type + "|" + dataSet + "|" + identifier;
+	}
+
+	/**
+	 * @return key -> value of the single-pass engine
+	 */
+	static Map<String, Integer> calculate(Connection connection) throws Exception {
+		final Map<String, Integer> ret = new TreeMap<String, Integer>();
+		new BioThemeBackgroundEngine(connection, TAXON_IDS).calculate(
+				new BioThemeBackgroundEngine.StatisticsSink() {
+					@Override
+					public void add(String identifier, String type, String dataSet, int count,
+							String taxonId) {
+						put(ret, getKey(identifier, type, dataSet, taxonId), count);
+					}
+				});
+		return ret;
+	}
+
+	/**
+	 * @return key -> value of the legacy queries
+	 */
+	private static Map<String, Integer> calculateLegacy(Connection connection) {
+		final Map<String, Integer> ret = new TreeMap<String, Integer>();
+		CalculateBioThemeBackground legacy = new CalculateBioThemeBackground(
+				createObjectStoreWriter(), createCountLabelConnection(connection)) {
+			@Override
+			void storeStatistics(String identifier, String type, String dataSet, int count,
+					String taxonId) {
+				put(ret, getKey(identifier, type, dataSet, taxonId), count);
+			}
+		};
+		legacy.calculateGOBackgroundForGene();
+		legacy.calculatePathwayBackgroundForGene();
+		legacy.calculateGOSlimBackgroundForGene();
+		legacy.calculateTissueBackgroundForGene();
+
+		legacy.calculatePathwayBackgroundForProbeset();
+		legacy.calculateGOBackgroundForProbeset();
+		legacy.calculateGOSlimBackgroundForProbeSet();
+
+		legacy.calculatePathwayBackgroundForProtein();
+		legacy.calculateGOBackgroundForProtein();
+		legacy.calculateGOSlimBackgroundForProtein();
+		return ret;
+	}
+
+	private static void put(Map<String, Integer> values, String key, int count) {
+		assertNull("duplicated " + key, values.put(key, Integer.valueOf(count)));
+	}
+
+	static Connection createDatabase() throws SQLException {
+		Connection ret = DriverManager.getConnection("jdbc:h2:mem:biotheme" + databaseNumber++
+				+ ";MODE=PostgreSQL");
+		Statement statement = ret.createStatement();
+		for (String table : new String[] {
+				"organism (id int, taxonid varchar(20))",
+				"gene (id int, organismid int)",
+				"probeset (id int, organismid int)",
+				"protein (id int)",
+				"genesprobesets (genes int, probesets int)",
+				"genesproteins (genes int, proteins int)",
+				"goterm (id int, identifier varchar(20), namespace varchar(40))",
+				"goslimterm (id int, identifier varchar(20), namespace varchar(40))",
+				"ontologytermparents (ontologyterm int, parents int)",
+				"goannotation (id int, subjectid int, ontologytermid int, isnegation boolean)",
+				"evidenceontologyannotation (ontologyannotation int, evidence int)",
+				"goevidence (id int, codeid int)",
+				"goevidencecode (id int, code varchar(10))",
+				"goannotationgoslimterms (goannotation int, goslimterms int)",
+				"dataset (id int, name varchar(80))",
+				"pathway (id int, identifier varchar(20), organismid int)",
+				"datasetspathway (pathway int, datasets int)",
+				"genespathways (genes int, pathways int)",
+				"tissue (id int, identifier varchar(20))",
+				"expression (id int, probesetid int, tissueid int, isexpressed boolean)"}) {
+			statement.execute("create table " + table);
+			// H2 joins by nested loops without them
+			String name = table.substring(0, table.indexOf(' '));
+			for (String column : table.substring(table.indexOf('(') + 1, table.length() - 1)
+					.split(", ")) {
+				if (column.endsWith(" int")) {
+					column = column.substring(0, column.indexOf(' '));
+					statement.execute("create index " + name + "_" + column + " on " + name
+							+ " (" + column + ")");
+				}
+			}
+		}
+		statement.close();
+		return ret;
+	}
+
+	/**
+	 * Random tables with annotations to the root terms, negated annotations, annotations
+	 * without evidence or with an unknown code, terms that are not their own parent, entities
+	 * of genes of several organisms, pathways of other data sets or without organism, and
+	 * expressions of unknown tissues.
+	 */
+	void createTables(Connection connection, Random random) throws SQLException {
+		nextId = 1;
+		List<Integer> organisms = new ArrayList<Integer>();
+		for (String taxonId : ORGANISMS) {
+			organisms.add(insert(connection, "organism", nextId++, taxonId));
+		}
+
+		List<Integer> goTerms = createTerms(connection, random, "goterm", 30, 0);
+		List<Integer> goSlimTerms = createTerms(connection, random, "goslimterm", 6, 900);
+
+		List<Integer> codes = new ArrayList<Integer>();
+		for (String code : CODES) {
+			codes.add(insert(connection, "goevidencecode", nextId++, code));
+		}
+		List<Integer> evidences = new ArrayList<Integer>();
+		for (int i = 0; i < 12; i++) {
+			evidences.add(insert(connection, "goevidence", nextId++, pick(random, codes)));
+		}
+
+		List<Integer> genes = new ArrayList<Integer>();
+		for (Integer organism : organisms) {
+			for (int i = 0; i < 40; i++) {
+				int gene = insert(connection, "gene", nextId++, organism);
+				genes.add(Integer.valueOf(gene));
+				for (int k = random.nextInt(5); k > 0; k--) {
+					int annotation = insert(connection, "goannotation", nextId++, gene,
+							pick(random, goTerms), Boolean.valueOf(random.nextInt(10) == 0));
+					for (Integer evidence : pick(random, evidences, random.nextInt(10) == 0 ? 0
+							: 1 + random.nextInt(2))) {
+						insert(connection, "evidenceontologyannotation", annotation, evidence);
+					}
+					for (Integer term : pick(random, goSlimTerms, random.nextInt(3))) {
+						insert(connection, "goannotationgoslimterms", annotation, term);
+					}
+				}
+			}
+		}
+
+		List<Integer> probeSets = new ArrayList<Integer>();
+		for (int i = 0; i < 120; i++) {
+			int probeSet = insert(connection, "probeset", nextId++, random.nextInt(15) == 0 ? null
+					: pick(random, organisms));
+			probeSets.add(Integer.valueOf(probeSet));
+			for (Integer gene : pick(random, genes, random.nextInt(3))) {
+				insert(connection, "genesprobesets", gene, probeSet);
+			}
+		}
+		for (int i = 0; i < 120; i++) {
+			int protein = insert(connection, "protein", nextId++);
+			for (Integer gene : pick(random, genes, random.nextInt(4))) {
+				insert(connection, "genesproteins", gene, protein);
+			}
+		}
+
+		List<Integer> dataSets = new ArrayList<Integer>();
+		for (String name : DATA_SETS) {
+			dataSets.add(insert(connection, "dataset", nextId++, name));
+		}
+		List<Integer> pathways = new ArrayList<Integer>();
+		for (int i = 0; i < 40; i++) {
+			int pathway = insert(connection, "pathway", nextId++, String.format("path%03d", i),
+					random.nextInt(10) == 0 ? null : pick(random, organisms));
+			pathways.add(Integer.valueOf(pathway));
+			for (Integer dataSet : pick(random, dataSets, random.nextInt(12) == 0 ? 0
+					: 1 + random.nextInt(2))) {
+				insert(connection, "datasetspathway", pathway, dataSet);
+			}
+		}
+		for (Integer gene : genes) {
+			for (Integer pathway : pick(random, pathways, random.nextInt(4))) {
+				insert(connection, "genespathways", gene, pathway);
+			}
+		}
+
+		List<Integer> tissues = new ArrayList<Integer>();
+		for (int i = 0; i < 12; i++) {
+			tissues.add(insert(connection, "tissue", nextId++, String.format("tissue%02d", i)));
+		}
+		// not a tissue
+		tissues.add(Integer.valueOf(nextId++));
+		for (Integer probeSet : probeSets) {
+			for (int k = random.nextInt(6); k > 0; k--) {
+				insert(connection, "expression", nextId++, probeSet, pick(random, tissues),
+						Boolean.valueOf(random.nextBoolean()));
+			}
+		}
+	}
+
+	/**
+	 * A random hierarchy of terms in each name space below its root term; the parents of a term
+	 * are all its ancestors and usually itself.
+	 *
+	 * @return the object ids of the terms
+	 */
+	private List<Integer> createTerms(Connection connection, Random random, String table,
+			int termsPerNameSpace, int firstNumber) throws SQLException {
+		List<Integer> ret = new ArrayList<Integer>();
+		int number = firstNumber;
+		for (int ns = 0; ns < BioThemeBackgroundEngine.NAME_SPACES.size(); ns++) {
+			String nameSpace = BioThemeBackgroundEngine.NAME_SPACES.get(ns);
+			List<Integer> terms = new ArrayList<Integer>();
+			List<Set<Integer>> ancestors = new ArrayList<Set<Integer>>();
+			for (int i = 0; i <= termsPerNameSpace; i++) {
+				String identifier = i == 0 ? BioThemeBackgroundEngine.ROOT_TERMS.get(ns) : String
+						.format("GO:%07d", ++number);
+				int term = insert(connection, table, nextId++, identifier, nameSpace);
+				Set<Integer> termAncestors = new TreeSet<Integer>();
+				if (i > 0) {
+					for (int k = 1 + random.nextInt(2); k > 0; k--) {
+						int parent = random.nextInt(terms.size());
+						termAncestors.add(terms.get(parent));
+						termAncestors.addAll(ancestors.get(parent));
+					}
+				}
+				ancestors.add(new HashSet<Integer>(termAncestors));
+				if (random.nextInt(8) != 0) {
+					termAncestors.add(Integer.valueOf(term));
+				}
+				for (Integer ancestor : termAncestors) {
+					insert(connection, "ontologytermparents", term, ancestor);
+				}
+				terms.add(Integer.valueOf(term));
+			}
+			ret.addAll(terms);
+		}
+		return ret;
+	}
+
+	private static <T> T pick(Random random, List<T> values) {
+		return values.get(random.nextInt(values.size()));
+	}
+
+	private static <T> Set<T> pick(Random random, List<T> values, int number) {
+		Set<T> ret = new HashSet<T>();
+		for (int i = 0; i < number; i++) {
+			ret.add(pick(random, values));
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the first value, i.e. the id of most tables
+	 */
+	static Integer insert(Connection connection, String table, Object... values)
+		throws SQLException {
+		StringBuffer sql = new StringBuffer("insert into " + table + " values (");
+		for (int i = 0; i < values.length; i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		PreparedStatement statement = connection.prepareStatement(sql.append(")").toString());
+		for (int i = 0; i < values.length; i++) {
+			statement.setObject(i + 1, values[i]);
+		}
+		statement.executeUpdate();
+		statement.close();
+		return values.length == 0 ? null : (Integer) values[0];
+	}
+
+	/**
+	 * An ObjectStoreWriter whose transactions do nothing, of an ObjectStore without cache.
+	 */
+	static ObjectStoreWriter createObjectStoreWriter() {
+		return (ObjectStoreWriter) Proxy.newProxyInstance(
+				BioThemeBackgroundEngineTest.class.getClassLoader(),
+				new Class<?>[] {ObjectStoreWriter.class}, new InvocationHandler() {
+					private boolean inTransaction = false;
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("beginTransaction".equals(name)) {
+							inTransaction = true;
+						} else if ("commitTransaction".equals(name)
+								|| "abortTransaction".equals(name)) {
+							inTransaction = false;
+						} else if ("isInTransaction".equals(name)) {
+							return Boolean.valueOf(inTransaction);
+						} else if ("getObjectStore".equals(name)) {
+							return createObjectStore();
+						} else {
+							throw new UnsupportedOperationException(name);
+						}
+						return null;
+					}
+				});
+	}
+
+	private static ObjectStore createObjectStore() {
+		return (ObjectStore) Proxy.newProxyInstance(
+				BioThemeBackgroundEngineTest.class.getClassLoader(),
+				new Class<?>[] {ObjectStore.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (!"flushObjectById".equals(method.getName())) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Run the legacy SQL as PostgreSQL does. The legacy methods read the counts by the column
+	 * label PostgreSQL gives to an aggregate, "count", while H2 labels it by its expression, e.g.
+	 * COUNT(DISTINCT G.ID). PostgreSQL resolves the unqualified "genes" of a join condition among
+	 * the tables joined so far, H2 among all the tables of the query.
+	 */
+	private static Connection createCountLabelConnection(final Connection connection) {
+		return (Connection) createProxy(Connection.class, connection, new Redirect() {
+			@Override
+			public Object invoke(Method method, Object[] args) throws Throwable {
+				if ("createStatement".equals(method.getName())) {
+					final Statement statement = (Statement) method.invoke(connection, args);
+					return createProxy(Statement.class, statement, new Redirect() {
+						@Override
+						public Object invoke(Method method, Object[] args) throws Throwable {
+							if ("executeQuery".equals(method.getName())) {
+								args[0] = ((String) args[0]).replaceAll("g\\.id ?= ?genes ",
+										"g.id = gp.genes ");
+							}
+							Object ret = method.invoke(statement, args);
+							if (ret instanceof ResultSet) {
+								return createCountLabelResultSet((ResultSet) ret);
+							}
+							return ret;
+						}
+					});
+				}
+				return method.invoke(connection, args);
+			}
+		});
+	}
+
+	private static ResultSet createCountLabelResultSet(final ResultSet resultSet)
+		throws SQLException {
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		int column = 0;
+		for (int i = 1; i <= metaData.getColumnCount(); i++) {
+			if (metaData.getColumnLabel(i).toUpperCase().startsWith("COUNT")) {
+				column = i;
+			}
+		}
+		final int countColumn = column;
+		return (ResultSet) createProxy(ResultSet.class, resultSet, new Redirect() {
+			@Override
+			public Object invoke(Method method, Object[] args) throws Throwable {
+				if (args != null && args.length == 1 && "count".equals(args[0])) {
+					return ResultSet.class.getMethod(method.getName(), int.class).invoke(
+							resultSet, Integer.valueOf(countColumn));
+				}
+				return method.invoke(resultSet, args);
+			}
+		});
+	}
+
+	private interface Redirect
+	{
+		Object invoke(Method method, Object[] args) throws Throwable;
+	}
+
+	/**
+	 * A proxy of the JDBC object that throws the exceptions of the target itself.
+	 */
+	private static Object createProxy(Class<?> type, Object target, final Redirect redirect) {
+		return Proxy.newProxyInstance(BioThemeBackgroundEngineTest.class.getClassLoader(),
+				new Class<?>[] {type}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+						throws Throwable {
+						try {
+							return redirect.invoke(method, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+}
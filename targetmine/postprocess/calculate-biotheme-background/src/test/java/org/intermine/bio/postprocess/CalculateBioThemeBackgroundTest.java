@@ -0,0 +1,272 @@
+package org.intermine.bio.postprocess;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Tests the incremental runs of CalculateBioThemeBackground: only the families and taxa whose
+ * inputs changed are deleted and recomputed, and the manifest of the fingerprints is kept only
+ * after a whole incremental run succeeded.
+ *
+ * The Statistics are rows of the statistics and intermineobject tables of an in-memory H2
+ * database, written as soon as they are stored, i.e. as if every batch was committed.
+ *
+ * @author chenyian
+ */
+public class CalculateBioThemeBackgroundTest extends TestCase
+{
+	private Connection connection;
+	private Background background;
+
+	public CalculateBioThemeBackgroundTest(String arg) {
+		super(arg);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		connection = BioThemeBackgroundEngineTest.createDatabase();
+		new BioThemeBackgroundEngineTest("createTables").createTables(connection,
+				new Random(42));
+		Statement statement = connection.createStatement();
+		statement.execute("create table intermineobject (id int)");
+		statement.execute("create table statistics (id int, identifier varchar(80), "
+				+ " type varchar(20), dataset varchar(80), number int, organismid int)");
+		statement.close();
+		background = new Background(connection);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		connection.close();
+		super.tearDown();
+	}
+
+	public void testFirstRun() throws Exception {
+		background.calculateAllBackgrounds(true);
+		assertEquals(getUnitKeys(), background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+
+		Properties manifest = background.getManifest();
+		assertEquals(getUnitKeys(), new TreeSet<Object>(manifest.keySet()));
+	}
+
+	public void testUnchanged() throws Exception {
+		background.calculateAllBackgrounds(true);
+		Properties manifest = background.getManifest();
+
+		background.calculateAllBackgrounds(true);
+		assertTrue(background.storedUnits.isEmpty());
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+		assertEquals(manifest, background.getManifest());
+	}
+
+	public void testChangedTaxon() throws Exception {
+		background.calculateAllBackgrounds(true);
+		Properties manifest = background.getManifest();
+
+		addPathwayGene("9606");
+		background.calculateAllBackgrounds(true);
+		assertEquals(new TreeSet<String>(Arrays.asList("Pathway/9606")),
+				background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+
+		Properties changed = background.getManifest();
+		assertEquals(manifest.keySet(), changed.keySet());
+		for (Object key : manifest.keySet()) {
+			assertEquals(key.toString(), !key.equals("Pathway/9606"),
+					manifest.get(key).equals(changed.get(key)));
+		}
+	}
+
+	public void testFailedRun() throws Exception {
+		background.calculateAllBackgrounds(true);
+
+		addPathwayGene("9606");
+		addPathwayGene("10090");
+		background.failAfter = 10;
+		try {
+			background.calculateAllBackgrounds(true);
+			fail("Expected an ObjectStoreException");
+		} catch (ObjectStoreException e) {
+			// expected
+		}
+		// the stale Statistics are deleted and the new ones half written
+		assertFalse(BioThemeBackgroundEngineTest.calculate(connection).equals(getStatistics()));
+		assertNull(background.manifest);
+
+		// and recomputed by the next run, also those of the unchanged units
+		background.failAfter = -1;
+		background.calculateAllBackgrounds(true);
+		assertEquals(getUnitKeys(), background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+		assertNotNull(background.manifest);
+	}
+
+	public void testFullRun() throws Exception {
+		background.calculateAllBackgrounds(true);
+		addPathwayGene("10116");
+		clearStatistics();
+
+		background.calculateAllBackgrounds(false);
+		assertEquals(getUnitKeys(), background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+		assertNull(background.manifest);
+
+		background.calculateAllBackgrounds(true);
+		assertEquals(getUnitKeys(), background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+		assertNotNull(background.manifest);
+	}
+
+	public void testFailedFullRun() throws Exception {
+		background.calculateAllBackgrounds(true);
+		clearStatistics();
+
+		background.failAfter = 10;
+		try {
+			background.calculateAllBackgrounds(false);
+			fail("Expected an ObjectStoreException");
+		} catch (ObjectStoreException e) {
+			// expected
+		}
+		assertNull(background.manifest);
+
+		// the manifest of the first run would skip all of them
+		background.failAfter = -1;
+		background.calculateAllBackgrounds(true);
+		assertEquals(getUnitKeys(), background.storedUnits);
+		assertEquals(BioThemeBackgroundEngineTest.calculate(connection), getStatistics());
+	}
+
+	/**
+	 * Link a gene of the organism to a pathway it is not in yet.
+	 */
+	private void addPathwayGene(String taxonId) throws SQLException {
+		Statement statement = connection.createStatement();
+		ResultSet resultSet = statement.executeQuery("select g.id, p.id from gene as g "
+				+ " join organism as org on org.id = g.organismid, pathway as p "
+				+ " where org.taxonid = '" + taxonId + "' and p.organismid = org.id "
+				+ " and not exists (select * from genespathways as gp "
+				+ " where gp.genes = g.id and gp.pathways = p.id) "
+				+ " and exists (select * from datasetspathway as dp where dp.pathway = p.id) "
+				+ " order by g.id, p.id");
+		assertTrue(resultSet.next());
+		BioThemeBackgroundEngineTest.insert(connection, "genespathways",
+				Integer.valueOf(resultSet.getInt(1)), Integer.valueOf(resultSet.getInt(2)));
+		resultSet.close();
+		statement.close();
+	}
+
+	private void clearStatistics() throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.execute("delete from intermineobject");
+		statement.execute("delete from statistics");
+		statement.close();
+	}
+
+	/**
+	 * @return key (see BioThemeBackgroundEngineTest.getKey) -> value of the stored Statistics
+	 */
+	private Map<String, Integer> getStatistics() throws SQLException {
+		Map<String, Integer> ret = new TreeMap<String, Integer>();
+		Statement statement = connection.createStatement();
+		ResultSet resultSet = statement.executeQuery("select s.identifier, s.type, s.dataset, "
+				+ " s.number, org.taxonid from statistics as s "
+				+ " join intermineobject as imo on imo.id = s.id "
+				+ " join organism as org on org.id = s.organismid");
+		while (resultSet.next()) {
+			String key = BioThemeBackgroundEngineTest.getKey(resultSet.getString(1),
+					resultSet.getString(2), resultSet.getString(3), resultSet.getString(5));
+			assertNull("duplicated " + key, ret.put(key, Integer.valueOf(resultSet.getInt(4))));
+		}
+		resultSet.close();
+		statement.close();
+		return ret;
+	}
+
+	private static Set<String> getUnitKeys() {
+		Set<String> ret = new TreeSet<String>();
+		for (String family : new String[] {"GO", "GOSlim", "Pathway", "Tissue"}) {
+			for (String taxonId : BioThemeBackgroundEngineTest.TAXON_IDS) {
+				ret.add(BioThemeBackgroundEngine.getUnitKey(family, taxonId));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes the Statistics straight into the tables and keeps the manifest in memory.
+	 */
+	private static class Background extends CalculateBioThemeBackground
+	{
+		private int nextId = 1000000;
+		// the units of the Statistics stored by the last run
+		Set<String> storedUnits = new TreeSet<String>();
+		// fail at the given Statistics of a run, -1 for never
+		int failAfter = -1;
+		String manifest;
+
+		Background(Connection connection) {
+			super(BioThemeBackgroundEngineTest.createObjectStoreWriter(), connection);
+		}
+
+		@Override
+		void calculateAllBackgrounds(boolean incremental) throws ObjectStoreException {
+			storedUnits.clear();
+			super.calculateAllBackgrounds(incremental);
+		}
+
+		@Override
+		void storeStatistics(String identifier, String type, String dataSet, int count,
+				String taxonId) throws ObjectStoreException {
+			if (failAfter >= 0 && failAfter-- == 0) {
+				throw new ObjectStoreException("Failed to store " + identifier);
+			}
+			storedUnits.add(BioThemeBackgroundEngine.getUnitKey(
+					BioThemeBackgroundEngineTest.getFamily(dataSet), taxonId));
+			try {
+				Integer id = Integer.valueOf(nextId++);
+				BioThemeBackgroundEngineTest.insert(connection, "intermineobject", id);
+				Statement statement = connection.createStatement();
+				statement.executeUpdate("insert into statistics select " + id + ", '"
+						+ identifier + "', '" + type + "', '" + dataSet + "', " + count
+						+ ", id from organism where taxonid = '" + taxonId + "'");
+				statement.close();
+			} catch (SQLException e) {
+				throw new ObjectStoreException(e);
+			}
+		}
+
+		@Override
+		String retrieveManifest() {
+			return manifest;
+		}
+
+		@Override
+		void storeManifest(String manifest) {
+			this.manifest = manifest;
+		}
+
+		Properties getManifest() throws Exception {
+			assertNotNull(manifest);
+			Properties ret = new Properties();
+			ret.load(new StringReader(manifest));
+			return ret;
+		}
+	}
+}
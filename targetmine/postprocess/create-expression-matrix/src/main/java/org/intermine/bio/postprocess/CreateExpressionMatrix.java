@@ -0,0 +1,323 @@
+package org.intermine.bio.postprocess;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.CollectionDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.postprocess.PostProcessor;
+import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
+
+/**
+ * Precompute the expression matrix of every gene shown by the GeneExpressionGraphDisplayer,
+ * i.e. the HbiExpression values of its probe sets, and keep them in the intermine_metadata
+ * table so that the webapp does not read the expression tables. See ExpressionMatrixFormat for
+ * the format.
+ *
+ * @author chenyian
+ *
+ */
+public class CreateExpressionMatrix extends PostProcessor {
+	private static final Logger LOG = LogManager.getLogger(CreateExpressionMatrix.class);
+
+	private static final int FETCH_SIZE = 10000;
+
+	// matrices inserted per batch
+	private static final int BATCH_SIZE = 500;
+
+	private Database database;
+
+	private int schemaVersion;
+
+	private Model model;
+
+	public CreateExpressionMatrix(ObjectStoreWriter osw) {
+		super(osw);
+		model = Model.getInstanceByName("genomic");
+		if (osw instanceof ObjectStoreWriterInterMineImpl) {
+			database = ((ObjectStoreWriterInterMineImpl) osw).getDatabase();
+			schemaVersion = ((ObjectStoreWriterInterMineImpl) osw).getSchema().getVersion();
+		} else {
+			throw new RuntimeException("the ObjectStoreWriter is not an "
+					+ "ObjectStoreWriterInterMineImpl");
+		}
+	}
+
+	@Override
+	public void postProcess() throws ObjectStoreException {
+		long start = System.currentTimeMillis();
+		Connection connection = null;
+		try {
+			connection = database.getConnection();
+			deleteMatrices(connection);
+
+			ClassDescriptor expressionCld = model.getClassDescriptorByName("HbiExpression");
+			ClassDescriptor tissueCld = model.getClassDescriptorByName("HbiTissue");
+			ClassDescriptor probeSetCld = model.getClassDescriptorByName("ProbeSet");
+			ClassDescriptor geneCld = model.getClassDescriptorByName("Gene");
+			CollectionDescriptor probeSetsCod = geneCld == null ? null : geneCld
+					.getCollectionDescriptorByName("probeSets", true);
+			if (expressionCld == null || tissueCld == null || probeSetCld == null
+					|| probeSetsCod == null) {
+				System.out.println("HbiExpression, ProbeSet or Gene.probeSets is not in the model, "
+						+ "no expression matrix created.");
+				return;
+			}
+
+			// tissue object id -> index in the dictionary
+			Map<Integer, Integer> tissueIndex = new HashMap<Integer, Integer>();
+			List<String[]> tissues = new ArrayList<String[]>();
+			Statement statement = connection.createStatement();
+			ResultSet resultSet = statement.executeQuery("select id, "
+					+ getColumnName(tissueCld, "category") + ", "
+					+ getColumnName(tissueCld, "organ") + ", "
+					+ getColumnName(tissueCld, "name")
+					+ " from " + DatabaseUtil.getTableName(tissueCld) + " order by id");
+			while (resultSet.next()) {
+				tissueIndex.put(Integer.valueOf(resultSet.getInt(1)), Integer.valueOf(tissues.size()));
+				tissues.add(new String[] {resultSet.getString(2), resultSet.getString(3),
+						resultSet.getString(4)});
+			}
+			resultSet.close();
+			statement.close();
+			if (tissues.size() > Character.MAX_VALUE) {
+				throw new ObjectStoreException("Too many tissues for the expression matrix: "
+						+ tissues.size());
+			}
+
+			// call -> index in the dictionary
+			Map<String, Integer> callIndex = new LinkedHashMap<String, Integer>();
+			int numGenes = 0;
+			int numValues = 0;
+			int skipped = 0;
+
+			// the PostgreSQL driver only streams a result set within a transaction; the matrices
+			// are inserted in the same transaction, committed once before the header is stored
+			connection.setAutoCommit(false);
+			addBlobColumn(connection);
+			MatrixInserter inserter = new MatrixInserter(connection);
+			statement = connection.createStatement();
+			statement.setFetchSize(FETCH_SIZE);
+			// gene id and probe set id columns of the Gene.probeSets indirection table
+			String geneColumn = "gps." + DatabaseUtil.getInwardIndirectionColumnName(probeSetsCod,
+					schemaVersion);
+			String probeSetColumn = "gps." + DatabaseUtil.getOutwardIndirectionColumnName(
+					probeSetsCod, schemaVersion);
+			resultSet = statement.executeQuery("select " + geneColumn + ", ps.id, ps."
+					+ getColumnName(probeSetCld, "probeSetId") + ", e."
+					+ getColumnName(expressionCld, "tissue") + ", e."
+					+ getColumnName(expressionCld, "call") + ", e."
+					+ getColumnName(expressionCld, "value")
+					+ " from " + DatabaseUtil.getTableName(expressionCld) + " as e "
+					+ " join " + DatabaseUtil.getTableName(probeSetCld) + " as ps on ps.id = e."
+					+ getColumnName(expressionCld, "probeSet")
+					+ " join " + DatabaseUtil.getIndirectionTableName(probeSetsCod) + " as gps on "
+					+ probeSetColumn + " = ps.id "
+					+ " order by " + geneColumn + ", ps.id, e.id");
+			GeneMatrix matrix = null;
+			while (resultSet.next()) {
+				int geneId = resultSet.getInt(1);
+				int probeSetId = resultSet.getInt(2);
+				if (matrix == null || matrix.geneId != geneId) {
+					if (matrix != null) {
+						inserter.add(matrix);
+						numGenes++;
+					}
+					matrix = new GeneMatrix(geneId);
+				}
+				Integer tissue = tissueIndex.get(Integer.valueOf(resultSet.getInt(4)));
+				if (tissue == null) {
+					// no tissue, the displayer can not place the value
+					skipped++;
+					continue;
+				}
+				String call = String.valueOf(resultSet.getString(5));
+				Integer callId = callIndex.get(call);
+				if (callId == null) {
+					if (callIndex.size() > Byte.MAX_VALUE) {
+						throw new ObjectStoreException("Too many calls for the expression matrix");
+					}
+					callId = Integer.valueOf(callIndex.size());
+					callIndex.put(call, callId);
+				}
+				float value = resultSet.getFloat(6);
+				if (resultSet.wasNull()) {
+					value = Float.NaN;
+				}
+				matrix.add(probeSetId, resultSet.getString(3), (char) tissue.intValue(),
+						callId.byteValue(), value);
+				numValues++;
+			}
+			if (matrix != null) {
+				inserter.add(matrix);
+				numGenes++;
+			}
+			resultSet.close();
+			statement.close();
+			inserter.close();
+			connection.commit();
+
+			storeHeader(tissues, new ArrayList<String>(callIndex.keySet()), numGenes);
+			if (skipped > 0) {
+				LOG.warn(skipped + " expression values without a tissue are skipped.");
+			}
+			System.out.println(String.format("Stored the expression matrices of %d genes "
+					+ "(%d tissues, %d values), spent %d seconds", numGenes, tissues.size(),
+					numValues, (System.currentTimeMillis() - start) / 1000));
+		} catch (SQLException e) {
+			throw new ObjectStoreException("Failed to create the expression matrices", e);
+		} catch (IOException e) {
+			throw new ObjectStoreException("Failed to create the expression matrices", e);
+		} finally {
+			if (connection != null) {
+				try {
+					// the matrices of a failed run are not kept
+					if (!connection.getAutoCommit()) {
+						connection.rollback();
+					}
+					connection.setAutoCommit(true);
+					connection.close();
+				} catch (SQLException e) {
+					LOG.error("Unable to close the DB connection.", e);
+				}
+			}
+		}
+	}
+
+	private static String getColumnName(ClassDescriptor cld, String fieldName) {
+		return DatabaseUtil.getColumnName(cld.getFieldDescriptorByName(fieldName));
+	}
+
+	/**
+	 * Remove the matrices of a previous run, the header first so that the webapp never reads
+	 * a partial store.
+	 */
+	private static void deleteMatrices(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.executeUpdate("delete from " + MetadataManager.METADATA_TABLE
+				+ " where key = '" + ExpressionMatrixFormat.HEADER_KEY + "'");
+		statement.executeUpdate("delete from " + MetadataManager.METADATA_TABLE
+				+ " where key like '" + ExpressionMatrixFormat.HEADER_KEY + ".%'");
+		statement.close();
+	}
+
+	/**
+	 * Add the blob_value column to the intermine_metadata table if it is missing, as
+	 * MetadataManager.storeBinary() does.
+	 */
+	private static void addBlobColumn(Connection connection) throws SQLException {
+		ResultSet resultSet = connection.getMetaData().getColumns(null, null,
+				MetadataManager.METADATA_TABLE, "blob_value");
+		boolean found = resultSet.next();
+		resultSet.close();
+		if (!found) {
+			Statement statement = connection.createStatement();
+			statement.execute("alter table " + MetadataManager.METADATA_TABLE
+					+ " add blob_value bytea");
+			statement.close();
+		}
+	}
+
+	private void storeHeader(List<String[]> tissues, List<String> calls, int numGenes)
+		throws SQLException, IOException {
+		MetadataManager.storeBinary(database, ExpressionMatrixFormat.HEADER_KEY,
+				ExpressionMatrixFormat.writeHeader(tissues, calls, numGenes));
+	}
+
+	/**
+	 * Inserts the matrices in batches with one statement; the previous ones are deleted by
+	 * deleteMatrices().
+	 */
+	static class MatrixInserter {
+		private PreparedStatement statement;
+		private int pending = 0;
+
+		MatrixInserter(Connection connection) throws SQLException {
+			statement = connection.prepareStatement("insert into "
+					+ MetadataManager.METADATA_TABLE + " (key, blob_value) values (?, ?)");
+		}
+
+		void add(GeneMatrix matrix) throws SQLException, IOException {
+			statement.setString(1, ExpressionMatrixFormat.getKey(matrix.geneId));
+			statement.setBytes(2, ExpressionMatrixFormat.writeMatrix(matrix.toMatrix()));
+			statement.addBatch();
+			if (++pending == BATCH_SIZE) {
+				statement.executeBatch();
+				pending = 0;
+			}
+		}
+
+		void close() throws SQLException {
+			if (pending > 0) {
+				statement.executeBatch();
+				pending = 0;
+			}
+			statement.close();
+		}
+	}
+
+	/**
+	 * The expression values of the probe sets of a gene, in columns.
+	 */
+	static class GeneMatrix {
+		private int geneId;
+		private List<String> probeSetIds = new ArrayList<String>();
+		// probe set i has the values offsets[i] to offsets[i + 1] - 1
+		private List<Integer> offsets = new ArrayList<Integer>();
+		private int lastProbeSet = -1;
+		private int size = 0;
+		private char[] tissues = new char[256];
+		private byte[] calls = new byte[256];
+		private float[] values = new float[256];
+
+		GeneMatrix(int geneId) {
+			this.geneId = geneId;
+		}
+
+		void add(int probeSet, String probeSetId, char tissue, byte call, float value) {
+			if (probeSet != lastProbeSet) {
+				probeSetIds.add(probeSetId == null ? "" : probeSetId);
+				offsets.add(Integer.valueOf(size));
+				lastProbeSet = probeSet;
+			}
+			if (size == tissues.length) {
+				tissues = Arrays.copyOf(tissues, size * 2);
+				calls = Arrays.copyOf(calls, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			tissues[size] = tissue;
+			calls[size] = call;
+			values[size] = value;
+			size++;
+		}
+
+		ExpressionMatrixFormat.Matrix toMatrix() {
+			int[] ret = new int[offsets.size() + 1];
+			for (int i = 0; i < offsets.size(); i++) {
+				ret[i] = offsets.get(i).intValue();
+			}
+			ret[offsets.size()] = size;
+			return new ExpressionMatrixFormat.Matrix(probeSetIds.toArray(new String[0]), ret,
+					tissues, calls, values);
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+package org.intermine.bio.postprocess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The binary format of the expression matrices, written by CreateExpressionMatrix and read by
+ * the ExpressionMatrixStore of the webapp.
+ *
+ * The header (key expression.matrix) holds the format version, the tissue dictionary (category,
+ * organ and name of each HbiTissue), the call dictionary and the number of genes. The matrix of
+ * a gene (key expression.matrix.[gene object id]) holds the format version and, for each probe
+ * set, its probeSetId, the number of values and three columns: the tissue indexes (char), the
+ * call indexes (byte) and the values (float, NaN if missing). All are written with a
+ * DataOutputStream.
+ *
+ * @author chenyian
+ *
+ */
+public final class ExpressionMatrixFormat {
+
+	/**
+	 * key of the header in the intermine_metadata table, the key of a gene is followed by
+	 * "." and the gene object id
+	 */
+	public static final String HEADER_KEY = "expression.matrix";
+
+	/**
+	 * version of the format
+	 */
+	public static final int VERSION = 1;
+
+	private ExpressionMatrixFormat() {
+		// static methods only
+	}
+
+	/**
+	 * @param geneId the object id of a gene
+	 * @return the key of the matrix of the gene in the intermine_metadata table
+	 */
+	public static String getKey(int geneId) {
+		return HEADER_KEY + "." + geneId;
+	}
+
+	/**
+	 * @param tissues category, organ and name of each tissue
+	 * @param calls the call dictionary
+	 * @param numGenes the number of genes with a matrix
+	 * @return the header
+	 * @throws IOException if the header can not be written
+	 */
+	public static byte[] writeHeader(List<String[]> tissues, List<String> calls, int numGenes)
+		throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(VERSION);
+		out.writeInt(tissues.size());
+		for (String[] tissue : tissues) {
+			for (String value : tissue) {
+				out.writeUTF(value == null ? "" : value);
+			}
+		}
+		out.writeInt(calls.size());
+		for (String call : calls) {
+			out.writeUTF(call);
+		}
+		out.writeInt(numGenes);
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @param matrix the matrix of a gene
+	 * @return the matrix in the binary format
+	 * @throws IOException if the matrix can not be written
+	 */
+	public static byte[] writeMatrix(Matrix matrix) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(VERSION);
+		out.writeInt(matrix.probeSetIds.length);
+		for (int i = 0; i < matrix.probeSetIds.length; i++) {
+			int from = matrix.offsets[i];
+			int to = matrix.offsets[i + 1];
+			out.writeUTF(matrix.probeSetIds[i]);
+			out.writeInt(to - from);
+			for (int j = from; j < to; j++) {
+				out.writeChar(matrix.tissues[j]);
+			}
+			out.write(matrix.calls, from, to - from);
+			for (int j = from; j < to; j++) {
+				out.writeFloat(matrix.values[j]);
+			}
+		}
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @param is the header, closed when read
+	 * @return the header, null if it is of another version
+	 * @throws IOException if the header can not be read
+	 */
+	public static Header readHeader(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		try {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			int numTissues = in.readInt();
+			Header header = new Header();
+			header.categories = new String[numTissues];
+			header.organs = new String[numTissues];
+			header.names = new String[numTissues];
+			for (int i = 0; i < numTissues; i++) {
+				header.categories[i] = in.readUTF();
+				header.organs[i] = in.readUTF();
+				header.names[i] = in.readUTF();
+			}
+			header.calls = new String[in.readInt()];
+			for (int i = 0; i < header.calls.length; i++) {
+				header.calls[i] = in.readUTF();
+			}
+			header.numGenes = in.readInt();
+			return header;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param is the matrix of a gene, closed when read
+	 * @return the matrix, null if it is of another version
+	 * @throws IOException if the matrix can not be read
+	 */
+	public static Matrix readMatrix(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		try {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+			String[] probeSetIds = new String[in.readInt()];
+			int[] offsets = new int[probeSetIds.length + 1];
+			char[] tissues = new char[256];
+			byte[] calls = new byte[256];
+			float[] values = new float[256];
+			int size = 0;
+			for (int i = 0; i < probeSetIds.length; i++) {
+				probeSetIds[i] = in.readUTF();
+				int n = in.readInt();
+				offsets[i] = size;
+				if (size + n > tissues.length) {
+					int length = Math.max(tissues.length * 2, size + n);
+					tissues = Arrays.copyOf(tissues, length);
+					calls = Arrays.copyOf(calls, length);
+					values = Arrays.copyOf(values, length);
+				}
+				for (int j = 0; j < n; j++) {
+					tissues[size + j] = in.readChar();
+				}
+				in.readFully(calls, size, n);
+				for (int j = 0; j < n; j++) {
+					values[size + j] = in.readFloat();
+				}
+				size += n;
+			}
+			offsets[probeSetIds.length] = size;
+			return new Matrix(probeSetIds, offsets, tissues, calls, values);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The tissue and call dictionaries.
+	 */
+	public static final class Header {
+		private String[] categories;
+		private String[] organs;
+		private String[] names;
+		private String[] calls;
+		private int numGenes;
+
+		private Header() {
+			// read only
+		}
+
+		public String[] getCategories() {
+			return categories;
+		}
+
+		public String[] getOrgans() {
+			return organs;
+		}
+
+		public String[] getNames() {
+			return names;
+		}
+
+		public String[] getCalls() {
+			return calls;
+		}
+
+		public int getNumGenes() {
+			return numGenes;
+		}
+	}
+
+	/**
+	 * The expression values of the probe sets of a gene, in columns: probe set i has the values
+	 * offsets[i] to offsets[i + 1] - 1 of the tissue, call and value columns.
+	 */
+	public static final class Matrix {
+		private String[] probeSetIds;
+		private int[] offsets;
+		private char[] tissues;
+		private byte[] calls;
+		private float[] values;
+
+		/**
+		 * @param probeSetIds the probeSetId of each probe set
+		 * @param offsets the offset of the values of each probe set, followed by the number of
+		 * values
+		 * @param tissues the tissue indexes
+		 * @param calls the call indexes
+		 * @param values the values, NaN if missing
+		 */
+		public Matrix(String[] probeSetIds, int[] offsets, char[] tissues, byte[] calls,
+				float[] values) {
+			this.probeSetIds = probeSetIds;
+			this.offsets = offsets;
+			this.tissues = tissues;
+			this.calls = calls;
+			this.values = values;
+		}
+
+		public String[] getProbeSetIds() {
+			return probeSetIds;
+		}
+
+		public int[] getOffsets() {
+			return offsets;
+		}
+
+		public char[] getTissues() {
+			return tissues;
+		}
+
+		public byte[] getCalls() {
+			return calls;
+		}
+
+		public float[] getValues() {
+			return values;
+		}
+
+		/**
+		 * @return the number of values
+		 */
+		public int size() {
+			return offsets[probeSetIds.length];
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.intermine.bio.postprocess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that ExpressionMatrixFormat reads the header and the matrices as CreateExpressionMatrix
+ * writes them.
+ *
+ * @author chenyian
+ */
+public class ExpressionMatrixFormatTest extends TestCase
+{
+	public ExpressionMatrixFormatTest(String arg) {
+		super(arg);
+	}
+
+	public void testHeader() throws Exception {
+		List<String[]> tissues = new ArrayList<String[]>();
+		tissues.add(new String[] {"Normal", "Brain", "Cerebellum"});
+		tissues.add(new String[] {"Cancer/Tumor", null, "Glioma"});
+		List<String> calls = Arrays.asList("P", "A", "null");
+		ExpressionMatrixFormat.Header header = ExpressionMatrixFormat.readHeader(
+				new ByteArrayInputStream(ExpressionMatrixFormat.writeHeader(tissues, calls, 42)));
+		assertEquals(Arrays.asList("Normal", "Cancer/Tumor"), Arrays.asList(header
+				.getCategories()));
+		// a missing value is written as an empty string
+		assertEquals(Arrays.asList("Brain", ""), Arrays.asList(header.getOrgans()));
+		assertEquals(Arrays.asList("Cerebellum", "Glioma"), Arrays.asList(header.getNames()));
+		assertEquals(calls, Arrays.asList(header.getCalls()));
+		assertEquals(42, header.getNumGenes());
+	}
+
+	public void testMatrix() throws Exception {
+		CreateExpressionMatrix.GeneMatrix written = new CreateExpressionMatrix.GeneMatrix(7);
+		// more values than the initial columns, in both the writer and the reader
+		for (int i = 0; i < 300; i++) {
+			written.add(1, "1007_s_at", (char) i, (byte) (i % 3), i + 0.1f);
+		}
+		// a tissue index above the byte range, the last call index and a missing value
+		written.add(2, "1053_at", (char) 40000, Byte.MAX_VALUE, Float.NaN);
+		written.add(2, "1053_at", (char) 1, (byte) 0, -1.5f);
+		// a probe set without a probeSetId
+		written.add(3, null, (char) 2, (byte) 1, Float.MAX_VALUE);
+
+		ExpressionMatrixFormat.Matrix matrix = ExpressionMatrixFormat.readMatrix(
+				new ByteArrayInputStream(ExpressionMatrixFormat.writeMatrix(written.toMatrix())));
+		assertEquals(Arrays.asList("1007_s_at", "1053_at", ""), Arrays.asList(matrix
+				.getProbeSetIds()));
+		assertEquals(303, matrix.size());
+		assertEquals(0, matrix.getOffsets()[0]);
+		assertEquals(300, matrix.getOffsets()[1]);
+		assertEquals(302, matrix.getOffsets()[2]);
+		assertEquals(303, matrix.getOffsets()[3]);
+		for (int i = 0; i < 300; i++) {
+			assertEquals((char) i, matrix.getTissues()[i]);
+			assertEquals((byte) (i % 3), matrix.getCalls()[i]);
+			assertEquals(i + 0.1f, matrix.getValues()[i], 0f);
+		}
+		assertEquals((char) 40000, matrix.getTissues()[300]);
+		assertEquals(Byte.MAX_VALUE, matrix.getCalls()[300]);
+		assertTrue(Float.isNaN(matrix.getValues()[300]));
+		assertEquals(-1.5f, matrix.getValues()[301], 0f);
+		assertEquals((char) 2, matrix.getTissues()[302]);
+		assertEquals((byte) 1, matrix.getCalls()[302]);
+		assertEquals(Float.MAX_VALUE, matrix.getValues()[302], 0f);
+	}
+
+	public void testEmptyMatrix() throws Exception {
+		ExpressionMatrixFormat.Matrix matrix = ExpressionMatrixFormat.readMatrix(
+				new ByteArrayInputStream(ExpressionMatrixFormat.writeMatrix(
+						new CreateExpressionMatrix.GeneMatrix(7).toMatrix())));
+		assertEquals(0, matrix.getProbeSetIds().length);
+		assertEquals(0, matrix.size());
+	}
+
+	public void testOtherVersion() throws Exception {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(ExpressionMatrixFormat.VERSION + 1);
+		out.writeInt(0);
+		out.close();
+		assertNull(ExpressionMatrixFormat.readHeader(new ByteArrayInputStream(buffer
+				.toByteArray())));
+		assertNull(ExpressionMatrixFormat.readMatrix(new ByteArrayInputStream(buffer
+				.toByteArray())));
+		assertEquals("expression.matrix.7", ExpressionMatrixFormat.getKey(7));
+	}
+}
@@ -1,19 +1,23 @@
 package org.intermine.bio.postprocess;
 
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.intermine.bio.util.Constants;
 import org.intermine.bio.util.PostProcessUtil;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.MetaDataException;
@@ -28,7 +32,6 @@ import org.intermine.model.bio.SequenceFeature;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
@@ -56,10 +59,12 @@ public class CreateIntronFeaturesProcess extends PostProcessor
     private Set<Integer> taxonIds = new HashSet<Integer>();
     private Model model;
 
-    protected Map<String, SequenceFeature> intronMap = new HashMap<String, SequenceFeature>();
-    protected Map<SequenceFeature, Set<SequenceFeature>> intronTranscripts =
-            new HashMap<SequenceFeature, Set<SequenceFeature>>();
+    private PostProcessProperties properties = new PostProcessProperties(PROPERTIES_FILE);
+
     private static final Logger LOG = Logger.getLogger(CreateIntronFeaturesProcess.class);
+    private static final String PROPERTIES_FILE = "create-intron-features-kai.properties";
+    // put by a worker when its chromosome is done
+    private static final GeneIntrons END = new GeneIntrons(null, 0, 0);
 
     /**
      * Create a new instance
@@ -97,7 +102,9 @@ public class CreateIntronFeaturesProcess extends PostProcessor
      * {@inheritDoc}
      * <br/>
      * Main post-processing routine.
-     * Create a new IntronUtil object that will operate on the given ObjectStoreWriter.
+     * The genes are processed by chromosome on 'intron.threads' workers; each worker hands the
+     * introns of a gene to this thread as soon as the gene is finished, and they are stored in
+     * transactions of 'intron.batch.size' introns.
      * NOTE - needs to be run after SequenceFeature.chromosomeLocation has been set.
      *
      * @throws ObjectStoreException if the objectstore throws an exception
@@ -114,12 +121,6 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         dataSet.setUrl("https://www.intermine.org");
         dataSet.setDataSource(dataSource);
 
-        // Documented as an example of how to use the query API
-
-        // This query finds all transcripts and their chromosome locations and exons
-        // for each transcript with the exon chromosome location.  This is then used
-        // to calculate intron locations.
-
         try {
             final String message = "Now performing create introns postprocess ";
             PostProcessUtil.checkFieldExists(model, "Transcript", "exons", message);
@@ -129,6 +130,108 @@ public class CreateIntronFeaturesProcess extends PostProcessor
             return;
         }
 
+        List<Chromosome> chromosomes = getChromosomes();
+        int threads = properties.getPositiveIntProperty("intron.threads", 4);
+        int batchSize = properties.getPositiveIntProperty("intron.batch.size", 10000);
+        LOG.info("Processing " + chromosomes.size() + " chromosomes on " + threads + " threads.");
+
+        BlockingQueue<GeneIntrons> queue = new ArrayBlockingQueue<GeneIntrons>(threads * 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        int tranCount = 0, exonCount = 0, intronCount = 0, stored = 0;
+        try {
+            for (Chromosome chr : chromosomes) {
+                workers.add(executor.submit(new ChromosomeWorker(chr, queue)));
+            }
+
+            osw.beginTransaction();
+            int finished = 0, inBatch = 0;
+            while (finished < chromosomes.size()) {
+                GeneIntrons geneIntrons = queue.take();
+                if (geneIntrons == END) {
+                    finished++;
+                    continue;
+                }
+                tranCount++;
+                exonCount += geneIntrons.exonCount;
+                intronCount += geneIntrons.intronCount;
+                for (Intron intron : geneIntrons.introns) {
+                    if (stored == 0) {
+                        osw.store(dataSet);
+                    }
+                    osw.store(intron.getChromosomeLocation());
+                    osw.store(intron);
+                    stored++;
+                    inBatch++;
+                }
+                if (inBatch >= batchSize) {
+                    osw.commitTransaction();
+                    osw.beginTransaction();
+                    LOG.info("Stored " + stored + " introns.");
+                    inBatch = 0;
+                }
+                if ((tranCount % 1000) == 0) {
+                    LOG.info("Created " + intronCount + " Introns for " + tranCount
+                            + " Transcripts with " + exonCount + " Exons.");
+                }
+            }
+
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+            osw.commitTransaction();
+        } catch (InterruptedException e) {
+            throw new ObjectStoreException("Interrupted while creating introns", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ObjectStoreException) {
+                throw (ObjectStoreException) e.getCause();
+            }
+            throw new ObjectStoreException("Failed to create introns", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (osw.isInTransaction()) {
+                osw.abortTransaction();
+            }
+        }
+
+        LOG.info("Read " + tranCount + " transcripts with " + exonCount + " exons.");
+        System.out.println("Read " + tranCount + " transcripts with " + exonCount + " exons.");
+        LOG.info("Totally " + stored + " introns stored.");
+        System.out.println("Totally " + stored + " introns stored.");
+    }
+
+    /**
+     * @return the chromosomes to process, restricted to taxonIds if specified
+     */
+    private List<Chromosome> getChromosomes() {
+        Query q = new Query();
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        q.addFrom(qcChr);
+        q.addToSelect(qcChr);
+
+        if (!taxonIds.isEmpty()) {
+            QueryClass qcOrg = new QueryClass(Organism.class);
+            q.addFrom(qcOrg);
+            ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+            QueryObjectReference orgRef = new QueryObjectReference(qcChr, "organism");
+            cs.addConstraint(new ContainsConstraint(orgRef, ConstraintOp.CONTAINS, qcOrg));
+            QueryField qfTaxonId = new QueryField(qcOrg, "taxonId");
+            cs.addConstraint(new BagConstraint(qfTaxonId, ConstraintOp.IN, taxonIds));
+            q.setConstraint(cs);
+        }
+
+        List<Chromosome> ret = new ArrayList<Chromosome>();
+        for (Object row : os.execute(q, 1000, true, true, true)) {
+            ret.add((Chromosome) ((ResultsRow<?>) row).get(0));
+        }
+        return ret;
+    }
+
+    /**
+     * Find the genes of a chromosome with their chromosome locations and the chromosome
+     * locations of their exons.
+     */
+    private Results getGeneExonLocations(Chromosome chr) {
         // Construct a new query and a set to hold constraints that will be ANDed together
         Query q = new Query();
         ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
@@ -138,6 +241,10 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         q.addFrom(qcGene);
         q.addToSelect(qcGene);
 
+        // restrict to the genes of the chromosome
+        QueryObjectReference qorChr = new QueryObjectReference(qcGene, "chromosome");
+        cs.addConstraint(new ContainsConstraint(qorChr, ConstraintOp.CONTAINS, chr));
+
         // Include the referenced chromosomeLocation of the Gene
         QueryClass qcGeneLoc = new QueryClass(Location.class);
         q.addFrom(qcGeneLoc);
@@ -145,16 +252,6 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         QueryObjectReference qorTranLoc = new QueryObjectReference(qcGene, "chromosomeLocation");
         cs.addConstraint(new ContainsConstraint(qorTranLoc, ConstraintOp.CONTAINS, qcGeneLoc));
 
-        // restict to taxonIds if specified
-        if (!taxonIds.isEmpty()) {
-            QueryClass qcOrg = new QueryClass(Organism.class);
-            q.addFrom(qcOrg);
-            QueryObjectReference orgRef = new QueryObjectReference(qcGene, "organism");
-            cs.addConstraint(new ContainsConstraint(orgRef, ConstraintOp.CONTAINS, qcOrg));
-            QueryField qfTaxonId = new QueryField(qcOrg, "taxonId");
-            cs.addConstraint(new BagConstraint(qfTaxonId, ConstraintOp.IN, taxonIds));
-        }
-
         // Include Transcript class from the Gene.transcripts collection
         QueryClass qcTran = new QueryClass(model.getClassDescriptorByName("Transcript").getType());
         q.addFrom(qcTran);
@@ -177,110 +274,109 @@ public class CreateIntronFeaturesProcess extends PostProcessor
         // Set the constraint of the query
         q.setConstraint(cs);
 
-        // Force an order by transcripts to make processing easier
+        // Force an order by genes so that the exons of a gene are consecutive
         q.addToOrderBy(qcGene);
 
-        // Precompute this query first, this will create a precomputed table holding
-        // all the results.  The will make all batches after the first faster to fetch
-        ((ObjectStoreInterMineImpl) os).precompute(q, Constants.PRECOMPUTE_CATEGORY);
-
-        // Set up the results, the query isn't actually executed until we begin
-        // iterating through the results
-        Results results = os.execute(q, 500, true, true, true);
-
-        // When we start interating the query will be executed
-        Iterator<?> resultsIter = results.iterator();
-
-        Set<Location> locationSet = new HashSet<Location>();
-        SequenceFeature lastGene = null;
-        Location lastGeneLoc = null;
-        int tranCount = 0, exonCount = 0, intronCount = 0;
-
-        osw.beginTransaction();
-        while (resultsIter.hasNext()) {
-            // Results is a list of ResultsRows, each ResultsRow contains the objects/fields
-            // that were added to the select list of the query.  The order of columns is
-            // as they were added to the select list.
-            ResultsRow<?> rr = (ResultsRow<?>) resultsIter.next();
-            SequenceFeature thisGene = (SequenceFeature) rr.get(0);
-
-            if (lastGene == null) {
-                lastGene = thisGene;
-                lastGeneLoc = (Location) rr.get(1);
-            }
-
-            if (!thisGene.getId().equals(lastGene.getId())) {
-                tranCount++;
-                intronCount += createIntronFeatures(locationSet, lastGene, lastGeneLoc);
-                exonCount += locationSet.size();
-                if ((tranCount % 1000) == 0) {
-                    LOG.info("Created " + intronCount + " Introns for " + tranCount
-                            + " Transcripts with " + exonCount + " Exons.");
-                }
-                locationSet = new HashSet<Location>();
-                lastGene = thisGene;
-                lastGeneLoc = (Location) rr.get(1);
-            }
-            locationSet.add((Location) rr.get(2));
-        }
+        return os.execute(q, 500, true, true, true);
+    }
 
-        if (lastGene != null) {
-            intronCount += createIntronFeatures(locationSet, lastGene, lastGeneLoc);
-            tranCount++;
-            exonCount += locationSet.size();
+    /**
+     * Reads the genes of a chromosome and puts their introns on the queue gene by gene, then END.
+     * The introns are unique on a chromosome, so only the identifiers of the chromosome are
+     * kept to skip those already created for a previous gene.
+     */
+    private class ChromosomeWorker implements Callable<Void>
+    {
+        private Chromosome chr;
+        private BlockingQueue<GeneIntrons> queue;
+
+        ChromosomeWorker(Chromosome chr, BlockingQueue<GeneIntrons> queue) {
+            this.chr = chr;
+            this.queue = queue;
         }
 
-        LOG.info("Read " + tranCount + " transcripts with " + exonCount + " exons.");
-        System.out.println("Read " + tranCount + " transcripts with " + exonCount + " exons.");
-
-        //osw.beginTransaction();
-        int stored = 0;
-        for (Iterator<String> i = intronMap.keySet().iterator(); i.hasNext();) {
-            String identifier = i.next();
-            SequenceFeature intron = intronMap.get(identifier);
-            Set<SequenceFeature> transcripts = intronTranscripts.get(intron);
-            if (transcripts != null) {
-                intron.setFieldValue("transcripts", transcripts);
-            }
-            osw.store(intron);
-            stored++;
-            if (stored % 1000 == 0) {
-                LOG.info("Stored " + stored + " introns.");
+        @Override
+        public Void call() throws Exception {
+            boolean cancelled = false;
+            try {
+                Set<String> identifiers = new HashSet<String>();
+                Iterator<?> resultsIter = getGeneExonLocations(chr).iterator();
+
+                Set<Location> locationSet = new HashSet<Location>();
+                SequenceFeature lastGene = null;
+                Location lastGeneLoc = null;
+                while (resultsIter.hasNext()) {
+                    ResultsRow<?> rr = (ResultsRow<?>) resultsIter.next();
+                    SequenceFeature thisGene = (SequenceFeature) rr.get(0);
+
+                    if (lastGene != null && !thisGene.getId().equals(lastGene.getId())) {
+                        queue.put(createIntronFeatures(locationSet, lastGene, lastGeneLoc, chr,
+                                identifiers));
+                        locationSet = new HashSet<Location>();
+                    }
+                    if (locationSet.isEmpty()) {
+                        lastGene = thisGene;
+                        lastGeneLoc = (Location) rr.get(1);
+                    }
+                    locationSet.add((Location) rr.get(2));
+                }
+                if (lastGene != null) {
+                    queue.put(createIntronFeatures(locationSet, lastGene, lastGeneLoc, chr,
+                            identifiers));
+                }
+            } catch (InterruptedException e) {
+                // cancelled by shutdownNow(), the queue is not read any more
+                cancelled = true;
+                throw e;
+            } finally {
+                if (!cancelled) {
+                    queue.put(END);
+                }
             }
+            return null;
         }
-        LOG.info("Totally " + stored + " introns stored.");
-        System.out.println("Totally " + stored + " introns stored.");
+    }
 
-        if (intronMap.size() > 1) {
-            osw.store(dataSet);
+    /**
+     * The introns of a gene, with their chromosome locations.
+     */
+    private static class GeneIntrons
+    {
+        private List<Intron> introns;
+        private int exonCount;
+        private int intronCount;
+
+        GeneIntrons(List<Intron> introns, int exonCount, int intronCount) {
+            this.introns = introns;
+            this.exonCount = exonCount;
+            this.intronCount = intronCount;
         }
-        osw.commitTransaction();
     }
 
     /**
-     * Return the number of created Intron objects that don't overlap the Locations
-     * in the locationSet argument.  The caller must call ObjectStoreWriter.store() on the
-     * Intron, its chromosomeLocation and the synonym in the synonyms collection.
+     * Create the Intron objects that don't overlap the Locations in the locationSet argument,
+     * with their chromosome locations. The introns whose identifier is already in identifiers
+     * are skipped.
      * @param locationSet a set of Locations for the exons on a particular transcript
      * @param gene Gene that the Locations refer to
      * @param geneLoc The Location of the Gene
-     * @return the number of created Intron objects
-     * @throws ObjectStoreException if there is an ObjectStore problem
+     * @param chr the Chromosome of the Gene
+     * @param identifiers the identifiers of the introns already created on the chromosome
+     * @return the new Intron objects and the number of introns of the gene
      */
-    protected int createIntronFeatures(Set<Location> locationSet, SequenceFeature gene,
-                                       Location geneLoc)
-            throws ObjectStoreException {
+    protected GeneIntrons createIntronFeatures(Set<Location> locationSet, SequenceFeature gene,
+                                               Location geneLoc, Chromosome chr,
+                                               Set<String> identifiers) {
+        List<Intron> introns = new ArrayList<Intron>();
         if (locationSet.size() == 1 || geneLoc == null || gene == null
                 || gene.getLength() == null) {
-            return 0;
+            return new GeneIntrons(introns, locationSet.size(), 0);
         }
 
         int geneLength = gene.getLength().intValue();
-        final BitSet bs = new BitSet(geneLength);
-        Chromosome chr = gene.getChromosome();
-
         int geneStart = geneLoc.getStart().intValue();
 
+        List<int[]> exonRegions = new ArrayList<int[]>();
         for (Location location : locationSet) {
             String symbol = location.getLocatedOn().getSymbol();
             if (!chr.getSymbol().equals(symbol)) {
@@ -289,37 +385,15 @@ public class CreateIntronFeaturesProcess extends PostProcessor
 
             int start = location.getStart().intValue() - geneStart;
             int end = location.getEnd().intValue() - geneStart;
-            if (start < 0 || end < 0) {
+            if (start < 0 || end < start) {
                 String msg = String.format("Invalid region: %s , %d, %d.", gene.getSymbol(), start, end);
                 LOG.error(msg);
-                System.out.println(msg);
                 continue;
             }
-            bs.set(start, end + 1);
+            exonRegions.add(new int[] {start, end});
         }
 
-        int prevEndPos = 0;
-        List<Integer[]> locationPairs = new ArrayList<Integer[]>();
-        int nextIntronStart = bs.nextClearBit(prevEndPos + 1);
-        while (nextIntronStart < geneLength && prevEndPos != -1) {
-            int intronEnd;
-            int nextSetBit = bs.nextSetBit(nextIntronStart);
-
-            if (nextSetBit == -1) {
-                intronEnd = geneLength;
-                prevEndPos = -1;
-            } else {
-                intronEnd = nextSetBit - 1;
-                prevEndPos = intronEnd;
-            }
-
-            int newLocStart = nextIntronStart + geneStart;
-            int newLocEnd = intronEnd + geneStart;
-
-            locationPairs.add(new Integer[] {newLocStart, newLocEnd});
-
-            nextIntronStart = bs.nextClearBit(prevEndPos + 1);
-        }
+        List<int[]> locationPairs = getIntronRegions(exonRegions, geneLength);
         String geneSymbol = gene.getSymbol();
         String strand = geneLoc.getStrand();
 
@@ -332,13 +406,13 @@ public class CreateIntronFeaturesProcess extends PostProcessor
                 intronIndex = numIntron - i;
             }
 
-            Integer locStart = locationPairs.get(i)[0];
-            Integer locEnd = locationPairs.get(i)[1];
+            Integer locStart = locationPairs.get(i)[0] + geneStart;
+            Integer locEnd = locationPairs.get(i)[1] + geneStart;
 
             String identifier = "intron_chr" + chr.getPrimaryIdentifier()
                     + "_" + locStart + ".." + locEnd;
 
-            if (intronMap.get(identifier) == null) {
+            if (identifiers.add(identifier)) {
                 Class<?> intronCls = model.getClassDescriptorByName("Intron").getType();
                 Intron intron = (Intron)
                         DynamicUtil.createObject(Collections.singleton(intronCls));
@@ -360,14 +434,60 @@ public class CreateIntronFeaturesProcess extends PostProcessor
                 location.addDataSets(dataSet);
 
                 intron.setChromosomeLocation(location);
-                osw.store(location);
 
                 int length = locEnd - locStart + 1;
                 intron.setLength(new Integer(length));
-                intronMap.put(identifier, intron);
+                introns.add(intron);
+            }
+        }
+        return new GeneIntrons(introns, locationSet.size(), numIntron);
+    }
+
+    /**
+     * Find the gaps between the exons of a gene, from the second base of the gene; the gap after
+     * the last exon ends at geneLength.
+     * @param exonRegions start and end of the exons, relative to the gene start
+     * @param geneLength the length of the gene
+     * @return start and end of the introns, relative to the gene start, in order
+     */
+    static List<int[]> getIntronRegions(List<int[]> exonRegions, int geneLength) {
+        Collections.sort(exonRegions, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[0], b[0]);
+            }
+        });
+        // merge the overlapping and adjacent exons
+        List<int[]> merged = new ArrayList<int[]>();
+        for (int[] region : exonRegions) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && region[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], region[1]);
+            } else {
+                merged.add(new int[] {region[0], region[1]});
+            }
+        }
+
+        List<int[]> ret = new ArrayList<int[]>();
+        int i = 0;
+        int position = 1;
+        while (i < merged.size() && merged.get(i)[1] < position) {
+            i++;
+        }
+        if (i < merged.size() && merged.get(i)[0] <= position) {
+            position = merged.get(i)[1] + 1;
+            i++;
+        }
+        while (position < geneLength) {
+            if (i == merged.size()) {
+                ret.add(new int[] {position, geneLength});
+                break;
             }
+            ret.add(new int[] {position, merged.get(i)[0] - 1});
+            position = merged.get(i)[1] + 1;
+            i++;
         }
-        return numIntron;
+        return ret;
     }
 
 }
@@ -0,0 +1,71 @@
+package org.intermine.bio.postprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of CreateIntronFeaturesProcess.getIntronRegions().
+ *
+ * @author chenyian
+ */
+public class CreateIntronFeaturesProcessTest extends TestCase
+{
+    public CreateIntronFeaturesProcessTest(String arg) {
+        super(arg);
+    }
+
+    private static List<int[]> regions(int... bounds) {
+        List<int[]> ret = new ArrayList<int[]>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            ret.add(new int[] {bounds[i], bounds[i + 1]});
+        }
+        return ret;
+    }
+
+    private static void assertIntrons(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("intron " + i + ": " + Arrays.toString(actual.get(i)),
+                    Arrays.equals(expected.get(i), actual.get(i)));
+        }
+    }
+
+    public void testGaps() throws Exception {
+        assertIntrons(regions(10, 19, 30, 39),
+                CreateIntronFeaturesProcess.getIntronRegions(regions(0, 9, 20, 29, 40, 49), 49));
+        // the gap after the last exon ends at the gene length
+        assertIntrons(regions(10, 19, 30, 40),
+                CreateIntronFeaturesProcess.getIntronRegions(regions(0, 9, 20, 29), 40));
+    }
+
+    public void testFirstExonAfterStart() throws Exception {
+        assertIntrons(regions(1, 4, 10, 19),
+                CreateIntronFeaturesProcess.getIntronRegions(regions(5, 9, 20, 29), 29));
+        // an exon of the first base only
+        assertIntrons(regions(1, 19),
+                CreateIntronFeaturesProcess.getIntronRegions(regions(0, 0, 20, 29), 29));
+    }
+
+    public void testUnsortedOverlappingExons() throws Exception {
+        List<int[]> exons = regions(50, 59, 0, 9, 5, 14, 30, 39, 15, 19, 32, 35);
+        assertIntrons(regions(20, 29, 40, 49),
+                CreateIntronFeaturesProcess.getIntronRegions(exons, 59));
+        // the exons are sorted, not merged in place
+        assertEquals(6, exons.size());
+        assertTrue(Arrays.equals(new int[] {5, 14}, exons.get(1)));
+    }
+
+    public void testNoGap() throws Exception {
+        assertTrue(CreateIntronFeaturesProcess.getIntronRegions(regions(0, 99), 99).isEmpty());
+        assertTrue(CreateIntronFeaturesProcess.getIntronRegions(regions(0, 49, 50, 120), 99)
+                .isEmpty());
+    }
+
+    public void testNoExon() throws Exception {
+        assertIntrons(regions(1, 99), CreateIntronFeaturesProcess.getIntronRegions(
+                new ArrayList<int[]>(), 99));
+    }
+}
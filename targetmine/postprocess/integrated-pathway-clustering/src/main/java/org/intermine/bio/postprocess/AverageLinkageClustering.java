@@ -0,0 +1,193 @@
+package org.intermine.bio.postprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Average linkage clustering on a packed distance matrix with int cluster ids: the
+ * nearest-neighbour chain algorithm with Lance-Williams updates, O(n^2) time and memory.
+ *
+ * The result is given the same way as HierarchicalClustering does, i.e. the merged clusters as
+ * "="-joined items after the unmerged items, in the order of the merges.
+ *
+ * @author chenyian
+ *
+ */
+public class AverageLinkageClustering {
+	private String[] items;
+	private double[] distances;
+	private List<Double> distanceList = new ArrayList<Double>();
+
+	/**
+	 * @param items labels, sorted
+	 * @param distances lower triangle of the distance matrix, see index(int, int)
+	 */
+	public AverageLinkageClustering(String[] items, double[] distances) {
+		this.items = items;
+		this.distances = distances;
+	}
+
+	public List<Double> getDistanceList() {
+		return distanceList;
+	}
+
+	/**
+	 * @return position of the distance between i and j (i != j) in the packed matrix
+	 */
+	public static int index(int i, int j) {
+		if (i < j) {
+			return j * (j - 1) / 2 + i;
+		}
+		return i * (i - 1) / 2 + j;
+	}
+
+	/**
+	 * @param n number of items
+	 * @return size of the packed matrix
+	 */
+	public static int packedSize(int n) {
+		return n * (n - 1) / 2;
+	}
+
+	public List<String> clusteringByAverageLinkage(double cutOff) {
+		distanceList.clear();
+		int n = items.length;
+		if (n < 2) {
+			return new ArrayList<String>(Arrays.asList(items));
+		}
+		// the updates are done in place
+		double[] d = Arrays.copyOf(distances, distances.length);
+
+		// merges: node ids (0..n-1 leaves, n.. merged) and heights
+		final int[] left = new int[n - 1];
+		final int[] right = new int[n - 1];
+		final double[] height = new double[n - 1];
+
+		int[] size = new int[n];
+		Arrays.fill(size, 1);
+		int[] node = new int[n];
+		for (int i = 0; i < n; i++) {
+			node[i] = i;
+		}
+		boolean[] active = new boolean[n];
+		Arrays.fill(active, true);
+
+		int[] chain = new int[n];
+		int top = 0;
+		for (int m = 0; m < n - 1; m++) {
+			int a;
+			int b;
+			while (true) {
+				if (top == 0) {
+					int first = 0;
+					while (!active[first]) {
+						first++;
+					}
+					chain[top++] = first;
+				}
+				a = chain[top - 1];
+				int previous = top > 1 ? chain[top - 2] : -1;
+				// the previous one wins a tie, so the chain always ends
+				b = previous;
+				double min = previous == -1 ? Double.POSITIVE_INFINITY : value(d[index(a,
+						previous)]);
+				for (int c = 0; c < n; c++) {
+					if (c != a && active[c] && value(d[index(a, c)]) < min) {
+						min = value(d[index(a, c)]);
+						b = c;
+					}
+				}
+				if (b == -1) {
+					// only infinite (or NaN) distances left; merge with any other cluster
+					b = a == 0 ? 1 : 0;
+					while (!active[b] || b == a) {
+						b++;
+					}
+				}
+				if (b == previous) {
+					top -= 2;
+					break;
+				}
+				chain[top++] = b;
+			}
+
+			// keep the merged cluster in the slot of the smaller index
+			int x = Math.min(a, b);
+			int y = Math.max(a, b);
+			double dxy = d[index(x, y)];
+			left[m] = node[x];
+			right[m] = node[y];
+			height[m] = dxy;
+			int sx = size[x];
+			int sy = size[y];
+			for (int k = 0; k < n; k++) {
+				if (active[k] && k != x && k != y) {
+					int ik = index(x, k);
+					d[ik] = (sx * d[ik] + sy * d[index(y, k)]) / (sx + sy);
+				}
+			}
+			active[y] = false;
+			size[x] = sx + sy;
+			node[x] = n + m;
+		}
+
+		// a merge is never lower than its children, also not by a rounding error
+		final double[] order = new double[n - 1];
+		for (int m = 0; m < n - 1; m++) {
+			order[m] = height[m];
+			if (left[m] >= n) {
+				order[m] = Math.max(order[m], order[left[m] - n]);
+			}
+			if (right[m] >= n) {
+				order[m] = Math.max(order[m], order[right[m] - n]);
+			}
+		}
+		List<Integer> merges = new ArrayList<Integer>();
+		for (int m = 0; m < n - 1; m++) {
+			merges.add(Integer.valueOf(m));
+		}
+		Collections.sort(merges, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(order[o1.intValue()], order[o2.intValue()]);
+			}
+		});
+
+		// replay the merges up to the cut-off in the order of the bottom-up method
+		String[] labels = Arrays.copyOf(items, 2 * n - 1);
+		List<Integer> clusters = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			clusters.add(Integer.valueOf(i));
+		}
+		for (Integer m : merges) {
+			double h = height[m.intValue()];
+			if (!(h <= cutOff)) {
+				break;
+			}
+			distanceList.add(Double.valueOf(h));
+			Integer l = Integer.valueOf(left[m.intValue()]);
+			Integer r = Integer.valueOf(right[m.intValue()]);
+			// the later one in the list comes first
+			String label = clusters.indexOf(l) > clusters.indexOf(r) ? labels[l.intValue()]
+					+ "=" + labels[r.intValue()] : labels[r.intValue()] + "="
+					+ labels[l.intValue()];
+			clusters.remove(l);
+			clusters.remove(r);
+			clusters.add(Integer.valueOf(n + m.intValue()));
+			labels[n + m.intValue()] = label;
+		}
+
+		List<String> ret = new ArrayList<String>();
+		for (Integer c : clusters) {
+			ret.add(labels[c.intValue()]);
+		}
+		return ret;
+	}
+
+	private static double value(double distance) {
+		return Double.isNaN(distance) ? Double.POSITIVE_INFINITY : distance;
+	}
+}
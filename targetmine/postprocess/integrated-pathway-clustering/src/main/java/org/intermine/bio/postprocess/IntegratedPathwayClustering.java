@@ -49,8 +49,12 @@ import com.google.common.primitives.Ints;
 public class IntegratedPathwayClustering extends PostProcessor {
 	private static final Logger LOG = LogManager.getLogger(IntegratedPathwayClustering.class);
 
+	private static final String PROPERTIES_FILE = "integrated-pathway-clustering.properties";
+
 	private Model model;
 
+	private PostProcessProperties properties = new PostProcessProperties(PROPERTIES_FILE);
+
 	public IntegratedPathwayClustering(ObjectStoreWriter osw) {
 		super(osw);
 		model = Model.getInstanceByName("genomic");
@@ -70,13 +74,28 @@ public class IntegratedPathwayClustering extends PostProcessor {
 
 			System.out.println("Filtered (" + taxonId + "): " + filteredPathwayGene.size());
 
-			Map<String, List<Double>> similarityIndex = calculateSimilarityIndex(filteredPathwayGene);
-
-			Map<String, Map<String, Double>> matrix = calculateCorrelationMatrix(similarityIndex);
-
-			HierarchicalClustering hc = new HierarchicalClustering(matrix);
-
-			List<String> clusters = hc.clusteringByAverageLinkage(0.7d);
+			List<String> clusters;
+			// "legacy" runs the original bottom-up implementation, e.g. to verify the clusters
+			if ("legacy".equals(properties.getProperty("clustering.engine"))) {
+				Map<String, List<Double>> similarityIndex = calculateSimilarityIndex(filteredPathwayGene);
+
+				Map<String, Map<String, Double>> matrix = calculateCorrelationMatrix(similarityIndex);
+
+				HierarchicalClustering hc = new HierarchicalClustering(matrix);
+				clusters = hc.clusteringByAverageLinkage(0.7d);
+			} else {
+				long start = System.currentTimeMillis();
+				PathwayDistanceMatrix pdm = new PathwayDistanceMatrix(filteredPathwayGene);
+				double[] distances = pdm.calculate(properties.getIntProperty(
+						"clustering.threads", Runtime.getRuntime().availableProcessors()));
+				System.out.println("Distance matrix (" + taxonId + ") calculated in "
+						+ (System.currentTimeMillis() - start) + " ms.");
+
+				AverageLinkageClustering alc = new AverageLinkageClustering(pdm.getPathways(),
+						distances);
+				clusters = alc.clusteringByAverageLinkage(0.7d);
+			}
+			System.out.println("Clusters (" + taxonId + "): " + clusters.size());
 
 			createIntegratedPathwayClusters(filteredPathwayGene, clusters, speciesCodes.get(i));
 		}
@@ -112,10 +131,12 @@ public class IntegratedPathwayClustering extends PostProcessor {
 			}
 		}
 
+		// 0 or less to cluster all pathways
+		int maxGenes = properties.getIntProperty("pathway.max.genes", 600);
 		allPathwayGenes = new HashMap<String, Set<String>>();
 		for (String pathway : pathwayGeneMap.keySet()) {
 			Set<String> geneSet = pathwayGeneMap.get(pathway);
-			if (geneSet.size() < 600) {
+			if (maxGenes <= 0 || geneSet.size() < maxGenes) {
 				allPathwayGenes.put(pathway, geneSet);
 			}
 		}
@@ -287,7 +308,7 @@ public class IntegratedPathwayClustering extends PostProcessor {
 		}
 	}
 
-	private Map<String, Map<String, Double>> calculateCorrelationMatrix(
+	static Map<String, Map<String, Double>> calculateCorrelationMatrix(
 			Map<String, List<Double>> similarityIndex) {
 		Map<String, Map<String, Double>> matrix = new HashMap<String, Map<String, Double>>();
 		PearsonsCorrelation pc = new PearsonsCorrelation();
@@ -310,7 +331,7 @@ public class IntegratedPathwayClustering extends PostProcessor {
 		return matrix;
 	}
 
-	private Map<String, List<Double>> calculateSimilarityIndex(
+	static Map<String, List<Double>> calculateSimilarityIndex(
 			final Map<String, Set<String>> pathwayGene) {
 		List<String> pathways = new ArrayList<String>(pathwayGene.keySet());
 		Map<String, List<Double>> ret = new HashMap<String, List<Double>>();
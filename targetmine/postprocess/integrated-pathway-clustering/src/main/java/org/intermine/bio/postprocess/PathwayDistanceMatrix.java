@@ -0,0 +1,180 @@
+package org.intermine.bio.postprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The 1 - Pearson correlation distances between the similarity index profiles of pathways.
+ * The genes are mapped to dense indexes and each pathway is a long[] bitset, so that an
+ * intersection is a popcount; the matrices are primitive arrays computed by blocks of rows in
+ * parallel.
+ *
+ * The similarity profiles are held as one dense n x n double[] (8 n^2 bytes, e.g. 200 MB for
+ * 5000 pathways) besides the packed distances (4 n^2 bytes); the legacy engine holds the same
+ * matrices as maps of boxed values, several times larger. The number of pathways is limited to
+ * MAX_PATHWAYS so that n^2 fits in an array index; fewer pathways are clustered in practice, as
+ * pathway.max.genes and filterSubsets() drop the large and the nested ones.
+ *
+ * @author chenyian
+ *
+ */
+public class PathwayDistanceMatrix {
+	private static final int ROWS_PER_TASK = 16;
+
+	/**
+	 * the largest number of pathways, n * n must be an int
+	 */
+	public static final int MAX_PATHWAYS = 46340;
+
+	private String[] pathways;
+	private long[][] bitsets;
+	private int[] sizes;
+
+	/**
+	 * @param pathwayGenes pathway identifier -> gene identifiers
+	 * @throws IllegalArgumentException if there are more than MAX_PATHWAYS pathways
+	 */
+	public PathwayDistanceMatrix(Map<String, Set<String>> pathwayGenes) {
+		if (pathwayGenes.size() > MAX_PATHWAYS) {
+			throw new IllegalArgumentException("Too many pathways for a distance matrix: "
+					+ pathwayGenes.size() + " (at most " + MAX_PATHWAYS + ")");
+		}
+		pathways = pathwayGenes.keySet().toArray(new String[pathwayGenes.size()]);
+		Arrays.sort(pathways);
+
+		Map<String, Integer> geneIndex = new HashMap<String, Integer>();
+		for (String pathway : pathways) {
+			for (String gene : pathwayGenes.get(pathway)) {
+				if (!geneIndex.containsKey(gene)) {
+					geneIndex.put(gene, Integer.valueOf(geneIndex.size()));
+				}
+			}
+		}
+		int words = (geneIndex.size() + 63) / 64;
+		bitsets = new long[pathways.length][words];
+		sizes = new int[pathways.length];
+		for (int i = 0; i < pathways.length; i++) {
+			for (String gene : pathwayGenes.get(pathways[i])) {
+				int g = geneIndex.get(gene).intValue();
+				bitsets[i][g >>> 6] |= 1L << (g & 63);
+			}
+			sizes[i] = pathwayGenes.get(pathways[i]).size();
+		}
+	}
+
+	/**
+	 * @return the pathway identifiers, sorted; the order of the rows
+	 */
+	public String[] getPathways() {
+		return pathways;
+	}
+
+	/**
+	 * @param threads number of threads
+	 * @return the distances packed as AverageLinkageClustering expects
+	 */
+	public double[] calculate(int threads) {
+		final int n = pathways.length;
+		// similarity index: |A and B| / min(|A|, |B|), turned into the z-scores row by row
+		final double[] profiles = new double[n * n];
+		final double[] distances = new double[AverageLinkageClustering.packedSize(n)];
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		try {
+			runByRows(executor, n, new RowTask() {
+				@Override
+				public void run(int i) {
+					long[] a = bitsets[i];
+					for (int k = 0; k <= i; k++) {
+						long[] b = bitsets[k];
+						int intersect = 0;
+						for (int w = 0; w < a.length; w++) {
+							intersect += Long.bitCount(a[w] & b[w]);
+						}
+						double value = (double) intersect / (double) Math.min(sizes[i], sizes[k]);
+						profiles[i * n + k] = value;
+						profiles[k * n + i] = value;
+					}
+				}
+			});
+			runByRows(executor, n, new RowTask() {
+				@Override
+				public void run(int i) {
+					int offset = i * n;
+					double mean = 0d;
+					for (int k = 0; k < n; k++) {
+						mean += profiles[offset + k];
+					}
+					mean /= n;
+					double norm = 0d;
+					for (int k = 0; k < n; k++) {
+						double diff = profiles[offset + k] - mean;
+						norm += diff * diff;
+					}
+					// a constant profile gives NaN correlations, as PearsonsCorrelation does
+					norm = Math.sqrt(norm);
+					for (int k = 0; k < n; k++) {
+						profiles[offset + k] = (profiles[offset + k] - mean) / norm;
+					}
+				}
+			});
+			runByRows(executor, n, new RowTask() {
+				@Override
+				public void run(int i) {
+					int offsetI = i * n;
+					for (int j = 0; j < i; j++) {
+						int offsetJ = j * n;
+						double dot = 0d;
+						for (int k = 0; k < n; k++) {
+							dot += profiles[offsetI + k] * profiles[offsetJ + k];
+						}
+						distances[AverageLinkageClustering.index(i, j)] = 1d - dot;
+					}
+				}
+			});
+		} finally {
+			executor.shutdownNow();
+		}
+		return distances;
+	}
+
+	private interface RowTask {
+		void run(int row);
+	}
+
+	private static void runByRows(ExecutorService executor, int n, final RowTask task) {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int from = 0; from < n; from += ROWS_PER_TASK) {
+			final int start = from;
+			final int end = Math.min(n, from + ROWS_PER_TASK);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = start; i < end; i++) {
+						task.run(i);
+					}
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+}
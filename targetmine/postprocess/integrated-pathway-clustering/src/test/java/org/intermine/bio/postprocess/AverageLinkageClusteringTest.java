@@ -0,0 +1,104 @@
+package org.intermine.bio.postprocess;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that PathwayDistanceMatrix and AverageLinkageClustering give the clusters of the
+ * legacy similarity index, correlation matrix and HierarchicalClustering.
+ *
+ * @author chenyian
+ */
+public class AverageLinkageClusteringTest extends TestCase
+{
+	private static final double CUT_OFF = 0.7d;
+
+	public AverageLinkageClusteringTest(String arg) {
+		super(arg);
+	}
+
+	/**
+	 * Pathways drawn from a few families of genes plus some random genes; each has a gene of
+	 * its own, so that none is a subset of another as after filterSubsets().
+	 */
+	private static Map<String, Set<String>> createPathways(long seed, int families,
+			int pathwaysPerFamily) {
+		Random random = new Random(seed);
+		Map<String, Set<String>> ret = new HashMap<String, Set<String>>();
+		for (int f = 0; f < families; f++) {
+			for (int p = 0; p < pathwaysPerFamily; p++) {
+				String pathway = "path:" + f + "_" + p;
+				Set<String> genes = new HashSet<String>();
+				genes.add(pathway);
+				for (int g = 0; g < 20; g++) {
+					if (random.nextDouble() < 0.7) {
+						genes.add("family" + f + "_" + g);
+					}
+				}
+				for (int g = random.nextInt(5); g > 0; g--) {
+					genes.add("gene" + random.nextInt(100));
+				}
+				ret.put(pathway, genes);
+			}
+		}
+		return ret;
+	}
+
+	private static void assertSameClusters(Map<String, Set<String>> pathwayGenes) {
+		HierarchicalClustering legacy = new HierarchicalClustering(IntegratedPathwayClustering
+				.calculateCorrelationMatrix(IntegratedPathwayClustering
+						.calculateSimilarityIndex(pathwayGenes)));
+		List<String> expected = legacy.clusteringByAverageLinkage(CUT_OFF);
+
+		for (int threads : new int[] {1, 4}) {
+			PathwayDistanceMatrix pdm = new PathwayDistanceMatrix(pathwayGenes);
+			AverageLinkageClustering alc = new AverageLinkageClustering(pdm.getPathways(),
+					pdm.calculate(threads));
+			assertEquals(expected, alc.clusteringByAverageLinkage(CUT_OFF));
+			List<Double> distances = alc.getDistanceList();
+			assertEquals(legacy.getDistanceList().size(), distances.size());
+			for (int i = 0; i < distances.size(); i++) {
+				assertEquals(legacy.getDistanceList().get(i).doubleValue(), distances.get(i)
+						.doubleValue(), 1e-9);
+			}
+		}
+	}
+
+	public void testFamilies() throws Exception {
+		Map<String, Set<String>> pathwayGenes = createPathways(11L, 4, 5);
+		assertSameClusters(pathwayGenes);
+		// the pathways of a family are merged, those of different families are not
+		PathwayDistanceMatrix pdm = new PathwayDistanceMatrix(pathwayGenes);
+		List<String> clusters = new AverageLinkageClustering(pdm.getPathways(), pdm
+				.calculate(1)).clusteringByAverageLinkage(CUT_OFF);
+		assertTrue(clusters.size() < pathwayGenes.size());
+		for (String cluster : clusters) {
+			String family = cluster.substring(0, cluster.indexOf('_'));
+			for (String pathway : cluster.split("=")) {
+				assertTrue(cluster, pathway.startsWith(family + "_"));
+			}
+		}
+	}
+
+	public void testRandom() throws Exception {
+		for (long seed = 1L; seed <= 5L; seed++) {
+			assertSameClusters(createPathways(seed, 3, 6));
+		}
+	}
+
+	public void testSmall() throws Exception {
+		Map<String, Set<String>> pathwayGenes = createPathways(3L, 1, 2);
+		assertSameClusters(pathwayGenes);
+		pathwayGenes.remove("path:0_1");
+		PathwayDistanceMatrix pdm = new PathwayDistanceMatrix(pathwayGenes);
+		assertEquals(0, pdm.calculate(1).length);
+		assertEquals(1, new AverageLinkageClustering(pdm.getPathways(), new double[0])
+				.clusteringByAverageLinkage(CUT_OFF).size());
+	}
+}
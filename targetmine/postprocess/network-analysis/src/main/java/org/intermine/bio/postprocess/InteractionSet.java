@@ -0,0 +1,251 @@
+package org.intermine.bio.postprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.bio.postprocess.NetworkAnalysisTool.InteractionData;
+
+/**
+ * Physical interactions of a species aggregated by gene pair while streaming the evidence
+ * rows. Genes are interned to int indexes and a pair is keyed by a packed long; per pair only
+ * the first detection method and publication are kept, with flags set when a second distinct
+ * one is seen, as only "more than one" matters for the confidence.
+ *
+ * @author chenyian
+ *
+ */
+public class InteractionSet {
+
+	private static final byte MULTIPLE_METHODS = 1;
+	private static final byte MULTIPLE_PUBLICATIONS = 2;
+	private static final byte DIRECT = 4;
+
+	private static final int NONE = -1;
+	private static final long EMPTY = -1L;
+
+	private Map<String, Integer> geneIndex = new HashMap<String, Integer>();
+	private List<String> genes = new ArrayList<String>();
+	private Map<String, Integer> methodIndex = new HashMap<String, Integer>();
+	private Map<String, Integer> publicationIndex = new HashMap<String, Integer>();
+
+	// open addressing hash table: pair key -> pair number
+	private long[] table = newTable(1 << 16);
+	private int[] tableValues = new int[1 << 16];
+
+	private int size = 0;
+	private long[] pairs = new long[1 << 15];
+	private int[] methods = new int[1 << 15];
+	private int[] publications = new int[1 << 15];
+	private byte[] flags = new byte[1 << 15];
+
+	/**
+	 * Add an evidence row.
+	 *
+	 * @param geneA gene primary identifier
+	 * @param geneB gene primary identifier
+	 * @param method detection method, null if it should not be counted
+	 * @param publication PubMed ID
+	 * @param direct whether the relationship type is a direct interaction
+	 */
+	public void add(String geneA, String geneB, String method, String publication,
+			boolean direct) {
+		int pair = getPair(key(intern(geneA), intern(geneB)));
+		if (method != null) {
+			int id = getId(methodIndex, method);
+			if (methods[pair] == NONE) {
+				methods[pair] = id;
+			} else if (methods[pair] != id) {
+				flags[pair] |= MULTIPLE_METHODS;
+			}
+		}
+		int id = getId(publicationIndex, publication);
+		if (publications[pair] == NONE) {
+			publications[pair] = id;
+		} else if (publications[pair] != id) {
+			flags[pair] |= MULTIPLE_PUBLICATIONS;
+		}
+		if (direct) {
+			flags[pair] |= DIRECT;
+		}
+	}
+
+	private int intern(String gene) {
+		Integer ret = geneIndex.get(gene);
+		if (ret == null) {
+			ret = Integer.valueOf(genes.size());
+			geneIndex.put(gene, ret);
+			genes.add(gene);
+		}
+		return ret.intValue();
+	}
+
+	private static int getId(Map<String, Integer> index, String value) {
+		Integer ret = index.get(value);
+		if (ret == null) {
+			ret = Integer.valueOf(index.size());
+			index.put(value, ret);
+		}
+		return ret.intValue();
+	}
+
+	/**
+	 * A-B and B-A are the same pair.
+	 */
+	static long key(int geneA, int geneB) {
+		if (geneA > geneB) {
+			return ((long) geneB << 32) | geneA;
+		}
+		return ((long) geneA << 32) | geneB;
+	}
+
+	private static long[] newTable(int capacity) {
+		long[] ret = new long[capacity];
+		Arrays.fill(ret, EMPTY);
+		return ret;
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * @return the pair number of the key, added if not yet there
+	 */
+	private int getPair(long key) {
+		int mask = table.length - 1;
+		int i = slot(key, mask);
+		while (table[i] != EMPTY) {
+			if (table[i] == key) {
+				return tableValues[i];
+			}
+			i = (i + 1) & mask;
+		}
+		if (size == pairs.length) {
+			int capacity = pairs.length * 2;
+			pairs = Arrays.copyOf(pairs, capacity);
+			methods = Arrays.copyOf(methods, capacity);
+			publications = Arrays.copyOf(publications, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		int pair = size++;
+		pairs[pair] = key;
+		methods[pair] = NONE;
+		publications[pair] = NONE;
+		table[i] = key;
+		tableValues[i] = pair;
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return pair;
+	}
+
+	private int findPair(long key) {
+		int mask = table.length - 1;
+		int i = slot(key, mask);
+		while (table[i] != EMPTY) {
+			if (table[i] == key) {
+				return tableValues[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	private void rehash() {
+		table = newTable(table.length * 2);
+		tableValues = new int[table.length];
+		int mask = table.length - 1;
+		for (int pair = 0; pair < size; pair++) {
+			int i = slot(pairs[pair], mask);
+			while (table[i] != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			table[i] = pairs[pair];
+			tableValues[i] = pair;
+		}
+	}
+
+	/**
+	 * @return number of distinct gene pairs
+	 */
+	public int size() {
+		return size;
+	}
+
+	public String getGene(int index) {
+		return genes.get(index);
+	}
+
+	public int getGeneCount() {
+		return genes.size();
+	}
+
+	private boolean isHighConfident(int pair) {
+		return (flags[pair] & (MULTIPLE_METHODS | MULTIPLE_PUBLICATIONS)) != 0;
+	}
+
+	private boolean isHighConfidentDirect(int pair) {
+		return isHighConfident(pair) && (flags[pair] & DIRECT) != 0;
+	}
+
+	/**
+	 * @param geneA gene primary identifier
+	 * @param geneB gene primary identifier
+	 * @return HCDP, HC or null
+	 */
+	public String getType(String geneA, String geneB) {
+		Integer a = geneIndex.get(geneA);
+		Integer b = geneIndex.get(geneB);
+		if (a == null || b == null) {
+			return null;
+		}
+		int pair = findPair(key(a.intValue(), b.intValue()));
+		if (pair == NONE || !isHighConfident(pair)) {
+			return null;
+		}
+		return isHighConfidentDirect(pair) ? "HCDP" : "HC";
+	}
+
+	/**
+	 * @param directOnly HCDP if true, otherwise HC
+	 * @return the keys of the high-confidence pairs; the gene indexes are unpacked by
+	 * getGeneA/getGeneB
+	 */
+	public long[] getPairs(boolean directOnly) {
+		long[] ret = new long[size];
+		int k = 0;
+		for (int pair = 0; pair < size; pair++) {
+			if (directOnly ? isHighConfidentDirect(pair) : isHighConfident(pair)) {
+				ret[k++] = pairs[pair];
+			}
+		}
+		return Arrays.copyOf(ret, k);
+	}
+
+	static int getGeneA(long key) {
+		return (int) (key >>> 32);
+	}
+
+	static int getGeneB(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * For the JGraphT implementation.
+	 *
+	 * @param directOnly HCDP if true, otherwise HC
+	 * @return the high-confidence pairs
+	 */
+	public Collection<InteractionData> getInteractionData(boolean directOnly) {
+		List<InteractionData> ret = new ArrayList<InteractionData>();
+		for (long key : getPairs(directOnly)) {
+			ret.add(new InteractionData(getGene(getGeneA(key)), getGene(getGeneB(key))));
+		}
+		return ret;
+	}
+}
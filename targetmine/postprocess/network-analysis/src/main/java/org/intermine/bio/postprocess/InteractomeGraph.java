@@ -0,0 +1,490 @@
+package org.intermine.bio.postprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An undirected interaction network with the genes mapped to dense int indexes and the
+ * adjacency stored as CSR arrays (offsets/neighbors), as a light replacement of the JGraphT
+ * graph of String vertices.
+ *
+ * The values are the same as those of JGraphT 1.4 used by NetworkAnalysisTool: self loops
+ * count twice in the degree, the betweenness is normalized by (n-1)(n-2) and the closeness is
+ * (n-1) / sum of the distances.
+ *
+ * @author chenyian
+ *
+ */
+public class InteractomeGraph {
+
+	// number of source vertices searched by one task; fixed so that the order of the sums does
+	// not depend on the number of threads
+	private static final int SOURCES_PER_TASK = 64;
+
+	// probability that the error bound of the estimated betweenness does not hold
+	public static final double ERROR_PROBABILITY = 0.05;
+
+	private String[] ids;
+	private int[] offsets;
+	private int[] neighbors;
+	private boolean[] loops;
+
+	private InteractomeGraph(String[] ids, int[] offsets, int[] neighbors, boolean[] loops) {
+		this.ids = ids;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		this.loops = loops;
+	}
+
+	/**
+	 * Build the graph from the high-confidence interactions.
+	 *
+	 * @param interactions the aggregated interactions of a species
+	 * @param directOnly HCDP if true, otherwise HC
+	 * @return the graph
+	 */
+	public static InteractomeGraph create(InteractionSet interactions, boolean directOnly) {
+		long[] pairs = interactions.getPairs(directOnly);
+		// only the genes of the selected pairs become vertices
+		int[] index = new int[interactions.getGeneCount()];
+		Arrays.fill(index, -1);
+		List<String> ids = new ArrayList<String>();
+		int[] sources = new int[pairs.length];
+		int[] targets = new int[pairs.length];
+		for (int e = 0; e < pairs.length; e++) {
+			sources[e] = getIndex(index, ids, interactions, InteractionSet.getGeneA(pairs[e]));
+			targets[e] = getIndex(index, ids, interactions, InteractionSet.getGeneB(pairs[e]));
+		}
+		return create(ids.toArray(new String[ids.size()]), sources, targets, pairs.length);
+	}
+
+	private static int getIndex(int[] index, List<String> ids, InteractionSet interactions,
+			int gene) {
+		if (index[gene] == -1) {
+			index[gene] = ids.size();
+			ids.add(interactions.getGene(gene));
+		}
+		return index[gene];
+	}
+
+	private static InteractomeGraph create(String[] ids, int[] sources, int[] targets, int m) {
+		int n = ids.length;
+		boolean[] loops = new boolean[n];
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < m; e++) {
+			if (sources[e] == targets[e]) {
+				loops[sources[e]] = true;
+			} else {
+				offsets[sources[e] + 1]++;
+				offsets[targets[e] + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] neighbors = new int[offsets[n]];
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int e = 0; e < m; e++) {
+			if (sources[e] != targets[e]) {
+				neighbors[next[sources[e]]++] = targets[e];
+				neighbors[next[targets[e]]++] = sources[e];
+			}
+		}
+		// sort and merge the duplicated edges
+		int[] compacted = new int[n + 1];
+		int k = 0;
+		for (int v = 0; v < n; v++) {
+			Arrays.sort(neighbors, offsets[v], offsets[v + 1]);
+			compacted[v] = k;
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				if (i == offsets[v] || neighbors[i] != neighbors[i - 1]) {
+					neighbors[k++] = neighbors[i];
+				}
+			}
+		}
+		compacted[n] = k;
+		return new InteractomeGraph(ids, compacted, Arrays.copyOf(neighbors, k), loops);
+	}
+
+	/**
+	 * @return the largest connected component as a new graph
+	 */
+	public InteractomeGraph largestComponent() {
+		int n = size();
+		int[] component = new int[n];
+		Arrays.fill(component, -1);
+		int[] queue = new int[n];
+		int largest = -1;
+		int largestSize = 0;
+		int count = 0;
+		for (int s = 0; s < n; s++) {
+			if (component[s] != -1) {
+				continue;
+			}
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = s;
+			component[s] = count;
+			while (head < tail) {
+				int v = queue[head++];
+				for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+					if (component[neighbors[i]] == -1) {
+						component[neighbors[i]] = count;
+						queue[tail++] = neighbors[i];
+					}
+				}
+			}
+			if (tail > largestSize) {
+				largestSize = tail;
+				largest = count;
+			}
+			count++;
+		}
+
+		int[] map = new int[n];
+		String[] subIds = new String[largestSize];
+		int k = 0;
+		for (int v = 0; v < n; v++) {
+			if (component[v] == largest) {
+				map[v] = k;
+				subIds[k++] = ids[v];
+			}
+		}
+		boolean[] subLoops = new boolean[largestSize];
+		int[] subOffsets = new int[largestSize + 1];
+		int[] subNeighbors = new int[neighbors.length];
+		int j = 0;
+		for (int v = 0; v < n; v++) {
+			if (component[v] == largest) {
+				subLoops[map[v]] = loops[v];
+				for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+					subNeighbors[j++] = map[neighbors[i]];
+				}
+				subOffsets[map[v] + 1] = j;
+			}
+		}
+		return new InteractomeGraph(subIds, subOffsets, Arrays.copyOf(subNeighbors, j), subLoops);
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public String getId(int v) {
+		return ids[v];
+	}
+
+	/**
+	 * @return number of edges, including the self loops
+	 */
+	public int getEdgeCount() {
+		int ret = neighbors.length / 2;
+		for (boolean loop : loops) {
+			if (loop) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param v vertex index
+	 * @return the degree; a self loop counts twice as in JGraphT
+	 */
+	public int getDegree(int v) {
+		return offsets[v + 1] - offsets[v] + (loops[v] ? 2 : 0);
+	}
+
+	/**
+	 * Brandes betweenness and closeness by one breadth-first search per source vertex.
+	 *
+	 * @return [0] betweenness, [1] closeness, indexed by vertex
+	 */
+	public double[][] calculateCentralities() {
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			return calculateCentralities(pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Brandes betweenness and closeness with the source vertices split across the pool. The
+	 * partial betweenness of the tasks are always added up in the same order, so the values
+	 * are identical whatever the parallelism.
+	 *
+	 * @param pool where to run the searches
+	 * @return [0] betweenness, [1] closeness, indexed by vertex
+	 */
+	public double[][] calculateCentralities(ForkJoinPool pool) {
+		int n = size();
+		int[] sources = new int[n];
+		for (int v = 0; v < n; v++) {
+			sources[v] = v;
+		}
+		double[] closeness = new double[n];
+		double[] betweenness = pool.invoke(new CentralityTask(sources, 0, n, closeness,
+				createBuffers())).betweenness;
+		normalizeBetweenness(betweenness);
+		return new double[][] { betweenness, closeness };
+	}
+
+	/**
+	 * Estimate the betweenness and closeness from the searches of randomly sampled pivots
+	 * (Brandes and Pich, 2007); the sums over the pivots are scaled by n / samples. With the
+	 * same seed the pivots and thus the values are the same.
+	 *
+	 * @param pool where to run the searches
+	 * @param samples number of pivots; all vertices (the exact values) if not less than n
+	 * @param seed seed of the pivot sampling
+	 * @return [0] betweenness, [1] closeness, indexed by vertex
+	 */
+	public double[][] estimateCentralities(ForkJoinPool pool, int samples, long seed) {
+		int n = size();
+		if (samples >= n) {
+			return calculateCentralities(pool);
+		}
+		// partial Fisher-Yates shuffle, then sort the pivots to keep the searches in order
+		int[] vertices = new int[n];
+		for (int v = 0; v < n; v++) {
+			vertices[v] = v;
+		}
+		Random random = new Random(seed);
+		for (int i = 0; i < samples; i++) {
+			int j = i + random.nextInt(n - i);
+			int tmp = vertices[i];
+			vertices[i] = vertices[j];
+			vertices[j] = tmp;
+		}
+		int[] pivots = Arrays.copyOf(vertices, samples);
+		Arrays.sort(pivots);
+
+		Partial partial = pool.invoke(new CentralityTask(pivots, 0, samples, null,
+				createBuffers()));
+		double scale = n / (double) samples;
+		double[] betweenness = partial.betweenness;
+		double[] closeness = new double[n];
+		for (int v = 0; v < n; v++) {
+			betweenness[v] *= scale;
+			closeness[v] = closeness(Math.round(partial.distances[v] * scale), n);
+		}
+		normalizeBetweenness(betweenness);
+		return new double[][] { betweenness, closeness };
+	}
+
+	/**
+	 * Hoeffding bound of the error of the estimated (normalized) betweenness, holding for all
+	 * vertices at once with the probability 1 - ERROR_PROBABILITY.
+	 *
+	 * @param n number of vertices
+	 * @param samples number of pivots
+	 * @return the maximum absolute error, 0 if all vertices are searched
+	 */
+	public static double getErrorBound(int n, int samples) {
+		if (samples >= n || n < 3) {
+			return 0d;
+		}
+		// a pivot contributes at most n (n-2) / ((n-1)(n-2)) to a normalized value
+		double range = n / (double) (n - 1);
+		return range * Math.sqrt(Math.log(2d * n / ERROR_PROBABILITY) / (2d * samples));
+	}
+
+	/**
+	 * @param n number of vertices
+	 * @param error target maximum absolute error of the normalized betweenness
+	 * @return number of pivots needed for the error bound, at most n
+	 */
+	public static int getSampleSize(int n, double error) {
+		if (n < 3) {
+			return n;
+		}
+		double range = n / (double) (n - 1);
+		double samples = Math.ceil(range * range * Math.log(2d * n / ERROR_PROBABILITY)
+				/ (2d * error * error));
+		return samples >= n ? n : (int) samples;
+	}
+
+	private ThreadLocal<SearchBuffer> createBuffers() {
+		final int n = size();
+		return new ThreadLocal<SearchBuffer>() {
+			@Override
+			protected SearchBuffer initialValue() {
+				return new SearchBuffer(n);
+			}
+		};
+	}
+
+	/**
+	 * Sums of the dependencies (and distances, when the closeness is estimated) of a range of
+	 * sources.
+	 */
+	private static class Partial {
+		double[] betweenness;
+		long[] distances;
+
+		void add(Partial other) {
+			for (int v = 0; v < betweenness.length; v++) {
+				betweenness[v] += other.betweenness[v];
+			}
+			if (distances != null) {
+				for (int v = 0; v < distances.length; v++) {
+					distances[v] += other.distances[v];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Search the sources[from, to) and return their sum of the dependencies. The closeness of
+	 * the sources is set if the array is given, otherwise the distances to every vertex are
+	 * summed up.
+	 */
+	private class CentralityTask extends RecursiveTask<Partial> {
+		private static final long serialVersionUID = 1L;
+
+		private int[] sources;
+		private int from;
+		private int to;
+		private double[] closeness;
+		private ThreadLocal<SearchBuffer> buffers;
+
+		CentralityTask(int[] sources, int from, int to, double[] closeness,
+				ThreadLocal<SearchBuffer> buffers) {
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+			this.closeness = closeness;
+			this.buffers = buffers;
+		}
+
+		@Override
+		protected Partial compute() {
+			int n = size();
+			if (to - from <= SOURCES_PER_TASK) {
+				Partial ret = new Partial();
+				ret.betweenness = new double[n];
+				if (closeness == null) {
+					ret.distances = new long[n];
+				}
+				SearchBuffer buffer = buffers.get();
+				for (int i = from; i < to; i++) {
+					long sum = search(sources[i], buffer, ret.betweenness, ret.distances);
+					if (closeness != null) {
+						closeness[sources[i]] = closeness(sum, n);
+					}
+				}
+				return ret;
+			}
+			int middle = from + (to - from) / 2;
+			CentralityTask left = new CentralityTask(sources, from, middle, closeness, buffers);
+			CentralityTask right = new CentralityTask(sources, middle, to, closeness, buffers);
+			left.fork();
+			Partial ret = right.compute();
+			Partial leftSum = left.join();
+			leftSum.add(ret);
+			return leftSum;
+		}
+	}
+
+	/**
+	 * Run a breadth-first search from the source and add its dependencies to the
+	 * betweenness.
+	 *
+	 * @param distances if not null, the distances from the source are added to it
+	 * @return sum of the distances from the source
+	 */
+	long search(int source, SearchBuffer buffer, double[] betweenness, long[] distances) {
+		int[] distance = buffer.distance;
+		double[] sigma = buffer.sigma;
+		double[] delta = buffer.delta;
+		int[] order = buffer.order;
+
+		int head = 0;
+		int tail = 0;
+		long sum = 0;
+		order[tail++] = source;
+		distance[source] = 0;
+		sigma[source] = 1d;
+		while (head < tail) {
+			int v = order[head++];
+			sum += distance[v];
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				int w = neighbors[i];
+				if (distance[w] < 0) {
+					distance[w] = distance[v] + 1;
+					order[tail++] = w;
+				}
+				if (distance[w] == distance[v] + 1) {
+					sigma[w] += sigma[v];
+				}
+			}
+		}
+
+		// accumulate the dependencies in the reverse order of the distances
+		for (int k = tail - 1; k >= 0; k--) {
+			int w = order[k];
+			for (int i = offsets[w]; i < offsets[w + 1]; i++) {
+				int v = neighbors[i];
+				if (distance[v] == distance[w] - 1) {
+					delta[v] += sigma[v] / sigma[w] * (1d + delta[w]);
+				}
+			}
+			if (w != source) {
+				betweenness[w] += delta[w];
+			}
+		}
+
+		// reset only the touched entries for the next source
+		for (int k = 0; k < tail; k++) {
+			int v = order[k];
+			if (distances != null) {
+				distances[v] += distance[v];
+			}
+			distance[v] = -1;
+			sigma[v] = 0d;
+			delta[v] = 0d;
+		}
+		return sum;
+	}
+
+	static double closeness(long sum, int n) {
+		return (n - 1) / (double) sum;
+	}
+
+	/**
+	 * Each pair is counted from both ends in an undirected graph; JGraphT halves the sums and
+	 * NetworkAnalysisTool doubles them back, so only the (n-1)(n-2) normalization is applied.
+	 */
+	void normalizeBetweenness(double[] betweenness) {
+		int n = size();
+		double factor = (n - 1) * (double) (n - 2);
+		if (factor != 0) {
+			for (int v = 0; v < n; v++) {
+				betweenness[v] /= factor;
+			}
+		}
+	}
+
+	/**
+	 * Reusable arrays of a breadth-first search, one per thread.
+	 */
+	static class SearchBuffer {
+		int[] distance;
+		double[] sigma;
+		double[] delta;
+		int[] order;
+
+		SearchBuffer(int n) {
+			distance = new int[n];
+			Arrays.fill(distance, -1);
+			sigma = new double[n];
+			delta = new double[n];
+			order = new int[n];
+		}
+	}
+}
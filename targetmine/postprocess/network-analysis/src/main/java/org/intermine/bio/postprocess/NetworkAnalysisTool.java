@@ -21,6 +21,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -62,8 +68,14 @@ public class NetworkAnalysisTool extends PostProcessor {
 
 	private static final int CUT_OFF_PERCENTAGE = 10; // top 10 percent as bottle and hub
 
+	private static final int FETCH_SIZE = 10000;
+
+	private static final String PROPERTIES_FILE = "network-analysis.properties";
+
 	private Model model;
 
+	private PostProcessProperties properties = new PostProcessProperties(PROPERTIES_FILE);
+
 	public NetworkAnalysisTool(ObjectStoreWriter osw) {
 		super(osw);
 		model = Model.getInstanceByName("genomic");
@@ -99,144 +111,195 @@ public class NetworkAnalysisTool extends PostProcessor {
 		System.out.println("Spent " + (currentTime[i] - currentTime[i - 1]) / 1000 + " seconds");
 		i++;
 
+		int parallelism = properties.getPositiveIntProperty("network.parallelism", Runtime
+				.getRuntime().availableProcessors());
+		int speciesThreads = properties.getPositiveIntProperty("network.species.threads", 1);
+		System.out.println("Using " + parallelism + " threads for the centralities, " + speciesThreads
+				+ " species at once.");
+
 		List<String> species = Arrays.asList("9606", "10090", "10116");
-		for (String taxonId : species) {
-
-			Collection<InteractionData> interactions = getPhysicalInteractions(taxonId);
-
-			Iterator<InteractionData> iterator = interactions.iterator();
-			Set<InteractionData> hcdp = new HashSet<InteractionData>();
-			Set<InteractionData> hc = new HashSet<InteractionData>();
-			// distinguish HC, HCDP
-			while (iterator.hasNext()) {
-				InteractionData intData = iterator.next();
-				if (intData.isHighConfident()) {
-					hc.add(intData);
-					if (intData.hasDirectInt) {
-						hcdp.add(intData);
-					}
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		ExecutorService executor = null;
+		try {
+			// the networks are analysed concurrently but always stored one by one in this order
+			List<Future<SpeciesNetwork>> futures = new ArrayList<Future<SpeciesNetwork>>();
+			if (speciesThreads > 1) {
+				executor = Executors.newFixedThreadPool(speciesThreads);
+				for (final String taxonId : species) {
+					futures.add(executor.submit(new Callable<SpeciesNetwork>() {
+						@Override
+						public SpeciesNetwork call() {
+							return analyseSpecies(taxonId, pool);
+						}
+					}));
 				}
 			}
-			System.out.println("HCDP contains " + hcdp.size() + " interactions (" + taxonId + ").");
-			System.out.println("HC contains " + hc.size() + " interactions (" + taxonId + ").");
-
-			Graph<String, DefaultEdge> hcdplcc = findLargestConnectiveNetwork(hcdp);
-			System.out.println("HCDPLCC contains " + hcdplcc.edgeSet().size() + " interactions ("
-					+ taxonId + ").");
-			Graph<String, DefaultEdge> hclcc = findLargestConnectiveNetwork(hc);
-			System.out.println("HCLCC contains " + hclcc.edgeSet().size() + " interactions ("
-					+ taxonId + ").");
-
-			Results intResults = queryInteractionByTaxonId(taxonId);
-			System.out.println("There are " + intResults.size() + " interactions (" + taxonId
-					+ ").");
-
-			Set<String> hcdpPairs = getInteractionPairs(hcdp);
-			Set<String> hcPairs = getInteractionPairs(hc);
+			for (int k = 0; k < species.size(); k++) {
+				SpeciesNetwork network = executor == null ? analyseSpecies(species.get(k), pool)
+						: getResult(futures.get(k));
 
-			Iterator<?> resIter = intResults.iterator();
-			try {
-				osw.beginTransaction();
-				int x = 0;
-				int y = 0;
-				while (resIter.hasNext()) {
-					ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
-					InterMineObject interaction = (InterMineObject) rr.get(0);
-					InterMineObject gene1 = (InterMineObject) rr.get(1);
-					InterMineObject gene2 = (InterMineObject) rr.get(2);
-					String gene1Id = (String) gene1.getFieldValue("primaryIdentifier");
-					String gene2Id = (String) gene2.getFieldValue("primaryIdentifier");
-					InterMineObject item = (InterMineObject) DynamicUtil.simpleCreateObject(model
-							.getClassDescriptorByName("InteractionConfidence").getType());
-					if (hcdpPairs.contains(gene1Id + "-" + gene2Id)
-							|| hcdpPairs.contains(gene2Id + "-" + gene1Id)) {
-						item.setFieldValue("type", "HCDP");
-						x++;
-					} else if (hcPairs.contains(gene1Id + "-" + gene2Id)
-							|| hcPairs.contains(gene2Id + "-" + gene1Id)) {
-						item.setFieldValue("type", "HC");
-						y++;
-					} else {
-						continue;
-					}
-					item.setFieldValue("interaction", interaction);
-					item.setFieldValue("dataSet", dataSet);
-					osw.store(item);
-				}
-				System.out.println("There are " + x + " interactions tag with HCDP. (" + taxonId + ").");
-				System.out.println("There are " + y + " interactions tag with HC. (" + taxonId + ").");
-				osw.commitTransaction();
-
-				// For tracing
 				currentTime[i] = System.currentTimeMillis();
 				System.out.println("Spent " + (currentTime[i] - currentTime[i - 1]) / 1000 + " seconds");
 				i++;
 
-				System.out.println("calculateNetworkProperties(hcdplcc)...");
-
-				Map<String, NetworkData> hcdplccNp = calculateNetworkProperties(hcdplcc);
+				storeSpeciesNetwork(network, dataSet);
 
 				// For tracing
 				currentTime[i] = System.currentTimeMillis();
 				System.out.println("Spent " + (currentTime[i] - currentTime[i - 1]) / 1000 + " seconds");
 				i++;
+			}
+		} finally {
+			pool.shutdown();
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
 
-				Set<String> geneIds = hcdplccNp.keySet();
-
-				System.out
-						.println("Querying by " + geneIds.size() + " gene IDs (" + taxonId + ").");
-				Results geneResults = queryGenesByGeneIdList(geneIds);
-				System.out.println("Retrieve " + geneResults.size() + " genes (" + taxonId + ").");
-
-				osw.beginTransaction();
-
-				Iterator<?> geneIter = geneResults.iterator();
-				while (geneIter.hasNext()) {
-					ResultsRow<?> rr = (ResultsRow<?>) geneIter.next();
-					InterMineObject gene = (InterMineObject) rr.get(0);
-					String geneId = (String) gene.getFieldValue("primaryIdentifier");
-					NetworkData hcdpData = hcdplccNp.get(geneId);
-					if (hcdpData != null) {
-						InterMineObject item = (InterMineObject) DynamicUtil
-								.simpleCreateObject(model.getClassDescriptorByName(
-										"NetworkProperty").getType());
-						item.setFieldValue("networkType", "HCDPLCC");
-						item.setFieldValue("isBottleneck", hcdpData.isBottleneck());
-						item.setFieldValue("isHub", hcdpData.isHub());
-						item.setFieldValue("betweenness", hcdpData.getBetweenness());
-						item.setFieldValue("closeness", hcdpData.getCloseness());
-						item.setFieldValue("degree", hcdpData.getDegree());
-						item.setFieldValue("gene", gene);
-
-						osw.store(item);
-					}
-				}
-				osw.commitTransaction();
-
-				// For tracing
-				currentTime[i] = System.currentTimeMillis();
-				System.out.println("Spent " + (currentTime[i] - currentTime[i - 1]) / 1000 + " seconds");
-				i++;
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
 
-			} catch (ObjectStoreException e) {
-				e.printStackTrace();
-			}
+	/**
+	 * Read the interactions of the species and calculate the network properties of the HCDPLCC;
+	 * nothing is stored here, so it may run for several species at once.
+	 */
+	private SpeciesNetwork analyseSpecies(String taxonId, ForkJoinPool pool) {
+		long start = System.currentTimeMillis();
+		InteractionSet interactions = getPhysicalInteractions(taxonId);
+
+		System.out.println("HCDP contains " + interactions.getPairs(true).length
+				+ " interactions (" + taxonId + ").");
+		System.out.println("HC contains " + interactions.getPairs(false).length
+				+ " interactions (" + taxonId + ").");
+
+		System.out.println("calculateNetworkProperties(hcdplcc) (" + taxonId + ")...");
+
+		Map<String, NetworkData> hcdplccNp;
+		// "jgrapht" runs the original JGraphT implementation, e.g. to verify the values
+		if ("jgrapht".equals(properties.getProperty("network.engine"))) {
+			Graph<String, DefaultEdge> hcdplcc = findLargestConnectiveNetwork(interactions
+					.getInteractionData(true));
+			System.out.println("HCDPLCC contains " + hcdplcc.edgeSet().size() + " interactions ("
+					+ taxonId + ").");
+			Graph<String, DefaultEdge> hclcc = findLargestConnectiveNetwork(interactions
+					.getInteractionData(false));
+			System.out.println("HCLCC contains " + hclcc.edgeSet().size() + " interactions ("
+					+ taxonId + ").");
+			hcdplccNp = calculateNetworkProperties(hcdplcc);
+		} else {
+			InteractomeGraph hcdplcc = InteractomeGraph.create(interactions, true)
+					.largestComponent();
+			System.out.println("HCDPLCC contains " + hcdplcc.getEdgeCount() + " interactions ("
+					+ taxonId + ").");
+			InteractomeGraph hclcc = InteractomeGraph.create(interactions, false)
+					.largestComponent();
+			System.out.println("HCLCC contains " + hclcc.getEdgeCount() + " interactions ("
+					+ taxonId + ").");
+			hcdplccNp = calculateNetworkProperties(hcdplcc, pool);
 		}
+		System.out.println("Analysed the network of " + taxonId + " in "
+				+ (System.currentTimeMillis() - start) / 1000 + " seconds");
+
+		return new SpeciesNetwork(taxonId, interactions, hcdplccNp);
 	}
 
-	private Set<String> getInteractionPairs(Set<InteractionData> hcppi) {
-		Set<String> ret = new HashSet<String>();
-		for (InteractionData data : hcppi) {
-			List<String> genes = data.getGenes();
-			if (genes.size() == 2) {
-				// A-B, B-A have already been filtered
-				ret.add(genes.get(0) + "-" + genes.get(1));
-			} else {
-				throw new RuntimeException("Invalid InteractionData" + data);
+	private void storeSpeciesNetwork(SpeciesNetwork network, InterMineObject dataSet)
+			throws IllegalAccessException {
+		String taxonId = network.taxonId;
+		Results intResults = queryInteractionByTaxonId(taxonId);
+		System.out.println("There are " + intResults.size() + " interactions (" + taxonId
+				+ ").");
+
+		Iterator<?> resIter = intResults.iterator();
+		try {
+			osw.beginTransaction();
+			int x = 0;
+			int y = 0;
+			while (resIter.hasNext()) {
+				ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
+				InterMineObject interaction = (InterMineObject) rr.get(0);
+				InterMineObject gene1 = (InterMineObject) rr.get(1);
+				InterMineObject gene2 = (InterMineObject) rr.get(2);
+				String gene1Id = (String) gene1.getFieldValue("primaryIdentifier");
+				String gene2Id = (String) gene2.getFieldValue("primaryIdentifier");
+				String type = network.interactions.getType(gene1Id, gene2Id);
+				if (type == null) {
+					continue;
+				}
+				InterMineObject item = (InterMineObject) DynamicUtil.simpleCreateObject(model
+						.getClassDescriptorByName("InteractionConfidence").getType());
+				item.setFieldValue("type", type);
+				if (type.equals("HCDP")) {
+					x++;
+				} else {
+					y++;
+				}
+				item.setFieldValue("interaction", interaction);
+				item.setFieldValue("dataSet", dataSet);
+				osw.store(item);
+			}
+			System.out.println("There are " + x + " interactions tag with HCDP. (" + taxonId + ").");
+			System.out.println("There are " + y + " interactions tag with HC. (" + taxonId + ").");
+			osw.commitTransaction();
+
+			Map<String, NetworkData> hcdplccNp = network.hcdplccNp;
+			Set<String> geneIds = hcdplccNp.keySet();
+
+			System.out
+					.println("Querying by " + geneIds.size() + " gene IDs (" + taxonId + ").");
+			Results geneResults = queryGenesByGeneIdList(geneIds);
+			System.out.println("Retrieve " + geneResults.size() + " genes (" + taxonId + ").");
+
+			osw.beginTransaction();
+
+			Iterator<?> geneIter = geneResults.iterator();
+			while (geneIter.hasNext()) {
+				ResultsRow<?> rr = (ResultsRow<?>) geneIter.next();
+				InterMineObject gene = (InterMineObject) rr.get(0);
+				String geneId = (String) gene.getFieldValue("primaryIdentifier");
+				NetworkData hcdpData = hcdplccNp.get(geneId);
+				if (hcdpData != null) {
+					InterMineObject item = (InterMineObject) DynamicUtil
+							.simpleCreateObject(model.getClassDescriptorByName(
+									"NetworkProperty").getType());
+					item.setFieldValue("networkType", "HCDPLCC");
+					item.setFieldValue("isBottleneck", hcdpData.isBottleneck());
+					item.setFieldValue("isHub", hcdpData.isHub());
+					item.setFieldValue("betweenness", hcdpData.getBetweenness());
+					item.setFieldValue("closeness", hcdpData.getCloseness());
+					item.setFieldValue("degree", hcdpData.getDegree());
+					item.setFieldValue("gene", gene);
+
+					osw.store(item);
+				}
 			}
+			osw.commitTransaction();
+
+		} catch (ObjectStoreException e) {
+			e.printStackTrace();
 		}
+	}
 
-		return ret;
+	private static class SpeciesNetwork {
+		private String taxonId;
+		private InteractionSet interactions;
+		private Map<String, NetworkData> hcdplccNp;
+
+		SpeciesNetwork(String taxonId, InteractionSet interactions,
+				Map<String, NetworkData> hcdplccNp) {
+			this.taxonId = taxonId;
+			this.interactions = interactions;
+			this.hcdplccNp = hcdplccNp;
+		}
 	}
 
 	private Results queryInteractionByTaxonId(String taxonId) {
@@ -293,19 +356,27 @@ public class NetworkAnalysisTool extends PostProcessor {
 	}
 
 
-	public Collection<InteractionData> getPhysicalInteractions(String taxonId) {
+	/**
+	 * Aggregate the physical interaction evidences of the species by gene pair in one pass;
+	 * the rows are streamed, so the memory depends on the number of distinct pairs only.
+	 */
+	public InteractionSet getPhysicalInteractions(String taxonId) {
 		if (directMiTerms == null || directMiTerms.isEmpty()) {
 			throw new RuntimeException("the direct MI term should be read first!");
 		}
 
-		Map<String, InteractionData> interactionMap = new HashMap<String, InteractionData>();
+		InteractionSet interactions = new InteractionSet();
 		if (osw instanceof ObjectStoreWriterInterMineImpl) {
 			Database db = ((ObjectStoreWriterInterMineImpl) osw).getDatabase();
 			Connection connection;
 			try {
 				connection = db.getConnection();
+				// PostgreSQL only uses a cursor with a fetch size outside auto-commit mode
+				boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
 
 				Statement statement = connection.createStatement();
+				statement.setFetchSize(FETCH_SIZE);
 				// TODO check if CCSB data is excluded; theoretically details without experiment and publication will be excluded...  
 				ResultSet resultSet = statement
 						.executeQuery("select g1.primaryidentifier, g2.primaryidentifier, rtype.identifier, dm.identifier, dm.name, pub.pubmedid "
@@ -333,26 +404,14 @@ public class NetworkAnalysisTool extends PostProcessor {
 					String method = resultSet.getString(4);
 					String desc = resultSet.getString(5);
 					String pubmedId = resultSet.getString(6);
-					InteractionData intData = interactionMap.get(geneA + "-" + geneB);
-					if (intData == null) {
-						intData = interactionMap.get(geneB + "-" + geneA);
-						if (intData == null) {
-							intData = new InteractionData(geneA, geneB);
-							interactionMap.put(geneA + "-" + geneB, intData);
-						}
-					}
-
-					if (desc != null && desc != "") {
-						intData.addMethod(method);
-					}
-					intData.addType(type);
-					intData.addPubmedId(pubmedId);
-					if (directMiTerms.contains(type)) {
-						intData.setDirectInt();
-					}
+					interactions.add(geneA, geneB, desc != null ? method : null, pubmedId,
+							directMiTerms.contains(type));
 				}
 
+				resultSet.close();
 				statement.close();
+				connection.commit();
+				connection.setAutoCommit(autoCommit);
 				connection.close();
 
 			} catch (SQLException e) {
@@ -364,7 +423,8 @@ public class NetworkAnalysisTool extends PostProcessor {
 					+ "ObjectStoreWriterInterMineImpl");
 		}
 
-		return interactionMap.values();
+		System.out.println("Aggregated " + interactions.size() + " gene pairs (" + taxonId + ").");
+		return interactions;
 	}
 
 	private Set<String> directMiTerms = new HashSet<String>();
@@ -390,7 +450,7 @@ public class NetworkAnalysisTool extends PostProcessor {
 
 	}
 
-	private static Graph<String,DefaultEdge> findLargestConnectiveNetwork(Collection<InteractionData> data) {
+	static Graph<String,DefaultEdge> findLargestConnectiveNetwork(Collection<InteractionData> data) {
 		Graph<String, DefaultEdge> graph = generateNetworkGraph(data);
 		
 		ConnectivityInspector<String, DefaultEdge> inspector = new ConnectivityInspector<>(graph);
@@ -436,7 +496,7 @@ public class NetworkAnalysisTool extends PostProcessor {
 		return simpleGraph;
 	}
 
-	private static Map<String, NetworkData> calculateNetworkProperties(Graph<String,DefaultEdge> graph) {
+	static Map<String, NetworkData> calculateNetworkProperties(Graph<String,DefaultEdge> graph) {
 		Collection<String> vertices = graph.vertexSet();
 		Set<String> geneIds = new HashSet<String>();
 		for (String id : vertices) {
@@ -456,18 +516,127 @@ public class NetworkAnalysisTool extends PostProcessor {
 		
 		System.out.println("done.");
 
-		int n = graph.vertexSet().size();
-		int pos = n - n / CUT_OFF_PERCENTAGE;
-
-		List<Integer> allDegree = new ArrayList<Integer>();
-		List<Double> allBetweenness = new ArrayList<Double>();
 		Map<String, NetworkData> ret = new HashMap<String, NetworkData>();
 		for (String id : geneIds) {
 			// TODO somehow the value calculated by JGraphT is a half of the commonly accept value, thus we multiply 2 here 
 			Double b = bc.getVertexScore(id) * 2d;
 			ret.put(id, new NetworkData(id, graph.degreeOf(id), b, cc.getVertexScore(id)));
-			allBetweenness.add(b);
-			allDegree.add(graph.degreeOf(id));
+		}
+		setBottlenecksAndHubs(ret);
+		return ret;
+	}
+
+	private Map<String, NetworkData> calculateNetworkProperties(InteractomeGraph graph,
+			ForkJoinPool pool) {
+		int n = graph.size();
+		System.out.println("Found " + n + " genes in hcdplcc.");
+
+		if (!"approximate".equals(properties.getProperty("network.betweenness"))) {
+			System.out.println("calculating BetweennessCentrality and ClosenessCentrality ...");
+
+			double[][] centralities = graph.calculateCentralities(pool);
+
+			System.out.println("done.");
+
+			return createNetworkData(graph, centralities);
+		}
+
+		int samples = properties.getIntProperty("network.betweenness.samples", 0);
+		if (samples <= 0) {
+			samples = InteractomeGraph.getSampleSize(n, properties.getDoubleProperty(
+					"network.betweenness.error", 0.05d));
+		}
+		double bound = InteractomeGraph.getErrorBound(n, samples);
+		System.out.println("estimating BetweennessCentrality and ClosenessCentrality by " + samples
+				+ " of " + n + " pivots ...");
+
+		double[][] centralities = graph.estimateCentralities(pool, samples,
+				properties.getIntProperty("network.betweenness.seed", 1));
+
+		System.out.println("done; the betweenness error is at most " + formatValue(bound)
+				+ " with probability " + (1d - InteractomeGraph.ERROR_PROBABILITY) + ".");
+
+		Map<String, NetworkData> ret = createNetworkData(graph, centralities);
+		if ("true".equals(properties.getProperty("network.betweenness.compare"))) {
+			compareWithExact(graph, pool, ret, bound);
+		}
+		return ret;
+	}
+
+	/**
+	 * Report how far the approximate values are from the exact ones, so that the number of
+	 * pivots can be chosen with evidence. The approximate values are kept.
+	 */
+	private void compareWithExact(InteractomeGraph graph, ForkJoinPool pool,
+			Map<String, NetworkData> approximate, double bound) {
+		System.out.println("calculating the exact BetweennessCentrality for comparison ...");
+		Map<String, NetworkData> exact = createNetworkData(graph, graph.calculateCentralities(pool));
+
+		BetweennessComparison comparison = new BetweennessComparison(exact, approximate);
+		String report = String.format("Approximate vs exact betweenness: %d of %d bottleneck labels"
+				+ " differ (%d of %d exact bottlenecks missed); max error %s, mean error %s,"
+				+ " bound %s.", comparison.differ, exact.size(), comparison.missed,
+				comparison.bottlenecks, formatValue(comparison.maxError),
+				formatValue(comparison.sumError / exact.size()), formatValue(bound));
+		System.out.println(report);
+		LOG.info(report);
+	}
+
+	/**
+	 * The differences of the approximate betweenness and bottleneck labels from the exact ones.
+	 */
+	static class BetweennessComparison {
+		int differ = 0;
+		int missed = 0;
+		int bottlenecks = 0;
+		double maxError = 0d;
+		double sumError = 0d;
+
+		BetweennessComparison(Map<String, NetworkData> exact,
+				Map<String, NetworkData> approximate) {
+			for (NetworkData exactData : exact.values()) {
+				NetworkData data = approximate.get(exactData.getGeneId());
+				if (exactData.isBottleneck().booleanValue()) {
+					bottlenecks++;
+				}
+				if (!exactData.isBottleneck().equals(data.isBottleneck())) {
+					differ++;
+					if (exactData.isBottleneck().booleanValue()) {
+						missed++;
+					}
+				}
+				double error = Math.abs(exactData.getBetweenness() - data.getBetweenness());
+				maxError = Math.max(maxError, error);
+				sumError += error;
+			}
+		}
+	}
+
+	static Map<String, NetworkData> createNetworkData(InteractomeGraph graph,
+			double[][] centralities) {
+		Map<String, NetworkData> ret = new HashMap<String, NetworkData>();
+		for (int v = 0; v < graph.size(); v++) {
+			String id = graph.getId(v);
+			ret.put(id, new NetworkData(id, graph.getDegree(v), centralities[0][v],
+					centralities[1][v]));
+		}
+		setBottlenecksAndHubs(ret);
+		return ret;
+	}
+
+	/**
+	 * Mark the top CUT_OFF_PERCENTAGE of the genes by betweenness as bottlenecks and by degree
+	 * as hubs.
+	 */
+	private static void setBottlenecksAndHubs(Map<String, NetworkData> ret) {
+		int n = ret.size();
+		int pos = n - n / CUT_OFF_PERCENTAGE;
+
+		List<Integer> allDegree = new ArrayList<Integer>();
+		List<Double> allBetweenness = new ArrayList<Double>();
+		for (NetworkData data : ret.values()) {
+			allBetweenness.add(data.getBetweenness());
+			allDegree.add(data.getDegree());
 		}
 		Collections.sort(allDegree);
 		Collections.sort(allBetweenness);
@@ -482,7 +651,6 @@ public class NetworkAnalysisTool extends PostProcessor {
 				ret.get(key).setAsHub();
 			}
 		}
-		return ret;
 	}
 
 	public static class NetworkData {
@@ -0,0 +1,239 @@
+package org.intermine.bio.postprocess;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.intermine.bio.postprocess.NetworkAnalysisTool.BetweennessComparison;
+import org.intermine.bio.postprocess.NetworkAnalysisTool.NetworkData;
+
+/**
+ * Tests that the int-indexed InteractomeGraph gives the degree, betweenness, closeness,
+ * bottlenecks and hubs of the original JGraphT implementation, and tests the sampled
+ * betweenness and its error bound.
+ *
+ * @author chenyian
+ */
+public class NetworkAnalysisToolTest extends TestCase
+{
+	public NetworkAnalysisToolTest(String arg) {
+		super(arg);
+	}
+
+	/**
+	 * A connected network of 40 genes with a self loop and a second, smaller component; a pair
+	 * is high-confidence when reported by two publications and direct for every other one.
+	 */
+	private static InteractionSet createInteractions() {
+		InteractionSet ret = new InteractionSet();
+		Random random = new Random(7);
+		int pair = 0;
+		for (int i = 1; i <= 40; i++) {
+			for (int j = i + 1; j <= 40; j++) {
+				// a chain keeps the network connected
+				if (j == i + 1 || random.nextDouble() < 0.08) {
+					addHighConfident(ret, "G" + i, "G" + j, pair++ % 2 == 0);
+				}
+			}
+		}
+		// B-A is the pair A-B
+		addHighConfident(ret, "G12", "G3", true);
+		addHighConfident(ret, "G5", "G5", true);
+		addHighConfident(ret, "H1", "H2", true);
+		addHighConfident(ret, "H2", "H3", true);
+		// one method and one publication: not high-confidence
+		ret.add("G1", "L1", "MI:0018", "1", true);
+		ret.add("G1", "L1", "MI:0018", "1", true);
+		return ret;
+	}
+
+	/**
+	 * A connected network of the genes: a chain and random high-confidence interactions.
+	 */
+	private static InteractionSet createRandomInteractions(int genes, double p, long seed) {
+		InteractionSet ret = new InteractionSet();
+		Random random = new Random(seed);
+		for (int i = 1; i <= genes; i++) {
+			for (int j = i + 1; j <= genes; j++) {
+				if (j == i + 1 || random.nextDouble() < p) {
+					addHighConfident(ret, "G" + i, "G" + j, true);
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static void addHighConfident(InteractionSet interactions, String geneA,
+			String geneB, boolean direct) {
+		interactions.add(geneA, geneB, "MI:0018", "1", direct);
+		interactions.add(geneA, geneB, null, "2", false);
+	}
+
+	private static void assertSameData(Map<String, NetworkData> expected,
+			Map<String, NetworkData> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		for (NetworkData data : expected.values()) {
+			String id = data.getGeneId();
+			NetworkData other = actual.get(id);
+			assertEquals(id, data.getDegree(), other.getDegree());
+			assertEquals(id, data.getBetweenness().doubleValue(), other.getBetweenness()
+					.doubleValue(), 1e-12);
+			assertEquals(id, data.getCloseness().doubleValue(), other.getCloseness()
+					.doubleValue(), 1e-12);
+			assertEquals(id, data.isBottleneck(), other.isBottleneck());
+			assertEquals(id, data.isHub(), other.isHub());
+		}
+	}
+
+	private static void assertSameAsJGraphT(InteractionSet interactions, boolean directOnly) {
+		Map<String, NetworkData> expected = NetworkAnalysisTool.calculateNetworkProperties(
+				NetworkAnalysisTool.findLargestConnectiveNetwork(interactions
+						.getInteractionData(directOnly)));
+		InteractomeGraph graph = InteractomeGraph.create(interactions, directOnly)
+				.largestComponent();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertSameData(expected, NetworkAnalysisTool.createNetworkData(graph, graph
+					.calculateCentralities()));
+			assertSameData(expected, NetworkAnalysisTool.createNetworkData(graph, graph
+					.calculateCentralities(pool)));
+			// as many pivots as genes are the exact values
+			assertSameData(expected, NetworkAnalysisTool.createNetworkData(graph, graph
+					.estimateCentralities(pool, graph.size(), 1L)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testHighConfidentDirect() throws Exception {
+		InteractionSet interactions = createInteractions();
+		InteractomeGraph graph = InteractomeGraph.create(interactions, true).largestComponent();
+		// some of the chain is not direct: the largest component is a part of the genes
+		assertTrue(graph.size() < 40);
+		assertSameAsJGraphT(interactions, true);
+	}
+
+	public void testHighConfident() throws Exception {
+		InteractionSet interactions = createInteractions();
+		InteractomeGraph graph = InteractomeGraph.create(interactions, false).largestComponent();
+		assertEquals(40, graph.size());
+		assertSameAsJGraphT(interactions, false);
+
+		Map<String, NetworkData> data = NetworkAnalysisTool.createNetworkData(graph, graph
+				.calculateCentralities());
+		assertFalse(data.containsKey("H1"));
+		assertFalse(data.containsKey("L1"));
+		// the self loop counts twice, besides G4 and G6 of the chain
+		assertTrue(data.get("G5").getDegree().intValue() >= 4);
+	}
+
+	public void testErrorBound() throws Exception {
+		// all the vertices searched, or too few vertices for a betweenness
+		assertEquals(0d, InteractomeGraph.getErrorBound(100, 100), 0d);
+		assertEquals(0d, InteractomeGraph.getErrorBound(100, 200), 0d);
+		assertEquals(0d, InteractomeGraph.getErrorBound(2, 1), 0d);
+		// n / (n - 1) * sqrt(ln(2n / 0.05) / 2s)
+		assertEquals(0.291048284, InteractomeGraph.getErrorBound(101, 50), 1e-9);
+		assertEquals(0.230421788, InteractomeGraph.getErrorBound(1001, 100), 1e-9);
+		// more pivots, a smaller bound
+		assertTrue(InteractomeGraph.getErrorBound(1001, 200) < InteractomeGraph.getErrorBound(
+				1001, 100));
+	}
+
+	public void testSampleSize() throws Exception {
+		assertEquals(2, InteractomeGraph.getSampleSize(2, 0.05d));
+		assertEquals(761, InteractomeGraph.getSampleSize(100000, 0.1d));
+		assertEquals(87523, InteractomeGraph.getSampleSize(1000000, 0.01d));
+		// not more than the vertices
+		assertEquals(1001, InteractomeGraph.getSampleSize(1001, 0.05d));
+		// the fewest pivots within the error
+		int samples = InteractomeGraph.getSampleSize(100000, 0.05d);
+		assertEquals(3041, samples);
+		assertTrue(InteractomeGraph.getErrorBound(100000, samples) <= 0.05d);
+		assertTrue(InteractomeGraph.getErrorBound(100000, samples - 1) > 0.05d);
+	}
+
+	public void testEstimateCentralities() throws Exception {
+		InteractomeGraph graph = InteractomeGraph.create(createRandomInteractions(300, 0.01d,
+				11L), true).largestComponent();
+		int n = graph.size();
+		assertEquals(300, n);
+		int samples = 120;
+		double bound = InteractomeGraph.getErrorBound(n, samples);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			double[][] exact = graph.calculateCentralities(pool);
+			double[][] estimate = graph.estimateCentralities(pool, samples, 3L);
+			boolean sampled = false;
+			double exactSum = 0d;
+			double estimateSum = 0d;
+			for (int v = 0; v < n; v++) {
+				assertEquals(graph.getId(v), exact[0][v], estimate[0][v], bound);
+				sampled |= exact[0][v] != estimate[0][v];
+				exactSum += exact[0][v];
+				estimateSum += estimate[0][v];
+			}
+			assertTrue(sampled);
+			// the sums over the pivots are scaled to all the vertices
+			assertEquals(exactSum, estimateSum, exactSum * 0.05d);
+
+			// the same pivots with the same seed, whatever the parallelism
+			ForkJoinPool single = new ForkJoinPool(1);
+			try {
+				double[][] sequential = graph.estimateCentralities(single, samples, 3L);
+				for (int v = 0; v < n; v++) {
+					assertEquals(estimate[0][v], sequential[0][v], 0d);
+					assertEquals(estimate[1][v], sequential[1][v], 0d);
+				}
+			} finally {
+				single.shutdown();
+			}
+
+			BetweennessComparison comparison = new BetweennessComparison(
+					NetworkAnalysisTool.createNetworkData(graph, exact),
+					NetworkAnalysisTool.createNetworkData(graph, estimate));
+			assertTrue(comparison.maxError <= bound);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static NetworkData createData(String id, double betweenness, boolean bottleneck) {
+		NetworkData ret = new NetworkData(id, Integer.valueOf(1), Double.valueOf(betweenness),
+				Double.valueOf(1d));
+		if (bottleneck) {
+			ret.setAsBottleneck();
+		}
+		return ret;
+	}
+
+	public void testBetweennessComparison() throws Exception {
+		Map<String, NetworkData> exact = new HashMap<String, NetworkData>();
+		Map<String, NetworkData> approximate = new HashMap<String, NetworkData>();
+		for (NetworkData data : new NetworkData[] {createData("A", 0.5d, true),
+				createData("B", 0.3d, true), createData("C", 0.1d, false),
+				createData("D", 0d, false)}) {
+			exact.put(data.getGeneId(), data);
+		}
+		// B is missed and C is a false bottleneck
+		for (NetworkData data : new NetworkData[] {createData("A", 0.4d, true),
+				createData("B", 0.1d, false), createData("C", 0.2d, true),
+				createData("D", 0d, false)}) {
+			approximate.put(data.getGeneId(), data);
+		}
+		BetweennessComparison comparison = new BetweennessComparison(exact, approximate);
+		assertEquals(2, comparison.differ);
+		assertEquals(1, comparison.missed);
+		assertEquals(2, comparison.bottlenecks);
+		assertEquals(0.2d, comparison.maxError, 1e-12);
+		assertEquals(0.4d, comparison.sumError, 1e-12);
+
+		comparison = new BetweennessComparison(exact, exact);
+		assertEquals(0, comparison.differ);
+		assertEquals(0, comparison.missed);
+		assertEquals(0d, comparison.maxError, 0d);
+	}
+}
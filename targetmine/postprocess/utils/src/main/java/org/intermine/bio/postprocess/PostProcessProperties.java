@@ -0,0 +1,103 @@
+package org.intermine.bio.postprocess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The settings of a postprocess, read from its properties file (e.g. network-analysis.properties)
+ * on the classpath. A missing file, a missing value or an invalid value gives the default.
+ *
+ * @author chenyian
+ */
+public class PostProcessProperties
+{
+	private static final Logger LOG = LogManager.getLogger(PostProcessProperties.class);
+
+	private String fileName;
+	private Properties properties = new Properties();
+
+	/**
+	 * @param fileName the name of the properties file
+	 */
+	public PostProcessProperties(String fileName) {
+		this.fileName = fileName;
+		try (InputStream is = PostProcessProperties.class.getClassLoader().getResourceAsStream(
+				fileName)) {
+			if (is == null) {
+				LOG.warn(fileName + " not found, use the default settings.");
+				return;
+			}
+			properties.load(is);
+		} catch (IOException e) {
+			LOG.error("Failed to read " + fileName, e);
+		}
+	}
+
+	/**
+	 * @param name the name of a property
+	 * @return the value, or null if not set
+	 */
+	public String getProperty(String name) {
+		return properties.getProperty(name);
+	}
+
+	/**
+	 * @param name the name of a property
+	 * @param defaultValue the value if not set or invalid
+	 * @return the value
+	 */
+	public int getIntProperty(String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			warnInvalid(name, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param name the name of a property, e.g. a number of threads
+	 * @param defaultValue the value if not set, invalid or less than 1
+	 * @return the value
+	 */
+	public int getPositiveIntProperty(String name, int defaultValue) {
+		int ret = getIntProperty(name, defaultValue);
+		if (ret < 1) {
+			warnInvalid(name, String.valueOf(ret), defaultValue);
+			return defaultValue;
+		}
+		return ret;
+	}
+
+	/**
+	 * @param name the name of a property
+	 * @param defaultValue the value if not set or invalid
+	 * @return the value
+	 */
+	public double getDoubleProperty(String name, double defaultValue) {
+		String value = properties.getProperty(name);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			warnInvalid(name, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private void warnInvalid(String name, String value, Object defaultValue) {
+		LOG.warn("Invalid value of " + name + " in " + fileName + ": " + value + ", use "
+				+ defaultValue);
+	}
+}
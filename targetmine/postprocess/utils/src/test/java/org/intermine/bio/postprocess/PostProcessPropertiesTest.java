@@ -0,0 +1,45 @@
+package org.intermine.bio.postprocess;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of the values and defaults of PostProcessProperties.
+ *
+ * @author chenyian
+ */
+public class PostProcessPropertiesTest extends TestCase
+{
+	public PostProcessPropertiesTest(String arg) {
+		super(arg);
+	}
+
+	public void testProperties() throws Exception {
+		PostProcessProperties properties = new PostProcessProperties(
+				"postprocess-utils-test.properties");
+		assertEquals("legacy", properties.getProperty("engine"));
+		assertNull(properties.getProperty("missing"));
+		assertEquals(8, properties.getIntProperty("threads", 1));
+		assertEquals(500, properties.getIntProperty("batch.size", 1));
+		assertEquals(0.05d, properties.getDoubleProperty("error", 1d), 0d);
+		assertEquals(8d, properties.getDoubleProperty("threads", 1d), 0d);
+		// a missing, blank or invalid value gives the default
+		assertEquals(1, properties.getIntProperty("missing", 1));
+		assertEquals(1, properties.getIntProperty("blank", 1));
+		assertEquals(1, properties.getIntProperty("invalid", 1));
+		assertEquals(1, properties.getIntProperty("error", 1));
+		assertEquals(1d, properties.getDoubleProperty("invalid", 1d), 0d);
+		// as well as a value less than 1 where a positive one is expected
+		assertEquals(8, properties.getPositiveIntProperty("threads", 1));
+		assertEquals(2, properties.getPositiveIntProperty("invalid", 2));
+		assertEquals(2, properties.getPositiveIntProperty("zero", 2));
+		assertEquals(2, properties.getPositiveIntProperty("negative", 2));
+		assertEquals(-1, properties.getIntProperty("negative", 2));
+	}
+
+	public void testMissingFile() throws Exception {
+		PostProcessProperties properties = new PostProcessProperties("missing.properties");
+		assertNull(properties.getProperty("threads"));
+		assertEquals(4, properties.getIntProperty("threads", 4));
+		assertEquals(0.5d, properties.getDoubleProperty("error", 0.5d), 0d);
+	}
+}
@@ -7,6 +7,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.web.logic.DisplayerCache;
 import org.intermine.model.InterMineObject;
 import org.intermine.web.displayer.ReportDisplayer;
 import org.intermine.web.logic.config.ReportDisplayerConfig;
@@ -35,6 +36,12 @@ public class BioActivityGraphDisplayer extends ReportDisplayer {
 	@SuppressWarnings("unchecked")
 	@Override
 	public void display(HttpServletRequest request, ReportObject reportObject) {
+    /* the same graph for every visitor of the compound within a release */
+    DisplayerCache cache = DisplayerCache.getInstance(request);
+    if( cache.restore(request, this, reportObject.getId()) ){
+      return;
+    }
+    long start = System.currentTimeMillis();
     ArrayList<String> data = new ArrayList<String>();
 
 		InterMineObject compound = (InterMineObject) reportObject.getObject();
@@ -85,6 +92,8 @@ public class BioActivityGraphDisplayer extends ReportDisplayer {
       /* fill the resulting table with the corresponding values */
       request.setAttribute("compound", identifier);
       request.setAttribute("data", data);
+      cache.store(request, this, reportObject.getId(), System.currentTimeMillis() - start,
+          "compound", "data");
 
     } // try
     catch(IllegalAccessException e){
@@ -15,7 +15,9 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.web.logic.ReportPrefetcher;
 import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.web.displayer.ReportDisplayer;
 import org.intermine.web.logic.config.ReportDisplayerConfig;
 import org.intermine.web.logic.results.ReportObject;
@@ -25,15 +27,20 @@ public class GeneDiseaseDisplayer extends ReportDisplayer {
 	
 	private static final List<String> IGNORED_DISEASE_NAMES = Arrays.asList("not specified", "not provided"); 
 
+	private static final String[] PREFETCH_PATHS = new String[] {"snps.function",
+			"snps.snp.frequencies.dataSet", "snps.snp.frequencies.population",
+			"snps.snp.alleles.variations.publications", "snps.snp.alleles.variations.diseaseTerms",
+			"snps.snp.genomeWideAssociations.efoTerms", "diseases.dataSet"};
+
 	public GeneDiseaseDisplayer(ReportDisplayerConfig config, InterMineAPI im) {
 		super(config, im);
 		// TODO Auto-generated constructor stub
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void display(HttpServletRequest request, ReportObject reportObject) {
 		InterMineObject gene = (InterMineObject) reportObject.getObject();
+		ReportPrefetcher prefetcher = ReportPrefetcher.getInstance(request, im);
 		
 		HashSet<String> ignoredDiseaseNames = new HashSet<String>(IGNORED_DISEASE_NAMES);
 		
@@ -46,20 +53,26 @@ public class GeneDiseaseDisplayer extends ReportDisplayer {
 		List<InterMineObject> others = new ArrayList<InterMineObject>(); // so far only OMIM?
 		
 		try {
-			Set<InterMineObject> snps = (Set<InterMineObject>) gene.getFieldValue("snps");
+			prefetcher.prefetch(gene, PREFETCH_PATHS);
+		} catch (ObjectStoreException e) {
+			LOG.error("Failed to prefetch the diseases of " + gene.getId(), e);
+		}
+
+		try {
+			Set<InterMineObject> snps = prefetcher.getCollection(gene, "snps");
 			for (InterMineObject vaItem : snps) {
-				String fc = (String) ((InterMineObject) vaItem.getFieldValue("function")).getFieldValue("name");
-				InterMineObject snp = (InterMineObject) vaItem.getFieldValue("snp");
+				String fc = (String) prefetcher.getReference(vaItem, "function").getFieldValue("name");
+				InterMineObject snp = prefetcher.getReference(vaItem, "snp");
 				String snpId = (String) snp.getFieldValue("identifier");
-				Set<InterMineObject> genomeWideAssociations = (Set<InterMineObject>) snp.getFieldValue("genomeWideAssociations");
+				Set<InterMineObject> genomeWideAssociations = prefetcher.getCollection(snp, "genomeWideAssociations");
 				
-				Set<InterMineObject> frequencies = (Set<InterMineObject>) snp.getFieldValue("frequencies");
+				Set<InterMineObject> frequencies = prefetcher.getCollection(snp, "frequencies");
 				Map<String, String> freqMap = new HashMap<String, String>();
 				for (InterMineObject freqItem : frequencies) {
 					String allele = (String) freqItem.getFieldValue("allele");
 					Float frequency = (Float) freqItem.getFieldValue("frequency");
-					String dataSetCode = (String) ((InterMineObject) freqItem.getFieldValue("dataSet")).getFieldValue("code");
-					String popCode = (String) ((InterMineObject) freqItem.getFieldValue("population")).getFieldValue("code");
+					String dataSetCode = (String) prefetcher.getReference(freqItem, "dataSet").getFieldValue("code");
+					String popCode = (String) prefetcher.getReference(freqItem, "population").getFieldValue("code");
 					String key = String.format("%s, %s", popCode, dataSetCode);
 					String freqString = String.format("%s: %.2f", allele, frequency);
 					freqMap.put(key, freqString);
@@ -84,16 +97,16 @@ public class GeneDiseaseDisplayer extends ReportDisplayer {
 				snpInfoMap.put(snpId, Arrays.asList(String.format("<a href=\"report.do?id=%s\">%s</a>", snp.getId(), snpId), 
 						fc, String.format("<a href=\"report.do?id=%s\">%s</a>", snp.getId(), maf)));
 				
-				Set<InterMineObject> alleles = (Set<InterMineObject>) snp.getFieldValue("alleles");
+				Set<InterMineObject> alleles = prefetcher.getCollection(snp, "alleles");
 				Set<String> csSet = new HashSet<String>();
 				for (InterMineObject allele : alleles) {
 					String cs = (String) allele.getFieldValue("clinicalSignificance");
 					csSet.add(String.format("<a href=\"report.do?id=%s\">%s</a>", allele.getId().toString(), cs));
-					Set<InterMineObject> variations = (Set<InterMineObject>) allele.getFieldValue("variations");
+					Set<InterMineObject> variations = prefetcher.getCollection(allele, "variations");
 					for (InterMineObject var : variations) {
-						Set<InterMineObject> publications = (Set<InterMineObject>) var.getFieldValue("publications");
+						Set<InterMineObject> publications = prefetcher.getCollection(var, "publications");
 						String numPub = String.format("<a href=\"report.do?id=%s\">%d</a>", var.getId().toString(), publications.size());
-						Set<InterMineObject> diseaseTerms = (Set<InterMineObject>) var.getFieldValue("diseaseTerms");
+						Set<InterMineObject> diseaseTerms = prefetcher.getCollection(var, "diseaseTerms");
 						for (InterMineObject dt : diseaseTerms) {
 							String diseaseTitle = (String) dt.getFieldValue("name");
 							if (ignoredDiseaseNames.contains(diseaseTitle)) {
@@ -112,7 +125,7 @@ public class GeneDiseaseDisplayer extends ReportDisplayer {
 				for (InterMineObject gwasItem : genomeWideAssociations) {
 					Double pvalue = (Double) gwasItem.getFieldValue("pvalue");
 					String pvalueString = String.format("<a href=\"report.do?id=%s\">%s</a>", gwasItem.getId().toString(), pvalue.toString());
-					Set<InterMineObject> efoTerms = (Set<InterMineObject>) gwasItem.getFieldValue("efoTerms");
+					Set<InterMineObject> efoTerms = prefetcher.getCollection(gwasItem, "efoTerms");
 					for (InterMineObject efot : efoTerms) {
 						String name = (String) efot.getFieldValue("name");
 						if (diseasePvalueMap.get(name) == null) {
@@ -137,9 +150,9 @@ public class GeneDiseaseDisplayer extends ReportDisplayer {
 				
 			}
 			// process diseases
-			Set<InterMineObject> diseases = (Set<InterMineObject>) gene.getFieldValue("diseases");
+			Set<InterMineObject> diseases = prefetcher.getCollection(gene, "diseases");
 			for (InterMineObject disease : diseases) {
-				InterMineObject dataSet  = (InterMineObject) disease.getFieldValue("dataSet");
+				InterMineObject dataSet  = prefetcher.getReference(disease, "dataSet");
 				String dataSetName = (String) dataSet.getFieldValue("name");
 				if (dataSetName.equals("DisGeNET")) {
 					disgenet.add(disease);
@@ -13,7 +13,9 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.web.logic.ReportPrefetcher;
 import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.web.displayer.ReportDisplayer;
 import org.intermine.web.logic.config.ReportDisplayerConfig;
 import org.intermine.web.logic.results.ReportObject;
@@ -21,31 +23,41 @@ import org.intermine.web.logic.results.ReportObject;
 public class GeneDiseasePairDisplayer extends ReportDisplayer {
 	protected static final Logger LOG = Logger.getLogger(GeneDiseasePairDisplayer.class);
 
+	private static final String[] PREFETCH_PATHS = new String[] {"geneDiseasePairs.diseaseTerm",
+			"geneDiseasePairs.gwas", "geneDiseasePairs.alleles", "geneDiseasePairs.publications",
+			"geneDiseasePairs.snps", "diseases.dataSet"};
+
 	public GeneDiseasePairDisplayer(ReportDisplayerConfig config, InterMineAPI im) {
 		super(config, im);
 		// TODO Auto-generated constructor stub
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void display(HttpServletRequest request, ReportObject reportObject) {
 		InterMineObject gene = (InterMineObject) reportObject.getObject();
+		ReportPrefetcher prefetcher = ReportPrefetcher.getInstance(request, im);
 		
 		List<Map<String, String>> ret = new ArrayList<Map<String,String>>();
 		List<InterMineObject> disgenet = new ArrayList<InterMineObject>();
 		List<InterMineObject> others = new ArrayList<InterMineObject>(); // so far only OMIM?
 		
+		try {
+			prefetcher.prefetch(gene, PREFETCH_PATHS);
+		} catch (ObjectStoreException e) {
+			LOG.error("Failed to prefetch the diseases of " + gene.getId(), e);
+		}
+
 		try {
 			String geneSymbol = (String) gene.getFieldValue("symbol");
 			
-			Set<InterMineObject> geneDiseasePairs = (Set<InterMineObject>) gene.getFieldValue("geneDiseasePairs");
+			Set<InterMineObject> geneDiseasePairs = prefetcher.getCollection(gene, "geneDiseasePairs");
 			for (InterMineObject gdItem : geneDiseasePairs) {
 				Map<String,String> entryInfo = new HashMap<String, String>();
-				InterMineObject diseaseTerm = (InterMineObject) gdItem.getFieldValue("diseaseTerm");
+				InterMineObject diseaseTerm = prefetcher.getReference(gdItem, "diseaseTerm");
 				String name = (String) diseaseTerm.getFieldValue("name");
 				entryInfo.put("diseaseColumn", String.format("<a href=\"report.do?id=%s\">%s - %s</a>", gdItem.getId().toString(), name, geneSymbol));
 				
-				Set<InterMineObject> gwasItems = (Set<InterMineObject>) gdItem.getFieldValue("gwas");
+				Set<InterMineObject> gwasItems = prefetcher.getCollection(gdItem, "gwas");
 				if (gwasItems != null) {
 					List<String> list = new ArrayList<String>();
 					for (InterMineObject gwas : gwasItems) {
@@ -54,7 +66,7 @@ public class GeneDiseasePairDisplayer extends ReportDisplayer {
 					}
 					entryInfo.put("gwasColumn", StringUtils.join(list, ", "));
 				}
-				Set<InterMineObject> alleles = (Set<InterMineObject>) gdItem.getFieldValue("alleles");
+				Set<InterMineObject> alleles = prefetcher.getCollection(gdItem, "alleles");
 				if (alleles != null) {
 //					List<String> list = new ArrayList<String>();
 //					for (InterMineObject allele : alleles) {
@@ -81,14 +93,14 @@ public class GeneDiseasePairDisplayer extends ReportDisplayer {
 					entryInfo.put("diseaseMeshColumn", "-");
 				}
 				
-				Set<InterMineObject> publications = (Set<InterMineObject>) gdItem.getFieldValue("publications");
+				Set<InterMineObject> publications = prefetcher.getCollection(gdItem, "publications");
 				if (publications != null) {
 					entryInfo.put("pubCountColumn", String.valueOf(publications.size()));
 				} else {
 					entryInfo.put("pubCountColumn", "0");
 				}
 				
-				Set<InterMineObject> snps = (Set<InterMineObject>) gdItem.getFieldValue("snps");
+				Set<InterMineObject> snps = prefetcher.getCollection(gdItem, "snps");
 //				Set<String> pubmedIdSet = new HashSet<String>();
 //				for (InterMineObject snp : snps) {
 //					Set<InterMineObject> snpPubs = (Set<InterMineObject>) snp.getFieldValue("publications");
@@ -105,9 +117,9 @@ public class GeneDiseasePairDisplayer extends ReportDisplayer {
 			}
 			
 			// process diseases
-			Set<InterMineObject> diseases = (Set<InterMineObject>) gene.getFieldValue("diseases");
+			Set<InterMineObject> diseases = prefetcher.getCollection(gene, "diseases");
 			for (InterMineObject disease : diseases) {
-				InterMineObject dataSet  = (InterMineObject) disease.getFieldValue("dataSet");
+				InterMineObject dataSet  = prefetcher.getReference(disease, "dataSet");
 				String dataSetName = (String) dataSet.getFieldValue("name");
 				if (dataSetName.equals("DisGeNET")) {
 					disgenet.add(disease);
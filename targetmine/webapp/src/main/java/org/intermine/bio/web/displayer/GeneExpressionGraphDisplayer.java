@@ -7,6 +7,9 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.web.expression.ExpressionMatrixStore;
+import org.intermine.bio.web.expression.GeneExpressionMatrix;
+import org.intermine.bio.web.logic.DisplayerCache;
 import org.intermine.model.InterMineObject;
 import org.intermine.model.bio.Gene;
 import org.intermine.model.bio.ProbeSet;
@@ -46,6 +49,12 @@ public class GeneExpressionGraphDisplayer extends ReportDisplayer{
   @SuppressWarnings("unchecked")
   @Override
   public void display(HttpServletRequest request, ReportObject reportObject){
+    // the same graph for every visitor of the gene within a release
+    DisplayerCache cache = DisplayerCache.getInstance(request);
+    if( cache.restore(request, this, reportObject.getId()) ){
+      return;
+    }
+    long start = System.currentTimeMillis();
 
     // A list of data elements that we will forward to Javascript for the
     // definition of the graph
@@ -56,7 +65,6 @@ public class GeneExpressionGraphDisplayer extends ReportDisplayer{
       "name\t"+
       "call\t"+
       "value";
-    String row; // we will use this to add elements to the data array
     data.add(header);
 
     // logger.error("header\n"+header);
@@ -65,58 +73,80 @@ public class GeneExpressionGraphDisplayer extends ReportDisplayer{
     // InterMineObject gene = (InterMineObject) reportObject.getObject();
 
     try{
-      // A gene has a collection of ProbeSet objects associated, we need to
-      // process each probe in order to display its values
-      Set<ProbeSet> probeSets = (Set<ProbeSet>) gene.getFieldValue("probeSets");
-      for( ProbeSet ps: probeSets ){
-
-        // Each probeSet has a collection of Expression objects associated, we
-        // process each individually
-        Set<Expression> expressions = (Set<Expression>) ps.getFieldValue("expressions");
-        for( Expression exp: expressions ){
-        	//logger.error("class name: " + exp.getClass().getName());	
-        	if (!exp.getClass().getName().equals("org.intermine.model.bio.HbiExpressionShadow")) {
-        		continue;
-        	}
-
-          String probeID = (String)ps.getFieldValue("probeSetId");
-          // For each expression value, we need to store the following information
-          // tissue (hbiTissue)
-          // |-- category (String)
-          // |-- organ (String)
-          // |-- name (String)
-          // call (String <enum>['P', 'A', 'M'])
-          // value (float)
-          Tissue tissue = (HbiTissue) exp.getFieldValue("tissue");
-          String category = (String) tissue.getFieldValue("category");
-          String organ = (String) tissue.getFieldValue("organ");
-          String name = (String) tissue.getFieldValue("name");
-          // the char '/' cant be part of css selectors, so we replace it for '-'
-          category = category.replaceAll("/","-");
-          organ = organ.replaceAll("/","-");
-          name = name.replaceAll("/","-");
-
-          String call = (String) exp.getFieldValue("call");
-          float value = (Float) exp.getFieldValue("value");
-
-          row = probeID+"\t";
-          row += (category+"\t");
-          row += (organ+"\t");
-          row += (name+"\t");
-          row += (call+"\t");
-          row += value;
-
-          data.add(row);
-        }
-
+      // the matrix precomputed by the create-expression-matrix postprocess, if it has run
+      GeneExpressionMatrix matrix = ExpressionMatrixStore.getInstance(im).getMatrix(reportObject.getId());
+      if( matrix != null ){
+        matrix.addRows(data);
+      }
+      else{
+        addExpressionRows(gene, data);
       }
       /* fill the resulting table with the data */
       request.setAttribute("gene", (String) gene.getFieldValue("ncbiGeneId"));
       request.setAttribute("data", data);
+      cache.store(request, this, reportObject.getId(), System.currentTimeMillis() - start,
+          "gene", "data");
 
     } //try
     catch(IllegalAccessException e){
       logger.error(e.getMessage());
     }
   }
+
+  /**
+   * Read the expression values of a gene from the expression tables, one
+   * query per probe set and expression
+   *
+   * @param gene
+   * @param data
+   */
+  @SuppressWarnings("unchecked")
+  private void addExpressionRows(Gene gene, ArrayList<String> data) throws IllegalAccessException{
+    String row; // we will use this to add elements to the data array
+    // A gene has a collection of ProbeSet objects associated, we need to
+    // process each probe in order to display its values
+    Set<ProbeSet> probeSets = (Set<ProbeSet>) gene.getFieldValue("probeSets");
+    for( ProbeSet ps: probeSets ){
+
+      // Each probeSet has a collection of Expression objects associated, we
+      // process each individually
+      Set<Expression> expressions = (Set<Expression>) ps.getFieldValue("expressions");
+      for( Expression exp: expressions ){
+      	//logger.error("class name: " + exp.getClass().getName());	
+      	if (!exp.getClass().getName().equals("org.intermine.model.bio.HbiExpressionShadow")) {
+      		continue;
+      	}
+
+        String probeID = (String)ps.getFieldValue("probeSetId");
+        // For each expression value, we need to store the following information
+        // tissue (hbiTissue)
+        // |-- category (String)
+        // |-- organ (String)
+        // |-- name (String)
+        // call (String <enum>['P', 'A', 'M'])
+        // value (float)
+        Tissue tissue = (HbiTissue) exp.getFieldValue("tissue");
+        String category = (String) tissue.getFieldValue("category");
+        String organ = (String) tissue.getFieldValue("organ");
+        String name = (String) tissue.getFieldValue("name");
+        // the char '/' cant be part of css selectors, so we replace it for '-'
+        category = category.replaceAll("/","-");
+        organ = organ.replaceAll("/","-");
+        name = name.replaceAll("/","-");
+
+        String call = (String) exp.getFieldValue("call");
+        float value = (Float) exp.getFieldValue("value");
+
+        row = probeID+"\t";
+        row += (category+"\t");
+        row += (organ+"\t");
+        row += (name+"\t");
+        row += (call+"\t");
+        row += value;
+
+        data.add(row);
+      }
+
+    }
+  }
 }
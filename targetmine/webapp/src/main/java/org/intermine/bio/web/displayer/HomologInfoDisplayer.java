@@ -12,9 +12,11 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.web.logic.DisplayerCache;
+import org.intermine.bio.web.logic.ReportPrefetcher;
 import org.intermine.model.InterMineObject;
 import org.intermine.model.bio.Gene;
-import org.intermine.model.bio.Protein;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.web.displayer.ReportDisplayer;
 import org.intermine.web.logic.config.ReportDisplayerConfig;
 import org.intermine.web.logic.results.ReportObject;
@@ -34,6 +36,8 @@ public class HomologInfoDisplayer extends ReportDisplayer {
 		ORGANISM_ORDER_MAP.put("7955", 9);
 		ORGANISM_ORDER_MAP.put("7227", 10);
 	}
+	private static final String[] PREFETCH_PATHS = new String[] {"proteins.orthologProteins.genes",
+			"homology.genes.organism", "homology.dataSet"};
 	private static final Map<String, String> DATA_SET_DISPLAY_NAME_MAP = new HashMap<String, String>();
 	{
 		DATA_SET_DISPLAY_NAME_MAP.put("Gene", "Orthologs from Annotation Pipeline");
@@ -53,35 +57,49 @@ public class HomologInfoDisplayer extends ReportDisplayer {
 		super(config, im);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void display(HttpServletRequest request, ReportObject reportObject) {
+		DisplayerCache cache = DisplayerCache.getInstance(request);
+		if (cache.restore(request, this, reportObject.getId())) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+
 		Gene gene = (Gene) reportObject.getObject();
+		final ReportPrefetcher prefetcher = ReportPrefetcher.getInstance(request, im);
+		boolean prefetched = true;
+		try {
+			prefetcher.prefetch(gene, PREFETCH_PATHS);
+		} catch (ObjectStoreException e) {
+			LOG.error("Failed to prefetch the homologs of " + gene.getId(), e);
+			prefetched = false;
+		}
+
 		Map<String, Gene> allOrthologs = new HashMap<String, Gene>();
 		try {
 			// bi-directional best hit
-			Set<Protein> proteins = gene.getProteins();
-			for (Protein protein : proteins) {
-				Set<Protein> orthologs = protein.getOrthologProteins();
-				for (Protein ortholog : orthologs) {
-					Set<Gene> genes = ortholog.getGenes();
-					for (Gene entry : genes) {
-						allOrthologs.put(entry.getPrimaryIdentifier(), entry);
+			Set<InterMineObject> proteins = prefetcher.getCollection(gene, "proteins");
+			for (InterMineObject protein : proteins) {
+				Set<InterMineObject> orthologs = prefetcher.getCollection(protein, "orthologProteins");
+				for (InterMineObject ortholog : orthologs) {
+					Set<InterMineObject> genes = prefetcher.getCollection(ortholog, "genes");
+					for (InterMineObject entry : genes) {
+						allOrthologs.put(((Gene) entry).getPrimaryIdentifier(), (Gene) entry);
 					}
 				}
 			}
 			request.setAttribute("orthologs", allOrthologs.values());
 
 			// homology
-			Set<InterMineObject> homology = (Set<InterMineObject>) gene.getFieldValue("homology");
+			Set<InterMineObject> homology = prefetcher.getCollection(gene, "homology");
 			Map<InterMineObject, List<String>> dataSetMap = new HashMap<InterMineObject, List<String>>();
 			for (InterMineObject entry : homology) {
-				Set<Gene> genes = (Set<Gene>) entry.getFieldValue("genes");
-				String dataSetName = (String) ((InterMineObject) entry.getFieldValue("dataSet"))
+				Set<InterMineObject> genes = prefetcher.getCollection(entry, "genes");
+				String dataSetName = (String) prefetcher.getReference(entry, "dataSet")
 						.getFieldValue("name");
-				for (Gene ortholog : genes) {
+				for (InterMineObject ortholog : genes) {
 					// itself, skip
-					if (gene.getPrimaryIdentifier().equals(ortholog.getPrimaryIdentifier())) {
+					if (gene.getPrimaryIdentifier().equals(((Gene) ortholog).getPrimaryIdentifier())) {
 						continue;
 					}
 					if (dataSetMap.get(ortholog) == null) {
@@ -120,10 +138,10 @@ public class HomologInfoDisplayer extends ReportDisplayer {
 				@Override
 				public int compare(InterMineObject o1, InterMineObject o2) {
 					try {
-						String taxonId1 = (String) ((InterMineObject) o1
-								.getFieldValue("organism")).getFieldValue("taxonId");
-						String taxonId2 = (String) ((InterMineObject) o2
-								.getFieldValue("organism")).getFieldValue("taxonId");
+						String taxonId1 = (String) prefetcher.getReference(o1, "organism")
+								.getFieldValue("taxonId");
+						String taxonId2 = (String) prefetcher.getReference(o2, "organism")
+								.getFieldValue("taxonId");
 //						LOG.info(String.format("taxonId1: %d, taxonId2: %d", taxonId1, taxonId2));
 //						LOG.info(String.format("taxonId1_idx: %d, taxonId2_idx: %d",
 //								ORGANISM_ORDER_MAP.get(taxonId1),
@@ -148,6 +166,11 @@ public class HomologInfoDisplayer extends ReportDisplayer {
 
 			request.setAttribute("retHomologyMap", retHomologyMap);
 			request.setAttribute("retHomologyList", retHomologyList);
+			// read lazily after a failed prefetch, not cached in case the database is failing
+			if (prefetched) {
+				cache.store(request, this, reportObject.getId(), System.currentTimeMillis() - start,
+						"orthologs", "retHomologyMap", "retHomologyList");
+			}
 
 		} catch (IllegalAccessException e) {
 			LOG.error(e.getMessage());
@@ -14,6 +14,7 @@ import org.intermine.api.profile.Profile;
 import org.intermine.api.query.PathQueryExecutor;
 import org.intermine.api.results.ExportResultsIterator;
 import org.intermine.api.results.ResultElement;
+import org.intermine.bio.web.logic.DisplayerCache;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
 import org.intermine.model.bio.BioEntity;
@@ -80,6 +81,11 @@ public class TmGeneOntologyDisplayer extends ReportDisplayer
 
     @Override
     public void display(HttpServletRequest request, ReportObject reportObject) {
+        DisplayerCache cache = DisplayerCache.getInstance(request);
+        if (cache.restore(request, this, reportObject.getId())) {
+            return;
+        }
+        long start = System.currentTimeMillis();
         Profile profile = SessionMethods.getProfile(request.getSession());
 
         // noGoMessage
@@ -150,6 +156,8 @@ public class TmGeneOntologyDisplayer extends ReportDisplayer
             request.setAttribute("goTerms", goTermsByOntology);
             request.setAttribute("codes", EVIDENCE_CODES);
         }
+        cache.store(request, this, reportObject.getId(), System.currentTimeMillis() - start,
+                "noGoMessage", "goTerms", "codes");
     }
 
     private static void addToOntologyMap(
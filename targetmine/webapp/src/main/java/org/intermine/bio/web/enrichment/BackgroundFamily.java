@@ -0,0 +1,186 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.intermine.metadata.Model;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * The annotation families whose backgrounds are calculated by the calculate-biotheme-background
+ * postprocess (CalculateBioThemeBackground). For each family, the annotation query of an entity
+ * type and a taxon, and the Statistics identifiers and dataSet values of its backgrounds.
+ *
+ * As in the postprocess, the proteins and probe sets are annotated through their genes and the
+ * taxon is the one of the genes.
+ *
+ * @author chenyian
+ */
+public enum BackgroundFamily
+{
+    /**
+     * GO terms and their parents, IEA annotations excluded; the groups are the name spaces.
+     */
+    GO("GOAnnotation", Arrays.asList("biological_process", "molecular_function",
+            "cellular_component"), "goAnnotation.ontologyTerm.parents") {
+        @Override
+        String getDataSet(String group) {
+            return getOntologyDataSet("GO", group);
+        }
+
+        @Override
+        PathQuery getAnnotationQuery(Model model, String type, String taxonId) {
+            return getOntologyQuery(model, type, taxonId, termPath);
+        }
+    },
+
+    /**
+     * GOSlim terms and their parents, IEA annotations excluded; the groups are the name spaces.
+     */
+    GOSLIM("GOSlim", Arrays.asList("biological_process", "molecular_function",
+            "cellular_component"), "goAnnotation.goSlimTerms.parents") {
+        @Override
+        String getDataSet(String group) {
+            return getOntologyDataSet("GOS", group);
+        }
+
+        @Override
+        PathQuery getAnnotationQuery(Model model, String type, String taxonId) {
+            return getOntologyQuery(model, type, taxonId, termPath);
+        }
+    },
+
+    /**
+     * Pathways; the groups are the data sets and "All" stands for all the pathways.
+     */
+    PATHWAY("Pathway", Arrays.asList("All", "KEGG Pathway", "Reactome",
+            "NCI Pathway Interaction Database"), "pathways") {
+        @Override
+        String getDataSet(String group) {
+            return group;
+        }
+
+        @Override
+        PathQuery getAnnotationQuery(Model model, String type, String taxonId) {
+            String prefix = getGenePrefix(type);
+            PathQuery q = new PathQuery(model);
+            q.addViews(type + ".id", prefix + termPath + ".identifier",
+                    prefix + termPath + ".name", prefix + termPath + ".dataSets.name");
+            q.addConstraint(Constraints.eq(prefix + "organism.taxonId", taxonId));
+            return q;
+        }
+    },
+
+    /**
+     * Tissues in which a probe set of the gene is expressed (BioGPS barcode 3.0).
+     */
+    TISSUE("Tissue", Collections.singletonList("barcode3"), "probeSets.expressions.tissue") {
+        @Override
+        String getDataSet(String group) {
+            return group;
+        }
+
+        @Override
+        PathQuery getAnnotationQuery(Model model, String type, String taxonId) {
+            if (!"Gene".equals(type)) {
+                throw new IllegalArgumentException("Tissue backgrounds are only calculated for"
+                        + " genes: " + type);
+            }
+            PathQuery q = new PathQuery(model);
+            q.addViews("Gene.id", "Gene." + termPath + ".identifier",
+                    "Gene." + termPath + ".name");
+            q.addConstraint(Constraints.eq("Gene.probeSets.expressions.isExpressed", "true"));
+            q.addConstraint(Constraints.eq("Gene.organism.taxonId", taxonId));
+            return q;
+        }
+    };
+
+    /**
+     * The group standing for every term of the family.
+     */
+    public static final String ALL = "All";
+
+    // the root terms are not counted by the postprocess
+    private static final List<String> ROOT_TERMS = Arrays.asList("GO:0008150", "GO:0003674",
+            "GO:0005575");
+
+    private final String category;
+    private final List<String> groups;
+    protected final String termPath;
+
+    BackgroundFamily(String category, List<String> groups, String termPath) {
+        this.category = category;
+        this.groups = groups;
+        this.termPath = termPath;
+    }
+
+    /**
+     * @return the groups (widget filters) of the family, the first one is the default
+     */
+    public List<String> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the Statistics identifier of the population size
+     */
+    public String getPopulationIdentifier() {
+        return category + " N";
+    }
+
+    /**
+     * @return the Statistics identifier of the number of tested terms
+     */
+    public String getTestNumberIdentifier() {
+        return category + " test number";
+    }
+
+    /**
+     * @param group a group of the family
+     * @return the Statistics dataSet value of the group
+     */
+    abstract String getDataSet(String group);
+
+    /**
+     * The views are the entity id, the term identifier, the term name and, if there are several
+     * groups, the group of the term.
+     *
+     * @param model the model
+     * @param type Gene, Protein or ProbeSet
+     * @param taxonId the taxon of the genes
+     * @return the annotation query
+     */
+    abstract PathQuery getAnnotationQuery(Model model, String type, String taxonId);
+
+    /**
+     * @param identifier a term identifier
+     * @return true if the term is not counted
+     */
+    boolean isExcluded(String identifier) {
+        return identifier == null || ROOT_TERMS.contains(identifier.toUpperCase());
+    }
+
+    private static String getGenePrefix(String type) {
+        return "Gene".equals(type) ? "Gene." : type + ".genes.";
+    }
+
+    private static String getOntologyDataSet(String prefix, String nameSpace) {
+        String[] chars = nameSpace.split("_");
+        return prefix + chars[0].substring(0, 1).toUpperCase()
+                + chars[1].substring(0, 1).toUpperCase() + "_wo_IEA";
+    }
+
+    private static PathQuery getOntologyQuery(Model model, String type, String taxonId,
+            String termPath) {
+        String prefix = getGenePrefix(type);
+        PathQuery q = new PathQuery(model);
+        q.addViews(type + ".id", prefix + termPath + ".identifier", prefix + termPath + ".name",
+                prefix + termPath + ".namespace");
+        q.addConstraint(Constraints.eq(prefix + "goAnnotation.isNegation", "false"));
+        q.addConstraint(Constraints.neq(prefix + "goAnnotation.evidence.code.code", "IEA"));
+        q.addConstraint(Constraints.eq(prefix + "organism.taxonId", taxonId));
+        return q;
+    }
+}
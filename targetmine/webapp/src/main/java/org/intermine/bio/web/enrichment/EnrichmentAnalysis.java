@@ -0,0 +1,127 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The enriched terms of a list with the numbers of the test.
+ *
+ * @author chenyian
+ */
+public class EnrichmentAnalysis
+{
+    private String taxonId;
+    private String group;
+    private String correction;
+    private int populationSize;
+    private int listSize;
+    private int sampleSize;
+    private int testNumber;
+    private List<EnrichmentResult> results;
+
+    EnrichmentAnalysis(String taxonId, String group, String correction, int populationSize,
+            int listSize, int sampleSize, int testNumber, List<EnrichmentResult> results) {
+        this.taxonId = taxonId;
+        this.group = group;
+        this.correction = correction;
+        this.populationSize = populationSize;
+        this.listSize = listSize;
+        this.sampleSize = sampleSize;
+        this.testNumber = testNumber;
+        this.results = results;
+    }
+
+    /**
+     * @return the taxon of the background, null if no entity of the list is annotated
+     */
+    public String getTaxonId() {
+        return taxonId;
+    }
+
+    /**
+     * @return the group (widget filter) of the background
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @return the multiple testing correction
+     */
+    public String getCorrection() {
+        return correction;
+    }
+
+    /**
+     * @return number of annotated entities in the background
+     */
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    /**
+     * @return number of distinct entities in the list
+     */
+    public int getListSize() {
+        return listSize;
+    }
+
+    /**
+     * @return number of annotated entities in the list
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return number of terms of the background, used by the corrections
+     */
+    public int getTestNumber() {
+        return testNumber;
+    }
+
+    /**
+     * @return the enriched terms, by ascending p-value
+     */
+    public List<EnrichmentResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @param withMatchedIds whether the object ids of the matches are included
+     * @return the analysis in the format of the enrichment widget service results
+     * @throws JSONException if the JSON can not be built
+     */
+    public JSONObject toJSON(boolean withMatchedIds) throws JSONException {
+        JSONObject ret = new JSONObject();
+        ret.put("taxonId", taxonId);
+        ret.put("filter", group);
+        ret.put("correction", correction);
+        ret.put("populationTotal", populationSize);
+        ret.put("notAnalysed", listSize - sampleSize);
+        ret.put("sampleTotal", sampleSize);
+        ret.put("testNumber", testNumber);
+        JSONArray array = new JSONArray();
+        for (EnrichmentResult result : results) {
+            JSONObject item = new JSONObject();
+            item.put("identifier", result.getIdentifier());
+            item.put("description", result.getDescription());
+            item.put("matches", result.getMatches());
+            item.put("populationCount", result.getPopulationCount());
+            item.put("p-value", result.getPValue());
+            if (withMatchedIds) {
+                JSONArray ids = new JSONArray();
+                for (int id : result.getMatchedIds()) {
+                    ids.put(id);
+                }
+                item.put("matchedIds", ids);
+            }
+            array.put(item);
+        }
+        ret.put("results", array);
+        return ret;
+    }
+}
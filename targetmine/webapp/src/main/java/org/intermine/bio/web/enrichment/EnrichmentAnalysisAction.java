@@ -0,0 +1,97 @@
+package org.intermine.bio.web.enrichment;
+
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+import org.intermine.api.InterMineAPI;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.profile.Profile;
+import org.intermine.web.logic.session.SessionMethods;
+import org.intermine.web.struts.InterMineAction;
+import org.json.JSONObject;
+
+/**
+ * Returns the enrichment of a list as JSON, calculated by the EnrichmentEngine.
+ *
+ * Parameters: widget (e.g. gene_go_enrichment), list, filter (optional), correction (default
+ * Holm-Bonferroni), maxp (default 0.05), taxon (optional) and matches (true to include the
+ * object ids of the matches).
+ *
+ * @author chenyian
+ */
+public class EnrichmentAnalysisAction extends InterMineAction
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionForward execute(ActionMapping mapping, ActionForm form,
+            HttpServletRequest request, HttpServletResponse response) throws Exception {
+        final InterMineAPI im = SessionMethods.getInterMineAPI(request.getSession());
+        Profile profile = SessionMethods.getProfile(request.getSession());
+
+        String widgetId = request.getParameter("widget");
+        String listName = request.getParameter("list");
+        if (!EnrichmentEngine.getWidgetIds().contains(widgetId)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Unsupported enrichment widget: " + widgetId);
+            return null;
+        }
+        InterMineBag bag = im.getBagManager().getBag(profile, listName);
+        if (bag == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "List not found: " + listName);
+            return null;
+        }
+        String type = EnrichmentEngine.getType(widgetId);
+        if (!type.equals(bag.getType())) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "The widget " + widgetId
+                    + " analyses lists of " + type + ", not " + bag.getType());
+            return null;
+        }
+
+        String filter = StringUtils.defaultIfEmpty(request.getParameter("filter"), null);
+        if (filter != null && !EnrichmentEngine.getFilters(widgetId).contains(filter)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown filter: " + filter);
+            return null;
+        }
+        String correction = StringUtils.defaultIfEmpty(request.getParameter("correction"),
+                "Holm-Bonferroni");
+        if (!EnrichmentStatistics.CORRECTIONS.contains(correction)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Unknown correction: " + correction);
+            return null;
+        }
+        double maxPValue = 0.05d;
+        String maxp = request.getParameter("maxp");
+        if (!StringUtils.isEmpty(maxp)) {
+            try {
+                maxPValue = Double.parseDouble(maxp);
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid maxp: " + maxp);
+                return null;
+            }
+        }
+        String taxonId = StringUtils.defaultIfEmpty(request.getParameter("taxon"), null);
+
+        EnrichmentAnalysis analysis = EnrichmentEngine.getInstance(im).analyse(widgetId,
+                EnrichmentEngine.toSortedIds(bag.getContentsAsIds()), filter, correction,
+                maxPValue, taxonId);
+        JSONObject json = analysis.toJSON("true".equals(request.getParameter("matches")));
+        json.put("widget", widgetId);
+        json.put("list", bag.getName());
+        json.put("type", type);
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();
+        out.print(json.toString());
+        out.flush();
+        return null;
+    }
+}
@@ -0,0 +1,358 @@
+package org.intermine.bio.web.enrichment;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+import org.intermine.api.InterMineAPI;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.profile.Profile;
+import org.intermine.web.logic.session.SessionMethods;
+import org.intermine.web.struts.InterMineAction;
+import org.json.JSONObject;
+
+/**
+ * Analyses many lists with the EnrichmentEngine in one call and streams the results as
+ * newline-delimited JSON, one line per list and widget in the order they are finished.
+ *
+ * Parameters: list (repeated), widget (repeated, default all the widgets of the type of each
+ * list), filter (optional, a filter of at least one widget; a widget without it gives an error
+ * line), correction (default Holm-Bonferroni), maxp (default 0.05), taxon (optional) and
+ * matches (true to include the object ids of the matches). A line has the list, widget and
+ * type with the analysis, or the list, widget and error.
+ *
+ * The lists are analysed on a pool shared by all the requests; the ids of a list are read once
+ * for all its widgets.
+ *
+ * @author chenyian
+ */
+public class EnrichmentBatchAction extends InterMineAction
+{
+    private static final Logger LOG = Logger.getLogger(EnrichmentBatchAction.class);
+
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactory() {
+                private AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "enrichment-batch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * The parameters of a request.
+     */
+    static class Parameters
+    {
+        private List<String> listNames;
+        private List<String> widgetIds = new ArrayList<String>();
+        private String filter;
+        private String correction;
+        private double maxPValue = 0.05d;
+        private String taxonId;
+        private boolean withMatchedIds;
+
+        List<String> getListNames() {
+            return listNames;
+        }
+
+        List<String> getWidgetIds() {
+            return widgetIds;
+        }
+
+        String getFilter() {
+            return filter;
+        }
+
+        String getCorrection() {
+            return correction;
+        }
+
+        double getMaxPValue() {
+            return maxPValue;
+        }
+
+        String getTaxonId() {
+            return taxonId;
+        }
+
+        boolean isWithMatchedIds() {
+            return withMatchedIds;
+        }
+    }
+
+    /**
+     * Reads the lists and analyses them; the engine and the lists of the user in the webapp.
+     */
+    interface ListAnalyser
+    {
+        /**
+         * @param listName the name of a list
+         * @return the type of the list, null if there is no such list
+         */
+        String getType(String listName);
+
+        /**
+         * @param listName the name of a list
+         * @return the sorted object ids of the list
+         * @throws Exception if the list can not be read
+         */
+        int[] getSortedIds(String listName) throws Exception;
+
+        /**
+         * @param widgetId the widget
+         * @param sortedIds the sorted object ids of a list
+         * @param params the parameters of the request
+         * @return the analysis
+         * @throws Exception if the list can not be analysed
+         */
+        JSONObject analyse(String widgetId, int[] sortedIds, Parameters params)
+            throws Exception;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionForward execute(ActionMapping mapping, ActionForm form,
+            HttpServletRequest request, HttpServletResponse response) throws Exception {
+        final InterMineAPI im = SessionMethods.getInterMineAPI(request.getSession());
+        final Profile profile = SessionMethods.getProfile(request.getSession());
+
+        Parameters params;
+        try {
+            params = parse(request);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+        final EnrichmentEngine engine = EnrichmentEngine.getInstance(im);
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        write(response.getWriter(), params, new ListAnalyser() {
+            @Override
+            public String getType(String listName) {
+                InterMineBag bag = im.getBagManager().getBag(profile, listName);
+                return bag == null ? null : bag.getType();
+            }
+
+            @Override
+            public int[] getSortedIds(String listName) throws Exception {
+                return EnrichmentEngine.toSortedIds(im.getBagManager().getBag(profile,
+                        listName).getContentsAsIds());
+            }
+
+            @Override
+            public JSONObject analyse(String widgetId, int[] sortedIds, Parameters p)
+                throws Exception {
+                return engine.analyse(widgetId, sortedIds, p.getFilter(), p.getCorrection(),
+                        p.getMaxPValue(), p.getTaxonId()).toJSON(p.isWithMatchedIds());
+            }
+        });
+        return null;
+    }
+
+    /**
+     * @param request the request
+     * @return the parameters of the request
+     * @throws IllegalArgumentException if a parameter is missing or invalid
+     */
+    static Parameters parse(HttpServletRequest request) {
+        Parameters ret = new Parameters();
+        String[] listNames = request.getParameterValues("list");
+        if (listNames == null || listNames.length == 0) {
+            throw new IllegalArgumentException("No list given");
+        }
+        ret.listNames = new ArrayList<String>(new LinkedHashSet<String>(
+                Arrays.asList(listNames)));
+        String[] widgetParams = request.getParameterValues("widget");
+        if (widgetParams != null) {
+            for (String widgetId : widgetParams) {
+                if (!EnrichmentEngine.getWidgetIds().contains(widgetId)) {
+                    throw new IllegalArgumentException("Unsupported enrichment widget: "
+                            + widgetId);
+                }
+                ret.widgetIds.add(widgetId);
+            }
+        }
+
+        ret.filter = StringUtils.defaultIfEmpty(request.getParameter("filter"), null);
+        if (ret.filter != null) {
+            // the widgets of a list depend on its type, the filter is checked for each of
+            // them by analyse(); here only a filter of none of the widgets is rejected
+            boolean known = false;
+            for (String widgetId : ret.widgetIds.isEmpty() ? EnrichmentEngine.getWidgetIds()
+                    : ret.widgetIds) {
+                known = known || EnrichmentEngine.getFilters(widgetId).contains(ret.filter);
+            }
+            if (!known) {
+                throw new IllegalArgumentException("Unknown filter: " + ret.filter);
+            }
+        }
+        ret.correction = StringUtils.defaultIfEmpty(request.getParameter("correction"),
+                "Holm-Bonferroni");
+        if (!EnrichmentStatistics.CORRECTIONS.contains(ret.correction)) {
+            throw new IllegalArgumentException("Unknown correction: " + ret.correction);
+        }
+        String maxpParam = request.getParameter("maxp");
+        if (!StringUtils.isEmpty(maxpParam)) {
+            try {
+                ret.maxPValue = Double.parseDouble(maxpParam);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid maxp: " + maxpParam);
+            }
+        }
+        ret.taxonId = StringUtils.defaultIfEmpty(request.getParameter("taxon"), null);
+        ret.withMatchedIds = "true".equals(request.getParameter("matches"));
+        return ret;
+    }
+
+    /**
+     * Analyse the lists on the pool and write a line per list and widget as they are finished.
+     *
+     * @param out the response
+     * @param params the parameters of the request
+     * @param analyser reads and analyses the lists
+     * @throws InterruptedException if interrupted while waiting for a list
+     */
+    static void write(PrintWriter out, final Parameters params, final ListAnalyser analyser)
+        throws InterruptedException {
+        // at most THREADS lists of this request are queued or running at a time
+        CompletionService<List<JSONObject>> completion =
+                new ExecutorCompletionService<List<JSONObject>>(EXECUTOR);
+        int running = 0;
+        long start = System.currentTimeMillis();
+        for (final String listName : params.getListNames()) {
+            if (running == THREADS) {
+                writeLines(out, completion);
+                running--;
+            }
+            completion.submit(new Callable<List<JSONObject>>() {
+                @Override
+                public List<JSONObject> call() {
+                    try {
+                        return analyse(analyser, listName, params);
+                    } catch (RuntimeException e) {
+                        LOG.error("Failed to analyse " + listName, e);
+                        return Collections.singletonList(error(listName, null,
+                                String.valueOf(e.getMessage())));
+                    }
+                }
+            });
+            running++;
+        }
+        for (; running > 0; running--) {
+            writeLines(out, completion);
+        }
+        LOG.info("Analysed " + params.getListNames().size() + " lists ("
+                + (System.currentTimeMillis() - start) + " ms).");
+    }
+
+    private static void writeLines(PrintWriter out,
+            CompletionService<List<JSONObject>> completion) throws InterruptedException {
+        try {
+            for (JSONObject line : completion.take().get()) {
+                out.println(line.toString());
+            }
+        } catch (ExecutionException e) {
+            // an Error, the other failures of a list are written as error lines
+            LOG.error("Failed to analyse a list.", e.getCause());
+        }
+        out.flush();
+    }
+
+    /**
+     * @param analyser reads and analyses the lists
+     * @param listName the list
+     * @param params the parameters of the request
+     * @return a line per widget of the list, or an error line if there is no such list or it
+     * can not be read
+     */
+    static List<JSONObject> analyse(ListAnalyser analyser, String listName,
+            Parameters params) {
+        List<JSONObject> ret = new ArrayList<JSONObject>();
+        String listType;
+        try {
+            listType = analyser.getType(listName);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to read " + listName, e);
+            ret.add(error(listName, null, String.valueOf(e.getMessage())));
+            return ret;
+        }
+        if (listType == null) {
+            ret.add(error(listName, null, "List not found"));
+            return ret;
+        }
+        List<String> widgets = params.getWidgetIds();
+        if (widgets.isEmpty()) {
+            widgets = new ArrayList<String>();
+            for (String widgetId : EnrichmentEngine.getWidgetIds()) {
+                if (EnrichmentEngine.getType(widgetId).equals(listType)) {
+                    widgets.add(widgetId);
+                }
+            }
+        }
+        String filter = params.getFilter();
+        int[] sortedIds = null;
+        for (String widgetId : widgets) {
+            String type = EnrichmentEngine.getType(widgetId);
+            if (!type.equals(listType)) {
+                ret.add(error(listName, widgetId, "The widget analyses lists of " + type
+                        + ", not " + listType));
+                continue;
+            }
+            if (filter != null && !EnrichmentEngine.getFilters(widgetId).contains(filter)) {
+                ret.add(error(listName, widgetId, "Unknown filter of " + widgetId + ": "
+                        + filter));
+                continue;
+            }
+            try {
+                if (sortedIds == null) {
+                    sortedIds = analyser.getSortedIds(listName);
+                }
+                JSONObject line = analyser.analyse(widgetId, sortedIds, params);
+                line.put("list", listName);
+                line.put("widget", widgetId);
+                line.put("type", type);
+                ret.add(line);
+            } catch (Exception e) {
+                LOG.error("Failed to analyse " + listName + " with " + widgetId, e);
+                ret.add(error(listName, widgetId, String.valueOf(e.getMessage())));
+            }
+        }
+        return ret;
+    }
+
+    private static JSONObject error(String listName, String widgetId, String message) {
+        JSONObject ret = new JSONObject();
+        ret.put("list", listName);
+        ret.put("widget", widgetId);
+        ret.put("error", message);
+        return ret;
+    }
+}
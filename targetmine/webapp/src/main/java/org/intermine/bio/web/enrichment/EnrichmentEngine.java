@@ -0,0 +1,356 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.api.query.PathQueryExecutor;
+import org.intermine.api.results.ExportResultsIterator;
+import org.intermine.api.results.ResultElement;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.pathquery.Constraints;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * Analyses the lists of the enrichment widgets whose backgrounds are precomputed by the
+ * calculate-biotheme-background postprocess, from EnrichmentIndexes kept in memory instead of
+ * querying the annotations of the list and of the population for every analysis.
+ *
+ * An index is loaded for each background family, entity type and taxon on first use; all of
+ * them are loaded in the background when the engine is created, which happens on the first
+ * request after the webapp starts.
+ *
+ * @author chenyian
+ */
+public class EnrichmentEngine
+{
+    private static final Logger LOG = Logger.getLogger(EnrichmentEngine.class);
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final Map<String, Widget> WIDGETS = new LinkedHashMap<String, Widget>();
+
+    static {
+        addWidget("gene_go_enrichment", BackgroundFamily.GO, "Gene");
+        addWidget("protein_go_enrichment", BackgroundFamily.GO, "Protein");
+        addWidget("gene_goslim_enrichment", BackgroundFamily.GOSLIM, "Gene");
+        addWidget("protein_goslim_enrichment", BackgroundFamily.GOSLIM, "Protein");
+        addWidget("gene_pathway_enrichment", BackgroundFamily.PATHWAY, "Gene");
+        addWidget("protein_pathway_enrichment", BackgroundFamily.PATHWAY, "Protein");
+        addWidget("probe_pathway_enrichment", BackgroundFamily.PATHWAY, "ProbeSet");
+        addWidget("gene_tissue_enrichment", BackgroundFamily.TISSUE, "Gene");
+    }
+
+    private static EnrichmentEngine instance = null;
+
+    private InterMineAPI im;
+    private ObjectStore os;
+    private volatile List<String> taxonIds = null;
+    private ConcurrentMap<String, FutureTask<EnrichmentIndex>> indexes =
+            new ConcurrentHashMap<String, FutureTask<EnrichmentIndex>>();
+
+    /**
+     * The background family and the entity type of an enrichment widget.
+     */
+    private static class Widget
+    {
+        private BackgroundFamily family;
+        private String type;
+
+        Widget(BackgroundFamily family, String type) {
+            this.family = family;
+            this.type = type;
+        }
+    }
+
+    private static void addWidget(String widgetId, BackgroundFamily family, String type) {
+        WIDGETS.put(widgetId, new Widget(family, type));
+    }
+
+    private EnrichmentEngine(InterMineAPI im) {
+        this.im = im;
+        this.os = im.getObjectStore();
+    }
+
+    /**
+     * An engine of loaded indexes, without an objectstore, for the tests.
+     *
+     * @param loaded the indexes; their taxa are the taxa having backgrounds
+     */
+    EnrichmentEngine(EnrichmentIndex... loaded) {
+        Set<String> taxa = new LinkedHashSet<String>();
+        for (final EnrichmentIndex index : loaded) {
+            FutureTask<EnrichmentIndex> task = new FutureTask<EnrichmentIndex>(
+                    new Callable<EnrichmentIndex>() {
+                        @Override
+                        public EnrichmentIndex call() {
+                            return index;
+                        }
+                    });
+            task.run();
+            indexes.put(getKey(index.getFamily(), index.getType(), index.getTaxonId()), task);
+            taxa.add(index.getTaxonId());
+        }
+        this.taxonIds = new ArrayList<String>(taxa);
+    }
+
+    /**
+     * @param im the InterMine API
+     * @return the engine of the objectstore of the API
+     */
+    public static synchronized EnrichmentEngine getInstance(InterMineAPI im) {
+        if (instance == null || instance.os != im.getObjectStore()) {
+            instance = new EnrichmentEngine(im);
+            instance.preload();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the ids of the enrichment widgets analysed by the engine
+     */
+    public static Set<String> getWidgetIds() {
+        return Collections.unmodifiableSet(WIDGETS.keySet());
+    }
+
+    /**
+     * @param widgetId an enrichment widget id
+     * @return the type of the lists of the widget
+     */
+    public static String getType(String widgetId) {
+        return getWidget(widgetId).type;
+    }
+
+    /**
+     * @param widgetId an enrichment widget id
+     * @return the filters of the widget, the first one is the default
+     */
+    public static List<String> getFilters(String widgetId) {
+        return getWidget(widgetId).family.getGroups();
+    }
+
+    private static Widget getWidget(String widgetId) {
+        Widget widget = WIDGETS.get(widgetId);
+        if (widget == null) {
+            throw new IllegalArgumentException("Unsupported enrichment widget: " + widgetId);
+        }
+        return widget;
+    }
+
+    /**
+     * @param ids object ids, duplicates allowed
+     * @return the distinct ids in ascending order
+     */
+    public static int[] toSortedIds(Collection<Integer> ids) {
+        int[] ret = new int[ids.size()];
+        int n = 0;
+        for (Integer id : ids) {
+            if (id != null) {
+                ret[n++] = id.intValue();
+            }
+        }
+        Arrays.sort(ret, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || ret[i] != ret[distinct - 1]) {
+                ret[distinct++] = ret[i];
+            }
+        }
+        return Arrays.copyOf(ret, distinct);
+    }
+
+    /**
+     * Analyse a list as the enrichment widget does.
+     *
+     * @param widgetId an enrichment widget id
+     * @param sortedIds the distinct object ids of the list in ascending order, see toSortedIds()
+     * @param filter a filter of the widget, null for the default one
+     * @param correction one of EnrichmentStatistics.CORRECTIONS
+     * @param maxPValue the largest corrected p-value reported
+     * @param taxonId the taxon of the background; if null, the taxon in which most entities of
+     * the list are annotated
+     * @return the enriched terms
+     * @throws ObjectStoreException if an index can not be loaded
+     */
+    public EnrichmentAnalysis analyse(String widgetId, int[] sortedIds, String filter,
+            String correction, double maxPValue, String taxonId) throws ObjectStoreException {
+        Widget widget = getWidget(widgetId);
+        String group = filter == null ? widget.family.getGroups().get(0) : filter;
+        if (!EnrichmentStatistics.CORRECTIONS.contains(correction)) {
+            throw new IllegalArgumentException("Unknown correction: " + correction);
+        }
+
+        EnrichmentIndex index = null;
+        if (taxonId != null) {
+            index = getIndex(widget.family, widget.type, taxonId);
+        } else {
+            int max = 0;
+            for (String taxon : getTaxonIds()) {
+                EnrichmentIndex candidate = getIndex(widget.family, widget.type, taxon);
+                int count = candidate.countAnnotated(sortedIds);
+                if (count > max) {
+                    index = candidate;
+                    max = count;
+                }
+            }
+        }
+        if (index == null) {
+            return new EnrichmentAnalysis(null, group, correction, 0, sortedIds.length, 0, 0,
+                    Collections.<EnrichmentResult>emptyList());
+        }
+        return index.analyse(sortedIds, group, correction, maxPValue);
+    }
+
+    /**
+     * @return the taxa having backgrounds
+     * @throws ObjectStoreException if the query fails
+     */
+    public List<String> getTaxonIds() throws ObjectStoreException {
+        List<String> ret = taxonIds;
+        if (ret == null) {
+            List<String> identifiers = new ArrayList<String>();
+            for (BackgroundFamily family : BackgroundFamily.values()) {
+                identifiers.add(family.getPopulationIdentifier());
+            }
+            PathQuery q = new PathQuery(im.getModel());
+            q.addView("Statistics.organism.taxonId");
+            q.addConstraint(Constraints.oneOfValues("Statistics.identifier", identifiers));
+            Set<String> taxa = new LinkedHashSet<String>();
+            ExportResultsIterator it = getExecutor().execute(q);
+            while (it.hasNext()) {
+                taxa.add(String.valueOf(it.next().get(0).getField()));
+            }
+            ret = new ArrayList<String>(taxa);
+            taxonIds = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @param family a background family
+     * @param type Gene, Protein or ProbeSet
+     * @param taxonId a taxon
+     * @return the index, loaded if needed; concurrent requests wait for the same loading
+     * @throws ObjectStoreException if the index can not be loaded
+     */
+    public EnrichmentIndex getIndex(final BackgroundFamily family, final String type,
+            final String taxonId) throws ObjectStoreException {
+        String key = getKey(family, type, taxonId);
+        FutureTask<EnrichmentIndex> task = indexes.get(key);
+        if (task == null) {
+            FutureTask<EnrichmentIndex> newTask = new FutureTask<EnrichmentIndex>(
+                    new Callable<EnrichmentIndex>() {
+                        @Override
+                        public EnrichmentIndex call() throws Exception {
+                            return load(family, type, taxonId);
+                        }
+                    });
+            task = indexes.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new ObjectStoreException("Interrupted while loading " + key, e);
+        } catch (ExecutionException e) {
+            // retry on the next request
+            indexes.remove(key, task);
+            if (e.getCause() instanceof ObjectStoreException) {
+                throw (ObjectStoreException) e.getCause();
+            }
+            throw new ObjectStoreException("Failed to load " + key, e.getCause());
+        }
+    }
+
+    private static String getKey(BackgroundFamily family, String type, String taxonId) {
+        return family + "/" + type + "/" + taxonId;
+    }
+
+    private EnrichmentIndex load(BackgroundFamily family, String type, String taxonId)
+        throws ObjectStoreException {
+        long start = System.currentTimeMillis();
+        EnrichmentIndex.Builder builder = new EnrichmentIndex.Builder(family, type, taxonId);
+
+        PathQuery q = family.getAnnotationQuery(im.getModel(), type, taxonId);
+        boolean withGroup = q.getView().size() > 3;
+        ExportResultsIterator it = getExecutor().execute(q);
+        while (it.hasNext()) {
+            List<ResultElement> row = it.next();
+            builder.addAnnotation(((Integer) row.get(0).getField()).intValue(),
+                    (String) row.get(1).getField(), (String) row.get(2).getField(),
+                    withGroup ? (String) row.get(3).getField() : null);
+        }
+
+        List<String> dataSets = new ArrayList<String>();
+        for (String group : family.getGroups()) {
+            dataSets.add(family.getDataSet(group));
+        }
+        PathQuery sq = new PathQuery(im.getModel());
+        sq.addViews("Statistics.identifier", "Statistics.dataSet", "Statistics.number");
+        sq.addConstraint(Constraints.eq("Statistics.type", type));
+        sq.addConstraint(Constraints.eq("Statistics.organism.taxonId", taxonId));
+        sq.addConstraint(Constraints.oneOfValues("Statistics.dataSet", dataSets));
+        it = getExecutor().execute(sq);
+        while (it.hasNext()) {
+            List<ResultElement> row = it.next();
+            Integer number = (Integer) row.get(2).getField();
+            if (number != null) {
+                builder.addStatistics((String) row.get(0).getField(),
+                        (String) row.get(1).getField(), number.intValue());
+            }
+        }
+
+        EnrichmentIndex index = builder.build();
+        LOG.info("Loaded " + index + " (" + (System.currentTimeMillis() - start) + " ms).");
+        return index;
+    }
+
+    private PathQueryExecutor getExecutor() {
+        PathQueryExecutor executor = im.getPathQueryExecutor(im.getProfileManager()
+                .getSuperuserProfile());
+        executor.setBatchSize(BATCH_SIZE);
+        return executor;
+    }
+
+    /**
+     * Load the indexes of all the widgets in a thread.
+     */
+    private void preload() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    for (Widget widget : WIDGETS.values()) {
+                        for (String taxonId : getTaxonIds()) {
+                            getIndex(widget.family, widget.type, taxonId);
+                        }
+                    }
+                    LOG.info("Loaded the enrichment indexes ("
+                            + (System.currentTimeMillis() - start) + " ms).");
+                } catch (ObjectStoreException e) {
+                    LOG.error("Failed to load the enrichment indexes.", e);
+                }
+            }
+        }, "enrichment-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,362 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The annotations of one entity type and one taxon for a background family, with the Statistics
+ * of its backgrounds, in arrays: each term has the sorted object ids of its entities, and each
+ * entity the indexes of its terms (terms and parents together), so that a list is analysed
+ * without a query.
+ *
+ * Immutable once built, shared by the requests.
+ *
+ * @author chenyian
+ */
+public class EnrichmentIndex
+{
+    private static final int[] EMPTY = new int[0];
+    // group bit of the terms whose group is not a group of the family (e.g. other data sets)
+    private static final int OTHER_GROUP = 1 << 31;
+
+    private final BackgroundFamily family;
+    private final String type;
+    private final String taxonId;
+
+    private final String[] termIdentifiers;
+    private final String[] termNames;
+    // bit i is set if the term is in the i-th group of the family
+    private final int[] termGroups;
+    // term -> sorted object ids
+    private final int[][] termEntities;
+    // Statistics number of the term, 0 if the term is not in the background
+    private final int[] termCounts;
+
+    // sorted object ids; the terms of entity i are entityTerms[entityOffsets[i]] to
+    // entityTerms[entityOffsets[i + 1] - 1]
+    private final int[] entityIds;
+    private final int[] entityOffsets;
+    private final int[] entityTerms;
+
+    // by group of the family
+    private final int[] populationSizes;
+    private final int[] testNumbers;
+
+    private EnrichmentIndex(Builder builder, int[][] termEntities, int[] entityIds,
+            int[] entityOffsets, int[] entityTerms) {
+        this.family = builder.family;
+        this.type = builder.type;
+        this.taxonId = builder.taxonId;
+        this.termIdentifiers = builder.identifiers.toArray(new String[0]);
+        this.termNames = builder.names.toArray(new String[0]);
+        this.termGroups = Arrays.copyOf(builder.groups, termIdentifiers.length);
+        this.termCounts = Arrays.copyOf(builder.counts, termIdentifiers.length);
+        this.termEntities = termEntities;
+        this.entityIds = entityIds;
+        this.entityOffsets = entityOffsets;
+        this.entityTerms = entityTerms;
+        this.populationSizes = builder.populationSizes;
+        this.testNumbers = builder.testNumbers;
+    }
+
+    /**
+     * @return the background family
+     */
+    public BackgroundFamily getFamily() {
+        return family;
+    }
+
+    /**
+     * @return the entity type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the taxon
+     */
+    public String getTaxonId() {
+        return taxonId;
+    }
+
+    /**
+     * @return number of annotated entities
+     */
+    public int getEntityCount() {
+        return entityIds.length;
+    }
+
+    /**
+     * @param sortedIds distinct object ids in ascending order
+     * @return number of the ids which are annotated
+     */
+    public int countAnnotated(int[] sortedIds) {
+        int ret = 0;
+        for (int id : sortedIds) {
+            if (Arrays.binarySearch(entityIds, id) >= 0) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the ids of the list annotated with the term
+     */
+    private int[] getMatches(int[] sortedIds, int term) {
+        int[] entities = termEntities[term];
+        int[] ret = new int[Math.min(sortedIds.length, entities.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < sortedIds.length && j < entities.length;) {
+            if (sortedIds[i] < entities[j]) {
+                i++;
+            } else if (sortedIds[i] > entities[j]) {
+                j++;
+            } else {
+                ret[n++] = sortedIds[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(ret, n);
+    }
+
+    /**
+     * Test the enrichment of the terms of a group in a list.
+     *
+     * @param sortedIds distinct object ids in ascending order
+     * @param group a group of the family, i.e. a widget filter
+     * @param correction one of EnrichmentStatistics.CORRECTIONS
+     * @param maxPValue the largest corrected p-value reported
+     * @return the enriched terms
+     */
+    public EnrichmentAnalysis analyse(int[] sortedIds, String group, String correction,
+            double maxPValue) {
+        int groupIndex = family.getGroups().indexOf(group);
+        if (groupIndex < 0) {
+            throw new IllegalArgumentException("Unknown filter of " + family + ": " + group);
+        }
+        int groupMask = BackgroundFamily.ALL.equals(group) ? -1 : 1 << groupIndex;
+
+        int[] counts = new int[termIdentifiers.length];
+        int[] tested = new int[termIdentifiers.length];
+        int numTested = 0;
+        int sampleSize = 0;
+        for (int id : sortedIds) {
+            int entity = Arrays.binarySearch(entityIds, id);
+            if (entity < 0) {
+                continue;
+            }
+            boolean annotated = false;
+            for (int i = entityOffsets[entity]; i < entityOffsets[entity + 1]; i++) {
+                int term = entityTerms[i];
+                if ((termGroups[term] & groupMask) == 0) {
+                    continue;
+                }
+                annotated = true;
+                if (termCounts[term] > 0 && counts[term]++ == 0) {
+                    tested[numTested++] = term;
+                }
+            }
+            if (annotated) {
+                sampleSize++;
+            }
+        }
+
+        int populationSize = populationSizes[groupIndex];
+        List<EnrichmentResult> results = new ArrayList<EnrichmentResult>(numTested);
+        for (int i = 0; i < numTested; i++) {
+            int term = tested[i];
+            results.add(new EnrichmentResult(term, termIdentifiers[term], termNames[term],
+                    counts[term], termCounts[term], EnrichmentStatistics.upperTail(counts[term],
+                            termCounts[term], sampleSize, populationSize)));
+        }
+        Collections.sort(results, new Comparator<EnrichmentResult>() {
+            @Override
+            public int compare(EnrichmentResult a, EnrichmentResult b) {
+                int ret = Double.compare(a.getPValue(), b.getPValue());
+                return ret != 0 ? ret : a.getIdentifier().compareTo(b.getIdentifier());
+            }
+        });
+
+        double[] pValues = new double[results.size()];
+        for (int i = 0; i < pValues.length; i++) {
+            pValues[i] = results.get(i).getPValue();
+        }
+        EnrichmentStatistics.correct(pValues, testNumbers[groupIndex], correction);
+        List<EnrichmentResult> ret = new ArrayList<EnrichmentResult>();
+        for (int i = 0; i < pValues.length; i++) {
+            if (pValues[i] <= maxPValue) {
+                EnrichmentResult result = results.get(i);
+                result.setPValue(pValues[i]);
+                result.setMatchedIds(getMatches(sortedIds, result.getTerm()));
+                ret.add(result);
+            }
+        }
+        return new EnrichmentAnalysis(taxonId, group, correction, populationSize,
+                sortedIds.length, sampleSize, testNumbers[groupIndex], ret);
+    }
+
+    @Override
+    public String toString() {
+        long ints = entityIds.length + entityOffsets.length + entityTerms.length
+                + termIdentifiers.length * 2L;
+        for (int[] entities : termEntities) {
+            ints += entities.length;
+        }
+        return String.format("%s/%s/%s: %d terms, %d entities, %d annotations (%d KB)", family,
+                type, taxonId, termIdentifiers.length, entityIds.length, entityTerms.length,
+                ints * 4 / 1024);
+    }
+
+    /**
+     * Collects the rows of the annotation query and the Statistics of a background.
+     */
+    static class Builder
+    {
+        private BackgroundFamily family;
+        private String type;
+        private String taxonId;
+
+        private Map<String, Integer> termIndex = new HashMap<String, Integer>();
+        private List<String> identifiers = new ArrayList<String>();
+        private List<String> names = new ArrayList<String>();
+        private int[] groups = new int[1024];
+        private int[] counts = new int[1024];
+        // packed (term, object id) pairs
+        private long[] pairs = new long[1 << 16];
+        private int numPairs = 0;
+
+        private int[] populationSizes;
+        private int[] testNumbers;
+
+        Builder(BackgroundFamily family, String type, String taxonId) {
+            this.family = family;
+            this.type = type;
+            this.taxonId = taxonId;
+            this.populationSizes = new int[family.getGroups().size()];
+            this.testNumbers = new int[family.getGroups().size()];
+        }
+
+        /**
+         * @param objectId the entity
+         * @param identifier the term identifier
+         * @param name the term name
+         * @param group the group of the term, null if the family has only one group
+         */
+        void addAnnotation(int objectId, String identifier, String name, String group) {
+            if (family.isExcluded(identifier)) {
+                return;
+            }
+            int term = getTerm(identifier, name);
+            int groupIndex = group == null ? 0 : family.getGroups().indexOf(group);
+            groups[term] |= groupIndex < 0 ? OTHER_GROUP : 1 << groupIndex;
+            if (numPairs == pairs.length) {
+                pairs = Arrays.copyOf(pairs, numPairs * 2);
+            }
+            pairs[numPairs++] = ((long) term << 32) | (objectId & 0xffffffffL);
+        }
+
+        /**
+         * @param identifier a term identifier, or the N or test number identifier
+         * @param dataSet the Statistics dataSet value
+         * @param number the Statistics number
+         */
+        void addStatistics(String identifier, String dataSet, int number) {
+            int groupIndex = -1;
+            for (int i = 0; i < family.getGroups().size(); i++) {
+                if (family.getDataSet(family.getGroups().get(i)).equals(dataSet)) {
+                    groupIndex = i;
+                }
+            }
+            if (groupIndex < 0) {
+                return;
+            }
+            if (identifier.equals(family.getPopulationIdentifier())) {
+                populationSizes[groupIndex] = number;
+            } else if (identifier.equals(family.getTestNumberIdentifier())) {
+                testNumbers[groupIndex] = number;
+            } else {
+                Integer term = termIndex.get(identifier);
+                // the count of a term is the same in all its groups
+                if (term != null) {
+                    counts[term.intValue()] = number;
+                }
+            }
+        }
+
+        private int getTerm(String identifier, String name) {
+            Integer term = termIndex.get(identifier);
+            if (term == null) {
+                term = Integer.valueOf(identifiers.size());
+                termIndex.put(identifier, term);
+                identifiers.add(identifier);
+                names.add(name);
+                if (groups.length == term.intValue()) {
+                    groups = Arrays.copyOf(groups, groups.length * 2);
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+            }
+            return term.intValue();
+        }
+
+        EnrichmentIndex build() {
+            long[] sorted = Arrays.copyOf(pairs, numPairs);
+            pairs = null;
+            Arrays.sort(sorted);
+            int numTerms = identifiers.size();
+
+            // term -> entities
+            int[] sizes = new int[numTerms];
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                    sizes[(int) (sorted[i] >>> 32)]++;
+                }
+            }
+            int[][] termEntities = new int[numTerms][];
+            for (int term = 0; term < numTerms; term++) {
+                termEntities[term] = sizes[term] == 0 ? EMPTY : new int[sizes[term]];
+                sizes[term] = 0;
+            }
+            for (int i = 0; i < distinct; i++) {
+                int term = (int) (sorted[i] >>> 32);
+                termEntities[term][sizes[term]++] = (int) sorted[i];
+            }
+
+            // entity -> terms
+            for (int i = 0; i < distinct; i++) {
+                sorted[i] = (sorted[i] << 32) | (sorted[i] >>> 32);
+            }
+            Arrays.sort(sorted, 0, distinct);
+            int numEntities = 0;
+            for (int i = 0; i < distinct; i++) {
+                if (i == 0 || (sorted[i] >>> 32) != (sorted[i - 1] >>> 32)) {
+                    numEntities++;
+                }
+            }
+            int[] entityIds = new int[numEntities];
+            int[] entityOffsets = new int[numEntities + 1];
+            int[] entityTerms = new int[distinct];
+            int entity = -1;
+            for (int i = 0; i < distinct; i++) {
+                if (i == 0 || (sorted[i] >>> 32) != (sorted[i - 1] >>> 32)) {
+                    entity++;
+                    entityIds[entity] = (int) (sorted[i] >>> 32);
+                    entityOffsets[entity] = i;
+                }
+                entityTerms[i] = (int) sorted[i];
+            }
+            entityOffsets[numEntities] = distinct;
+
+            return new EnrichmentIndex(this, termEntities, entityIds, entityOffsets, entityTerms);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.intermine.bio.web.enrichment;
+
+/**
+ * An enriched term of a list.
+ *
+ * @author chenyian
+ */
+public class EnrichmentResult
+{
+    private int term;
+    private String identifier;
+    private String description;
+    private int matches;
+    private int populationCount;
+    private double pValue;
+    private int[] matchedIds;
+
+    EnrichmentResult(int term, String identifier, String description, int matches,
+            int populationCount, double pValue) {
+        this.term = term;
+        this.identifier = identifier;
+        this.description = description;
+        this.matches = matches;
+        this.populationCount = populationCount;
+        this.pValue = pValue;
+    }
+
+    /**
+     * @return the term identifier
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the term name
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return number of entities of the list annotated with the term
+     */
+    public int getMatches() {
+        return matches;
+    }
+
+    /**
+     * @return the object ids of the entities of the list annotated with the term, in ascending
+     * order
+     */
+    public int[] getMatchedIds() {
+        return matchedIds;
+    }
+
+    /**
+     * @return number of entities of the background annotated with the term
+     */
+    public int getPopulationCount() {
+        return populationCount;
+    }
+
+    /**
+     * @return the corrected p-value
+     */
+    public double getPValue() {
+        return pValue;
+    }
+
+    int getTerm() {
+        return term;
+    }
+
+    void setPValue(double pValue) {
+        this.pValue = pValue;
+    }
+
+    void setMatchedIds(int[] matchedIds) {
+        this.matchedIds = matchedIds;
+    }
+}
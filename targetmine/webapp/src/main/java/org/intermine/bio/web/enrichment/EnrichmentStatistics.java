@@ -0,0 +1,128 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The hypergeometric test and the multiple testing corrections of the enrichment widgets.
+ *
+ * @author chenyian
+ */
+public final class EnrichmentStatistics
+{
+    /**
+     * The corrections, named as in the enrichment widgets.
+     */
+    public static final List<String> CORRECTIONS = Arrays.asList("Holm-Bonferroni",
+            "Benjamini Hochberg", "Bonferroni", "None");
+
+    // the terms smaller than this fraction of the sum are not added
+    private static final double EPSILON = 1e-17;
+
+    private static final Object LOCK = new Object();
+    // log(i!) for i up to the largest population seen so far
+    private static volatile double[] logFactorials = new double[] {0d};
+
+    private EnrichmentStatistics() {
+        // static methods only
+    }
+
+    /**
+     * @param k number of annotated entities in the list
+     * @param termCount number of annotated entities in the population
+     * @param sampleSize number of entities in the list
+     * @param populationSize number of entities in the population
+     * @return the probability to find k or more annotated entities in the list
+     */
+    public static double upperTail(int k, int termCount, int sampleSize, int populationSize) {
+        if (k <= 0) {
+            return 1d;
+        }
+        // the backgrounds are calculated separately from the lists, keep the numbers consistent
+        populationSize = Math.max(populationSize, Math.max(termCount, sampleSize));
+        int max = Math.min(termCount, sampleSize);
+        int min = Math.max(k, sampleSize - (populationSize - termCount));
+        if (min > max) {
+            return 0d;
+        }
+        double[] lf = getLogFactorials(populationSize);
+        // sum from the largest term of the tail, so that the far tails do not underflow to 0;
+        // the terms increase up to the mode and decrease after it
+        int mode = (int) ((long) (sampleSize + 1) * (termCount + 1) / (populationSize + 2L));
+        int start = Math.min(Math.max(min, mode), max);
+        double logStart = logChoose(lf, termCount, start)
+                + logChoose(lf, populationSize - termCount, sampleSize - start)
+                - logChoose(lf, populationSize, sampleSize);
+        // the terms relative to the one at start
+        double sum = 1d;
+        double term = 1d;
+        for (int i = start; i < max && term > sum * EPSILON; i++) {
+            // ratio of the probabilities of i + 1 and i
+            term *= (double) (termCount - i) * (sampleSize - i)
+                    / ((double) (i + 1) * (populationSize - termCount - sampleSize + i + 1));
+            sum += term;
+        }
+        term = 1d;
+        for (int i = start; i > min && term > sum * EPSILON; i--) {
+            // ratio of the probabilities of i - 1 and i
+            term *= (double) i * (populationSize - termCount - sampleSize + i)
+                    / ((double) (termCount - i + 1) * (sampleSize - i + 1));
+            sum += term;
+        }
+        sum = Math.exp(logStart + Math.log(sum));
+        return Math.min(sum, 1d);
+    }
+
+    /**
+     * Correct the p-values in place.
+     *
+     * @param pValues the p-values of the tested terms, in ascending order
+     * @param testNumber number of tests, at least pValues.length
+     * @param correction one of CORRECTIONS
+     */
+    public static void correct(double[] pValues, int testNumber, String correction) {
+        int m = Math.max(testNumber, pValues.length);
+        if ("Bonferroni".equals(correction)) {
+            for (int i = 0; i < pValues.length; i++) {
+                pValues[i] = Math.min(pValues[i] * m, 1d);
+            }
+        } else if ("Holm-Bonferroni".equals(correction)) {
+            double max = 0d;
+            for (int i = 0; i < pValues.length; i++) {
+                max = Math.max(max, Math.min(pValues[i] * (m - i), 1d));
+                pValues[i] = max;
+            }
+        } else if ("Benjamini Hochberg".equals(correction)) {
+            double min = 1d;
+            for (int i = pValues.length - 1; i >= 0; i--) {
+                min = Math.min(min, pValues[i] * m / (i + 1));
+                pValues[i] = min;
+            }
+        } else if (!"None".equals(correction)) {
+            throw new IllegalArgumentException("Unknown correction: " + correction);
+        }
+    }
+
+    private static double logChoose(double[] lf, int n, int k) {
+        return lf[n] - lf[k] - lf[n - k];
+    }
+
+    private static double[] getLogFactorials(int n) {
+        double[] ret = logFactorials;
+        if (ret.length > n) {
+            return ret;
+        }
+        synchronized (LOCK) {
+            ret = logFactorials;
+            if (ret.length <= n) {
+                int from = ret.length;
+                ret = Arrays.copyOf(ret, Math.max(n + 1, from * 2));
+                for (int i = from; i < ret.length; i++) {
+                    ret[i] = ret[i - 1] + Math.log(i);
+                }
+                logFactorials = ret;
+            }
+            return ret;
+        }
+    }
+}
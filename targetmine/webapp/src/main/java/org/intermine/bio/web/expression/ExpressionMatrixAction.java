@@ -0,0 +1,55 @@
+package org.intermine.bio.web.expression;
+
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts.action.ActionForm;
+import org.apache.struts.action.ActionForward;
+import org.apache.struts.action.ActionMapping;
+import org.intermine.api.InterMineAPI;
+import org.intermine.web.logic.session.SessionMethods;
+import org.intermine.web.struts.InterMineAction;
+
+/**
+ * Returns the precomputed expression matrix of a gene as JSON, see
+ * GeneExpressionMatrix.toJSON().
+ *
+ * Parameters: id (the object id of the gene).
+ *
+ * @author chenyian
+ */
+public class ExpressionMatrixAction extends InterMineAction
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionForward execute(ActionMapping mapping, ActionForm form,
+            HttpServletRequest request, HttpServletResponse response) throws Exception {
+        InterMineAPI im = SessionMethods.getInterMineAPI(request.getSession());
+
+        Integer geneId;
+        try {
+            geneId = Integer.valueOf(request.getParameter("id"));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Invalid id: " + request.getParameter("id"));
+            return null;
+        }
+        GeneExpressionMatrix matrix = ExpressionMatrixStore.getInstance(im).getMatrix(geneId);
+        if (matrix == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                    "The expression matrices are not available");
+            return null;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();
+        out.print(matrix.toJSON().toString());
+        out.flush();
+        return null;
+    }
+}
@@ -0,0 +1,154 @@
+package org.intermine.bio.web.expression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.bio.postprocess.ExpressionMatrixFormat;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.Database;
+
+/**
+ * Reads the gene expression matrices precomputed by the create-expression-matrix postprocess
+ * from the intermine_metadata table; see ExpressionMatrixFormat for the format. The tissue and
+ * call dictionaries are read once, the matrix of a gene on each request.
+ *
+ * @author chenyian
+ */
+public final class ExpressionMatrixStore
+{
+    private static final Logger LOG = Logger.getLogger(ExpressionMatrixStore.class);
+
+    private static ExpressionMatrixStore instance = null;
+
+    private ObjectStore os;
+    private Database database;
+    // set once the header is read or known to be missing, not after an error
+    private boolean loaded = false;
+
+    private String[] categories;
+    private String[] organs;
+    private String[] names;
+    private String[] calls;
+    // "category\torgan\tname" with '/' replaced by '-', which can not be part of css selectors
+    private String[] tissueLabels;
+
+    private ExpressionMatrixStore(InterMineAPI im) {
+        this.os = im.getObjectStore();
+        if (os instanceof ObjectStoreInterMineImpl) {
+            database = ((ObjectStoreInterMineImpl) os).getDatabase();
+        }
+    }
+
+    /**
+     * @param im the InterMine API
+     * @return the store of the objectstore of the API
+     */
+    public static synchronized ExpressionMatrixStore getInstance(InterMineAPI im) {
+        if (instance == null || instance.os != im.getObjectStore()) {
+            instance = new ExpressionMatrixStore(im);
+        }
+        return instance;
+    }
+
+    private synchronized boolean loadHeader() {
+        if (loaded) {
+            return tissueLabels != null;
+        }
+        if (database == null) {
+            loaded = true;
+            return false;
+        }
+        try {
+            InputStream is = MetadataManager.retrieveBLOBInputStream(database,
+                    ExpressionMatrixFormat.HEADER_KEY);
+            if (is == null) {
+                LOG.info("No expression matrix found, the expression tables are used.");
+                loaded = true;
+                return false;
+            }
+            ExpressionMatrixFormat.Header header = ExpressionMatrixFormat.readHeader(is);
+            if (header == null) {
+                LOG.warn("Unsupported version of the expression matrix.");
+                loaded = true;
+                return false;
+            }
+            String[] labels = new String[header.getNames().length];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = header.getCategories()[i].replaceAll("/", "-") + "\t"
+                        + header.getOrgans()[i].replaceAll("/", "-") + "\t"
+                        + header.getNames()[i].replaceAll("/", "-");
+            }
+            LOG.info("Loaded the expression matrix header: " + labels.length + " tissues, "
+                    + header.getNumGenes() + " genes.");
+            categories = header.getCategories();
+            organs = header.getOrgans();
+            names = header.getNames();
+            calls = header.getCalls();
+            tissueLabels = labels;
+            loaded = true;
+            return true;
+        } catch (SQLException e) {
+            // not loaded, read again on the next request
+            LOG.error("Failed to read the expression matrix header.", e);
+        } catch (IOException e) {
+            LOG.error("Failed to read the expression matrix header.", e);
+        }
+        return false;
+    }
+
+    /**
+     * @param geneId the object id of a gene
+     * @return the matrix of the gene, empty if the gene has no expression; null if there is no
+     * precomputed matrix and the expression tables have to be read
+     */
+    public GeneExpressionMatrix getMatrix(Integer geneId) {
+        if (!loadHeader()) {
+            return null;
+        }
+        try {
+            InputStream is = MetadataManager.retrieveBLOBInputStream(database,
+                    ExpressionMatrixFormat.getKey(geneId.intValue()));
+            if (is == null) {
+                return new GeneExpressionMatrix(this, geneId, new String[0], new int[] {0},
+                        new char[0], new byte[0], new float[0]);
+            }
+            ExpressionMatrixFormat.Matrix matrix = ExpressionMatrixFormat.readMatrix(is);
+            if (matrix == null) {
+                return null;
+            }
+            return new GeneExpressionMatrix(this, geneId, matrix.getProbeSetIds(),
+                    matrix.getOffsets(), matrix.getTissues(), matrix.getCalls(),
+                    matrix.getValues());
+        } catch (SQLException e) {
+            LOG.error("Failed to read the expression matrix of " + geneId, e);
+        } catch (IOException e) {
+            LOG.error("Failed to read the expression matrix of " + geneId, e);
+        }
+        return null;
+    }
+
+    String getCategory(int tissue) {
+        return categories[tissue];
+    }
+
+    String getOrgan(int tissue) {
+        return organs[tissue];
+    }
+
+    String getName(int tissue) {
+        return names[tissue];
+    }
+
+    String getTissueLabel(int tissue) {
+        return tissueLabels[tissue];
+    }
+
+    String getCall(int call) {
+        return calls[call];
+    }
+}
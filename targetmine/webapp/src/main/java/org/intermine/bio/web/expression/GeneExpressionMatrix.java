@@ -0,0 +1,120 @@
+package org.intermine.bio.web.expression;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The expression values of the probe sets of a gene, read by the ExpressionMatrixStore. The
+ * values of probe set i are at offsets[i] to offsets[i + 1] - 1 of the tissue, call and value
+ * columns; the tissues and calls are indexes of the dictionaries of the store.
+ *
+ * @author chenyian
+ */
+public class GeneExpressionMatrix
+{
+    private ExpressionMatrixStore store;
+    private Integer geneId;
+    private String[] probeSetIds;
+    private int[] offsets;
+    private char[] tissues;
+    private byte[] calls;
+    private float[] values;
+
+    GeneExpressionMatrix(ExpressionMatrixStore store, Integer geneId, String[] probeSetIds,
+            int[] offsets, char[] tissues, byte[] calls, float[] values) {
+        this.store = store;
+        this.geneId = geneId;
+        this.probeSetIds = probeSetIds;
+        this.offsets = offsets;
+        this.tissues = tissues;
+        this.calls = calls;
+        this.values = values;
+    }
+
+    /**
+     * @return the object id of the gene
+     */
+    public Integer getGeneId() {
+        return geneId;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return offsets[probeSetIds.length];
+    }
+
+    /**
+     * Add the values as the rows read by the expression graph, i.e.
+     * "probeSetId\tcategory\torgan\tname\tcall\tvalue".
+     *
+     * @param rows the rows of the graph
+     */
+    public void addRows(List<String> rows) {
+        for (int i = 0; i < probeSetIds.length; i++) {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                rows.add(probeSetIds[i] + "\t" + store.getTissueLabel(tissues[j]) + "\t"
+                        + store.getCall(calls[j]) + "\t" + (Float.isNaN(values[j]) ? "null"
+                                : String.valueOf(values[j])));
+            }
+        }
+    }
+
+    /**
+     * @return the tissue dictionary of the values and, for each probe set, the tissue indexes,
+     * calls and values in columns
+     */
+    public JSONObject toJSON() {
+        // only the tissues and calls used by the gene, renumbered in order of appearance
+        int[] tissueIndex = new int[Character.MAX_VALUE + 1];
+        int[] callIndex = new int[Byte.MAX_VALUE + 1];
+        List<Integer> usedTissues = new ArrayList<Integer>();
+        JSONArray callArray = new JSONArray();
+        JSONArray probeSets = new JSONArray();
+        for (int i = 0; i < probeSetIds.length; i++) {
+            JSONArray tissueColumn = new JSONArray();
+            JSONArray callColumn = new JSONArray();
+            JSONArray valueColumn = new JSONArray();
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                if (tissueIndex[tissues[j]] == 0) {
+                    usedTissues.add(Integer.valueOf(tissues[j]));
+                    tissueIndex[tissues[j]] = usedTissues.size();
+                }
+                tissueColumn.put(tissueIndex[tissues[j]] - 1);
+                if (callIndex[calls[j]] == 0) {
+                    callArray.put(store.getCall(calls[j]));
+                    callIndex[calls[j]] = callArray.length();
+                }
+                callColumn.put(callIndex[calls[j]] - 1);
+                // the shortest decimal of the float, not of its double widening
+                valueColumn.put(Float.isNaN(values[j]) ? JSONObject.NULL
+                        : new BigDecimal(Float.toString(values[j])));
+            }
+            JSONObject probeSet = new JSONObject();
+            probeSet.put("probeSetId", probeSetIds[i]);
+            probeSet.put("tissues", tissueColumn);
+            probeSet.put("calls", callColumn);
+            probeSet.put("values", valueColumn);
+            probeSets.put(probeSet);
+        }
+        JSONArray tissueArray = new JSONArray();
+        for (Integer tissue : usedTissues) {
+            JSONObject item = new JSONObject();
+            item.put("category", store.getCategory(tissue.intValue()));
+            item.put("organ", store.getOrgan(tissue.intValue()));
+            item.put("name", store.getName(tissue.intValue()));
+            tissueArray.put(item);
+        }
+        JSONObject ret = new JSONObject();
+        ret.put("gene", geneId);
+        ret.put("tissues", tissueArray);
+        ret.put("calls", callArray);
+        ret.put("probeSets", probeSets);
+        return ret;
+    }
+}
@@ -0,0 +1,524 @@
+package org.intermine.bio.web.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.model.InterMineObject;
+import org.intermine.web.displayer.ReportDisplayer;
+import org.intermine.web.logic.session.SessionMethods;
+
+/**
+ * Keeps the request attributes set by report displayers, by displayer, object id and release
+ * version, so that the displayers of the same object are computed once for all the users.
+ *
+ * The entries are evicted in LRU order when there are more than displayer.cache.entries of
+ * them or their estimated size exceeds displayer.cache.size (MB). If displayer.cache.spill.dir
+ * is set, the evicted entries which can be serialized are written there, up to
+ * displayer.cache.spill.size (MB), and read back on a miss. The cache is cleared when the
+ * project.releaseVersion changes.
+ *
+ * The cached maps and collections are read-only copies, shared by the requests of all users.
+ *
+ * The spilled entries of a release are kept in a subdirectory of the spill directory created
+ * and marked by the cache; only the marked subdirectories and their .ser files are ever
+ * deleted. The files are written and read outside the lock of the cache.
+ *
+ * @author chenyian
+ */
+public final class DisplayerCache
+{
+    private static final Logger LOG = Logger.getLogger(DisplayerCache.class);
+
+    private static final int LOG_INTERVAL = 1000;
+    // estimated size of an InterMineObject, its collections are not counted
+    private static final int OBJECT_WEIGHT = 256;
+    // depth of the nested maps and collections which are weighed and copied
+    private static final int MAX_DEPTH = 4;
+    private static final String SPILL_PREFIX = "displayer-cache-";
+    private static final String SPILL_MARKER = ".displayer-cache";
+    private static final String SPILL_SUFFIX = ".ser";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static DisplayerCache instance = null;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final File spillRoot;
+    private final long maxSpillSize;
+
+    private String releaseVersion = null;
+    private File spillDir = null;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f,
+            true);
+    private long weight = 0;
+    // key -> file size
+    private LinkedHashMap<String, Long> spilled = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long spillSize = 0;
+    // incremented by clear(), the spills started before are dropped
+    private long generation = 0;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long loads = 0;
+    private long loadTime = 0;
+    private long evictions = 0;
+
+    private static class Entry
+    {
+        private Map<String, Object> attributes;
+        private long weight;
+
+        Entry(Map<String, Object> attributes, long weight) {
+            this.attributes = attributes;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * An evicted entry to be written to the spill directory of a generation.
+     */
+    static class Eviction
+    {
+        private String key;
+        private Map<String, Object> attributes;
+        private File dir;
+        private long generation;
+
+        Eviction(String key, Map<String, Object> attributes, File dir, long generation) {
+            this.key = key;
+            this.attributes = attributes;
+            this.dir = dir;
+            this.generation = generation;
+        }
+    }
+
+    DisplayerCache(Properties webProperties) {
+        maxEntries = Integer.parseInt(webProperties.getProperty("displayer.cache.entries",
+                "5000"));
+        maxWeight = Long.parseLong(webProperties.getProperty("displayer.cache.size", "256"))
+                * 1024 * 1024;
+        String dir = webProperties.getProperty("displayer.cache.spill.dir");
+        spillRoot = StringUtils.isBlank(dir) ? null : new File(dir.trim());
+        maxSpillSize = Long.parseLong(webProperties.getProperty("displayer.cache.spill.size",
+                "1024")) * 1024 * 1024;
+    }
+
+    /**
+     * @param request a request
+     * @return the cache, cleared if the release version has changed
+     */
+    public static synchronized DisplayerCache getInstance(HttpServletRequest request) {
+        Properties webProperties = SessionMethods.getWebProperties(request.getSession()
+                .getServletContext());
+        if (instance == null) {
+            instance = new DisplayerCache(webProperties);
+        }
+        instance.checkRelease(webProperties.getProperty("project.releaseVersion", ""));
+        return instance;
+    }
+
+    synchronized void checkRelease(String version) {
+        if (version.equals(releaseVersion)) {
+            return;
+        }
+        if (releaseVersion != null) {
+            LOG.info("Release changed from " + releaseVersion + " to " + version
+                    + ", clearing the displayer cache: " + this);
+        }
+        clear();
+        releaseVersion = version;
+        if (spillRoot != null) {
+            // the spills of the previous releases, including those of a previous run
+            File[] dirs = spillRoot.listFiles();
+            if (dirs != null) {
+                for (File dir : dirs) {
+                    if (dir.getName().startsWith(SPILL_PREFIX)) {
+                        deleteSpillDir(dir);
+                    }
+                }
+            }
+            spillDir = new File(spillRoot, SPILL_PREFIX + version.replaceAll("[^\\w.-]", "_"));
+            try {
+                if (spillDir.exists()) {
+                    // left by deleteSpillDir() if it holds other files, or not created here
+                    if (!new File(spillDir, SPILL_MARKER).isFile()) {
+                        throw new IOException(spillDir + " was not created by the cache");
+                    }
+                } else if (!spillDir.mkdirs()
+                        || !new File(spillDir, SPILL_MARKER).createNewFile()) {
+                    throw new IOException("Can not create " + spillDir);
+                }
+            } catch (IOException e) {
+                LOG.warn("Can not create " + spillDir + ", the displayer cache is not spilled.",
+                        e);
+                spillDir = null;
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+        for (String key : spilled.keySet()) {
+            deleteFile(getSpillFile(spillDir, key));
+        }
+        spilled.clear();
+        spillSize = 0;
+        generation++;
+    }
+
+    /**
+     * Delete a spill directory of the cache: its .ser and .ser.tmp files, then the directory
+     * itself if it is empty. A directory without the marker was not created by the cache and
+     * is left alone.
+     */
+    private static void deleteSpillDir(File dir) {
+        File marker = new File(dir, SPILL_MARKER);
+        if (!marker.isFile()) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // the entries and those being written
+                if (file.isFile() && (file.getName().endsWith(SPILL_SUFFIX)
+                        || file.getName().endsWith(SPILL_SUFFIX + TMP_SUFFIX))) {
+                    deleteFile(file);
+                }
+            }
+        }
+        String[] left = dir.list();
+        if (left != null && left.length > 1) {
+            // other files, the directory and its marker are kept
+            LOG.warn("Can not delete " + dir + ", it is not empty.");
+            return;
+        }
+        deleteFile(marker);
+        deleteFile(dir);
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Can not delete " + file);
+        }
+    }
+
+    /**
+     * Set the cached attributes of a displayer to the request.
+     *
+     * @param request the request of the report page
+     * @param displayer the displayer
+     * @param objectId the object of the report
+     * @return true if the attributes were cached
+     */
+    public boolean restore(HttpServletRequest request, ReportDisplayer displayer,
+            Integer objectId) {
+        Map<String, Object> attributes = get(getKey(displayer, objectId));
+        if (attributes == null) {
+            return false;
+        }
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            request.setAttribute(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Cache the attributes set by a displayer. The maps and collections are replaced, in the
+     * request too, by read-only copies, so the displayer's own objects may still change.
+     *
+     * @param request the request of the report page
+     * @param displayer the displayer
+     * @param objectId the object of the report
+     * @param time the time taken by the displayer in milliseconds
+     * @param names the names of the attributes set by the displayer
+     */
+    public void store(HttpServletRequest request, ReportDisplayer displayer, Integer objectId,
+            long time, String... names) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        for (String name : names) {
+            Object value = request.getAttribute(name);
+            if (value != null) {
+                value = unmodifiable(value, 0);
+                request.setAttribute(name, value);
+                attributes.put(name, value);
+            }
+        }
+        List<Eviction> evicted;
+        synchronized (this) {
+            loads++;
+            loadTime += time;
+            evicted = put(getKey(displayer, objectId), attributes);
+        }
+        spill(evicted);
+    }
+
+    static String getKey(ReportDisplayer displayer, Integer objectId) {
+        return displayer.getClass().getSimpleName() + "-" + objectId;
+    }
+
+    private Map<String, Object> get(String key) {
+        File file;
+        long readGeneration;
+        synchronized (this) {
+            if ((hits + diskHits + misses) % LOG_INTERVAL == LOG_INTERVAL - 1) {
+                LOG.info(this);
+            }
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.attributes;
+            }
+            Long size = spilled.remove(key);
+            if (size == null) {
+                misses++;
+                return null;
+            }
+            // the file is owned by this thread from now on
+            spillSize -= size.longValue();
+            file = getSpillFile(spillDir, key);
+            readGeneration = generation;
+        }
+        Map<String, Object> attributes = readSpilled(file);
+        List<Eviction> evicted = null;
+        synchronized (this) {
+            if (attributes == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            if (readGeneration == generation) {
+                evicted = put(key, attributes);
+            }
+        }
+        if (evicted != null) {
+            spill(evicted);
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the evicted entries, to be spilled by the caller outside the lock
+     */
+    List<Eviction> put(String key, Map<String, Object> attributes) {
+        Entry old = entries.put(key, new Entry(attributes, weigh(attributes, 0)));
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += entries.get(key).weight;
+        List<Eviction> ret = new ArrayList<Eviction>();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            evictions++;
+            if (spillDir != null) {
+                ret.add(new Eviction(eldest.getKey(), eldest.getValue().attributes, spillDir,
+                        generation));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return a read-only copy of a map or a collection and of those it holds, the value itself
+     * otherwise
+     */
+    static Object unmodifiable(Object value, int depth) {
+        if (depth > MAX_DEPTH) {
+            return value;
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), unmodifiable(entry.getValue(), depth + 1));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof Collection<?>) {
+            Collection<Object> copy;
+            if (value instanceof Set<?>) {
+                copy = new LinkedHashSet<Object>();
+            } else {
+                copy = new ArrayList<Object>();
+            }
+            for (Object item : (Collection<?>) value) {
+                copy.add(unmodifiable(item, depth + 1));
+            }
+            if (value instanceof Set<?>) {
+                return Collections.unmodifiableSet((Set<Object>) copy);
+            }
+            if (value instanceof List<?>) {
+                return Collections.unmodifiableList((List<Object>) copy);
+            }
+            return Collections.unmodifiableCollection(copy);
+        }
+        return value;
+    }
+
+    /**
+     * @return an estimate of the size of the value in bytes
+     */
+    private static long weigh(Object value, int depth) {
+        if (value instanceof String) {
+            return 40 + 2 * ((String) value).length();
+        }
+        if (value instanceof InterMineObject || depth > MAX_DEPTH) {
+            return OBJECT_WEIGHT;
+        }
+        long ret = 32;
+        if (value instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                ret += 32 + weigh(entry.getKey(), depth + 1) + weigh(entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof Collection<?>) {
+            for (Object item : (Collection<?>) value) {
+                ret += 8 + weigh(item, depth + 1);
+            }
+        }
+        return ret;
+    }
+
+    private static File getSpillFile(File dir, String key) {
+        return new File(dir, key + SPILL_SUFFIX);
+    }
+
+    void spill(List<Eviction> evicted) {
+        for (Eviction eviction : evicted) {
+            spill(eviction);
+        }
+    }
+
+    /**
+     * Write an evicted entry, then register it unless the cache has been cleared meanwhile.
+     */
+    private void spill(Eviction eviction) {
+        for (Object value : eviction.attributes.values()) {
+            if (!(value instanceof Serializable)) {
+                return;
+            }
+        }
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(buffer);
+            oos.writeObject(eviction.attributes);
+            oos.close();
+            bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            // e.g. model objects inside the collections
+            return;
+        }
+        File file = getSpillFile(eviction.dir, eviction.key);
+        File tmp = null;
+        try {
+            // written aside and renamed, a reader never sees a partial file
+            tmp = File.createTempFile(eviction.key, SPILL_SUFFIX + TMP_SUFFIX, eviction.dir);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can not rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to spill " + eviction.key, e);
+            if (tmp != null) {
+                deleteFile(tmp);
+            }
+            return;
+        }
+        List<File> deleted = new ArrayList<File>();
+        synchronized (this) {
+            if (eviction.generation != generation || entries.containsKey(eviction.key)) {
+                // cleared, or the entry is back in memory and would be spilled again
+                deleted.add(file);
+            } else {
+                Long old = spilled.put(eviction.key, Long.valueOf(bytes.length));
+                spillSize += bytes.length - (old == null ? 0 : old.longValue());
+                Iterator<Map.Entry<String, Long>> iterator = spilled.entrySet().iterator();
+                while (spillSize > maxSpillSize && iterator.hasNext()) {
+                    Map.Entry<String, Long> eldest = iterator.next();
+                    iterator.remove();
+                    spillSize -= eldest.getValue().longValue();
+                    deleted.add(getSpillFile(spillDir, eldest.getKey()));
+                }
+            }
+        }
+        for (File f : deleted) {
+            deleteFile(f);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readSpilled(File file) {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                return (Map<String, Object>) new ObjectInputStream(in).readObject();
+            } finally {
+                in.close();
+                deleteFile(file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read " + file, e);
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Failed to read " + file, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return the fraction of the lookups found in memory or on disk
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (hits + diskHits) / lookups;
+    }
+
+    /**
+     * @return the average time taken by the displayers on a miss, in milliseconds
+     */
+    public synchronized double getAverageLoadTime() {
+        return loads == 0 ? 0 : (double) loadTime / loads;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("displayer cache of release %s: %d entries (%d KB), hit rate %.1f%%"
+                + " (%d in memory, %d on disk, %d misses), %.1f ms per load, %d evictions,"
+                + " %d spilled (%d KB)", releaseVersion, entries.size(), weight / 1024,
+                getHitRate() * 100, hits, diskHits, misses, getAverageLoadTime(), evictions,
+                spilled.size(), spillSize / 1024);
+    }
+}
@@ -0,0 +1,265 @@
+package org.intermine.bio.web.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryReference;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * Fetches the references and collections along paths of report objects with one query per
+ * field of the paths, instead of one query per object as getFieldValue() does, for the report
+ * displayers walking deep object graphs.
+ *
+ * A displayer declares its paths, e.g. "snps.snp.alleles.variations.diseaseTerms", then reads
+ * the objects with getReference() and getCollection(). The fetched fields are kept for the
+ * request, so the displayers of a report page share them; a field which was not prefetched is
+ * read from the object.
+ *
+ * @author chenyian
+ */
+public final class ReportPrefetcher
+{
+    private static final Logger LOG = Logger.getLogger(ReportPrefetcher.class);
+
+    private static final String ATTRIBUTE = ReportPrefetcher.class.getName();
+    private static final int BATCH_SIZE = 5000;
+
+    private ObjectStore os;
+    private Model model;
+    // "<object id>.<field>" -> the referenced object, may be null
+    private Map<String, InterMineObject> references = new HashMap<String, InterMineObject>();
+    // "<object id>.<field>" -> the objects of the collection
+    private Map<String, Set<InterMineObject>> collections =
+            new HashMap<String, Set<InterMineObject>>();
+
+    private ReportPrefetcher(InterMineAPI im) {
+        this(im.getObjectStore(), im.getModel());
+    }
+
+    ReportPrefetcher(ObjectStore os, Model model) {
+        this.os = os;
+        this.model = model;
+    }
+
+    /**
+     * @param request the request of the report page
+     * @param im the InterMine API
+     * @return the prefetcher of the request
+     */
+    public static ReportPrefetcher getInstance(HttpServletRequest request, InterMineAPI im) {
+        ReportPrefetcher ret = (ReportPrefetcher) request.getAttribute(ATTRIBUTE);
+        if (ret == null) {
+            ret = new ReportPrefetcher(im);
+            request.setAttribute(ATTRIBUTE, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Fetch the fields along the paths from an object; the paths sharing a prefix share its
+     * queries and the fields already fetched in the request are not fetched again.
+     *
+     * @param root the object of the report
+     * @param paths dot-separated reference and collection names from the class of the object
+     * @throws ObjectStoreException if a query fails; the fields it was fetching are read from
+     * the objects afterwards
+     */
+    public void prefetch(InterMineObject root, String... paths) throws ObjectStoreException {
+        long start = System.currentTimeMillis();
+        ClassDescriptor rootCld = model.getClassDescriptorByName(
+                DynamicUtil.getSimpleClass(root).getName());
+
+        // path prefix -> the field at its end, in order of the paths so that prefixes come first
+        Map<String, ReferenceDescriptor> fields = new LinkedHashMap<String, ReferenceDescriptor>();
+        for (String path : paths) {
+            ClassDescriptor cld = rootCld;
+            StringBuilder prefix = new StringBuilder();
+            for (String fieldName : path.split("\\.")) {
+                FieldDescriptor fd = cld.getFieldDescriptorByName(fieldName);
+                if (fd == null || !(fd instanceof ReferenceDescriptor)) {
+                    throw new IllegalArgumentException(fieldName + " of " + path
+                            + " is not a reference or a collection of " + cld.getUnqualifiedName());
+                }
+                if (prefix.length() > 0) {
+                    prefix.append(".");
+                }
+                prefix.append(fieldName);
+                fields.put(prefix.toString(), (ReferenceDescriptor) fd);
+                cld = ((ReferenceDescriptor) fd).getReferencedClassDescriptor();
+            }
+        }
+
+        // path prefix -> the objects at its end
+        Map<String, Collection<InterMineObject>> objects =
+                new HashMap<String, Collection<InterMineObject>>();
+        objects.put("", Collections.singleton(root));
+        int queries = 0;
+        for (Map.Entry<String, ReferenceDescriptor> entry : fields.entrySet()) {
+            String prefix = entry.getKey();
+            int dot = prefix.lastIndexOf('.');
+            Collection<InterMineObject> parents = objects.get(dot < 0 ? "" : prefix.substring(0,
+                    dot));
+            ReferenceDescriptor rd = entry.getValue();
+            List<InterMineObject> missing = new ArrayList<InterMineObject>();
+            for (InterMineObject parent : parents) {
+                if (!isFetched(parent, rd)) {
+                    missing.add(parent);
+                }
+            }
+            if (!missing.isEmpty()) {
+                fetch(rd, missing);
+                queries++;
+            }
+            Set<InterMineObject> children = new LinkedHashSet<InterMineObject>();
+            for (InterMineObject parent : parents) {
+                String key = getKey(parent, rd.getName());
+                if (rd.isCollection()) {
+                    children.addAll(collections.get(key));
+                } else if (references.get(key) != null) {
+                    children.add(references.get(key));
+                }
+            }
+            objects.put(prefix, children);
+        }
+        LOG.debug(String.format("Prefetched %d fields of %s with %d queries (%d ms).",
+                fields.size(), rootCld.getUnqualifiedName(), queries,
+                System.currentTimeMillis() - start));
+    }
+
+    private boolean isFetched(InterMineObject parent, ReferenceDescriptor rd) {
+        String key = getKey(parent, rd.getName());
+        return rd.isCollection() ? collections.containsKey(key) : references.containsKey(key);
+    }
+
+    /**
+     * Fetch a field of the objects with one query; the fetched values are kept only once all
+     * the results are read.
+     */
+    private void fetch(ReferenceDescriptor rd, List<InterMineObject> parents)
+        throws ObjectStoreException {
+        Set<Integer> parentIds = new HashSet<Integer>();
+        for (InterMineObject parent : parents) {
+            parentIds.add(parent.getId());
+        }
+
+        Query q = new Query();
+        QueryClass qcParent = new QueryClass(rd.getClassDescriptor().getType());
+        QueryClass qcChild = new QueryClass(rd.getReferencedClassDescriptor().getType());
+        QueryField qfParentId = new QueryField(qcParent, "id");
+        q.addFrom(qcParent);
+        q.addFrom(qcChild);
+        q.addToSelect(qfParentId);
+        q.addToSelect(qcChild);
+
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        QueryReference qr;
+        if (rd.isCollection()) {
+            qr = new QueryCollectionReference(qcParent, rd.getName());
+        } else {
+            qr = new QueryObjectReference(qcParent, rd.getName());
+        }
+        cs.addConstraint(new ContainsConstraint(qr, ConstraintOp.CONTAINS, qcChild));
+        cs.addConstraint(new BagConstraint(qfParentId, ConstraintOp.IN, parentIds));
+        q.setConstraint(cs);
+
+        // the objects without a value have no row
+        Map<String, InterMineObject> fetchedReferences = new HashMap<String, InterMineObject>();
+        Map<String, Set<InterMineObject>> fetchedCollections =
+                new HashMap<String, Set<InterMineObject>>();
+        for (InterMineObject parent : parents) {
+            String key = getKey(parent, rd.getName());
+            if (rd.isCollection()) {
+                fetchedCollections.put(key, new LinkedHashSet<InterMineObject>());
+            } else {
+                fetchedReferences.put(key, null);
+            }
+        }
+        Results results = os.execute(q, BATCH_SIZE, true, false, true);
+        try {
+            Iterator<?> iterator = results.iterator();
+            while (iterator.hasNext()) {
+                ResultsRow<?> result = (ResultsRow<?>) iterator.next();
+                String key = result.get(0) + "." + rd.getName();
+                InterMineObject child = (InterMineObject) result.get(1);
+                if (rd.isCollection()) {
+                    fetchedCollections.get(key).add(child);
+                } else {
+                    fetchedReferences.put(key, child);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Results wraps the errors of the batches it reads
+            throw new ObjectStoreException("Failed to read " + rd.getName() + " of "
+                    + rd.getClassDescriptor().getUnqualifiedName(), e);
+        }
+        references.putAll(fetchedReferences);
+        collections.putAll(fetchedCollections);
+    }
+
+    private static String getKey(InterMineObject object, String fieldName) {
+        return object.getId() + "." + fieldName;
+    }
+
+    /**
+     * @param object an object
+     * @param fieldName a reference of the object
+     * @return the referenced object, or null
+     * @throws IllegalAccessException if the field can not be read
+     */
+    public InterMineObject getReference(InterMineObject object, String fieldName)
+        throws IllegalAccessException {
+        String key = getKey(object, fieldName);
+        if (references.containsKey(key)) {
+            return references.get(key);
+        }
+        return (InterMineObject) object.getFieldValue(fieldName);
+    }
+
+    /**
+     * @param object an object
+     * @param fieldName a collection of the object
+     * @return the objects of the collection, read-only
+     * @throws IllegalAccessException if the field can not be read
+     */
+    @SuppressWarnings("unchecked")
+    public Set<InterMineObject> getCollection(InterMineObject object, String fieldName)
+        throws IllegalAccessException {
+        Set<InterMineObject> ret = collections.get(getKey(object, fieldName));
+        if (ret == null) {
+            ret = (Set<InterMineObject>) object.getFieldValue(fieldName);
+        }
+        return Collections.unmodifiableSet(ret);
+    }
+}
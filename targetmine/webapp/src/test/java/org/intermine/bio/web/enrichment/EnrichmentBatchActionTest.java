@@ -0,0 +1,240 @@
+package org.intermine.bio.web.enrichment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+/**
+ * Tests of EnrichmentBatchAction: the parameter checks and the lines written for the lists.
+ *
+ * @author chenyian
+ */
+public class EnrichmentBatchActionTest extends TestCase
+{
+    private static final String FILTER = "biological_process";
+
+    public EnrichmentBatchActionTest(String arg) {
+        super(arg);
+    }
+
+    /**
+     * Lists of genes and of proteins; an analysis holds the number of ids and the filter.
+     */
+    private static class TestAnalyser implements EnrichmentBatchAction.ListAnalyser
+    {
+        private Map<String, String> types = new HashMap<String, String>();
+        private List<String> read = Collections.synchronizedList(new ArrayList<String>());
+
+        TestAnalyser() {
+            types.put("genes", "Gene");
+            types.put("proteins", "Protein");
+        }
+
+        @Override
+        public String getType(String listName) {
+            if ("broken".equals(listName)) {
+                throw new IllegalStateException("Failed to read the bag");
+            }
+            return types.get(listName);
+        }
+
+        @Override
+        public int[] getSortedIds(String listName) {
+            read.add(listName);
+            return "genes".equals(listName) ? new int[] {1, 2, 3} : new int[] {4};
+        }
+
+        @Override
+        public JSONObject analyse(String widgetId, int[] sortedIds,
+                EnrichmentBatchAction.Parameters params) {
+            if ("protein_goslim_enrichment".equals(widgetId)) {
+                throw new IllegalStateException("No background");
+            }
+            JSONObject ret = new JSONObject();
+            ret.put("size", sortedIds.length);
+            ret.put("filter", params.getFilter());
+            return ret;
+        }
+    }
+
+    // a request holding its parameters only
+    private static HttpServletRequest createRequest(String... nameValues) {
+        final Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            if (!parameters.containsKey(nameValues[i])) {
+                parameters.put(nameValues[i], new ArrayList<String>());
+            }
+            parameters.get(nameValues[i]).add(nameValues[i + 1]);
+        }
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        List<String> values = parameters.get(args[0]);
+                        if ("getParameter".equals(method.getName())) {
+                            return values == null ? null : values.get(0);
+                        }
+                        if ("getParameterValues".equals(method.getName())) {
+                            return values == null ? null : values.toArray(new String[0]);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static void assertInvalid(String message, String... nameValues) {
+        try {
+            EnrichmentBatchAction.parse(createRequest(nameValues));
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static EnrichmentBatchAction.Parameters parse(String... nameValues) {
+        return EnrichmentBatchAction.parse(createRequest(nameValues));
+    }
+
+    public void testParse() throws Exception {
+        EnrichmentBatchAction.Parameters params = parse("list", "genes", "list", "proteins",
+                "list", "genes");
+        assertEquals(Arrays.asList("genes", "proteins"), params.getListNames());
+        assertTrue(params.getWidgetIds().isEmpty());
+        assertNull(params.getFilter());
+        assertEquals("Holm-Bonferroni", params.getCorrection());
+        assertEquals(0.05d, params.getMaxPValue(), 0d);
+        assertNull(params.getTaxonId());
+        assertFalse(params.isWithMatchedIds());
+
+        params = parse("list", "genes", "widget", "gene_go_enrichment", "filter",
+                "molecular_function", "correction", "Bonferroni", "maxp", "0.01", "taxon",
+                "9606", "matches", "true");
+        assertEquals(Arrays.asList("gene_go_enrichment"), params.getWidgetIds());
+        assertEquals("molecular_function", params.getFilter());
+        assertEquals("Bonferroni", params.getCorrection());
+        assertEquals(0.01d, params.getMaxPValue(), 0d);
+        assertEquals("9606", params.getTaxonId());
+        assertTrue(params.isWithMatchedIds());
+
+        // a filter of some of the widgets only
+        assertEquals(FILTER, parse("list", "genes", "filter", FILTER).getFilter());
+        assertEquals("Reactome", parse("list", "genes", "widget", "gene_go_enrichment",
+                "widget", "gene_pathway_enrichment", "filter", "Reactome").getFilter());
+    }
+
+    public void testInvalidParameters() throws Exception {
+        assertInvalid("No list given");
+        assertInvalid("Unsupported enrichment widget: gene_enrichment", "list", "genes",
+                "widget", "gene_enrichment");
+        assertInvalid("Unknown filter: unknown", "list", "genes", "filter", "unknown");
+        assertInvalid("Unknown filter: " + FILTER, "list", "genes", "widget",
+                "gene_pathway_enrichment", "filter", FILTER);
+        assertInvalid("Unknown correction: unknown", "list", "genes", "correction", "unknown");
+        assertInvalid("Invalid maxp: x", "list", "genes", "maxp", "x");
+    }
+
+    public void testAnalyse() throws Exception {
+        TestAnalyser analyser = new TestAnalyser();
+        EnrichmentBatchAction.Parameters params = parse("list", "genes", "filter", FILTER);
+        List<JSONObject> lines = EnrichmentBatchAction.analyse(analyser, "genes", params);
+        // the widgets of genes, the filter is not one of the pathways and tissues
+        assertEquals(4, lines.size());
+        assertAnalysis(lines.get(0), "genes", "gene_go_enrichment", "Gene", 3);
+        assertAnalysis(lines.get(1), "genes", "gene_goslim_enrichment", "Gene", 3);
+        assertError(lines.get(2), "genes", "gene_pathway_enrichment",
+                "Unknown filter of gene_pathway_enrichment: " + FILTER);
+        assertError(lines.get(3), "genes", "gene_tissue_enrichment",
+                "Unknown filter of gene_tissue_enrichment: " + FILTER);
+        // the ids are read once for all the widgets
+        assertEquals(Arrays.asList("genes"), analyser.read);
+
+        lines = EnrichmentBatchAction.analyse(analyser, "proteins", params);
+        assertEquals(3, lines.size());
+        assertAnalysis(lines.get(0), "proteins", "protein_go_enrichment", "Protein", 1);
+        assertError(lines.get(1), "proteins", "protein_goslim_enrichment", "No background");
+        assertError(lines.get(2), "proteins", "protein_pathway_enrichment",
+                "Unknown filter of protein_pathway_enrichment: " + FILTER);
+
+        lines = EnrichmentBatchAction.analyse(analyser, "missing", params);
+        assertEquals(1, lines.size());
+        assertEquals("missing", lines.get(0).getString("list"));
+        assertFalse(lines.get(0).has("widget"));
+        assertEquals("List not found", lines.get(0).getString("error"));
+
+        lines = EnrichmentBatchAction.analyse(analyser, "broken", params);
+        assertEquals(1, lines.size());
+        assertEquals("broken", lines.get(0).getString("list"));
+        assertFalse(lines.get(0).has("widget"));
+        assertEquals("Failed to read the bag", lines.get(0).getString("error"));
+
+        // the given widgets, whatever the type of the list
+        params = parse("list", "genes", "widget", "protein_go_enrichment", "widget",
+                "gene_go_enrichment");
+        lines = EnrichmentBatchAction.analyse(analyser, "genes", params);
+        assertEquals(2, lines.size());
+        assertError(lines.get(0), "genes", "protein_go_enrichment",
+                "The widget analyses lists of Protein, not Gene");
+        assertAnalysis(lines.get(1), "genes", "gene_go_enrichment", "Gene", 3);
+    }
+
+    public void testWrite() throws Exception {
+        List<String> listNames = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            listNames.add(i % 2 == 0 ? "genes" : "proteins");
+        }
+        listNames.add("missing");
+        listNames.add("broken");
+        EnrichmentBatchAction.Parameters params = parse("list", "genes", "widget",
+                "gene_go_enrichment");
+        // more lists than threads, a line per list in the order they are finished
+        List<String> expected = new ArrayList<String>();
+        for (String listName : listNames) {
+            for (JSONObject line : EnrichmentBatchAction.analyse(new TestAnalyser(), listName,
+                    params)) {
+                expected.add(line.toString());
+            }
+        }
+        params.getListNames().clear();
+        params.getListNames().addAll(listNames);
+        StringWriter buffer = new StringWriter();
+        EnrichmentBatchAction.write(new PrintWriter(buffer), params, new TestAnalyser());
+        List<String> written = new ArrayList<String>(Arrays.asList(buffer.toString()
+                .split(System.getProperty("line.separator"))));
+        assertEquals(22, written.size());
+        Collections.sort(expected);
+        Collections.sort(written);
+        assertEquals(expected, written);
+    }
+
+    private static void assertAnalysis(JSONObject line, String listName, String widgetId,
+            String type, int size) {
+        assertEquals(listName, line.getString("list"));
+        assertEquals(widgetId, line.getString("widget"));
+        assertEquals(type, line.getString("type"));
+        assertEquals(size, line.getInt("size"));
+        assertFalse(line.has("error"));
+    }
+
+    private static void assertError(JSONObject line, String listName, String widgetId,
+            String message) {
+        assertEquals(listName, line.getString("list"));
+        assertEquals(widgetId, line.getString("widget"));
+        assertEquals(message, line.getString("error"));
+        assertFalse(line.has("type"));
+    }
+}
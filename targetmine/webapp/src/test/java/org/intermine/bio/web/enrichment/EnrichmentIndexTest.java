@@ -0,0 +1,293 @@
+package org.intermine.bio.web.enrichment;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of EnrichmentIndex and of the choice of the index by EnrichmentEngine; the indexes are
+ * built from known annotations and Statistics rows, and the expected p-values are the tails of
+ * EnrichmentStatistics for the expected k, n, sample size and N, corrected in order.
+ *
+ * @author chenyian
+ */
+public class EnrichmentIndexTest extends TestCase
+{
+    private static final int LARGE_ID = 2000000000;
+
+    // annotated: 1, 2, 3, 5, 7, 8 and LARGE_ID; not annotated: 9
+    private static final int[] LIST = new int[] {1, 2, 3, 5, 7, 8, 9, LARGE_ID};
+
+    private EnrichmentIndex index;
+
+    public EnrichmentIndexTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        index = createPathwayIndex("9606");
+    }
+
+    /**
+     * KEGG: hsa00010 (1, 2, 3, 4), hsa00020 (3, 5), hsa00030 (8, not in the background);
+     * Reactome: R-HSA-1 (2, 3, LARGE_ID); WikiPathways, not a group: WP1 (3, 7).
+     */
+    private static EnrichmentIndex createPathwayIndex(String taxonId) {
+        EnrichmentIndex.Builder builder = new EnrichmentIndex.Builder(BackgroundFamily.PATHWAY,
+                "Gene", taxonId);
+        // out of order and duplicated
+        builder.addAnnotation(3, "hsa00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(LARGE_ID, "R-HSA-1", "Reactome pathway", "Reactome");
+        builder.addAnnotation(7, "WP1", "WikiPathways pathway", "WikiPathways");
+        builder.addAnnotation(1, "hsa00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(5, "hsa00020", "Citrate cycle", "KEGG Pathway");
+        builder.addAnnotation(2, "hsa00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(3, "R-HSA-1", "Reactome pathway", "Reactome");
+        builder.addAnnotation(8, "hsa00030", "Pentose phosphate", "KEGG Pathway");
+        builder.addAnnotation(2, "R-HSA-1", "Reactome pathway", "Reactome");
+        builder.addAnnotation(3, "WP1", "WikiPathways pathway", "WikiPathways");
+        builder.addAnnotation(4, "hsa00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(3, "hsa00020", "Citrate cycle", "KEGG Pathway");
+        builder.addAnnotation(2, "hsa00010", "Glycolysis", "KEGG Pathway");
+
+        addStatistics(builder, "All", 100, 10);
+        builder.addStatistics("hsa00010", "All", 20);
+        builder.addStatistics("hsa00020", "All", 10);
+        builder.addStatistics("R-HSA-1", "All", 15);
+        builder.addStatistics("WP1", "All", 5);
+        addStatistics(builder, "KEGG Pathway", 60, 5);
+        builder.addStatistics("hsa00010", "KEGG Pathway", 20);
+        builder.addStatistics("hsa00020", "KEGG Pathway", 10);
+        addStatistics(builder, "Reactome", 50, 4);
+        builder.addStatistics("R-HSA-1", "Reactome", 15);
+        addStatistics(builder, "NCI Pathway Interaction Database", 30, 2);
+        // not a data set of the family, nor a term of the index
+        addStatistics(builder, "WikiPathways", 999, 99);
+        builder.addStatistics("hsa99999", "All", 7);
+        return builder.build();
+    }
+
+    private static void addStatistics(EnrichmentIndex.Builder builder, String dataSet,
+            int populationSize, int testNumber) {
+        builder.addStatistics("Pathway N", dataSet, populationSize);
+        builder.addStatistics("Pathway test number", dataSet, testNumber);
+    }
+
+    private static void assertRelative(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-9);
+    }
+
+    /**
+     * @param expected identifier, k and n of the expected results, by ascending p-value
+     */
+    private static void assertAnalysis(EnrichmentAnalysis analysis, String group,
+            String correction, int listSize, int sampleSize, int populationSize, int testNumber,
+            Object[][] expected) {
+        assertEquals(group, analysis.getGroup());
+        assertEquals(correction, analysis.getCorrection());
+        assertEquals(listSize, analysis.getListSize());
+        assertEquals(sampleSize, analysis.getSampleSize());
+        assertEquals(populationSize, analysis.getPopulationSize());
+        assertEquals(testNumber, analysis.getTestNumber());
+
+        double[] pValues = new double[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            pValues[i] = EnrichmentStatistics.upperTail(((Integer) expected[i][1]).intValue(),
+                    ((Integer) expected[i][2]).intValue(), sampleSize, populationSize);
+        }
+        for (int i = 1; i < pValues.length; i++) {
+            assertTrue(pValues[i - 1] <= pValues[i]);
+        }
+        EnrichmentStatistics.correct(pValues, testNumber, correction);
+
+        List<EnrichmentResult> results = analysis.getResults();
+        assertEquals(expected.length, results.size());
+        for (int i = 0; i < expected.length; i++) {
+            EnrichmentResult result = results.get(i);
+            assertEquals(expected[i][0], result.getIdentifier());
+            assertEquals(expected[i][1], Integer.valueOf(result.getMatches()));
+            assertEquals(expected[i][2], Integer.valueOf(result.getPopulationCount()));
+            assertEquals(result.getMatches(), result.getMatchedIds().length);
+            assertRelative(pValues[i], result.getPValue());
+        }
+    }
+
+    private static EnrichmentResult getResult(EnrichmentAnalysis analysis, String identifier) {
+        for (EnrichmentResult result : analysis.getResults()) {
+            if (result.getIdentifier().equals(identifier)) {
+                return result;
+            }
+        }
+        fail("No result for " + identifier);
+        return null;
+    }
+
+    public void testBuild() throws Exception {
+        assertEquals(BackgroundFamily.PATHWAY, index.getFamily());
+        assertEquals("Gene", index.getType());
+        assertEquals("9606", index.getTaxonId());
+        // 1, 2, 3, 4, 5, 7, 8 and LARGE_ID
+        assertEquals(8, index.getEntityCount());
+        // the duplicated annotation is counted once
+        assertTrue(index.toString(), index.toString().contains(
+                "5 terms, 8 entities, 12 annotations"));
+
+        assertEquals(7, index.countAnnotated(LIST));
+        assertEquals(0, index.countAnnotated(new int[0]));
+        assertEquals(0, index.countAnnotated(new int[] {6, 9, LARGE_ID - 1}));
+        assertEquals(2, index.countAnnotated(new int[] {4, LARGE_ID}));
+    }
+
+    public void testMatchedIds() throws Exception {
+        EnrichmentAnalysis analysis = index.analyse(LIST, BackgroundFamily.ALL, "None", 1d);
+        assertTrue(Arrays.equals(new int[] {1, 2, 3},
+                getResult(analysis, "hsa00010").getMatchedIds()));
+        assertTrue(Arrays.equals(new int[] {3, 5},
+                getResult(analysis, "hsa00020").getMatchedIds()));
+        assertTrue(Arrays.equals(new int[] {2, 3, LARGE_ID},
+                getResult(analysis, "R-HSA-1").getMatchedIds()));
+        assertTrue(Arrays.equals(new int[] {3, 7}, getResult(analysis, "WP1").getMatchedIds()));
+        assertEquals("Glycolysis", getResult(analysis, "hsa00010").getDescription());
+    }
+
+    public void testAll() throws Exception {
+        // the terms of the other data sets are in All; hsa00030 is not tested, but the entity 8
+        // is in the sample
+        for (String correction : EnrichmentStatistics.CORRECTIONS) {
+            assertAnalysis(index.analyse(LIST, BackgroundFamily.ALL, correction, 1d),
+                    BackgroundFamily.ALL, correction, 8, 7, 100, 10, new Object[][] {
+                        {"WP1", 2, 5},
+                        {"R-HSA-1", 3, 15},
+                        {"hsa00010", 3, 20},
+                        {"hsa00020", 2, 10},
+                    });
+        }
+    }
+
+    public void testGroups() throws Exception {
+        for (String correction : EnrichmentStatistics.CORRECTIONS) {
+            // entities 1, 2, 3, 5 and 8
+            assertAnalysis(index.analyse(LIST, "KEGG Pathway", correction, 1d), "KEGG Pathway",
+                    correction, 8, 5, 60, 5, new Object[][] {
+                        {"hsa00020", 2, 10},
+                        {"hsa00010", 3, 20},
+                    });
+            // entities 2, 3 and LARGE_ID
+            assertAnalysis(index.analyse(LIST, "Reactome", correction, 1d), "Reactome",
+                    correction, 8, 3, 50, 4, new Object[][] {
+                        {"R-HSA-1", 3, 15},
+                    });
+            assertAnalysis(index.analyse(LIST, "NCI Pathway Interaction Database", correction,
+                    1d), "NCI Pathway Interaction Database", correction, 8, 0, 30, 2,
+                    new Object[0][]);
+        }
+    }
+
+    public void testMaxPValue() throws Exception {
+        EnrichmentAnalysis analysis = index.analyse(LIST, BackgroundFamily.ALL, "Bonferroni",
+                1d);
+        double maxPValue = analysis.getResults().get(1).getPValue();
+        analysis = index.analyse(LIST, BackgroundFamily.ALL, "Bonferroni", maxPValue);
+        assertEquals(2, analysis.getResults().size());
+        assertEquals(7, analysis.getSampleSize());
+    }
+
+    public void testUnknownGroup() throws Exception {
+        try {
+            index.analyse(LIST, "WikiPathways", "None", 1d);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testSingleGroup() throws Exception {
+        EnrichmentIndex.Builder builder = new EnrichmentIndex.Builder(BackgroundFamily.TISSUE,
+                "Gene", "9606");
+        builder.addAnnotation(1, "BTO:1", "liver", null);
+        builder.addAnnotation(2, "BTO:1", "liver", null);
+        builder.addAnnotation(2, "BTO:2", "brain", null);
+        builder.addStatistics("Tissue N", "barcode3", 40);
+        builder.addStatistics("Tissue test number", "barcode3", 3);
+        builder.addStatistics("BTO:1", "barcode3", 4);
+        builder.addStatistics("BTO:2", "barcode3", 30);
+        EnrichmentIndex tissues = builder.build();
+
+        assertAnalysis(tissues.analyse(new int[] {1, 2, 3}, "barcode3", "Holm-Bonferroni", 1d),
+                "barcode3", "Holm-Bonferroni", 3, 2, 40, 3, new Object[][] {
+                    {"BTO:1", 2, 4},
+                    {"BTO:2", 1, 30},
+                });
+    }
+
+    public void testRootTerms() throws Exception {
+        EnrichmentIndex.Builder builder = new EnrichmentIndex.Builder(BackgroundFamily.GO,
+                "Gene", "9606");
+        builder.addAnnotation(1, "GO:0008150", "biological_process", "biological_process");
+        builder.addAnnotation(1, "GO:0006096", "glycolytic process", "biological_process");
+        builder.addAnnotation(2, "GO:0003674", "molecular_function", "molecular_function");
+        builder.addAnnotation(3, "GO:0005739", "mitochondrion", "cellular_component");
+        EnrichmentIndex go = builder.build();
+
+        assertEquals(2, go.getEntityCount());
+        assertEquals(1, go.countAnnotated(new int[] {1, 2}));
+        assertEquals(0, go.analyse(new int[] {1, 2, 3}, "molecular_function", "None", 1d)
+                .getSampleSize());
+        assertEquals(1, go.analyse(new int[] {1, 2, 3}, "cellular_component", "None", 1d)
+                .getSampleSize());
+    }
+
+    public void testEngineTaxon() throws Exception {
+        EnrichmentIndex.Builder builder = new EnrichmentIndex.Builder(BackgroundFamily.PATHWAY,
+                "Gene", "10090");
+        builder.addAnnotation(1, "mmu00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(9, "mmu00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(10, "mmu00010", "Glycolysis", "KEGG Pathway");
+        builder.addAnnotation(11, "mmu00010", "Glycolysis", "KEGG Pathway");
+        addStatistics(builder, "All", 80, 6);
+        builder.addStatistics("mmu00010", "All", 12);
+        EnrichmentIndex mouse = builder.build();
+        EnrichmentEngine engine = new EnrichmentEngine(index, mouse);
+        assertEquals(Arrays.asList("9606", "10090"), engine.getTaxonIds());
+
+        // 7 entities of the list are annotated in 9606, 2 in 10090
+        EnrichmentAnalysis analysis = engine.analyse("gene_pathway_enrichment", LIST, null,
+                "Holm-Bonferroni", 1d, null);
+        assertEquals("9606", analysis.getTaxonId());
+        assertAnalysis(analysis, BackgroundFamily.ALL, "Holm-Bonferroni", 8, 7, 100, 10,
+                new Object[][] {
+                    {"WP1", 2, 5},
+                    {"R-HSA-1", 3, 15},
+                    {"hsa00010", 3, 20},
+                    {"hsa00020", 2, 10},
+                });
+
+        // 1 in 9606, 3 in 10090
+        int[] ids = new int[] {4, 9, 10, 11};
+        analysis = engine.analyse("gene_pathway_enrichment", ids, null, "None", 1d, null);
+        assertEquals("10090", analysis.getTaxonId());
+        assertAnalysis(analysis, BackgroundFamily.ALL, "None", 4, 3, 80, 6, new Object[][] {
+            {"mmu00010", 3, 12},
+        });
+
+        // the given taxon
+        analysis = engine.analyse("gene_pathway_enrichment", ids, "KEGG Pathway", "None", 1d,
+                "9606");
+        assertEquals("9606", analysis.getTaxonId());
+        assertAnalysis(analysis, "KEGG Pathway", "None", 4, 1, 60, 5, new Object[][] {
+            {"hsa00010", 1, 20},
+        });
+
+        // annotated in no taxon
+        analysis = engine.analyse("gene_pathway_enrichment", new int[] {6, 12}, "Reactome",
+                "None", 1d, null);
+        assertNull(analysis.getTaxonId());
+        assertEquals("Reactome", analysis.getGroup());
+        assertEquals(2, analysis.getListSize());
+        assertEquals(0, analysis.getSampleSize());
+        assertTrue(analysis.getResults().isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package org.intermine.bio.web.enrichment;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of EnrichmentStatistics; the expected p-values are exact hypergeometric tails.
+ *
+ * @author chenyian
+ */
+public class EnrichmentStatisticsTest extends TestCase
+{
+    public EnrichmentStatisticsTest(String arg) {
+        super(arg);
+    }
+
+    private static void assertRelative(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-9);
+    }
+
+    public void testUpperTailSmall() throws Exception {
+        assertRelative(6.7162774826505002e-4, EnrichmentStatistics.upperTail(5, 10, 10, 100));
+        assertRelative(5.7769042345338741e-14, EnrichmentStatistics.upperTail(10, 10, 10, 100));
+        assertRelative(1.0976695834562769e-3, EnrichmentStatistics.upperTail(3, 50, 5, 1000));
+        assertRelative(0.98301698301698304, EnrichmentStatistics.upperTail(2, 5, 10, 15));
+    }
+
+    public void testUpperTailAroundMean() throws Exception {
+        assertRelative(0.50940197134603571, EnrichmentStatistics.upperTail(1000, 10000, 2000,
+                20000));
+        assertRelative(1.3407759724347081e-6, EnrichmentStatistics.upperTail(1100, 10000, 2000,
+                20000));
+        assertRelative(3.6228627644305721e-46, EnrichmentStatistics.upperTail(1300, 10000, 2000,
+                20000));
+    }
+
+    public void testUpperTailDepleted() throws Exception {
+        // P(X = 1) is about exp(-1490), the tail is still almost 1
+        assertRelative(1d, EnrichmentStatistics.upperTail(1, 10000, 2000, 20000));
+        assertRelative(0.99999893699437126, EnrichmentStatistics.upperTail(900, 10000, 2000,
+                20000));
+    }
+
+    public void testUpperTailBounds() throws Exception {
+        assertEquals(1d, EnrichmentStatistics.upperTail(0, 10, 10, 100), 0d);
+        // more matches than annotated entities
+        assertEquals(0d, EnrichmentStatistics.upperTail(11, 10, 20, 100), 0d);
+        // every entity of the list has to be annotated
+        assertEquals(1d, EnrichmentStatistics.upperTail(5, 95, 10, 100), 1e-12);
+    }
+
+    public void testCorrect() throws Exception {
+        double[] pValues = new double[] {0.01, 0.02, 0.03};
+        EnrichmentStatistics.correct(pValues, 3, "Bonferroni");
+        assertEquals(0.03, pValues[0], 1e-12);
+        assertEquals(0.09, pValues[2], 1e-12);
+
+        pValues = new double[] {0.01, 0.04, 0.03};
+        EnrichmentStatistics.correct(pValues, 3, "Holm-Bonferroni");
+        assertEquals(0.03, pValues[0], 1e-12);
+        assertEquals(0.08, pValues[1], 1e-12);
+        assertEquals(0.08, pValues[2], 1e-12);
+
+        pValues = new double[] {0.01, 0.02, 0.03};
+        EnrichmentStatistics.correct(pValues, 3, "Benjamini Hochberg");
+        assertEquals(0.03, pValues[0], 1e-12);
+        assertEquals(0.03, pValues[1], 1e-12);
+        assertEquals(0.03, pValues[2], 1e-12);
+    }
+}
@@ -0,0 +1,255 @@
+package org.intermine.bio.web.logic;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import org.intermine.web.displayer.ReportDisplayer;
+import org.intermine.web.logic.results.ReportObject;
+
+/**
+ * Tests of DisplayerCache: eviction, spilling and clearing.
+ *
+ * @author chenyian
+ */
+public class DisplayerCacheTest extends TestCase
+{
+    private File dir;
+    private ReportDisplayer displayer;
+
+    public DisplayerCacheTest(String arg) {
+        super(arg);
+    }
+
+    private static class TestDisplayer extends ReportDisplayer
+    {
+        TestDisplayer() {
+            super(null, null);
+        }
+
+        @Override
+        public void display(HttpServletRequest request, ReportObject reportObject) {
+            // not displayed
+        }
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("displayer-cache", "");
+        dir.delete();
+        dir.mkdir();
+        displayer = new TestDisplayer();
+    }
+
+    public void tearDown() throws Exception {
+        delete(dir);
+        super.tearDown();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private DisplayerCache createCache(int entries, boolean spill) {
+        Properties properties = new Properties();
+        properties.setProperty("displayer.cache.entries", String.valueOf(entries));
+        properties.setProperty("displayer.cache.size", "1");
+        if (spill) {
+            properties.setProperty("displayer.cache.spill.dir", dir.getPath());
+        }
+        DisplayerCache cache = new DisplayerCache(properties);
+        cache.checkRelease("1");
+        return cache;
+    }
+
+    // a request holding its attributes only
+    private static HttpServletRequest createRequest() {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getAttribute".equals(method.getName())) {
+                            return attributes.get(args[0]);
+                        }
+                        if ("setAttribute".equals(method.getName())) {
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private void store(DisplayerCache cache, int objectId, Object value) {
+        HttpServletRequest request = createRequest();
+        request.setAttribute("data", value);
+        cache.store(request, displayer, Integer.valueOf(objectId), 10L, "data");
+    }
+
+    private Object restore(DisplayerCache cache, int objectId) {
+        HttpServletRequest request = createRequest();
+        if (!cache.restore(request, displayer, Integer.valueOf(objectId))) {
+            return null;
+        }
+        return request.getAttribute("data");
+    }
+
+    private List<String> getSpillFiles() {
+        List<String> ret = new ArrayList<String>();
+        for (File subdir : dir.listFiles()) {
+            if (!subdir.isDirectory()) {
+                continue;
+            }
+            for (String name : subdir.list()) {
+                if (name.endsWith(".ser")) {
+                    ret.add(name);
+                }
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    public void testLruOrder() throws Exception {
+        DisplayerCache cache = createCache(3, false);
+        store(cache, 1, "one");
+        store(cache, 2, "two");
+        store(cache, 3, "three");
+        assertEquals("one", restore(cache, 1));
+        store(cache, 4, "four");
+        // 2 is the least recently used
+        assertNull(restore(cache, 2));
+        assertEquals("one", restore(cache, 1));
+        assertEquals("three", restore(cache, 3));
+        assertEquals("four", restore(cache, 4));
+        assertEquals(0.8, cache.getHitRate(), 1e-9);
+        assertEquals(10.0, cache.getAverageLoadTime(), 1e-9);
+    }
+
+    public void testWeightEviction() throws Exception {
+        DisplayerCache cache = createCache(100, false);
+        // about 400 KB each, 1 MB in all
+        char[] chars = new char[200 * 1024];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        store(cache, 1, large);
+        store(cache, 2, large);
+        assertEquals(large, restore(cache, 1));
+        store(cache, 3, large);
+        assertNull(restore(cache, 2));
+        assertEquals(large, restore(cache, 1));
+        assertEquals(large, restore(cache, 3));
+    }
+
+    public void testSpillAndRestore() throws Exception {
+        DisplayerCache cache = createCache(1, true);
+        store(cache, 1, new ArrayList<String>(Arrays.asList("a", "b")));
+        store(cache, 2, new ArrayList<String>(Arrays.asList("c")));
+        assertEquals(Arrays.asList("TestDisplayer-1.ser"), getSpillFiles());
+
+        // read back from the disk, 2 is spilled in turn
+        assertEquals(Arrays.asList("a", "b"), restore(cache, 1));
+        assertEquals(Arrays.asList("TestDisplayer-2.ser"), getSpillFiles());
+        assertEquals(Arrays.asList("c"), restore(cache, 2));
+        assertEquals(Arrays.asList("a", "b"), restore(cache, 1));
+        assertEquals(1.0, cache.getHitRate(), 1e-9);
+    }
+
+    public void testReleaseChange() throws Exception {
+        DisplayerCache cache = createCache(1, true);
+        store(cache, 1, new ArrayList<String>(Arrays.asList("a")));
+        store(cache, 2, new ArrayList<String>(Arrays.asList("b")));
+        assertEquals(1, getSpillFiles().size());
+        File other = new File(dir, "other.txt");
+        other.createNewFile();
+
+        cache.checkRelease("1");
+        assertEquals(Arrays.asList("b"), restore(cache, 2));
+
+        cache.checkRelease("2");
+        assertNull(restore(cache, 1));
+        assertNull(restore(cache, 2));
+        assertTrue(getSpillFiles().isEmpty());
+        // the directory of the previous release is deleted, the others are kept
+        assertFalse(new File(dir, "displayer-cache-1").exists());
+        assertTrue(new File(dir, "displayer-cache-2").isDirectory());
+        assertTrue(other.exists());
+    }
+
+    public void testSpillAfterClear() throws Exception {
+        DisplayerCache cache = createCache(1, true);
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("data", "a");
+        cache.put(DisplayerCache.getKey(displayer, Integer.valueOf(1)), attributes);
+        List<DisplayerCache.Eviction> evicted = cache.put(DisplayerCache.getKey(displayer,
+                Integer.valueOf(2)), attributes);
+        assertEquals(1, evicted.size());
+        // cleared while the evicted entry was being written
+        cache.clear();
+        cache.spill(evicted);
+        assertTrue(getSpillFiles().isEmpty());
+        assertNull(restore(cache, 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testUnmodifiable() throws Exception {
+        DisplayerCache cache = createCache(10, false);
+        Map<String, Set<String>> map = new HashMap<String, Set<String>>();
+        map.put("a", new HashSet<String>(Arrays.asList("x", "y")));
+        HttpServletRequest request = createRequest();
+        request.setAttribute("data", map);
+        cache.store(request, displayer, Integer.valueOf(1), 10L, "data");
+
+        // the displayer's own map may change, the cached copy does not
+        map.get("a").add("z");
+        map.put("b", new HashSet<String>());
+        Map<String, Set<String>> cached = (Map<String, Set<String>>) restore(cache, 1);
+        assertEquals(1, cached.size());
+        assertEquals(new HashSet<String>(Arrays.asList("x", "y")), cached.get("a"));
+        // the request of the displayer renders the cached copy too
+        assertSame(cached, request.getAttribute("data"));
+        try {
+            cached.put("c", new HashSet<String>());
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            cached.get("a").add("w");
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        List<String> list = (List<String>) DisplayerCache.unmodifiable(
+                new ArrayList<String>(Arrays.asList("a")), 0);
+        try {
+            list.add("b");
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals("text", DisplayerCache.unmodifiable("text", 0));
+    }
+}
@@ -0,0 +1,259 @@
+package org.intermine.bio.web.logic;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.Model;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.bio.Gene;
+import org.intermine.model.bio.Organism;
+import org.intermine.model.bio.Protein;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * Tests of ReportPrefetcher: the fields fetched by its queries, and the fields read from the
+ * objects when its queries fail.
+ *
+ * @author chenyian
+ */
+public class ReportPrefetcherTest extends TestCase
+{
+    private AtomicInteger executed = new AtomicInteger();
+    // "<field> <sorted parent ids>" of the queries run by the objectstore
+    private List<String> queries = new ArrayList<String>();
+    // (field, parent id, child) rows of the objectstore
+    private List<Object[]> rows = new ArrayList<Object[]>();
+    private Gene gene;
+    private Organism organism;
+    private Protein protein;
+
+    public ReportPrefetcherTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        organism = createOrganism(2);
+        protein = createProtein(3);
+        gene = createGene(1);
+        gene.setOrganism(organism);
+        gene.addProteins(protein);
+    }
+
+    private static Gene createGene(int id) {
+        Gene ret = (Gene) DynamicUtil.createObject(Collections.singleton(Gene.class));
+        ret.setId(Integer.valueOf(id));
+        return ret;
+    }
+
+    private static Protein createProtein(int id) {
+        Protein ret = (Protein) DynamicUtil.createObject(Collections.singleton(Protein.class));
+        ret.setId(Integer.valueOf(id));
+        return ret;
+    }
+
+    private static Organism createOrganism(int id) {
+        Organism ret = (Organism) DynamicUtil.createObject(
+                Collections.singleton(Organism.class));
+        ret.setId(Integer.valueOf(id));
+        return ret;
+    }
+
+    private void addRow(String fieldName, InterMineObject parent, InterMineObject child) {
+        rows.add(new Object[] {fieldName, parent.getId(), child});
+    }
+
+    // an objectstore of the genomic model whose results all fail, as Results does when it
+    // can not read a batch
+    private ObjectStore createFailingObjectStore() {
+        final Model model = Model.getInstanceByName("genomic");
+        return (ObjectStore) Proxy.newProxyInstance(ObjectStore.class.getClassLoader(),
+                new Class<?>[] {ObjectStore.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getModel".equals(method.getName())) {
+                            return model;
+                        }
+                        if ("execute".equals(method.getName())) {
+                            executed.incrementAndGet();
+                            return new Results() {
+                                @Override
+                                public Iterator<Object> iterator() {
+                                    throw new RuntimeException("Failed to read a batch",
+                                            new ObjectStoreException("the database is down"));
+                                }
+                            };
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // an objectstore of the genomic model answering the queries of the prefetcher from rows
+    private ObjectStore createObjectStore() {
+        final Model model = Model.getInstanceByName("genomic");
+        return (ObjectStore) Proxy.newProxyInstance(ObjectStore.class.getClassLoader(),
+                new Class<?>[] {ObjectStore.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getModel".equals(method.getName())) {
+                            return model;
+                        }
+                        if ("execute".equals(method.getName())) {
+                            executed.incrementAndGet();
+                            return execute((Query) args[0]);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // the rows of the field of the parents constrained by the query, in the order of the rows
+    private Results execute(Query q) {
+        String fieldName = null;
+        Collection<?> parentIds = null;
+        for (Constraint c : ((ConstraintSet) q.getConstraint()).getConstraints()) {
+            if (c instanceof ContainsConstraint) {
+                fieldName = ((ContainsConstraint) c).getReference().getFieldName();
+            } else if (c instanceof BagConstraint) {
+                parentIds = ((BagConstraint) c).getBag();
+            }
+        }
+        queries.add(fieldName + " " + new TreeSet<Object>(parentIds));
+        final List<Object> results = new ArrayList<Object>();
+        for (Object[] row : rows) {
+            if (row[0].equals(fieldName) && parentIds.contains(row[1])) {
+                results.add(new ResultsRow<Object>(Arrays.asList(row[1], row[2])));
+            }
+        }
+        return new Results() {
+            @Override
+            public Iterator<Object> iterator() {
+                return results.iterator();
+            }
+        };
+    }
+
+    private static Set<InterMineObject> asSet(InterMineObject... objects) {
+        return new HashSet<InterMineObject>(Arrays.asList(objects));
+    }
+
+    public void testPrefetch() throws Exception {
+        Protein protein4 = createProtein(4);
+        Protein protein5 = createProtein(5);
+        Gene gene10 = createGene(10);
+        // the values of the objects which are replaced by the fetched ones
+        gene10.setOrganism(createOrganism(11));
+        protein5.addGenes(createGene(20));
+
+        addRow("proteins", gene, protein);
+        addRow("proteins", gene, protein4);
+        addRow("proteins", gene, protein5);
+        // not grouped by parent
+        addRow("genes", protein4, gene);
+        addRow("genes", protein, gene);
+        addRow("genes", protein4, gene10);
+        addRow("organism", gene, organism);
+        addRow("proteins", gene10, protein4);
+
+        ObjectStore os = createObjectStore();
+        ReportPrefetcher prefetcher = new ReportPrefetcher(os, os.getModel());
+        prefetcher.prefetch(gene, "proteins.genes.organism");
+        assertEquals(Arrays.asList("proteins [1]", "genes [3, 4, 5]", "organism [1, 10]"),
+                queries);
+
+        assertEquals(asSet(protein, protein4, protein5), prefetcher.getCollection(gene,
+                "proteins"));
+        assertEquals(asSet(gene), prefetcher.getCollection(protein, "genes"));
+        assertEquals(asSet(gene, gene10), prefetcher.getCollection(protein4, "genes"));
+        // fetched without a row
+        assertTrue(prefetcher.getCollection(protein5, "genes").isEmpty());
+        assertSame(organism, prefetcher.getReference(gene, "organism"));
+        assertNull(prefetcher.getReference(gene10, "organism"));
+
+        // the shared prefixes, the proteins and the organism of the gene are not fetched again
+        queries.clear();
+        prefetcher.prefetch(gene, "proteins.genes.proteins", "organism");
+        assertEquals(Arrays.asList("proteins [10]"), queries);
+        assertEquals(asSet(protein4), prefetcher.getCollection(gene10, "proteins"));
+        assertEquals(4, executed.get());
+
+        // neither a fetched collection nor the collection of an object can be changed
+        try {
+            prefetcher.getCollection(gene, "proteins").add(createProtein(6));
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            prefetcher.getCollection(protein4, "genes").clear();
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        Protein protein7 = createProtein(7);
+        protein7.addGenes(gene10);
+        try {
+            prefetcher.getCollection(protein7, "genes").clear();
+            fail("expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(asSet(gene10), protein7.getGenes());
+    }
+
+    public void testFailedQuery() throws Exception {
+        ObjectStore os = createFailingObjectStore();
+        ReportPrefetcher prefetcher = new ReportPrefetcher(os, os.getModel());
+        try {
+            prefetcher.prefetch(gene, "organism");
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertEquals("Failed to read organism of Gene", e.getMessage());
+            assertEquals("the database is down", e.getCause().getCause().getMessage());
+        }
+        // not marked as fetched: read from the object, not as a missing value
+        assertSame(organism, prefetcher.getReference(gene, "organism"));
+
+        try {
+            prefetcher.prefetch(gene, "proteins.genes");
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            // expected
+        }
+        assertEquals(1, prefetcher.getCollection(gene, "proteins").size());
+        assertTrue(prefetcher.getCollection(gene, "proteins").contains(protein));
+
+        // fetched again by the next prefetch
+        try {
+            prefetcher.prefetch(gene, "organism", "proteins");
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            // expected
+        }
+        assertEquals(3, executed.get());
+        assertSame(organism, prefetcher.getReference(gene, "organism"));
+    }
+}